@@ -0,0 +1,377 @@
+package com.chatapp.chatappbackend.cluster;
+
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Carries frames to the nodes whose sessions need them when the application runs as several
+ * instances. Each node tells the others which users it has sessions for and which topic
+ * destinations its sessions subscribe to, as deltas when they change and as a full snapshot every
+ * sync interval (which doubles as the node's heartbeat). FrameSender hands every frame it sends
+ * locally to forward(), which passes it only to the nodes registered for that user or
+ * destination; receiving nodes deliver it to their own broker. Without a ClusterTransport bean
+ * (chat.cluster.enabled=false) this does nothing.
+ */
+@Component
+public class ClusterFanout implements MetricsSource, InitializingBean, DisposableBean {
+
+    private static final String USER_PREFIX = "/user/";
+
+    @Autowired(required = false)
+    private ClusterTransport transport;
+
+    @Value("${chat.cluster.peer-timeout-ms:15000}")
+    private long peerTimeoutMillis;
+
+    private final ClusterRegistry registry = new ClusterRegistry();
+
+    private volatile LocalDelivery localDelivery;
+
+    private volatile Consumer<List<Integer>> unreadListener;
+
+    private volatile Consumer<List<Integer>> lostUsersListener;
+
+    private volatile Consumer<List<Integer>> messagesListener;
+
+    // Users with at least one session on this node, as reported by PresenceService
+    private final Set<Integer> localUsers = ConcurrentHashMap.newKeySet();
+
+    // Topic destination -> number of local subscriptions
+    private final Map<String, Integer> localDestinations = new ConcurrentHashMap<>();
+
+    // sessionId -> (subscriptionId -> destination), to release subscriptions on unsubscribe and disconnect
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicLong forwardedFrames = new AtomicLong();
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+
+    /**
+     * Delivers a frame that arrived from another node to this node's sessions
+     */
+    @FunctionalInterface
+    public interface LocalDelivery {
+        void deliver(String destination, byte[] payload);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (transport != null) {
+            transport.start(this::receive);
+            transport.broadcast(snapshot());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (transport != null) {
+            transport.broadcast(ClusterMessage.leave(transport.getNodeId()));
+            transport.close();
+        }
+    }
+
+    /**
+     * @return Whether frames are shared with other nodes
+     */
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    /**
+     * Set where frames from other nodes are delivered; called once by FrameSender
+     */
+    public void setLocalDelivery(LocalDelivery localDelivery) {
+        this.localDelivery = localDelivery;
+    }
+
+    /**
+     * Set who is told that another node changed users' unread counters; called once by UnreadCounterService
+     */
+    public void setUnreadListener(Consumer<List<Integer>> unreadListener) {
+        this.unreadListener = unreadListener;
+    }
+
+    /**
+     * Set who is told about users whose only sessions were on a node that left or timed out;
+     * called once by PresenceService. Only the surviving node with the lowest ID is told, so one
+     * node speaks for the ones that are gone.
+     */
+    public void setLostUsersListener(Consumer<List<Integer>> lostUsersListener) {
+        this.lostUsersListener = lostUsersListener;
+    }
+
+    /**
+     * Set who is told that another node changed messages in some conversations; called once by RecentMessageCache
+     */
+    public void setMessagesListener(Consumer<List<Integer>> messagesListener) {
+        this.messagesListener = messagesListener;
+    }
+
+    /**
+     * Tell the other nodes that this one changed messages (sent, deleted, delivered, read) in some conversations
+     */
+    public void messagesChanged(Collection<Integer> conversationIds) {
+        if (transport != null && !conversationIds.isEmpty()) {
+            transport.broadcast(ClusterMessage.messagesChanged(transport.getNodeId(), conversationIds));
+        }
+    }
+
+    /**
+     * Tell the other nodes that this one wrote unread counter changes for some users
+     */
+    public void unreadCountersChanged(Collection<Integer> userIds) {
+        if (transport != null && !userIds.isEmpty()) {
+            transport.broadcast(ClusterMessage.unreadChanged(transport.getNodeId(), userIds));
+        }
+    }
+
+    /**
+     * Pass a frame that was just delivered locally to the other nodes that need it
+     * @param destination The broker destination, e.g. /user/42/queue/messages or /topic/conversation.7
+     * @param payload The encoded frame body
+     */
+    public void forward(String destination, byte[] payload) {
+        if (transport == null) {
+            return;
+        }
+        Set<String> nodes;
+        if (destination.startsWith(USER_PREFIX)) {
+            Integer userId = userIdOf(destination);
+            nodes = userId != null ? registry.nodesForUser(userId) : Set.of();
+        } else {
+            nodes = registry.nodesForDestination(destination);
+        }
+        if (nodes.isEmpty()) {
+            return;
+        }
+        byte[] message = ClusterMessage.frame(transport.getNodeId(), destination, payload);
+        for (String nodeId : nodes) {
+            transport.send(nodeId, message);
+        }
+        forwardedFrames.addAndGet(nodes.size());
+    }
+
+    /**
+     * @return Whether another node has a session of the user
+     */
+    public boolean hasRemoteSessions(Integer userId) {
+        return transport != null && !registry.nodesForUser(userId).isEmpty();
+    }
+
+    /**
+     * A user's first session on this node connected
+     */
+    public void userConnected(Integer userId) {
+        if (localUsers.add(userId) && transport != null) {
+            transport.broadcast(ClusterMessage.user(ClusterMessage.Type.USER_ADDED, transport.getNodeId(), userId));
+        }
+    }
+
+    /**
+     * A user's last session on this node disconnected
+     */
+    public void userDisconnected(Integer userId) {
+        if (localUsers.remove(userId) && transport != null) {
+            transport.broadcast(ClusterMessage.user(ClusterMessage.Type.USER_REMOVED, transport.getNodeId(), userId));
+        }
+    }
+
+    /**
+     * Track topic subscriptions so other nodes know to send this node frames for them
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        MessageHeaders headers = event.getMessage().getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (destination == null || sessionId == null || subscriptionId == null || !isSharedDestination(destination)) {
+            return;
+        }
+        String previous = sessionSubscriptions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+            .put(subscriptionId, destination);
+        if (previous != null) {
+            release(previous);
+        }
+        acquire(destination);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        MessageHeaders headers = event.getMessage().getHeaders();
+        Map<String, String> subscriptions = sessionSubscriptions.get(SimpMessageHeaderAccessor.getSessionId(headers));
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (subscriptions != null && subscriptionId != null) {
+            String destination = subscriptions.remove(subscriptionId);
+            if (destination != null) {
+                release(destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = sessionSubscriptions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::release);
+        }
+    }
+
+    /**
+     * Send this node's full state to the others and forget nodes that went quiet
+     */
+    @Scheduled(fixedDelayString = "${chat.cluster.sync-interval-ms:5000}")
+    public void sync() {
+        if (transport == null) {
+            return;
+        }
+        transport.broadcast(snapshot());
+        for (Map.Entry<String, List<Integer>> expired : registry.expire(System.currentTimeMillis() - peerTimeoutMillis).entrySet()) {
+            System.err.println("Cluster node " + expired.getKey() + " timed out");
+            usersLost(expired.getValue());
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "cluster";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", transport != null);
+        if (transport == null) {
+            return metrics;
+        }
+        metrics.put("nodeId", transport.getNodeId());
+        metrics.put("knownNodes", registry.getNodeCount());
+        metrics.put("localUsers", localUsers.size());
+        metrics.put("localDestinations", localDestinations.size());
+        metrics.put("remoteUsers", registry.getRemoteUserCount());
+        metrics.put("remoteDestinations", registry.getRemoteDestinationCount());
+        metrics.put("forwardedFrames", forwardedFrames.get());
+        metrics.put("receivedFrames", receivedFrames.get());
+        metrics.put("malformedMessages", malformed.get());
+        metrics.put("transport", transport.getMetrics());
+        return metrics;
+    }
+
+    // Runs on the transport's receiving thread for the sender
+    void receive(byte[] bytes) {
+        ClusterMessage message;
+        try {
+            message = ClusterMessage.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            malformed.incrementAndGet();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        switch (message.type) {
+            case SNAPSHOT -> {
+                if (registry.replace(message.nodeId, message.users, message.destinations, now)) {
+                    // A node we did not know: let it know us without waiting for the next sync
+                    transport.send(message.nodeId, snapshot());
+                }
+            }
+            case USER_ADDED -> registry.addUser(message.nodeId, message.userId, now);
+            case USER_REMOVED -> registry.removeUser(message.nodeId, message.userId, now);
+            case DESTINATION_ADDED -> registry.addDestination(message.nodeId, message.destination, now);
+            case DESTINATION_REMOVED -> registry.removeDestination(message.nodeId, message.destination, now);
+            case FRAME -> {
+                receivedFrames.incrementAndGet();
+                LocalDelivery delivery = localDelivery;
+                if (delivery != null) {
+                    delivery.deliver(message.destination, message.payload);
+                }
+            }
+            case UNREAD_CHANGED -> {
+                Consumer<List<Integer>> listener = unreadListener;
+                if (listener != null) {
+                    listener.accept(message.users);
+                }
+            }
+            case MESSAGES_CHANGED -> {
+                Consumer<List<Integer>> listener = messagesListener;
+                if (listener != null) {
+                    listener.accept(message.conversations);
+                }
+            }
+            case LEAVE -> usersLost(registry.removeNode(message.nodeId));
+        }
+    }
+
+    private void usersLost(List<Integer> userIds) {
+        Consumer<List<Integer>> listener = lostUsersListener;
+        if (listener == null || userIds.isEmpty() || registry.hasNodeBefore(transport.getNodeId())) {
+            return;
+        }
+        try {
+            listener.accept(userIds);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to handle users of a departed cluster node: " + e.getMessage());
+        }
+    }
+
+    private byte[] snapshot() {
+        return ClusterMessage.snapshot(transport.getNodeId(),
+            new ArrayList<>(localUsers), new ArrayList<>(localDestinations.keySet()));
+    }
+
+    private void acquire(String destination) {
+        if (localDestinations.merge(destination, 1, Integer::sum) == 1 && transport != null) {
+            transport.broadcast(ClusterMessage.destination(
+                ClusterMessage.Type.DESTINATION_ADDED, transport.getNodeId(), destination));
+        }
+    }
+
+    private void release(String destination) {
+        boolean[] last = new boolean[1];
+        localDestinations.computeIfPresent(destination, (key, count) -> {
+            last[0] = count == 1;
+            return last[0] ? null : count - 1;
+        });
+        if (last[0] && transport != null) {
+            transport.broadcast(ClusterMessage.destination(
+                ClusterMessage.Type.DESTINATION_REMOVED, transport.getNodeId(), destination));
+        }
+    }
+
+    // User queues are routed by user, so only other broker destinations are tracked by name
+    private static boolean isSharedDestination(String destination) {
+        return destination.startsWith("/topic/") || destination.startsWith("/queue/");
+    }
+
+    private static Integer userIdOf(String destination) {
+        int end = destination.indexOf('/', USER_PREFIX.length());
+        if (end < 0) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(destination.substring(USER_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.chatapp.chatappbackend.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * What nodes tell each other: which users and destinations they hold sessions for, frames
+ * for those, and which cached state they changed. Encoded with DataOutput, so the bytes need no JSON on the hot path.
+ */
+final class ClusterMessage {
+
+    enum Type {
+        // Everything the sender holds; replaces what the receiver knew about it
+        SNAPSHOT,
+        USER_ADDED,
+        USER_REMOVED,
+        DESTINATION_ADDED,
+        DESTINATION_REMOVED,
+        // A frame for the receiver's local sessions
+        FRAME,
+        // The sender is shutting down
+        LEAVE,
+        // The sender wrote unread counter changes for these users
+        UNREAD_CHANGED,
+        // The sender committed message changes in these conversations
+        MESSAGES_CHANGED
+    }
+
+    final Type type;
+    final String nodeId;
+    final int userId;
+    final String destination;
+    final byte[] payload;
+    final List<Integer> users;
+    final List<String> destinations;
+    final List<Integer> conversations;
+
+    private ClusterMessage(Type type, String nodeId, int userId, String destination, byte[] payload,
+                           List<Integer> users, List<String> destinations) {
+        this(type, nodeId, userId, destination, payload, users, destinations, List.of());
+    }
+
+    private ClusterMessage(Type type, String nodeId, int userId, String destination, byte[] payload,
+                           List<Integer> users, List<String> destinations, List<Integer> conversations) {
+        this.type = type;
+        this.nodeId = nodeId;
+        this.userId = userId;
+        this.destination = destination;
+        this.payload = payload;
+        this.users = users;
+        this.destinations = destinations;
+        this.conversations = conversations;
+    }
+
+    static byte[] snapshot(String nodeId, Collection<Integer> users, Collection<String> destinations) {
+        return encode(new ClusterMessage(Type.SNAPSHOT, nodeId, 0, null, null,
+            new ArrayList<>(users), new ArrayList<>(destinations)));
+    }
+
+    static byte[] user(Type type, String nodeId, int userId) {
+        return encode(new ClusterMessage(type, nodeId, userId, null, null, List.of(), List.of()));
+    }
+
+    static byte[] destination(Type type, String nodeId, String destination) {
+        return encode(new ClusterMessage(type, nodeId, 0, destination, null, List.of(), List.of()));
+    }
+
+    static byte[] frame(String nodeId, String destination, byte[] payload) {
+        return encode(new ClusterMessage(Type.FRAME, nodeId, 0, destination, payload, List.of(), List.of()));
+    }
+
+    static byte[] unreadChanged(String nodeId, Collection<Integer> users) {
+        return encode(new ClusterMessage(Type.UNREAD_CHANGED, nodeId, 0, null, null, new ArrayList<>(users), List.of()));
+    }
+
+    static byte[] messagesChanged(String nodeId, Collection<Integer> conversations) {
+        return encode(new ClusterMessage(Type.MESSAGES_CHANGED, nodeId, 0, null, null, List.of(), List.of(),
+            new ArrayList<>(conversations)));
+    }
+
+    static byte[] leave(String nodeId) {
+        return encode(new ClusterMessage(Type.LEAVE, nodeId, 0, null, null, List.of(), List.of()));
+    }
+
+    private static byte[] encode(ClusterMessage message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+            64 + (message.payload != null ? message.payload.length : 0));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(message.type.ordinal());
+            out.writeUTF(message.nodeId);
+            switch (message.type) {
+                case SNAPSHOT -> {
+                    out.writeInt(message.users.size());
+                    for (int userId : message.users) {
+                        out.writeInt(userId);
+                    }
+                    out.writeInt(message.destinations.size());
+                    for (String destination : message.destinations) {
+                        out.writeUTF(destination);
+                    }
+                }
+                case USER_ADDED, USER_REMOVED -> out.writeInt(message.userId);
+                case DESTINATION_ADDED, DESTINATION_REMOVED -> out.writeUTF(message.destination);
+                case FRAME -> {
+                    out.writeUTF(message.destination);
+                    out.writeInt(message.payload.length);
+                    out.write(message.payload);
+                }
+                case UNREAD_CHANGED -> {
+                    out.writeInt(message.users.size());
+                    for (int userId : message.users) {
+                        out.writeInt(userId);
+                    }
+                }
+                case MESSAGES_CHANGED -> {
+                    out.writeInt(message.conversations.size());
+                    for (int conversationId : message.conversations) {
+                        out.writeInt(conversationId);
+                    }
+                }
+                case LEAVE -> {
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static ClusterMessage decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Type type = Type.values()[in.readUnsignedByte()];
+            String nodeId = in.readUTF();
+            switch (type) {
+                case SNAPSHOT -> {
+                    int userCount = in.readInt();
+                    List<Integer> users = new ArrayList<>(userCount);
+                    for (int i = 0; i < userCount; i++) {
+                        users.add(in.readInt());
+                    }
+                    int destinationCount = in.readInt();
+                    List<String> destinations = new ArrayList<>(destinationCount);
+                    for (int i = 0; i < destinationCount; i++) {
+                        destinations.add(in.readUTF());
+                    }
+                    return new ClusterMessage(type, nodeId, 0, null, null, users, destinations);
+                }
+                case USER_ADDED, USER_REMOVED -> {
+                    return new ClusterMessage(type, nodeId, in.readInt(), null, null, List.of(), List.of());
+                }
+                case DESTINATION_ADDED, DESTINATION_REMOVED -> {
+                    return new ClusterMessage(type, nodeId, 0, in.readUTF(), null, List.of(), List.of());
+                }
+                case FRAME -> {
+                    String destination = in.readUTF();
+                    byte[] payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                    return new ClusterMessage(type, nodeId, 0, destination, payload, List.of(), List.of());
+                }
+                case UNREAD_CHANGED -> {
+                    int userCount = in.readInt();
+                    List<Integer> users = new ArrayList<>(userCount);
+                    for (int i = 0; i < userCount; i++) {
+                        users.add(in.readInt());
+                    }
+                    return new ClusterMessage(type, nodeId, 0, null, null, users, List.of());
+                }
+                case MESSAGES_CHANGED -> {
+                    int conversationCount = in.readInt();
+                    List<Integer> conversations = new ArrayList<>(conversationCount);
+                    for (int i = 0; i < conversationCount; i++) {
+                        conversations.add(in.readInt());
+                    }
+                    return new ClusterMessage(type, nodeId, 0, null, null, List.of(), List.of(), conversations);
+                }
+                default -> {
+                    return new ClusterMessage(type, nodeId, 0, null, null, List.of(), List.of());
+                }
+            }
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed cluster message", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.chatapp.chatappbackend.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which other nodes hold sessions for which users and topic destinations. Updates come from the
+ * cluster bus and are rare; lookups happen for every outgoing frame, so the indexes map to
+ * immutable node sets that readers use without locking.
+ */
+final class ClusterRegistry {
+
+    // Guarded by this
+    private final Map<String, NodeInterest> nodes = new HashMap<>();
+
+    private final Map<Integer, Set<String>> userNodes = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> destinationNodes = new ConcurrentHashMap<>();
+
+    /**
+     * @return The nodes holding sessions of a user; empty if none
+     */
+    Set<String> nodesForUser(int userId) {
+        return userNodes.getOrDefault(userId, Set.of());
+    }
+
+    /**
+     * @return The nodes holding subscriptions to a destination; empty if none
+     */
+    Set<String> nodesForDestination(String destination) {
+        return destinationNodes.getOrDefault(destination, Set.of());
+    }
+
+    /**
+     * Replace everything known about a node
+     * @return Whether the node was new
+     */
+    synchronized boolean replace(String nodeId, Collection<Integer> users, Collection<String> destinations, long now) {
+        NodeInterest previous = nodes.get(nodeId);
+        NodeInterest next = new NodeInterest(now);
+        next.users.addAll(users);
+        next.destinations.addAll(destinations);
+        nodes.put(nodeId, next);
+
+        Set<Integer> oldUsers = previous != null ? previous.users : Set.of();
+        Set<String> oldDestinations = previous != null ? previous.destinations : Set.of();
+        for (Integer userId : oldUsers) {
+            if (!next.users.contains(userId)) {
+                unindex(userNodes, userId, nodeId);
+            }
+        }
+        for (Integer userId : next.users) {
+            if (!oldUsers.contains(userId)) {
+                index(userNodes, userId, nodeId);
+            }
+        }
+        for (String destination : oldDestinations) {
+            if (!next.destinations.contains(destination)) {
+                unindex(destinationNodes, destination, nodeId);
+            }
+        }
+        for (String destination : next.destinations) {
+            if (!oldDestinations.contains(destination)) {
+                index(destinationNodes, destination, nodeId);
+            }
+        }
+        return previous == null;
+    }
+
+    synchronized void addUser(String nodeId, int userId, long now) {
+        if (node(nodeId, now).users.add(userId)) {
+            index(userNodes, userId, nodeId);
+        }
+    }
+
+    synchronized void removeUser(String nodeId, int userId, long now) {
+        if (node(nodeId, now).users.remove(userId)) {
+            unindex(userNodes, userId, nodeId);
+        }
+    }
+
+    synchronized void addDestination(String nodeId, String destination, long now) {
+        if (node(nodeId, now).destinations.add(destination)) {
+            index(destinationNodes, destination, nodeId);
+        }
+    }
+
+    synchronized void removeDestination(String nodeId, String destination, long now) {
+        if (node(nodeId, now).destinations.remove(destination)) {
+            unindex(destinationNodes, destination, nodeId);
+        }
+    }
+
+    /**
+     * Forget a node and everything it held
+     * @return The users it held that no other node holds
+     */
+    synchronized List<Integer> removeNode(String nodeId) {
+        NodeInterest interest = nodes.remove(nodeId);
+        if (interest == null) {
+            return List.of();
+        }
+        List<Integer> lostUsers = new ArrayList<>();
+        for (Integer userId : interest.users) {
+            unindex(userNodes, userId, nodeId);
+            if (!userNodes.containsKey(userId)) {
+                lostUsers.add(userId);
+            }
+        }
+        for (String destination : interest.destinations) {
+            unindex(destinationNodes, destination, nodeId);
+        }
+        return lostUsers;
+    }
+
+    /**
+     * Forget nodes that have not been heard from since a cutoff
+     * @return The IDs of the nodes removed, each with the users it held that no other node holds
+     */
+    synchronized Map<String, List<Integer>> expire(long cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String, NodeInterest> entry : nodes.entrySet()) {
+            if (entry.getValue().lastHeardAt < cutoff) {
+                expired.add(entry.getKey());
+            }
+        }
+        Map<String, List<Integer>> removed = new LinkedHashMap<>();
+        for (String nodeId : expired) {
+            removed.put(nodeId, removeNode(nodeId));
+        }
+        return removed;
+    }
+
+    synchronized int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * @return Whether a known node sorts before the given node ID
+     */
+    synchronized boolean hasNodeBefore(String nodeId) {
+        for (String known : nodes.keySet()) {
+            if (known.compareTo(nodeId) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getRemoteUserCount() {
+        return userNodes.size();
+    }
+
+    int getRemoteDestinationCount() {
+        return destinationNodes.size();
+    }
+
+    private NodeInterest node(String nodeId, long now) {
+        NodeInterest interest = nodes.computeIfAbsent(nodeId, id -> new NodeInterest(now));
+        interest.lastHeardAt = now;
+        return interest;
+    }
+
+    private static <K> void index(Map<K, Set<String>> index, K key, String nodeId) {
+        index.compute(key, (k, current) -> {
+            if (current == null) {
+                return Set.of(nodeId);
+            }
+            Set<String> next = new HashSet<>(current);
+            next.add(nodeId);
+            return Set.copyOf(next);
+        });
+    }
+
+    private static <K> void unindex(Map<K, Set<String>> index, K key, String nodeId) {
+        index.computeIfPresent(key, (k, current) -> {
+            Set<String> next = new HashSet<>(current);
+            next.remove(nodeId);
+            return next.isEmpty() ? null : Set.copyOf(next);
+        });
+    }
+
+    /**
+     * What one node holds
+     */
+    private static final class NodeInterest {
+        private final Set<Integer> users = new HashSet<>();
+        private final Set<String> destinations = new HashSet<>();
+        private long lastHeardAt;
+
+        NodeInterest(long lastHeardAt) {
+            this.lastHeardAt = lastHeardAt;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.chatapp.chatappbackend.cluster;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Moves opaque messages between the nodes of a cluster. Delivery is best effort and in order per
+ * pair of nodes; a node that misses messages catches up from the next registry snapshot.
+ */
+public interface ClusterTransport extends AutoCloseable {
+
+    /**
+     * @return The ID other nodes address this node by
+     */
+    String getNodeId();
+
+    /**
+     * Start exchanging messages
+     * @param receiver Called with every message from another node, one at a time per sender
+     */
+    void start(Consumer<byte[]> receiver);
+
+    /**
+     * Send a message to one node; dropped if the node is unknown or unreachable
+     */
+    void send(String nodeId, byte[] message);
+
+    /**
+     * Send a message to every other node
+     */
+    void broadcast(byte[] message);
+
+    /**
+     * @return Counters for /api/metrics
+     */
+    Map<String, Object> getMetrics();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,100 @@
+package com.chatapp.chatappbackend.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cluster transport between nodes in the same JVM, for tests and for running several application
+ * contexts in one process. Nodes find each other by cluster name; each node receives on its own
+ * thread, so messages from one sender arrive in order, as over a socket.
+ */
+public class LoopbackClusterTransport implements ClusterTransport {
+
+    private static final Map<String, Map<String, LoopbackClusterTransport>> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final String clusterName;
+    private final String nodeId;
+    private final ExecutorService inbound;
+    private volatile Consumer<byte[]> receiver;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public LoopbackClusterTransport(String clusterName, String nodeId) {
+        this.clusterName = clusterName;
+        this.nodeId = nodeId;
+        this.inbound = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-loopback-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        CLUSTERS.computeIfAbsent(clusterName, name -> new ConcurrentHashMap<>()).put(nodeId, this);
+    }
+
+    @Override
+    public void send(String targetNodeId, byte[] message) {
+        LoopbackClusterTransport target = CLUSTERS.getOrDefault(clusterName, Map.of()).get(targetNodeId);
+        if (target == null || target == this || !target.accept(message)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        sent.incrementAndGet();
+    }
+
+    @Override
+    public void broadcast(byte[] message) {
+        for (String target : CLUSTERS.getOrDefault(clusterName, Map.of()).keySet()) {
+            if (!target.equals(nodeId)) {
+                send(target, message);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("transport", "loopback");
+        metrics.put("sent", sent.get());
+        metrics.put("received", received.get());
+        metrics.put("dropped", dropped.get());
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        Map<String, LoopbackClusterTransport> nodes = CLUSTERS.get(clusterName);
+        if (nodes != null) {
+            nodes.remove(nodeId, this);
+        }
+        inbound.shutdownNow();
+    }
+
+    private boolean accept(byte[] message) {
+        try {
+            inbound.execute(() -> {
+                received.incrementAndGet();
+                receiver.accept(message);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.chatapp.chatappbackend.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cluster transport over plain TCP, for several processes on one machine or a small static set
+ * of hosts. A node's ID is the host:port it listens on, and the peer list uses the same form, so
+ * sending to a node means writing to the connection opened to that address. Every peer has one
+ * writer thread and a bounded queue: a slow or unreachable peer loses messages rather than
+ * blocking the sender, and is reconnected in the background. Messages are length-prefixed.
+ *
+ * The listener binds to one address, loopback unless configured otherwise. With a shared secret,
+ * every connection starts with a challenge-response: the listener sends a random nonce, the
+ * connecting node answers with its own nonce and an HMAC-SHA256 over both, and the listener
+ * proves the same back, so neither side talks to a node without the secret and a recorded
+ * handshake cannot be replayed. Without a secret the listener must be on a loopback address.
+ * Messages after the handshake are not encrypted.
+ */
+public class TcpClusterTransport implements ClusterTransport {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final int MAX_MESSAGE_BYTES = 16 * 1024 * 1024;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final int NONCE_BYTES = 16;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final String nodeId;
+    private final InetAddress bindAddress;
+    private final int port;
+    private final byte[] secret;
+    private final int queueCapacity;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final Map<Socket, Boolean> inboundSockets = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private Consumer<byte[]> receiver;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param nodeId This node's host:port, as listed in the other nodes' peer lists
+     * @param bindAddress The address to listen on
+     * @param port The port to listen on
+     * @param secret The secret every node shares; empty for none, which needs a loopback bind address
+     * @param peerIds The host:port of every node; this node's own entry is skipped
+     * @param queueCapacity The number of messages queued per peer before new ones are dropped
+     */
+    public TcpClusterTransport(String nodeId, String bindAddress, int port, String secret,
+                               List<String> peerIds, int queueCapacity) {
+        this.nodeId = nodeId;
+        try {
+            this.bindAddress = InetAddress.getByName(bindAddress);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown cluster bind address " + bindAddress, e);
+        }
+        if (secret.isEmpty() && !this.bindAddress.isLoopbackAddress()) {
+            throw new IllegalArgumentException(
+                "chat.cluster.secret must be set to listen for cluster peers on " + bindAddress);
+        }
+        this.port = port;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.queueCapacity = queueCapacity;
+        for (String peerId : peerIds) {
+            String trimmed = peerId.trim();
+            if (!trimmed.isEmpty() && !trimmed.equals(nodeId)) {
+                peers.put(trimmed, new Peer(trimmed));
+            }
+        }
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot listen for cluster peers on " + bindAddress.getHostAddress() + ":" + port, e);
+        }
+        running = true;
+        startThread("cluster-accept", this::acceptLoop);
+        for (Peer peer : peers.values()) {
+            startThread("cluster-out-" + peer.nodeId, peer::writeLoop);
+        }
+    }
+
+    @Override
+    public void send(String targetNodeId, byte[] message) {
+        Peer peer = peers.get(targetNodeId);
+        if (peer == null || !peer.queue.offer(message)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void broadcast(byte[] message) {
+        for (Peer peer : peers.values()) {
+            if (!peer.queue.offer(message)) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        int connected = 0;
+        int queued = 0;
+        for (Peer peer : peers.values()) {
+            connected += peer.socket != null ? 1 : 0;
+            queued += peer.queue.size();
+        }
+        metrics.put("transport", "tcp");
+        metrics.put("peers", peers.size());
+        metrics.put("connectedPeers", connected);
+        metrics.put("queued", queued);
+        metrics.put("sent", sent.get());
+        metrics.put("received", received.get());
+        metrics.put("dropped", dropped.get());
+        metrics.put("reconnects", reconnects.get());
+        metrics.put("rejectedConnections", rejected.get());
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        closeQuietly(serverSocket);
+        inboundSockets.keySet().forEach(TcpClusterTransport::closeQuietly);
+        for (Peer peer : peers.values()) {
+            closeQuietly(peer.socket);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                inboundSockets.put(socket, Boolean.TRUE);
+                startThread("cluster-in-" + socket.getRemoteSocketAddress(), () -> readLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Cluster accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (!acceptHandshake(socket, in)) {
+                rejected.incrementAndGet();
+                System.err.println("Rejected cluster connection from " + socket.getRemoteSocketAddress() + ": bad secret");
+                return;
+            }
+            while (running) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_MESSAGE_BYTES) {
+                    throw new IOException("Invalid cluster message length " + length);
+                }
+                byte[] message = new byte[length];
+                in.readFully(message);
+                received.incrementAndGet();
+                try {
+                    receiver.accept(message);
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to handle cluster message: " + e.getMessage());
+                }
+            }
+        } catch (EOFException e) {
+            // Peer closed the connection
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Cluster connection from " + socket.getRemoteSocketAddress() + " failed: " + e.getMessage());
+            }
+        } finally {
+            inboundSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    // Listener side: challenge the connecting node, check its answer, then answer its challenge
+    private boolean acceptHandshake(Socket socket, DataInputStream in) throws IOException {
+        if (secret.length == 0) {
+            return true;
+        }
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        byte[] listenerNonce = nonce();
+        out.write(listenerNonce);
+        out.flush();
+
+        byte[] connectorNonce = new byte[NONCE_BYTES];
+        in.readFully(connectorNonce);
+        byte[] proof = new byte[32];
+        in.readFully(proof);
+        if (!MessageDigest.isEqual(proof, hmac("connect", listenerNonce, connectorNonce))) {
+            return false;
+        }
+        out.write(hmac("accept", connectorNonce, listenerNonce));
+        out.flush();
+        socket.setSoTimeout(0);
+        return true;
+    }
+
+    // Connecting side: answer the listener's challenge with a challenge of our own and check its answer
+    private void connectHandshake(Socket socket) throws IOException {
+        if (secret.length == 0) {
+            return;
+        }
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        byte[] listenerNonce = new byte[NONCE_BYTES];
+        in.readFully(listenerNonce);
+        byte[] connectorNonce = nonce();
+        out.write(connectorNonce);
+        out.write(hmac("connect", listenerNonce, connectorNonce));
+        out.flush();
+
+        byte[] proof = new byte[32];
+        in.readFully(proof);
+        if (!MessageDigest.isEqual(proof, hmac("accept", connectorNonce, listenerNonce))) {
+            rejected.incrementAndGet();
+            throw new IOException("Cluster peer did not prove the shared secret");
+        }
+        socket.setSoTimeout(0);
+    }
+
+    private byte[] nonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    // The role keeps one side's proof from being reflected back as the other's
+    private byte[] hmac(String role, byte[] first, byte[] second) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+            mac.update(role.getBytes(StandardCharsets.US_ASCII));
+            mac.update(first);
+            mac.update(second);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // Closing anyway
+        }
+    }
+
+    /**
+     * Outbound connection to one node
+     */
+    private final class Peer {
+        private final String nodeId;
+        private final BlockingQueue<byte[]> queue;
+        private volatile Socket socket;
+
+        Peer(String nodeId) {
+            this.nodeId = nodeId;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        private void writeLoop() {
+            DataOutputStream out = null;
+            while (running) {
+                byte[] message;
+                try {
+                    message = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (message == null) {
+                    continue;
+                }
+                try {
+                    if (out == null) {
+                        out = connect();
+                    }
+                    out.writeInt(message.length);
+                    out.write(message);
+                    sent.incrementAndGet();
+                    // Flush once the burst is written
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // The message in hand is lost; the next snapshot repairs any registry state it carried
+                    dropped.incrementAndGet();
+                    closeQuietly(socket);
+                    socket = null;
+                    out = null;
+                    reconnects.incrementAndGet();
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        private DataOutputStream connect() throws IOException {
+            int separator = nodeId.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IOException("Peer " + nodeId + " is not host:port");
+            }
+            int peerPort;
+            try {
+                peerPort = Integer.parseInt(nodeId.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IOException("Peer " + nodeId + " is not host:port");
+            }
+            Socket connection = new Socket();
+            connection.setTcpNoDelay(true);
+            connection.connect(new InetSocketAddress(nodeId.substring(0, separator), peerPort), CONNECT_TIMEOUT_MILLIS);
+            socket = connection;
+            connectHandshake(connection);
+            return new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.chatapp.chatappbackend.config;
+
+import com.chatapp.chatappbackend.websocket.ShardedBrokerMessageHandler;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+
+@Configuration
+public class BrokerConfig {
+
+    /**
+     * Swap the simple broker configured in WebSocketConfig for the sharded broker, keeping its
+     * channels and destination prefixes. Disable with chat.broker.sharded.enabled=false.
+     * Each lane holds chat.broker.sharded.lane-capacity frames; when one is full, chat frames wait
+     * up to chat.broker.sharded.full-wait-ms for room.
+     */
+    @Bean
+    public static BeanPostProcessor shardedBrokerPostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof SimpleBrokerMessageHandler simpleBroker)
+                        || !environment.getProperty("chat.broker.sharded.enabled", Boolean.class, true)) {
+                    return bean;
+                }
+                int lanes = environment.getProperty("chat.broker.sharded.lanes", Integer.class, 0);
+                if (lanes <= 0) {
+                    lanes = Runtime.getRuntime().availableProcessors();
+                }
+                ShardedBrokerMessageHandler broker = new ShardedBrokerMessageHandler(
+                    simpleBroker.getClientInboundChannel(),
+                    simpleBroker.getClientOutboundChannel(),
+                    simpleBroker.getBrokerChannel(),
+                    simpleBroker.getDestinationPrefixes(),
+                    lanes,
+                    environment.getProperty("chat.broker.sharded.lane-capacity", Integer.class, 10000),
+                    environment.getProperty("chat.broker.sharded.full-wait-ms", Long.class, 100L));
+                broker.setPreservePublishOrder(simpleBroker.isPreservePublishOrder());
+                broker.setApplicationEventPublisher(simpleBroker.getApplicationEventPublisher());
+                broker.setUserDestinationPredicate(destination -> destination.startsWith("/user/"));
+                return broker;
+            }
+        };
+    }
+}
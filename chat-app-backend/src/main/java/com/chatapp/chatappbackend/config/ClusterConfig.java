@@ -0,0 +1,40 @@
+package com.chatapp.chatappbackend.config;
+
+import com.chatapp.chatappbackend.cluster.ClusterTransport;
+import com.chatapp.chatappbackend.cluster.LoopbackClusterTransport;
+import com.chatapp.chatappbackend.cluster.TcpClusterTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+    /**
+     * The bus ClusterFanout shares frames over. "tcp" connects to the host:port peers listed in
+     * chat.cluster.peers, listening on chat.cluster.bind-address and authenticating peers with
+     * chat.cluster.secret; "loopback" joins the other application contexts of this JVM.
+     * ClusterFanout closes it.
+     */
+    @Bean(destroyMethod = "")
+    public ClusterTransport clusterTransport(
+            @Value("${chat.cluster.transport:tcp}") String transport,
+            @Value("${chat.cluster.node-id:127.0.0.1:${chat.cluster.port:7900}}") String nodeId,
+            @Value("${chat.cluster.bind-address:127.0.0.1}") String bindAddress,
+            @Value("${chat.cluster.port:7900}") int port,
+            @Value("${chat.cluster.secret:}") String secret,
+            @Value("${chat.cluster.peers:}") List<String> peers,
+            @Value("${chat.cluster.queue-capacity:10000}") int queueCapacity) {
+        if ("loopback".equals(transport)) {
+            return new LoopbackClusterTransport("chat", nodeId);
+        }
+        if (!"tcp".equals(transport)) {
+            throw new IllegalArgumentException("Unknown chat.cluster.transport: " + transport);
+        }
+        return new TcpClusterTransport(nodeId, bindAddress, port, secret, peers, queueCapacity);
+    }
+}
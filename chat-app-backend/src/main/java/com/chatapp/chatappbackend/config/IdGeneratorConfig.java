@@ -0,0 +1,19 @@
+package com.chatapp.chatappbackend.config;
+
+import com.chatapp.chatappbackend.util.SnowflakeIdGenerator;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IdGeneratorConfig implements InitializingBean {
+
+    // Must be unique per running instance that shares the database (0-1023)
+    @Value("${chat.id.node-id:0}")
+    private long nodeId;
+
+    @Override
+    public void afterPropertiesSet() {
+        SnowflakeIdGenerator.configureDefault(nodeId);
+    }
+}
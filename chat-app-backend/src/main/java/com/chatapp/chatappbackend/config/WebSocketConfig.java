@@ -1,22 +1,54 @@
 package com.chatapp.chatappbackend.config;
 
+import com.chatapp.chatappbackend.service.PresenceService;
+import com.chatapp.chatappbackend.websocket.OutboundQueueRegistry;
+import com.chatapp.chatappbackend.websocket.ReplayBuffer;
+import com.chatapp.chatappbackend.websocket.UserSessionChannelInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Value("${chat.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${chat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimit;
+
+    @Value("${chat.websocket.send-buffer-size-limit:1048576}")
+    private int sendBufferSizeLimit;
+
+    @Autowired
+    private OutboundQueueRegistry outboundQueueRegistry;
+
+    @Autowired
+    private ReplayBuffer replayBuffer;
+
+    @Autowired
+    private ObjectProvider<PresenceService> presenceService;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         // Set prefix for messages that are bound for methods annotated with @MessageMapping
         registry.setApplicationDestinationPrefixes("/app");
         
         // Set prefix for the endpoint that the client will subscribe to
+        // (served by the sharded broker unless chat.broker.sharded.enabled=false, see BrokerConfig)
         registry.enableSimpleBroker("/topic", "/queue");
+
+        // Keep each session's frames in publish order on the outbound thread pool; replayed user
+        // queues share one delivery sequence, so a frame overtaking another would hide it from replay
+        registry.setPreservePublishOrder(true);
         
         // Set prefix for user-specific messages
         registry.setUserDestinationPrefix("/user");
@@ -29,4 +61,30 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
             .setAllowedOrigins("*") // For development, restrict in production
             .withSockJS(); // Enable SockJS fallback options
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Limits for inbound frames and for Spring's own per-session send buffer
+        registration.setMessageSizeLimit(messageSizeLimit);
+        registration.setSendTimeLimit(sendTimeLimit);
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit);
+        
+        // Per-session bounded outbound queues with a shedding policy per destination type
+        registration.addDecoratorFactory(outboundQueueRegistry::decorate);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Bind each session to the user named in its CONNECT frame and track their activity
+        registration.interceptors(new UserSessionChannelInterceptor(presenceService));
+        
+        // Replay missed frames to reconnecting clients once their subscriptions reach the broker
+        registration.interceptors(replayBuffer.subscriptionInterceptor());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Hold live frames until a subscription's replay has gone out, and drop ones already sent
+        registration.interceptors(replayBuffer.deliveryInterceptor());
+    }
+}
@@ -1,26 +1,33 @@
 package com.chatapp.chatappbackend.controller;
 
+import com.chatapp.chatappbackend.dto.DeliveryAckRequest;
 import com.chatapp.chatappbackend.dto.MessageDTO;
 import com.chatapp.chatappbackend.model.Message;
 import com.chatapp.chatappbackend.service.MessageService;
+import com.chatapp.chatappbackend.service.TypingService;
+import com.chatapp.chatappbackend.websocket.FrameSender;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Controller
 public class ChatWebSocketController {
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private FrameSender frameSender;
 
     @Autowired
     private MessageService messageService;
 
+    @Autowired
+    private TypingService typingService;
+
     /**
      * Handle a chat message sent through WebSocket
      * @param senderId The ID of the sender
@@ -38,31 +45,25 @@ public class ChatWebSocketController {
             return;
         }
         
+        CompletableFuture<MessageDTO> result;
         try {
-            // Save the message to the database
-            MessageDTO message = messageService.sendMessage(senderId, recipientId, content);
-            
-            // Send the message to the recipient's queue
-            messagingTemplate.convertAndSendToUser(
-                recipientId.toString(),
-                "/queue/messages",
-                message
-            );
-            
-            // Also send a copy to the sender's queue for confirmation
-            messagingTemplate.convertAndSendToUser(
-                senderId.toString(),
-                "/queue/messages",
-                message
-            );
+            // Save the message to the database (batched with other sends when group commit is on)
+            result = messageService.sendMessageAsync(senderId, recipientId, content);
         } catch (Exception e) {
-            // Send error message back to sender
-            messagingTemplate.convertAndSendToUser(
-                senderId.toString(),
-                "/queue/errors",
-                Map.of("error", "Failed to send message: " + e.getMessage())
-            );
+            result = CompletableFuture.failedFuture(e);
         }
+        
+        // On success the outbox pushes the message to both users' queues once it is committed
+        result.whenComplete((message, error) -> {
+            if (error != null) {
+                // Send error message back to sender
+                frameSender.sendToUser(
+                    senderId,
+                    "/queue/errors",
+                    Map.of("error", "Failed to send message: " + rootCause(error).getMessage())
+                );
+            }
+        });
     }
 
     /**
@@ -82,23 +83,25 @@ public class ChatWebSocketController {
             return;
         }
         
+        CompletableFuture<MessageDTO> result;
         try {
-            // Save the message to the database
-            MessageDTO message = messageService.sendMessageToConversation(conversationId, senderId, content);
-            
-            // Send to the conversation topic
-            messagingTemplate.convertAndSend(
-                "/topic/conversation." + conversationId,
-                message
-            );
+            // Save the message to the database (batched with other sends when group commit is on)
+            result = messageService.sendMessageToConversationAsync(conversationId, senderId, content);
         } catch (Exception e) {
-            // Send error message back to sender
-            messagingTemplate.convertAndSendToUser(
-                senderId.toString(),
-                "/queue/errors",
-                Map.of("error", "Failed to send message: " + e.getMessage())
-            );
+            result = CompletableFuture.failedFuture(e);
         }
+        
+        // On success the outbox pushes the message to the conversation topic once it is committed
+        result.whenComplete((message, error) -> {
+            if (error != null) {
+                // Send error message back to sender
+                frameSender.sendToUser(
+                    senderId,
+                    "/queue/errors",
+                    Map.of("error", "Failed to send message: " + rootCause(error).getMessage())
+                );
+            }
+        });
     }
 
     /**
@@ -112,28 +115,43 @@ public class ChatWebSocketController {
             @DestinationVariable Integer userId) {
         
         try {
-            // Mark messages as read in the database
-            int count = messageService.markMessagesAsRead(conversationId, userId);
-            
-            // Notify the conversation about the read status change
-            messagingTemplate.convertAndSend(
-                "/topic/conversation." + conversationId + ".read",
-                Map.of(
-                    "userId", userId,
-                    "count", count,
-                    "timestamp", System.currentTimeMillis()
-                )
-            );
+            // Mark messages as read in the database; the outbox notifies the conversation
+            messageService.markMessagesAsRead(conversationId, userId);
         } catch (Exception e) {
             // Send error message back to the user
-            messagingTemplate.convertAndSendToUser(
-                userId.toString(),
+            frameSender.sendToUser(
+                userId,
                 "/queue/errors",
                 Map.of("error", "Failed to mark messages as read: " + e.getMessage())
             );
         }
     }
 
+    /**
+     * Handle a batch delivery acknowledgement
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who received the messages
+     * @param request The message IDs and/or sequence range received
+     */
+    @MessageMapping("/conversation/{conversationId}/delivered/{userId}")
+    public void acknowledgeDelivery(
+            @DestinationVariable Integer conversationId,
+            @DestinationVariable Integer userId,
+            @Payload DeliveryAckRequest request) {
+        
+        try {
+            // Buffered; the senders get one aggregated receipt per conversation after the next flush
+            messageService.acknowledgeDelivery(conversationId, userId,
+                request.getMessageIds(), request.getFromSequence(), request.getToSequence());
+        } catch (Exception e) {
+            frameSender.sendToUser(
+                userId,
+                "/queue/errors",
+                Map.of("error", "Failed to acknowledge delivery: " + e.getMessage())
+            );
+        }
+    }
+
     /**
      * Handle typing indicator notification
      * @param conversationId The ID of the conversation
@@ -148,14 +166,12 @@ public class ChatWebSocketController {
         
         Boolean isTyping = (Boolean) payload.getOrDefault("isTyping", false);
         
-        // Send typing notification to the conversation
-        messagingTemplate.convertAndSend(
-            "/topic/conversation." + conversationId + ".typing",
-            Map.of(
-                "userId", userId,
-                "isTyping", isTyping,
-                "timestamp", System.currentTimeMillis()
-            )
-        );
+        // Broadcast only state changes (and a periodic refresh), not every keystroke
+        typingService.update(conversationId, userId, Boolean.TRUE.equals(isTyping));
+    }
+
+    // Unwrap the CompletionException a failed future reports so clients see the real reason
+    private static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
-} 
\ No newline at end of file
+}
@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/conversations")
@@ -34,6 +35,23 @@ public class ConversationController {
         }
     }
 
+    /**
+     * Get the total number of unread messages of the current user, for the global badge
+     * @param userId The ID of the user
+     * @return The unread message count
+     */
+    @GetMapping("/unread-count")
+    public ResponseEntity<Map<String, Integer>> getUnreadCount(@RequestParam Integer userId) {
+        try {
+            int unreadCount = conversationService.getTotalUnreadCount(userId);
+            return ResponseEntity.ok(Map.of("unreadCount", unreadCount));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving unread count", e);
+        }
+    }
+
     /**
      * Get a specific conversation
      * @param conversationId The ID of the conversation
@@ -2,7 +2,9 @@ package com.chatapp.chatappbackend.controller;
 
 import com.chatapp.chatappbackend.dto.FriendRequestCreateDTO;
 import com.chatapp.chatappbackend.dto.FriendRequestDTO;
+import com.chatapp.chatappbackend.dto.FriendSuggestionDTO;
 import com.chatapp.chatappbackend.dto.FriendshipDTO;
+import com.chatapp.chatappbackend.service.FriendGraph;
 import com.chatapp.chatappbackend.service.FriendshipService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -19,10 +21,12 @@ import java.util.Map;
 public class FriendshipController {
 
     private final FriendshipService friendshipService;
+    private final FriendGraph friendGraph;
 
     @Autowired
-    public FriendshipController(FriendshipService friendshipService) {
+    public FriendshipController(FriendshipService friendshipService, FriendGraph friendGraph) {
         this.friendshipService = friendshipService;
+        this.friendGraph = friendGraph;
     }
 
     /**
@@ -225,4 +229,58 @@ public class FriendshipController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Get friend suggestions ranked by mutual friends
+     */
+    @GetMapping("/suggestions")
+    public ResponseEntity<?> getSuggestions(
+            @RequestParam Integer userId,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            List<FriendSuggestionDTO> suggestions = friendshipService.getSuggestions(userId, limit);
+
+            return ResponseEntity.ok(suggestions);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            e.printStackTrace();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "An unexpected error occurred: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Compare the in-memory friend graph with the friendships table
+     */
+    @GetMapping("/graph/verify")
+    public ResponseEntity<?> verifyFriendGraph() {
+        try {
+            return ResponseEntity.ok(friendGraph.verify());
+        } catch (Exception e) {
+            e.printStackTrace();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "An unexpected error occurred: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Reload the in-memory friend graph from the friendships table
+     */
+    @PostMapping("/graph/rebuild")
+    public ResponseEntity<?> rebuildFriendGraph() {
+        try {
+            friendGraph.rebuild();
+            return ResponseEntity.ok(friendGraph.getMetrics());
+        } catch (Exception e) {
+            e.printStackTrace();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "An unexpected error occurred: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package com.chatapp.chatappbackend.controller;
 
+import com.chatapp.chatappbackend.dto.DeliveryAckRequest;
 import com.chatapp.chatappbackend.dto.MessageDTO;
+import com.chatapp.chatappbackend.dto.MessagePageDTO;
+import com.chatapp.chatappbackend.dto.MessageSliceDTO;
 import com.chatapp.chatappbackend.service.MessageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -17,26 +23,34 @@ import java.util.Map;
 @RequestMapping("/api/messages")
 public class MessageController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private MessageService messageService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Get messages for a conversation with pagination
      * @param conversationId The ID of the conversation
      * @param userId The ID of the user requesting the messages
      * @param page The page number (0-based)
      * @param size The page size
+     * @param format full (default), or compact to list each sender once instead of in every message
      * @return List of message DTOs
      */
     @GetMapping("/conversation/{conversationId}")
-    public ResponseEntity<List<MessageDTO>> getMessagesForConversation(
+    public ResponseEntity<?> getMessagesForConversation(
             @PathVariable Integer conversationId,
             @RequestParam Integer userId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "50") int size) {
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(defaultValue = "full") String format) {
         try {
+            boolean compact = isCompact(format);
             List<MessageDTO> messages = messageService.getMessagesForConversation(conversationId, userId, page, size);
-            return ResponseEntity.ok(messages);
+            return ResponseEntity.ok(compact ? MessagePageDTO.of(messages) : messages);
         } catch (IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         } catch (Exception e) {
@@ -44,23 +58,53 @@ public class MessageController {
         }
     }
 
+    /**
+     * Get conversation history using cursor (seek) pagination
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user requesting the messages
+     * @param cursor The cursor from the previous page (omit for the newest messages)
+     * @param limit The maximum number of messages to return
+     * @param format full (default), or compact to list each sender once instead of in every message
+     * @return The slice of message DTOs with the cursor for the next page
+     */
+    @GetMapping("/conversation/{conversationId}/history")
+    public ResponseEntity<?> getMessageHistory(
+            @PathVariable Integer conversationId,
+            @RequestParam Integer userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "full") String format) {
+        try {
+            boolean compact = isCompact(format);
+            MessageSliceDTO slice = messageService.getMessageHistory(conversationId, userId, cursor, limit);
+            return ResponseEntity.ok(compact ? MessagePageDTO.of(slice) : slice);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving message history", e);
+        }
+    }
+
     /**
      * Get messages older than a specific message
      * @param conversationId The ID of the conversation
      * @param userId The ID of the user requesting the messages
      * @param messageId The ID of the reference message
      * @param limit The maximum number of messages to return
+     * @param format full (default), or compact to list each sender once instead of in every message
      * @return List of message DTOs
      */
     @GetMapping("/conversation/{conversationId}/before/{messageId}")
-    public ResponseEntity<List<MessageDTO>> getOlderMessages(
+    public ResponseEntity<?> getOlderMessages(
             @PathVariable Integer conversationId,
             @RequestParam Integer userId,
-            @PathVariable Integer messageId,
-            @RequestParam(defaultValue = "50") int limit) {
+            @PathVariable Long messageId,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "full") String format) {
         try {
+            boolean compact = isCompact(format);
             List<MessageDTO> messages = messageService.getOlderMessages(conversationId, userId, messageId, limit);
-            return ResponseEntity.ok(messages);
+            return ResponseEntity.ok(compact ? MessagePageDTO.of(messages) : messages);
         } catch (IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         } catch (Exception e) {
@@ -69,25 +113,112 @@ public class MessageController {
     }
 
     /**
-     * Get messages newer than a specific message
+     * Get messages newer than a specific message, one page at a time
      * @param conversationId The ID of the conversation
      * @param userId The ID of the user requesting the messages
      * @param messageId The ID of the reference message
-     * @return List of message DTOs
+     * @param limit The maximum number of messages to return
+     * @param format full (default), or compact to list each sender once instead of in every message
+     * @return The slice of message DTOs, oldest first, with the cursor for the next page
      */
     @GetMapping("/conversation/{conversationId}/after/{messageId}")
-    public ResponseEntity<List<MessageDTO>> getNewerMessages(
+    public ResponseEntity<?> getNewerMessages(
             @PathVariable Integer conversationId,
             @RequestParam Integer userId,
-            @PathVariable Integer messageId) {
+            @PathVariable Long messageId,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "full") String format) {
+        return newerMessages(conversationId, userId, messageId, null, limit, format);
+    }
+
+    /**
+     * Continue catching up from the cursor of a previous page of newer messages
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user requesting the messages
+     * @param cursor The cursor from the previous page
+     * @param limit The maximum number of messages to return
+     * @param format full (default), or compact to list each sender once instead of in every message
+     * @return The slice of message DTOs, oldest first, with the cursor for the next page
+     */
+    @GetMapping("/conversation/{conversationId}/newer")
+    public ResponseEntity<?> getNewerMessagesFromCursor(
+            @PathVariable Integer conversationId,
+            @RequestParam Integer userId,
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "full") String format) {
+        return newerMessages(conversationId, userId, null, cursor, limit, format);
+    }
+
+    /**
+     * Stream every message newer than a specific message as newline-delimited JSON, one message per
+     * line, for clients that were away long enough that paging would take many round trips
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user requesting the messages
+     * @param messageId The ID of the reference message
+     * @return The message stream, oldest first
+     */
+    @GetMapping(value = "/conversation/{conversationId}/after/{messageId}/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamNewerMessages(
+            @PathVariable Integer conversationId,
+            @RequestParam Integer userId,
+            @PathVariable Long messageId) {
+        MessageService.MessageStream stream;
         try {
-            List<MessageDTO> messages = messageService.getNewerMessages(conversationId, userId, messageId);
-            return ResponseEntity.ok(messages);
+            stream = messageService.streamNewerMessages(conversationId, userId, messageId);
         } catch (IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving newer messages", e);
         }
+        StreamingResponseBody body = out -> stream.writeTo(chunk -> {
+            for (MessageDTO message : chunk) {
+                out.write(objectMapper.writeValueAsBytes(message));
+                out.write('\n');
+            }
+            out.flush();
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private ResponseEntity<?> newerMessages(Integer conversationId, Integer userId, Long messageId,
+                                            String cursor, int limit, String format) {
+        try {
+            boolean compact = isCompact(format);
+            MessageSliceDTO slice = messageService.getNewerMessages(conversationId, userId, messageId, cursor, limit);
+            return ResponseEntity.ok(compact ? MessagePageDTO.of(slice) : slice);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving newer messages", e);
+        }
+    }
+
+    /**
+     * Get the messages in an inclusive sequence range
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user requesting the messages
+     * @param from The first sequence number
+     * @param to The last sequence number
+     * @param format full (default), or compact to list each sender once instead of in every message
+     * @return List of message DTOs
+     */
+    @GetMapping("/conversation/{conversationId}/range")
+    public ResponseEntity<?> getMessagesInSequenceRange(
+            @PathVariable Integer conversationId,
+            @RequestParam Integer userId,
+            @RequestParam long from,
+            @RequestParam long to,
+            @RequestParam(defaultValue = "full") String format) {
+        try {
+            boolean compact = isCompact(format);
+            List<MessageDTO> messages = messageService.getMessagesInSequenceRange(conversationId, userId, from, to);
+            return ResponseEntity.ok(compact ? MessagePageDTO.of(messages) : messages);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving messages", e);
+        }
     }
 
     /**
@@ -157,8 +288,7 @@ public class MessageController {
             @RequestParam Integer userId,
             @RequestBody Map<String, Object> payload) {
         try {
-            @SuppressWarnings("unchecked")
-            List<Integer> messageIds = (List<Integer>) payload.get("messageIds");
+            List<Long> messageIds = toMessageIds(payload.get("messageIds"));
             int count = messageService.markMessagesAsRead(conversationId, userId, messageIds);
             return ResponseEntity.ok(Map.of("count", count));
         } catch (IllegalArgumentException e) {
@@ -168,6 +298,28 @@ public class MessageController {
         }
     }
 
+    /**
+     * Mark every message up to a sequence number as read
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who read the messages
+     * @param sequence The sequence number of the last message read
+     * @return The number of messages marked as read
+     */
+    @PutMapping("/conversation/{conversationId}/read-up-to/{sequence}")
+    public ResponseEntity<Map<String, Integer>> markMessagesAsReadUpTo(
+            @PathVariable Integer conversationId,
+            @RequestParam Integer userId,
+            @PathVariable long sequence) {
+        try {
+            int count = messageService.markMessagesAsReadUpTo(conversationId, userId, sequence);
+            return ResponseEntity.ok(Map.of("count", count));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error marking messages as read", e);
+        }
+    }
+
     /**
      * Mark a message as delivered
      * @param messageId The ID of the message
@@ -176,7 +328,7 @@ public class MessageController {
      */
     @PutMapping("/{messageId}/delivered")
     public ResponseEntity<Map<String, Boolean>> markMessageAsDelivered(
-            @PathVariable Integer messageId,
+            @PathVariable Long messageId,
             @RequestParam Integer userId) {
         try {
             boolean success = messageService.markMessageAsDelivered(messageId, userId);
@@ -188,6 +340,32 @@ public class MessageController {
         }
     }
 
+    /**
+     * Acknowledge delivery of many messages at once, by ID and/or sequence range.
+     * Applied asynchronously; senders are notified on /user/queue/delivered.
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who received the messages
+     * @param request The message IDs and/or sequence range received
+     * @return The number of messages accepted for acknowledgement
+     */
+    @PostMapping("/conversation/{conversationId}/delivered")
+    public ResponseEntity<Map<String, Integer>> acknowledgeDelivery(
+            @PathVariable Integer conversationId,
+            @RequestParam Integer userId,
+            @RequestBody DeliveryAckRequest request) {
+        try {
+            int accepted = messageService.acknowledgeDelivery(conversationId, userId,
+                request.getMessageIds(), request.getFromSequence(), request.getToSequence());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("accepted", accepted));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error acknowledging delivery", e);
+        }
+    }
+
     /**
      * Delete a message
      * @param messageId The ID of the message
@@ -196,7 +374,7 @@ public class MessageController {
      */
     @DeleteMapping("/{messageId}")
     public ResponseEntity<Map<String, Boolean>> deleteMessage(
-            @PathVariable Integer messageId,
+            @PathVariable Long messageId,
             @RequestParam Integer userId) {
         try {
             boolean success = messageService.deleteMessage(messageId, userId);
@@ -231,4 +409,37 @@ public class MessageController {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error sending message with attachments", e);
         }
     }
-} 
\ No newline at end of file
+
+    // History is served in the full shape unless the client asks for format=compact
+    private static boolean isCompact(String format) {
+        if ("compact".equalsIgnoreCase(format)) {
+            return true;
+        }
+        if ("full".equalsIgnoreCase(format)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unknown format: " + format);
+    }
+
+    // Message IDs are 64-bit and are sent to clients as strings, so accept either form back
+    private static List<Long> toMessageIds(Object value) {
+        if (!(value instanceof List<?> values)) {
+            throw new IllegalArgumentException("messageIds must be a list");
+        }
+        List<Long> messageIds = new ArrayList<>(values.size());
+        for (Object id : values) {
+            if (id instanceof Number number) {
+                messageIds.add(number.longValue());
+            } else if (id instanceof String text) {
+                try {
+                    messageIds.add(Long.valueOf(text));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid message ID: " + text);
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid message ID: " + id);
+            }
+        }
+        return messageIds;
+    }
+}
@@ -0,0 +1,36 @@
+package com.chatapp.chatappbackend.controller;
+
+import com.chatapp.chatappbackend.dto.SyncResponseDTO;
+import com.chatapp.chatappbackend.service.SyncService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/sync")
+public class SyncController {
+
+    @Autowired
+    private SyncService syncService;
+
+    /**
+     * Get everything that changed in the user's conversations since the last sync, in one request
+     * @param userId The ID of the user
+     * @param token The sync token from the previous response (omit on first start)
+     * @return The changed conversations with their new messages, read marks, deliveries and deletions
+     */
+    @GetMapping
+    public ResponseEntity<SyncResponseDTO> sync(
+            @RequestParam Integer userId,
+            @RequestParam(required = false) String token) {
+        try {
+            return ResponseEntity.ok(syncService.sync(userId, token));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (Exception e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error syncing conversations", e);
+        }
+    }
+}
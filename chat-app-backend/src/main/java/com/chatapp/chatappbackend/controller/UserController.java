@@ -1,10 +1,14 @@
 package com.chatapp.chatappbackend.controller;
 
+import com.chatapp.chatappbackend.dto.PresenceDTO;
 import com.chatapp.chatappbackend.dto.UpdateProfileRequest;
 import com.chatapp.chatappbackend.dto.UserDetailsResponse;
+import com.chatapp.chatappbackend.dto.UserSearchPageDTO;
 import com.chatapp.chatappbackend.model.User;
+import com.chatapp.chatappbackend.service.PresenceService;
 import com.chatapp.chatappbackend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -12,19 +16,34 @@ import org.springframework.web.multipart.MultipartFile;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 // Controller for user-related endpoints
 @RestController
 @RequestMapping("/api/users")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = "X-Next-After-Id")
 public class UserController {
 
     private final UserService userService;
+    private final PresenceService presenceService;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, PresenceService presenceService) {
         this.userService = userService;
+        this.presenceService = presenceService;
+    }
+    
+    // Get whether users are online and when they were last seen, e.g. /api/users/presence?userIds=1,2,3
+    @GetMapping("/presence")
+    public ResponseEntity<?> getPresence(@RequestParam List<Integer> userIds) {
+        try {
+            List<PresenceDTO> presence = presenceService.getPresence(userIds);
+            return ResponseEntity.ok(presence);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("Error fetching presence: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("Failed to fetch presence"));
+        }
     }
 
     // Get user details by ID
@@ -54,26 +73,43 @@ public class UserController {
         }
     }
     
-    // Get all users except current user
+    // Search users by username and display name, e.g. /api/users/search?q=ali&userId=7&limit=20
+    @GetMapping("/search")
+    public ResponseEntity<?> searchUsers(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            UserSearchPageDTO page = userService.searchUsers(q, userId, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("Error searching users: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse("Failed to search users"));
+        }
+    }
+    
+    // Deprecated: page through every user other than the current one in ID order, e.g.
+    // /api/users/all/7?afterId=120&limit=100. The body stays a plain list for existing clients; the
+    // afterId of the next page is in the X-Next-After-Id header, absent on the last page. Use /search.
+    @Deprecated
     @GetMapping("/all/{currentUserId}")
-    public ResponseEntity<List<UserDetailsResponse>> getAllUsers(@PathVariable Integer currentUserId) {
+    public ResponseEntity<List<UserDetailsResponse>> getAllUsers(
+            @PathVariable Integer currentUserId,
+            @RequestParam(required = false) Integer afterId,
+            @RequestParam(defaultValue = "100") int limit) {
         try {
-            System.out.println("Fetching all users except user ID: " + currentUserId);
-            List<User> users = userService.getAllUsersExceptCurrent(currentUserId);
-            
-            List<UserDetailsResponse> responseList = users.stream()
-                .map(user -> new UserDetailsResponse(
-                    user.getId(),
-                    user.getUsername(),
-                    user.getEmail(),
-                    user.getDisplayName(),
-                    user.getAbout(),
-                    user.getProfilePictureUrl()
-                ))
-                .collect(Collectors.toList());
-            
-            System.out.println("Returning " + responseList.size() + " users");
-            return ResponseEntity.ok(responseList);
+            UserSearchPageDTO page = userService.getAllUsersExceptCurrent(currentUserId, afterId, limit);
+            
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().header("Deprecation", "true");
+            if (page.getNextCursor() != null) {
+                response.header("X-Next-After-Id", page.getNextCursor());
+            }
+            return response.body(page.getUsers());
         } catch (Exception e) {
             System.err.println("Error fetching all users: " + e.getMessage());
             e.printStackTrace();
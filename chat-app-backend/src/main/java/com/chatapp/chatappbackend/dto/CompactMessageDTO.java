@@ -0,0 +1,137 @@
+package com.chatapp.chatappbackend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Data Transfer Object for a message in the compact history shape: the sender is referenced
+ * by ID (see MessagePageDTO.users), and empty attachment lists and unset timestamps are omitted
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class CompactMessageDTO {
+    @JsonSerialize(using = ToStringSerializer.class) // 64-bit IDs overflow JavaScript numbers
+    private Long id;
+    private Integer conversationId;
+    private Long sequence;
+    private Integer senderId;
+    private String content;
+    private List<MessageAttachmentDTO> attachments;
+    private LocalDateTime sentAt;
+    @JsonInclude(JsonInclude.Include.ALWAYS)
+    private boolean read;
+    @JsonInclude(JsonInclude.Include.ALWAYS)
+    private boolean delivered;
+    private LocalDateTime readAt;
+    private LocalDateTime deliveredAt;
+
+    // Default constructor
+    public CompactMessageDTO() {
+    }
+
+    public CompactMessageDTO(MessageDTO message) {
+        this.id = message.getId();
+        this.conversationId = message.getConversationId();
+        this.sequence = message.getSequence();
+        this.senderId = message.getSender() != null ? message.getSender().getId() : null;
+        this.content = message.getContent();
+        this.attachments = message.getAttachments();
+        this.sentAt = message.getSentAt();
+        this.read = message.isRead();
+        this.delivered = message.isDelivered();
+        this.readAt = message.getReadAt();
+        this.deliveredAt = message.getDeliveredAt();
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Integer conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Integer getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(Integer senderId) {
+        this.senderId = senderId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public List<MessageAttachmentDTO> getAttachments() {
+        return attachments;
+    }
+
+    public void setAttachments(List<MessageAttachmentDTO> attachments) {
+        this.attachments = attachments;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public boolean isRead() {
+        return read;
+    }
+
+    public void setRead(boolean read) {
+        this.read = read;
+    }
+
+    public boolean isDelivered() {
+        return delivered;
+    }
+
+    public void setDelivered(boolean delivered) {
+        this.delivered = delivered;
+    }
+
+    public LocalDateTime getReadAt() {
+        return readAt;
+    }
+
+    public void setReadAt(LocalDateTime readAt) {
+        this.readAt = readAt;
+    }
+
+    public LocalDateTime getDeliveredAt() {
+        return deliveredAt;
+    }
+
+    public void setDeliveredAt(LocalDateTime deliveredAt) {
+        this.deliveredAt = deliveredAt;
+    }
+}
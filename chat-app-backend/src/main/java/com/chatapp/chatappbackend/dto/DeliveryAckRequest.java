@@ -0,0 +1,45 @@
+package com.chatapp.chatappbackend.dto;
+
+import java.util.List;
+
+/**
+ * Batch delivery acknowledgement: message IDs, an inclusive sequence range, or both
+ */
+public class DeliveryAckRequest {
+    private List<Long> messageIds; // Accepted as JSON numbers or strings
+    private Long fromSequence;
+    private Long toSequence;
+
+    public DeliveryAckRequest() {
+    }
+
+    public DeliveryAckRequest(List<Long> messageIds, Long fromSequence, Long toSequence) {
+        this.messageIds = messageIds;
+        this.fromSequence = fromSequence;
+        this.toSequence = toSequence;
+    }
+
+    public List<Long> getMessageIds() {
+        return messageIds;
+    }
+
+    public void setMessageIds(List<Long> messageIds) {
+        this.messageIds = messageIds;
+    }
+
+    public Long getFromSequence() {
+        return fromSequence;
+    }
+
+    public void setFromSequence(Long fromSequence) {
+        this.fromSequence = fromSequence;
+    }
+
+    public Long getToSequence() {
+        return toSequence;
+    }
+
+    public void setToSequence(Long toSequence) {
+        this.toSequence = toSequence;
+    }
+}
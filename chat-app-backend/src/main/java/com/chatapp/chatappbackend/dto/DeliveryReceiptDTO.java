@@ -0,0 +1,74 @@
+package com.chatapp.chatappbackend.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object telling a sender which of their messages in a conversation were delivered
+ */
+public class DeliveryReceiptDTO {
+    private Integer conversationId;
+    private Integer recipientId;
+    @JsonSerialize(contentUsing = ToStringSerializer.class) // 64-bit IDs overflow JavaScript numbers
+    private List<Long> messageIds;
+    private List<Long> sequences;
+    private LocalDateTime deliveredAt;
+
+    // Default constructor
+    public DeliveryReceiptDTO() {
+        this.messageIds = new ArrayList<>();
+        this.sequences = new ArrayList<>();
+    }
+
+    public DeliveryReceiptDTO(Integer conversationId, Integer recipientId, LocalDateTime deliveredAt) {
+        this();
+        this.conversationId = conversationId;
+        this.recipientId = recipientId;
+        this.deliveredAt = deliveredAt;
+    }
+
+    // Getters and setters
+    public Integer getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Integer conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public Integer getRecipientId() {
+        return recipientId;
+    }
+
+    public void setRecipientId(Integer recipientId) {
+        this.recipientId = recipientId;
+    }
+
+    public List<Long> getMessageIds() {
+        return messageIds;
+    }
+
+    public void setMessageIds(List<Long> messageIds) {
+        this.messageIds = messageIds;
+    }
+
+    public List<Long> getSequences() {
+        return sequences;
+    }
+
+    public void setSequences(List<Long> sequences) {
+        this.sequences = sequences;
+    }
+
+    public LocalDateTime getDeliveredAt() {
+        return deliveredAt;
+    }
+
+    public void setDeliveredAt(LocalDateTime deliveredAt) {
+        this.deliveredAt = deliveredAt;
+    }
+}
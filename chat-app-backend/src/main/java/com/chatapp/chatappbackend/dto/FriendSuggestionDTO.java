@@ -0,0 +1,35 @@
+package com.chatapp.chatappbackend.dto;
+
+/**
+ * Data Transfer Object for a friend of a user's friends, suggested as a new friend
+ */
+public class FriendSuggestionDTO {
+    private UserDetailsResponse user;
+    private int mutualFriendCount;
+
+    // Default constructor
+    public FriendSuggestionDTO() {
+    }
+
+    public FriendSuggestionDTO(UserDetailsResponse user, int mutualFriendCount) {
+        this.user = user;
+        this.mutualFriendCount = mutualFriendCount;
+    }
+
+    // Getters and setters
+    public UserDetailsResponse getUser() {
+        return user;
+    }
+
+    public void setUser(UserDetailsResponse user) {
+        this.user = user;
+    }
+
+    public int getMutualFriendCount() {
+        return mutualFriendCount;
+    }
+
+    public void setMutualFriendCount(int mutualFriendCount) {
+        this.mutualFriendCount = mutualFriendCount;
+    }
+}
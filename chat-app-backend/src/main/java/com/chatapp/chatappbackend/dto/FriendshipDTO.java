@@ -7,6 +7,7 @@ public class FriendshipDTO {
     private Integer id;
     private UserDetailsResponse friend;
     private String createdAt;
+    private Integer mutualFriendCount;
 
     public FriendshipDTO() {
     }
@@ -17,6 +18,11 @@ public class FriendshipDTO {
         this.createdAt = createdAt;
     }
 
+    public FriendshipDTO(Integer id, UserDetailsResponse friend, String createdAt, Integer mutualFriendCount) {
+        this(id, friend, createdAt);
+        this.mutualFriendCount = mutualFriendCount;
+    }
+
     public Integer getId() {
         return id;
     }
@@ -40,4 +46,12 @@ public class FriendshipDTO {
     public void setCreatedAt(String createdAt) {
         this.createdAt = createdAt;
     }
+
+    public Integer getMutualFriendCount() {
+        return mutualFriendCount;
+    }
+
+    public void setMutualFriendCount(Integer mutualFriendCount) {
+        this.mutualFriendCount = mutualFriendCount;
+    }
 } 
\ No newline at end of file
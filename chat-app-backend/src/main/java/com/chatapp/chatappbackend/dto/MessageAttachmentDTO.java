@@ -2,13 +2,17 @@ package com.chatapp.chatappbackend.dto;
 
 import com.chatapp.chatappbackend.model.AttachmentType;
 import com.chatapp.chatappbackend.model.MessageAttachment;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 
 /**
  * Data Transfer Object for MessageAttachment information
  */
 public class MessageAttachmentDTO {
-    private Integer id;
-    private Integer messageId;
+    @JsonSerialize(using = ToStringSerializer.class) // 64-bit IDs overflow JavaScript numbers
+    private Long id;
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long messageId;
     private AttachmentType attachmentType;
     private String fileName;
     private String originalFileName;
@@ -40,19 +44,19 @@ public class MessageAttachmentDTO {
     }
     
     // Getters and setters
-    public Integer getId() {
+    public Long getId() {
         return id;
     }
     
-    public void setId(Integer id) {
+    public void setId(Long id) {
         this.id = id;
     }
     
-    public Integer getMessageId() {
+    public Long getMessageId() {
         return messageId;
     }
     
-    public void setMessageId(Integer messageId) {
+    public void setMessageId(Long messageId) {
         this.messageId = messageId;
     }
     
@@ -1,6 +1,8 @@
 package com.chatapp.chatappbackend.dto;
 
 import com.chatapp.chatappbackend.model.Message;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -11,8 +13,10 @@ import java.util.stream.Collectors;
  * Data Transfer Object for Message information
  */
 public class MessageDTO {
-    private Integer id;
+    @JsonSerialize(using = ToStringSerializer.class) // 64-bit IDs overflow JavaScript numbers
+    private Long id;
     private Integer conversationId;
+    private Long sequence;
     private UserDTO sender;
     private String content;
     private List<MessageAttachmentDTO> attachments;
@@ -27,10 +31,26 @@ public class MessageDTO {
         this.attachments = new ArrayList<>();
     }
     
+    // Copy constructor, used to update cached DTOs without mutating instances already handed out
+    public MessageDTO(MessageDTO other) {
+        this.id = other.id;
+        this.conversationId = other.conversationId;
+        this.sequence = other.sequence;
+        this.sender = other.sender;
+        this.content = other.content;
+        this.attachments = other.attachments;
+        this.sentAt = other.sentAt;
+        this.isRead = other.isRead;
+        this.isDelivered = other.isDelivered;
+        this.readAt = other.readAt;
+        this.deliveredAt = other.deliveredAt;
+    }
+    
     // Constructor from Message entity
     public MessageDTO(Message message) {
         this.id = message.getId();
         this.conversationId = message.getConversation().getId();
+        this.sequence = message.getSequence();
         this.sender = new UserDTO(message.getSender());
         this.content = message.getContent();
         this.sentAt = message.getSentAt();
@@ -50,11 +70,11 @@ public class MessageDTO {
     }
     
     // Getters and setters
-    public Integer getId() {
+    public Long getId() {
         return id;
     }
     
-    public void setId(Integer id) {
+    public void setId(Long id) {
         this.id = id;
     }
     
@@ -66,6 +86,14 @@ public class MessageDTO {
         this.conversationId = conversationId;
     }
     
+    public Long getSequence() {
+        return sequence;
+    }
+    
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+    
     public UserDTO getSender() {
         return sender;
     }
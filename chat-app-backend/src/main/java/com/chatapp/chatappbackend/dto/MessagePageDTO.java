@@ -0,0 +1,84 @@
+package com.chatapp.chatappbackend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Transfer Object for the compact history shape: every sender appears once in users,
+ * keyed by ID, instead of once per message
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessagePageDTO {
+    private Map<Integer, UserDTO> users;
+    private List<CompactMessageDTO> messages;
+    private String nextCursor; // Only for cursor-paginated history
+    private Boolean hasMore;   // Only for cursor-paginated history
+
+    // Default constructor
+    public MessagePageDTO() {
+        this.users = new LinkedHashMap<>();
+        this.messages = new ArrayList<>();
+    }
+
+    /**
+     * Build the compact shape of a list of messages
+     */
+    public static MessagePageDTO of(List<MessageDTO> messages) {
+        MessagePageDTO page = new MessagePageDTO();
+        for (MessageDTO message : messages) {
+            UserDTO sender = message.getSender();
+            if (sender != null) {
+                page.users.putIfAbsent(sender.getId(), sender);
+            }
+            page.messages.add(new CompactMessageDTO(message));
+        }
+        return page;
+    }
+
+    /**
+     * Build the compact shape of a page of cursor-paginated history
+     */
+    public static MessagePageDTO of(MessageSliceDTO slice) {
+        MessagePageDTO page = of(slice.getMessages());
+        page.nextCursor = slice.getNextCursor();
+        page.hasMore = slice.isHasMore();
+        return page;
+    }
+
+    // Getters and setters
+    public Map<Integer, UserDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(Map<Integer, UserDTO> users) {
+        this.users = users;
+    }
+
+    public List<CompactMessageDTO> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<CompactMessageDTO> messages) {
+        this.messages = messages;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
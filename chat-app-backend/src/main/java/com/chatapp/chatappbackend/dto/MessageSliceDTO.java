@@ -0,0 +1,49 @@
+package com.chatapp.chatappbackend.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for one page of cursor-paginated message history
+ */
+public class MessageSliceDTO {
+    private List<MessageDTO> messages;
+    private String nextCursor; // Pass back to fetch the next (older) page, null when there is none
+    private boolean hasMore;
+
+    // Default constructor
+    public MessageSliceDTO() {
+        this.messages = new ArrayList<>();
+    }
+
+    public MessageSliceDTO(List<MessageDTO> messages, String nextCursor, boolean hasMore) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    // Getters and setters
+    public List<MessageDTO> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<MessageDTO> messages) {
+        this.messages = messages;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
@@ -0,0 +1,45 @@
+package com.chatapp.chatappbackend.dto;
+
+/**
+ * Data Transfer Object for whether a user is online and when they were last seen
+ */
+public class PresenceDTO {
+    private Integer userId;
+    private boolean online;
+    private Long lastSeen; // Epoch millis; null if the user was never seen
+
+    // Default constructor
+    public PresenceDTO() {
+    }
+
+    public PresenceDTO(Integer userId, boolean online, Long lastSeen) {
+        this.userId = userId;
+        this.online = online;
+        this.lastSeen = lastSeen;
+    }
+
+    // Getters and setters
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+    public Long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(Long lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+}
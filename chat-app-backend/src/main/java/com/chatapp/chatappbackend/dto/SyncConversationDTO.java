@@ -0,0 +1,85 @@
+package com.chatapp.chatappbackend.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Transfer Object for the changes to one conversation in a sync
+ */
+public class SyncConversationDTO {
+    private ConversationDTO conversation;
+    private List<MessageDTO> messages; // New messages, oldest first
+    private boolean messagesTruncated; // Only the newest new messages are included; page back for the rest
+    private Map<Integer, Long> readMarks; // userId -> newest read sequence number
+    @JsonSerialize(contentUsing = ToStringSerializer.class)
+    private List<Long> deliveredMessageIds;
+    @JsonSerialize(contentUsing = ToStringSerializer.class)
+    private List<Long> deletedMessageIds;
+
+    // Default constructor
+    public SyncConversationDTO() {
+        this.messages = new ArrayList<>();
+        this.readMarks = new LinkedHashMap<>();
+        this.deliveredMessageIds = new ArrayList<>();
+        this.deletedMessageIds = new ArrayList<>();
+    }
+
+    public SyncConversationDTO(ConversationDTO conversation) {
+        this();
+        this.conversation = conversation;
+    }
+
+    // Getters and setters
+    public ConversationDTO getConversation() {
+        return conversation;
+    }
+
+    public void setConversation(ConversationDTO conversation) {
+        this.conversation = conversation;
+    }
+
+    public List<MessageDTO> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<MessageDTO> messages) {
+        this.messages = messages;
+    }
+
+    public boolean isMessagesTruncated() {
+        return messagesTruncated;
+    }
+
+    public void setMessagesTruncated(boolean messagesTruncated) {
+        this.messagesTruncated = messagesTruncated;
+    }
+
+    public Map<Integer, Long> getReadMarks() {
+        return readMarks;
+    }
+
+    public void setReadMarks(Map<Integer, Long> readMarks) {
+        this.readMarks = readMarks;
+    }
+
+    public List<Long> getDeliveredMessageIds() {
+        return deliveredMessageIds;
+    }
+
+    public void setDeliveredMessageIds(List<Long> deliveredMessageIds) {
+        this.deliveredMessageIds = deliveredMessageIds;
+    }
+
+    public List<Long> getDeletedMessageIds() {
+        return deletedMessageIds;
+    }
+
+    public void setDeletedMessageIds(List<Long> deletedMessageIds) {
+        this.deletedMessageIds = deletedMessageIds;
+    }
+}
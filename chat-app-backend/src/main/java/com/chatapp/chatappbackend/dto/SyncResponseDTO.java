@@ -0,0 +1,59 @@
+package com.chatapp.chatappbackend.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for everything that changed in a user's conversations since their last sync
+ */
+public class SyncResponseDTO {
+    private String syncToken; // Pass back on the next sync
+    private boolean hasMore; // More changes are waiting; sync again with the new token
+    private boolean fullResync; // The token was missing or too old: conversations are complete, messages are not included
+    private List<SyncConversationDTO> conversations;
+
+    // Default constructor
+    public SyncResponseDTO() {
+        this.conversations = new ArrayList<>();
+    }
+
+    public SyncResponseDTO(String syncToken, boolean hasMore, boolean fullResync, List<SyncConversationDTO> conversations) {
+        this.syncToken = syncToken;
+        this.hasMore = hasMore;
+        this.fullResync = fullResync;
+        this.conversations = conversations;
+    }
+
+    // Getters and setters
+    public String getSyncToken() {
+        return syncToken;
+    }
+
+    public void setSyncToken(String syncToken) {
+        this.syncToken = syncToken;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public boolean isFullResync() {
+        return fullResync;
+    }
+
+    public void setFullResync(boolean fullResync) {
+        this.fullResync = fullResync;
+    }
+
+    public List<SyncConversationDTO> getConversations() {
+        return conversations;
+    }
+
+    public void setConversations(List<SyncConversationDTO> conversations) {
+        this.conversations = conversations;
+    }
+}
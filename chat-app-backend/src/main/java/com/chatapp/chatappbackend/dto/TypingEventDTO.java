@@ -0,0 +1,48 @@
+package com.chatapp.chatappbackend.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data Transfer Object announcing that a user started, is still, or stopped typing in a conversation
+ */
+public class TypingEventDTO {
+    private Integer userId;
+    @JsonProperty("isTyping") // Field name clients already read
+    private boolean typing;
+    private long timestamp;
+
+    // Default constructor
+    public TypingEventDTO() {
+    }
+
+    public TypingEventDTO(Integer userId, boolean typing, long timestamp) {
+        this.userId = userId;
+        this.typing = typing;
+        this.timestamp = timestamp;
+    }
+
+    // Getters and setters
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public boolean isTyping() {
+        return typing;
+    }
+
+    public void setTyping(boolean typing) {
+        this.typing = typing;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,49 @@
+package com.chatapp.chatappbackend.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for one page of users, from a search or the directory listing
+ */
+public class UserSearchPageDTO {
+    private List<UserDetailsResponse> users; // Search results carry no email addresses
+    private String nextCursor; // Pass back to fetch the next page, null when there is none
+    private boolean hasMore;
+
+    // Default constructor
+    public UserSearchPageDTO() {
+        this.users = new ArrayList<>();
+    }
+
+    public UserSearchPageDTO(List<UserDetailsResponse> users, String nextCursor, boolean hasMore) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    // Getters and setters
+    public List<UserDetailsResponse> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserDetailsResponse> users) {
+        this.users = users;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
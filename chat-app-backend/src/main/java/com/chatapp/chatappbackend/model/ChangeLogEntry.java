@@ -0,0 +1,106 @@
+package com.chatapp.chatappbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One change to a conversation, appended in the same transaction as the change itself. Entries are
+ * never updated; their increasing IDs are the positions clients sync from (see SyncService), and
+ * entries older than the retention period are pruned.
+ */
+@Entity
+@Table(name = "change_log", indexes = {
+    @Index(name = "idx_change_log_conversation", columnList = "conversation_id, id"),
+    @Index(name = "idx_change_log_created_at", columnList = "created_at")
+})
+public class ChangeLogEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Integer conversationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 24)
+    private ChangeType changeType;
+
+    // The message changed, for message changes
+    @Column(name = "message_id")
+    private Long messageId;
+
+    // Who made the change: sender, deleter, recipient or reader
+    @Column(name = "user_id")
+    private Integer userId;
+
+    // The message's sequence number, or the new read mark
+    @Column(name = "seq")
+    private Long sequence;
+
+    // Set by the database, so entries of all instances share one clock
+    @Column(name = "created_at", nullable = false, columnDefinition = "DATETIME(3)")
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public ChangeLogEntry() {
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Integer conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public void setChangeType(ChangeType changeType) {
+        this.changeType = changeType;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,12 @@
+package com.chatapp.chatappbackend.model;
+
+/**
+ * What a change log entry records
+ */
+public enum ChangeType {
+    CONVERSATION_CREATED,
+    MESSAGE_CREATED,
+    MESSAGE_DELETED,
+    MESSAGE_DELIVERED,
+    READ_MARK_MOVED
+}
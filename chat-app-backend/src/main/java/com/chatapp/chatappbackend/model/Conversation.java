@@ -34,6 +34,12 @@ public class Conversation {
     
     @Column(name = "last_message_sender_id")
     private Integer lastMessageSenderId;
+    
+    // Highest message sequence number allocated in this conversation. Only ever advanced
+    // by ConversationRepository.incrementSequence so the entity never overwrites it.
+    @Column(name = "last_seq", insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private long lastSequence;
 
     // One-to-many relationship with Message entities
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
@@ -111,6 +117,10 @@ public class Conversation {
     public void setLastMessageSenderId(Integer lastMessageSenderId) {
         this.lastMessageSenderId = lastMessageSenderId;
     }
+    
+    public long getLastSequence() {
+        return lastSequence;
+    }
 
     public List<Message> getMessages() {
         return messages;
@@ -0,0 +1,115 @@
+package com.chatapp.chatappbackend.model;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * A user's membership in a conversation, holding how far the user has read.
+ * Every message up to and including lastReadSequence counts as read by the user,
+ * so a read receipt advances one row instead of flagging each message.
+ */
+@Entity
+@Table(name = "conversation_members",
+       indexes = @Index(name = "idx_conversation_members_user", columnList = "user_id"))
+@IdClass(ConversationMember.Key.class)
+public class ConversationMember {
+
+    @Id
+    @Column(name = "conversation_id")
+    private Integer conversationId;
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "last_read_seq", columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private long lastReadSequence;
+
+    // When the read mark last moved forward
+    @Column(name = "last_read_at")
+    private LocalDateTime lastReadAt;
+
+    // Constructors
+    public ConversationMember() {
+    }
+
+    public ConversationMember(Integer conversationId, Integer userId) {
+        this.conversationId = conversationId;
+        this.userId = userId;
+    }
+
+    // Getters and Setters
+    public Integer getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Integer conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public long getLastReadSequence() {
+        return lastReadSequence;
+    }
+
+    public void setLastReadSequence(long lastReadSequence) {
+        this.lastReadSequence = lastReadSequence;
+    }
+
+    public LocalDateTime getLastReadAt() {
+        return lastReadAt;
+    }
+
+    public void setLastReadAt(LocalDateTime lastReadAt) {
+        this.lastReadAt = lastReadAt;
+    }
+
+    /**
+     * Composite primary key: one membership per (conversation, user)
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Integer conversationId;
+        private Integer userId;
+
+        public Key() {
+        }
+
+        public Key(Integer conversationId, Integer userId) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+        }
+
+        public Integer getConversationId() {
+            return conversationId;
+        }
+
+        public Integer getUserId() {
+            return userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Objects.equals(conversationId, other.conversationId) && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversationId, userId);
+        }
+    }
+}
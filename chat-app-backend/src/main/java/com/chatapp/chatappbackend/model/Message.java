@@ -8,32 +8,43 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_conversation_sent_at", columnList = "conversation_id, sent_at, id"),
+    @Index(name = "uk_messages_conversation_seq", columnList = "conversation_id, seq", unique = true)
+})
 public class Message {
 
+    // Width of the content column; longer messages are rejected before they reach the database
+    public static final int MAX_CONTENT_LENGTH = 2000;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Integer id;
+    @TimeOrderedId
+    private Long id;
 
     // The conversation this message belongs to
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "conversation_id", nullable = false)
     private Conversation conversation;
 
+    // Position of the message within its conversation, assigned at insert time
+    @Column(name = "seq")
+    private Long sequence;
+
     // The user who sent the message
     @ManyToOne(fetch = FetchType.EAGER)
     @JoinColumn(name = "sender_id", nullable = false)
     private User sender;
 
     // The content of the message
-    @Column(nullable = false, length = 2000)
+    @Column(nullable = false, length = MAX_CONTENT_LENGTH)
     private String content;
 
     // Attachments related to this message
     @OneToMany(mappedBy = "message", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<MessageAttachment> attachments = new ArrayList<>();
 
-    // Message status flags
+    // Message status flags. is_read/read_at are no longer written: read state is derived
+    // from the readers' marks in conversation_members (see ConversationMember)
     @Column(name = "is_read", nullable = false)
     private boolean read = false;
 
@@ -66,11 +77,11 @@ public class Message {
     }
 
     // Getters and setters
-    public Integer getId() {
+    public Long getId() {
         return id;
     }
 
-    public void setId(Integer id) {
+    public void setId(Long id) {
         this.id = id;
     }
 
@@ -82,6 +93,14 @@ public class Message {
         this.conversation = conversation;
     }
 
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
     public User getSender() {
         return sender;
     }
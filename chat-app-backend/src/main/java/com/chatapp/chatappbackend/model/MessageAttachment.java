@@ -10,8 +10,8 @@ import java.time.LocalDateTime;
 public class MessageAttachment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Integer id;
+    @TimeOrderedId
+    private Long id;
 
     // The message this attachment belongs to
     @ManyToOne(fetch = FetchType.LAZY)
@@ -65,11 +65,11 @@ public class MessageAttachment {
     }
 
     // Getters and setters
-    public Integer getId() {
+    public Long getId() {
         return id;
     }
 
-    public void setId(Integer id) {
+    public void setId(Long id) {
         this.id = id;
     }
 
@@ -0,0 +1,78 @@
+package com.chatapp.chatappbackend.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A WebSocket frame waiting to be pushed to clients. Rows are written in the same transaction as
+ * the change they announce and deleted once dispatched, so a committed change is always announced
+ * at least once, even if the instance stops before dispatching it.
+ */
+@Entity
+@Table(name = "message_outbox",
+       indexes = @Index(name = "idx_message_outbox_created_at", columnList = "created_at"))
+public class OutboxEvent {
+
+    @Id
+    private Long id;
+
+    // Broker destinations (e.g. /topic/conversation.1, /user/2/queue/messages), one per line
+    @Column(name = "destinations", nullable = false, columnDefinition = "TEXT")
+    private String destinations;
+
+    // The frame body as JSON
+    @Column(name = "payload", nullable = false, columnDefinition = "MEDIUMTEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // Constructors
+    public OutboxEvent() {
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getDestinations() {
+        return destinations;
+    }
+
+    public void setDestinations(String destinations) {
+        this.destinations = destinations;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
@@ -0,0 +1,19 @@
+package com.chatapp.chatappbackend.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a Long ID that is assigned by the application from a time-ordered generator
+ * instead of by the database. Because the ID is known before the INSERT, Hibernate can
+ * batch inserts of these entities.
+ */
+@IdGeneratorType(TimeOrderedIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface TimeOrderedId {
+}
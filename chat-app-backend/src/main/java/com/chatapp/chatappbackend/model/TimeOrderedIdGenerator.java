@@ -0,0 +1,25 @@
+package com.chatapp.chatappbackend.model;
+
+import com.chatapp.chatappbackend.util.SnowflakeIdGenerator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+
+/**
+ * Hibernate generator behind {@link TimeOrderedId}, delegating to the process-wide
+ * {@link SnowflakeIdGenerator}
+ */
+public class TimeOrderedIdGenerator implements IdentifierGenerator {
+
+    private static final long serialVersionUID = 1L;
+
+    public TimeOrderedIdGenerator(TimeOrderedId config, Member idMember, CustomIdGeneratorCreationContext context) {
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return SnowflakeIdGenerator.getDefault().nextId();
+    }
+}
@@ -0,0 +1,102 @@
+package com.chatapp.chatappbackend.model;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Number of unread messages a user has in a conversation, maintained incrementally
+ * so the inbox never has to count messages
+ */
+@Entity
+@Table(name = "unread_counters",
+       indexes = @Index(name = "idx_unread_counters_user", columnList = "user_id"))
+@IdClass(UnreadCounter.Key.class)
+public class UnreadCounter {
+
+    @Id
+    @Column(name = "conversation_id")
+    private Integer conversationId;
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "unread_count", nullable = false)
+    private int unreadCount;
+
+    // Constructors
+    public UnreadCounter() {
+    }
+
+    public UnreadCounter(Integer conversationId, Integer userId, int unreadCount) {
+        this.conversationId = conversationId;
+        this.userId = userId;
+        this.unreadCount = unreadCount;
+    }
+
+    // Getters and Setters
+    public Integer getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Integer conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+
+    /**
+     * Composite primary key: one counter per (conversation, user)
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Integer conversationId;
+        private Integer userId;
+
+        public Key() {
+        }
+
+        public Key(Integer conversationId, Integer userId) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+        }
+
+        public Integer getConversationId() {
+            return conversationId;
+        }
+
+        public Integer getUserId() {
+            return userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Objects.equals(conversationId, other.conversationId) && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversationId, userId);
+        }
+    }
+}
@@ -32,9 +32,26 @@ public class User {
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    // Written in batches by PresenceService, not through this entity
+    @Column(name = "last_seen_at", insertable = false, updatable = false)
+    private LocalDateTime lastSeenAt;
+
     // Default constructor
     public User() {
     }
+
+    // Detached copy, handed out by UserProfileCache so callers never share an instance
+    public User(User other) {
+        this.id = other.id;
+        this.username = other.username;
+        this.email = other.email;
+        this.displayName = other.displayName;
+        this.about = other.about;
+        this.passwordHash = other.passwordHash;
+        this.profilePictureUrl = other.profilePictureUrl;
+        this.createdAt = other.createdAt;
+        this.lastSeenAt = other.lastSeenAt;
+    }
     
     // Getters and setters
     public Integer getId() {
@@ -100,4 +117,8 @@ public class User {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    public LocalDateTime getLastSeenAt() {
+        return lastSeenAt;
+    }
 }
\ No newline at end of file
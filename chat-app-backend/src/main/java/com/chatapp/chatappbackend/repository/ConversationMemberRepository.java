@@ -0,0 +1,51 @@
+package com.chatapp.chatappbackend.repository;
+
+import com.chatapp.chatappbackend.model.ConversationMember;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConversationMemberRepository extends JpaRepository<ConversationMember, ConversationMember.Key> {
+
+    /**
+     * Find the memberships (and read marks) of every participant of a conversation
+     */
+    List<ConversationMember> findByConversationId(Integer conversationId);
+
+    /**
+     * Create a membership with nothing read yet, unless it already exists
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO conversation_members (conversation_id, user_id, last_read_seq) " +
+                   "VALUES (:conversationId, :userId, 0)",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("conversationId") Integer conversationId, @Param("userId") Integer userId);
+
+    /**
+     * Read a user's read mark and lock the membership row until the surrounding transaction ends,
+     * so concurrent receipts from the same user advance the mark one after another
+     */
+    @Query(value = "SELECT last_read_seq FROM conversation_members " +
+                   "WHERE conversation_id = :conversationId AND user_id = :userId FOR UPDATE",
+           nativeQuery = true)
+    Optional<Long> lockReadMark(@Param("conversationId") Integer conversationId, @Param("userId") Integer userId);
+
+    /**
+     * Move a user's read mark forward; a mark never moves backwards
+     */
+    @Modifying
+    @Query(value = "UPDATE conversation_members SET last_read_seq = :sequence, last_read_at = :readAt " +
+                   "WHERE conversation_id = :conversationId AND user_id = :userId AND last_read_seq < :sequence",
+           nativeQuery = true)
+    int advanceReadMark(@Param("conversationId") Integer conversationId,
+                        @Param("userId") Integer userId,
+                        @Param("sequence") long sequence,
+                        @Param("readAt") LocalDateTime readAt);
+}
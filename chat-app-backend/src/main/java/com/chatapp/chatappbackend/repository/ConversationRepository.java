@@ -4,6 +4,7 @@ import com.chatapp.chatappbackend.model.Conversation;
 import com.chatapp.chatappbackend.model.User;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -33,10 +34,17 @@ public interface ConversationRepository extends JpaRepository<Conversation, Inte
     List<Conversation> findConversationsForUserWithLimit(@Param("userId") Integer userId, Pageable pageable);
     
     /**
-     * Count unread messages in a conversation for a user
+     * Advance the conversation's message sequence counter. Only the conversation row is
+     * locked (until the surrounding transaction commits), so other conversations are unaffected.
      */
-    @Query("SELECT COUNT(m) FROM Message m WHERE m.conversation.id = :conversationId " +
-           "AND m.sender.id != :userId AND m.read = false AND m.deleted = false")
-    long countUnreadMessagesInConversation(@Param("conversationId") Integer conversationId, 
-                                          @Param("userId") Integer userId);
-} 
\ No newline at end of file
+    @Modifying
+    @Query(value = "UPDATE conversations SET last_seq = last_seq + :count WHERE id = :conversationId",
+           nativeQuery = true)
+    int incrementSequence(@Param("conversationId") Integer conversationId, @Param("count") int count);
+    
+    /**
+     * Read the conversation's current message sequence counter
+     */
+    @Query(value = "SELECT last_seq FROM conversations WHERE id = :conversationId", nativeQuery = true)
+    long findLastSequence(@Param("conversationId") Integer conversationId);
+}
@@ -17,6 +17,11 @@ public interface FriendshipRepository extends JpaRepository<Friendship, Integer>
     @Query("SELECT f FROM Friendship f WHERE (f.user1 = :user1 AND f.user2 = :user2) OR (f.user1 = :user2 AND f.user2 = :user1)")
     Optional<Friendship> findByUsers(@Param("user1") User user1, @Param("user2") User user2);
     
+    // Find the friendship of two users by their IDs in stored order (user1 < user2), using the unique index
+    Optional<Friendship> findByUser1IdAndUser2Id(Integer user1Id, Integer user2Id);
+    
+    boolean existsByUser1IdAndUser2Id(Integer user1Id, Integer user2Id);
+    
     // Check if two users are friends
     default boolean areFriends(User user1, User user2) {
         return findByUsers(user1, user2).isPresent();
@@ -37,4 +42,17 @@ public interface FriendshipRepository extends JpaRepository<Friendship, Integer>
     // Get users who are user2 in friendships where current user is user1
     @Query("SELECT f.user2 FROM Friendship f WHERE f.user1.id = :userId")
     List<User> findUser2ByUser1Id(@Param("userId") Integer userId);
-} 
\ No newline at end of file
+    
+    // Friendships where the user is user1, with both users in the same query
+    @Query("SELECT f FROM Friendship f JOIN FETCH f.user1 JOIN FETCH f.user2 WHERE f.user1.id = :userId")
+    List<Friendship> findWithUsersByUser1Id(@Param("userId") Integer userId);
+    
+    // Friendships where the user is user2, with both users in the same query
+    @Query("SELECT f FROM Friendship f JOIN FETCH f.user1 JOIN FETCH f.user2 WHERE f.user2.id = :userId")
+    List<Friendship> findWithUsersByUser2Id(@Param("userId") Integer userId);
+    
+    // Get the IDs of a user's friends without loading the users
+    @Query("SELECT CASE WHEN f.user1.id = :userId THEN f.user2.id ELSE f.user1.id END FROM Friendship f " +
+           "WHERE f.user1.id = :userId OR f.user2.id = :userId")
+    List<Integer> findFriendIds(@Param("userId") Integer userId);
+}
@@ -11,7 +11,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface MessageAttachmentRepository extends JpaRepository<MessageAttachment, Integer> {
+public interface MessageAttachmentRepository extends JpaRepository<MessageAttachment, Long> {
     
     /**
      * Find all attachments for a message
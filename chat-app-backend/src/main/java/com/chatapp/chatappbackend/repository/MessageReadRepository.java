@@ -0,0 +1,185 @@
+package com.chatapp.chatappbackend.repository;
+
+import com.chatapp.chatappbackend.dto.MessageAttachmentDTO;
+import com.chatapp.chatappbackend.dto.MessageDTO;
+import com.chatapp.chatappbackend.dto.UserDTO;
+import com.chatapp.chatappbackend.model.AttachmentType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only access to message history that maps rows straight to DTOs. A page costs one query
+ * for the messages and their senders plus one for all of their attachments, however many
+ * messages it holds, and nothing is loaded into the persistence context.
+ */
+@Repository
+public class MessageReadRepository {
+
+    private static final String SELECT_MESSAGES =
+        "SELECT m.id, m.conversation_id, m.seq, m.content, m.sent_at, m.is_read, m.read_at, " +
+        "m.is_delivered, m.delivered_at, u.id AS sender_id, u.username, u.email, u.display_name, " +
+        "u.about, u.profile_picture_url " +
+        "FROM messages m JOIN users u ON u.id = m.sender_id " +
+        "WHERE m.conversation_id = ? AND m.is_deleted = false ";
+
+    private static final String SELECT_ATTACHMENTS =
+        "SELECT id, message_id, attachment_type, file_name, original_file_name, file_path, mime_type, " +
+        "file_size, thumbnail_path FROM message_attachments WHERE message_id IN (%s) ORDER BY message_id, id";
+
+    private static final RowMapper<MessageDTO> MESSAGE_ROW_MAPPER = (rs, rowNum) -> {
+        UserDTO sender = new UserDTO();
+        sender.setId(rs.getInt("sender_id"));
+        sender.setUsername(rs.getString("username"));
+        sender.setEmail(rs.getString("email"));
+        sender.setDisplayName(rs.getString("display_name"));
+        sender.setAbout(rs.getString("about"));
+        sender.setProfilePictureUrl(rs.getString("profile_picture_url"));
+
+        MessageDTO message = new MessageDTO();
+        message.setId(rs.getLong("id"));
+        message.setConversationId(rs.getInt("conversation_id"));
+        message.setSequence(rs.getObject("seq", Long.class));
+        message.setSender(sender);
+        message.setContent(rs.getString("content"));
+        message.setSentAt(toLocalDateTime(rs.getTimestamp("sent_at")));
+        message.setRead(rs.getBoolean("is_read"));
+        message.setReadAt(toLocalDateTime(rs.getTimestamp("read_at")));
+        message.setDelivered(rs.getBoolean("is_delivered"));
+        message.setDeliveredAt(toLocalDateTime(rs.getTimestamp("delivered_at")));
+        return message;
+    };
+
+    private static final RowMapper<MessageAttachmentDTO> ATTACHMENT_ROW_MAPPER = (rs, rowNum) -> {
+        MessageAttachmentDTO attachment = new MessageAttachmentDTO();
+        attachment.setId(rs.getLong("id"));
+        attachment.setMessageId(rs.getLong("message_id"));
+        attachment.setAttachmentType(AttachmentType.valueOf(rs.getString("attachment_type")));
+        attachment.setFileName(rs.getString("file_name"));
+        attachment.setOriginalFileName(rs.getString("original_file_name"));
+        attachment.setMimeType(rs.getString("mime_type"));
+        attachment.setFileSize(rs.getObject("file_size", Long.class));
+
+        // Same URLs as MessageAttachmentDTO(MessageAttachment)
+        String filePath = rs.getString("file_path");
+        String thumbnailPath = rs.getString("thumbnail_path");
+        attachment.setDownloadUrl(filePath);
+        attachment.setThumbnailUrl(thumbnailPath != null ? thumbnailPath : filePath);
+        return attachment;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public MessageReadRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Find the newest messages of a conversation, newest first
+     */
+    public List<MessageDTO> findLatest(Integer conversationId, int limit) {
+        return findMessages(SELECT_MESSAGES + "ORDER BY m.seq DESC LIMIT ?", conversationId, limit);
+    }
+
+    /**
+     * Find the messages just before a sequence number, newest first
+     */
+    public List<MessageDTO> findBefore(Integer conversationId, long sequence, int limit) {
+        return findMessages(SELECT_MESSAGES + "AND m.seq < ? ORDER BY m.seq DESC LIMIT ?",
+            conversationId, sequence, limit);
+    }
+
+    /**
+     * Find the messages just after a sequence number, oldest first
+     */
+    public List<MessageDTO> findAfter(Integer conversationId, long sequence, int limit) {
+        return findMessages(SELECT_MESSAGES + "AND m.seq > ? ORDER BY m.seq ASC LIMIT ?",
+            conversationId, sequence, limit);
+    }
+
+    /**
+     * Find the messages in an inclusive sequence range, oldest first
+     */
+    public List<MessageDTO> findBySequenceRange(Integer conversationId, long fromSequence, long toSequence) {
+        return findMessages(SELECT_MESSAGES + "AND m.seq BETWEEN ? AND ? ORDER BY m.seq ASC",
+            conversationId, fromSequence, toSequence);
+    }
+
+    /**
+     * Find the messages with the given sequence numbers, oldest first
+     */
+    public List<MessageDTO> findBySequences(Integer conversationId, Collection<Long> sequences) {
+        if (sequences.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String placeholders = String.join(",", Collections.nCopies(sequences.size(), "?"));
+        List<Object> args = new ArrayList<>(sequences.size() + 1);
+        args.add(conversationId);
+        args.addAll(sequences);
+        return findMessages(SELECT_MESSAGES + "AND m.seq IN (" + placeholders + ") ORDER BY m.seq ASC",
+            args.toArray());
+    }
+
+    /**
+     * Find one page of messages by offset, in the order they were sent
+     */
+    public List<MessageDTO> findPage(Integer conversationId, int offset, int size) {
+        return findMessages(SELECT_MESSAGES + "ORDER BY m.sent_at ASC, m.id ASC LIMIT ? OFFSET ?",
+            conversationId, size, offset);
+    }
+
+    /**
+     * Find the conversation and sequence number of a message, without loading it
+     * @return {conversationId, sequence}, or null if the message does not exist
+     */
+    public long[] findPosition(Long messageId) {
+        List<long[]> positions = jdbcTemplate.query(
+            "SELECT conversation_id, seq FROM messages WHERE id = ?",
+            (rs, rowNum) -> new long[] { rs.getInt("conversation_id"), rs.getLong("seq") },
+            messageId);
+        return positions.isEmpty() ? null : positions.get(0);
+    }
+
+    private List<MessageDTO> findMessages(String sql, Object... args) {
+        List<MessageDTO> messages = jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, args);
+        attachAttachments(messages);
+        return messages;
+    }
+
+    // One query for the attachments of the whole page
+    private void attachAttachments(List<MessageDTO> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Map<Long, MessageDTO> byId = new HashMap<>();
+        for (MessageDTO message : messages) {
+            byId.put(message.getId(), message);
+        }
+        String placeholders = String.join(",", Collections.nCopies(byId.size(), "?"));
+        List<MessageAttachmentDTO> attachments = jdbcTemplate.query(
+            String.format(SELECT_ATTACHMENTS, placeholders), ATTACHMENT_ROW_MAPPER, byId.keySet().toArray());
+        for (MessageAttachmentDTO attachment : attachments) {
+            MessageDTO message = byId.get(attachment.getMessageId());
+            if (message != null) {
+                message.getAttachments().add(attachment);
+            }
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.chatapp.chatappbackend.repository;
+
+import com.chatapp.chatappbackend.model.UnreadCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface UnreadCounterRepository extends JpaRepository<UnreadCounter, UnreadCounter.Key> {
+
+    /**
+     * Find every unread counter of a user, one row per conversation
+     */
+    List<UnreadCounter> findByUserId(Integer userId);
+}
@@ -1,8 +1,10 @@
 package com.chatapp.chatappbackend.repository;
 
 import com.chatapp.chatappbackend.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +13,6 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByEmail(String email);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+    // Keyset page of the user directory; the primary key index serves both the range and the order
+    List<User> findByIdGreaterThanAndIdNot(Integer afterId, Integer excludedId, Pageable pageable);
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.chatapp.chatappbackend.service;
 
 import com.chatapp.chatappbackend.model.User;
 import com.chatapp.chatappbackend.repository.UserRepository;
+import com.chatapp.chatappbackend.util.TransactionCallbacks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -15,11 +16,14 @@ public class AuthService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserSearchIndex userSearchIndex;
 
     @Autowired
-    public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                       UserSearchIndex userSearchIndex) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userSearchIndex = userSearchIndex;
     }
 
     @Transactional
@@ -40,7 +44,10 @@ public class AuthService {
         newUser.setPasswordHash(encodedPassword);
         newUser.setCreatedAt(LocalDateTime.now());
 
-        return userRepository.save(newUser);
+        User savedUser = userRepository.save(newUser);
+        TransactionCallbacks.afterCommit(() ->
+            userSearchIndex.put(savedUser.getId(), savedUser.getUsername(), savedUser.getDisplayName()));
+        return savedUser;
     }
 
     public User authenticateUser(String username, String password) {
@@ -0,0 +1,221 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.model.ChangeLogEntry;
+import com.chatapp.chatappbackend.model.ChangeType;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of conversation changes, written in the same transaction as the changes, that
+ * /api/sync reads from instead of recomputing each conversation's state. Entries of one
+ * transaction are inserted together just before it commits.
+ *
+ * Entry IDs come from AUTO_INCREMENT, so a transaction that inserted an earlier ID can commit after
+ * one that inserted a later ID. Readers therefore only treat a position as final once every entry
+ * up to it is older than the settle window; entries inserted just before commit are visible well
+ * within it.
+ */
+@Service
+public class ChangeLog implements MetricsSource {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO change_log (conversation_id, change_type, message_id, user_id, seq, created_at) " +
+        "VALUES (?, ?, ?, ?, ?, NOW(3))";
+
+    // Entries of every conversation the user is a member of, flagged when older than the settle window
+    private static final String SELECT_FOR_USER_SQL =
+        "SELECT c.id, c.conversation_id, c.change_type, c.message_id, c.user_id, c.seq, " +
+        "c.created_at <= NOW(3) - INTERVAL ? MICROSECOND AS settled " +
+        "FROM change_log c JOIN conversation_members m ON m.conversation_id = c.conversation_id " +
+        "WHERE m.user_id = ? AND c.id > ? ORDER BY c.id LIMIT ?";
+
+    private static final String SELECT_SETTLED_POSITION_SQL =
+        "SELECT COALESCE(MAX(id), 0) FROM change_log WHERE created_at <= NOW(3) - INTERVAL ? MICROSECOND";
+
+    private static final String PRUNE_SQL =
+        "DELETE FROM change_log WHERE created_at < ? AND id < ? LIMIT ?";
+
+    private static final int PRUNE_BATCH_SIZE = 5000;
+
+    @Value("${chat.sync.settle-ms:5000}")
+    private long settleMillis;
+
+    @Value("${chat.sync.retention-days:30}")
+    private int retentionDays;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+
+    /**
+     * Record a change; it is written if and when the current transaction commits
+     * @param type What changed
+     * @param conversationId The conversation it changed in
+     * @param messageId The message it changed, if any
+     * @param userId Who changed it
+     * @param sequence The message's sequence number or the new read mark, if any
+     */
+    public void append(ChangeType type, Integer conversationId, Long messageId, Integer userId, Long sequence) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Changes must be logged inside a transaction");
+        }
+        Object[] row = { conversationId, type.name(), messageId, userId, sequence };
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof ChangeLogSynchronization changeLogSynchronization) {
+                changeLogSynchronization.rows.add(row);
+                return;
+            }
+        }
+        ChangeLogSynchronization synchronization = new ChangeLogSynchronization();
+        synchronization.rows.add(row);
+        TransactionSynchronizationManager.registerSynchronization(synchronization);
+    }
+
+    /**
+     * Read the changes to a user's conversations after a position
+     * @param userId The ID of the user
+     * @param afterId The position to read from (exclusive)
+     * @param limit The maximum number of entries
+     * @return The entries, oldest first, and how far they are final
+     */
+    public Page readForUser(Integer userId, long afterId, int limit) {
+        reads.incrementAndGet();
+        List<ChangeLogEntry> entries = new ArrayList<>();
+        long[] settledThrough = { afterId };
+        boolean[] unsettledSeen = { false };
+        jdbcTemplate.query(SELECT_FOR_USER_SQL, rs -> {
+            ChangeLogEntry entry = new ChangeLogEntry();
+            entry.setId(rs.getLong("id"));
+            entry.setConversationId(rs.getInt("conversation_id"));
+            entry.setChangeType(ChangeType.valueOf(rs.getString("change_type")));
+            entry.setMessageId(rs.getObject("message_id", Long.class));
+            entry.setUserId(rs.getObject("user_id", Integer.class));
+            entry.setSequence(rs.getObject("seq", Long.class));
+            entries.add(entry);
+            // The position only moves over an unbroken run of settled entries
+            if (!unsettledSeen[0] && rs.getBoolean("settled")) {
+                settledThrough[0] = entry.getId();
+            } else {
+                unsettledSeen[0] = true;
+            }
+        }, TimeUnit.MILLISECONDS.toMicros(settleMillis), userId, afterId, limit + 1);
+
+        boolean hasMore = entries.size() > limit;
+        if (hasMore) {
+            entries.remove(entries.size() - 1);
+            settledThrough[0] = Math.min(settledThrough[0], entries.get(entries.size() - 1).getId());
+        }
+        return new Page(entries, settledThrough[0], hasMore);
+    }
+
+    /**
+     * @return The newest position every entry up to which is final
+     */
+    public long getSettledPosition() {
+        Long position = jdbcTemplate.queryForObject(SELECT_SETTLED_POSITION_SQL, Long.class,
+            TimeUnit.MILLISECONDS.toMicros(settleMillis));
+        return position != null ? position : 0;
+    }
+
+    /**
+     * @return The oldest position still in the log, or null if it is empty
+     */
+    public Long getOldestPosition() {
+        return jdbcTemplate.queryForObject("SELECT MIN(id) FROM change_log", Long.class);
+    }
+
+    /**
+     * Delete entries past the retention period, always keeping the newest one so positions stay comparable
+     */
+    @Scheduled(fixedDelayString = "${chat.sync.prune-interval-ms:3600000}")
+    public void prune() {
+        Long newest = jdbcTemplate.queryForObject("SELECT MAX(id) FROM change_log", Long.class);
+        if (newest == null) {
+            return;
+        }
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays));
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(PRUNE_SQL, cutoff, newest, PRUNE_BATCH_SIZE);
+            pruned.addAndGet(deleted);
+        } while (deleted == PRUNE_BATCH_SIZE);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "changeLog";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("appended", appended.get());
+        metrics.put("reads", reads.get());
+        metrics.put("pruned", pruned.get());
+        return metrics;
+    }
+
+    /**
+     * Writes the entries of one transaction just before it commits
+     */
+    private final class ChangeLogSynchronization implements TransactionSynchronization {
+        private final List<Object[]> rows = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            appended.addAndGet(rows.size());
+        }
+    }
+
+    /**
+     * Entries read for a user
+     */
+    public static final class Page {
+        private final List<ChangeLogEntry> entries;
+        private final long settledThrough;
+        private final boolean hasMore;
+
+        Page(List<ChangeLogEntry> entries, long settledThrough, boolean hasMore) {
+            this.entries = entries;
+            this.settledThrough = settledThrough;
+            this.hasMore = hasMore;
+        }
+
+        public List<ChangeLogEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return The position the next read should start after
+         */
+        public long getSettledThrough() {
+            return settledThrough;
+        }
+
+        /**
+         * @return Whether there are more entries than were read
+         */
+        public boolean hasMore() {
+            return hasMore;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.util.MetricsSource;
+import com.chatapp.chatappbackend.util.StripedIntLongMap;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The two participants of each conversation, kept in memory so access checks on every send, read
+ * and receipt cost a map lookup instead of loading the conversation and the user. Both IDs are
+ * packed into one long per conversation (user1 in the high half, user2 in the low half), loaded on
+ * first use and kept until the conversation is deleted; participants of a conversation never
+ * change. Past max-entries, lookups for conversations not yet cached go to the database.
+ */
+@Component
+public class ConversationParticipants implements MetricsSource, InitializingBean {
+
+    private static final String SELECT_SQL = "SELECT user1_id, user2_id FROM conversations WHERE id = ?";
+
+    @Value("${chat.participants.stripes:64}")
+    private int stripes;
+
+    @Value("${chat.participants.max-entries:2000000}")
+    private int maxEntries;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // conversationId -> packed participant IDs
+    private StripedIntLongMap participants;
+
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        this.participants = new StripedIntLongMap(stripes);
+    }
+
+    /**
+     * @return Whether a user is a participant of a conversation
+     * @throws IllegalArgumentException if the conversation doesn't exist
+     */
+    public boolean isParticipant(Integer conversationId, Integer userId) {
+        long packed = lookup(conversationId);
+        return first(packed) == userId || second(packed) == userId;
+    }
+
+    /**
+     * @return The participant of a conversation who is not the given user
+     * @throws IllegalArgumentException if the conversation doesn't exist or the user is not a participant
+     */
+    public Integer getOtherParticipant(Integer conversationId, Integer userId) {
+        long packed = lookup(conversationId);
+        if (first(packed) == userId) {
+            return second(packed);
+        } else if (second(packed) == userId) {
+            return first(packed);
+        }
+        throw new IllegalArgumentException("User is not a participant in this conversation");
+    }
+
+    /**
+     * Record the participants of a conversation that was just created
+     */
+    public void put(Integer conversationId, Integer user1Id, Integer user2Id) {
+        store(conversationId, pack(user1Id, user2Id));
+    }
+
+    /**
+     * Forget a conversation that was deleted
+     */
+    public void evict(Integer conversationId) {
+        if (participants.getAndUpdate(conversationId, packed -> 0) != 0) {
+            entries.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "participants";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("conversations", entries.get());
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        return metrics;
+    }
+
+    private long lookup(Integer conversationId) {
+        long packed = participants.get(conversationId);
+        if (packed != 0) {
+            hits.incrementAndGet();
+            return packed;
+        }
+        misses.incrementAndGet();
+        List<Long> rows = jdbcTemplate.query(SELECT_SQL,
+            (rs, rowNum) -> pack(rs.getInt("user1_id"), rs.getInt("user2_id")), conversationId);
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Conversation with ID " + conversationId + " not found");
+        }
+        packed = rows.get(0);
+        store(conversationId, packed);
+        return packed;
+    }
+
+    private void store(Integer conversationId, long packed) {
+        if (entries.get() >= maxEntries) {
+            return;
+        }
+        if (participants.getAndUpdate(conversationId, previous -> packed) == 0) {
+            entries.incrementAndGet();
+        }
+    }
+
+    // User IDs are positive, so a packed pair is never 0 ("absent")
+    static long pack(int user1Id, int user2Id) {
+        return ((long) user1Id << 32) | (user2Id & 0xffffffffL);
+    }
+
+    private static int first(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    private static int second(long packed) {
+        return (int) packed;
+    }
+}
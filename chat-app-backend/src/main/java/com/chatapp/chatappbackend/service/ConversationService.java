@@ -1,22 +1,31 @@
 package com.chatapp.chatappbackend.service;
 
 import com.chatapp.chatappbackend.dto.ConversationDTO;
+import com.chatapp.chatappbackend.model.ChangeType;
 import com.chatapp.chatappbackend.model.Conversation;
 import com.chatapp.chatappbackend.model.User;
+import com.chatapp.chatappbackend.repository.ConversationMemberRepository;
 import com.chatapp.chatappbackend.repository.ConversationRepository;
 import com.chatapp.chatappbackend.repository.UserRepository;
+import com.chatapp.chatappbackend.util.TransactionCallbacks;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
-public class ConversationService {
+public class ConversationService implements InitializingBean {
 
     @Autowired
     private ConversationRepository conversationRepository;
@@ -24,6 +33,34 @@ public class ConversationService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private UserProfileCache userProfileCache;
+    
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+    
+    @Autowired
+    private ConversationMemberRepository conversationMemberRepository;
+    
+    @Autowired
+    private ChangeLog changeLog;
+    
+    @Autowired
+    private ConversationParticipants conversationParticipants;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    // Listings read the unread counters first and only then open their read-only transaction,
+    // so a counter load never runs inside one (and never needs a second connection beside it)
+    private TransactionTemplate readOnlyTemplate;
+    
+    @Override
+    public void afterPropertiesSet() {
+        this.readOnlyTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate.setReadOnly(true);
+    }
+    
     /**
      * Get or create a conversation between two users
      * @param user1Id The ID of the first user
@@ -32,10 +69,10 @@ public class ConversationService {
      */
     @Transactional
     public Conversation getOrCreateConversation(Integer user1Id, Integer user2Id) {
-        User user1 = userRepository.findById(user1Id)
+        User user1 = userProfileCache.findById(user1Id)
             .orElseThrow(() -> new IllegalArgumentException("User with ID " + user1Id + " not found"));
         
-        User user2 = userRepository.findById(user2Id)
+        User user2 = userProfileCache.findById(user2Id)
             .orElseThrow(() -> new IllegalArgumentException("User with ID " + user2Id + " not found"));
         
         // Check if conversation already exists
@@ -45,9 +82,15 @@ public class ConversationService {
             return existingConversation.get();
         }
         
-        // Create new conversation if it doesn't exist
-        Conversation newConversation = new Conversation(user1, user2);
-        return conversationRepository.save(newConversation);
+        // Create new conversation if it doesn't exist, with a membership (read mark) per participant
+        Conversation newConversation = conversationRepository.save(new Conversation(user1, user2));
+        conversationMemberRepository.insertIfAbsent(newConversation.getId(), user1Id);
+        conversationMemberRepository.insertIfAbsent(newConversation.getId(), user2Id);
+        changeLog.append(ChangeType.CONVERSATION_CREATED, newConversation.getId(), null, user1Id, null);
+        // Cached once the conversation is committed, so a rollback leaves no participants behind
+        Integer conversationId = newConversation.getId();
+        TransactionCallbacks.afterCommit(() -> conversationParticipants.put(conversationId, user1Id, user2Id));
+        return newConversation;
     }
     
     /**
@@ -55,20 +98,19 @@ public class ConversationService {
      * @param userId The ID of the user
      * @return List of conversation DTOs
      */
-    @Transactional(readOnly = true)
     public List<ConversationDTO> getConversationsForUser(Integer userId) {
-        User currentUser = userRepository.findById(userId)
-            .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
-        
-        List<Conversation> conversations = conversationRepository.findConversationsForUser(currentUser);
-        
-        return conversations.stream()
-            .map(conversation -> {
-                long unreadCount = conversationRepository.countUnreadMessagesInConversation(
-                    conversation.getId(), userId);
-                return new ConversationDTO(conversation, currentUser, (int) unreadCount);
-            })
-            .collect(Collectors.toList());
+        // One lookup for all counters instead of a COUNT query per conversation
+        Map<Integer, Integer> unreadCounts = unreadCounterService.getUnreadCounts(userId);
+        return readOnlyTemplate.execute(status -> {
+            User currentUser = userProfileCache.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+            
+            List<Conversation> conversations = conversationRepository.findConversationsForUser(currentUser);
+            return conversations.stream()
+                .map(conversation -> new ConversationDTO(conversation, currentUser,
+                    unreadCounts.getOrDefault(conversation.getId(), 0)))
+                .collect(Collectors.toList());
+        });
     }
     
     /**
@@ -80,17 +122,22 @@ public class ConversationService {
      */
     @Transactional(readOnly = true)
     public Conversation getConversationForUser(Integer conversationId, Integer userId) {
-        Conversation conversation = conversationRepository.findById(conversationId)
+        checkParticipant(conversationId, userId);
+        return conversationRepository.findById(conversationId)
             .orElseThrow(() -> new IllegalArgumentException("Conversation with ID " + conversationId + " not found"));
-        
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
-        
-        if (!conversation.hasParticipant(user)) {
+    }
+    
+    /**
+     * Ensure a user is a participant of a conversation, from memory when its participants are cached.
+     * Use this instead of getConversationForUser when the conversation itself is not needed.
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user trying to access the conversation
+     * @throws IllegalArgumentException if the conversation doesn't exist or user is not a participant
+     */
+    public void checkParticipant(Integer conversationId, Integer userId) {
+        if (!conversationParticipants.isParticipant(conversationId, userId)) {
             throw new IllegalArgumentException("User is not a participant in this conversation");
         }
-        
-        return conversation;
     }
     
     /**
@@ -99,14 +146,42 @@ public class ConversationService {
      * @param userId The ID of the user accessing the conversation
      * @return The conversation DTO
      */
-    @Transactional(readOnly = true)
     public ConversationDTO getConversationDTO(Integer conversationId, Integer userId) {
-        Conversation conversation = getConversationForUser(conversationId, userId);
-        User currentUser = userRepository.findById(userId)
-            .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+        checkParticipant(conversationId, userId);
+        int unreadCount = unreadCounterService.getUnreadCount(conversationId, userId);
+        return readOnlyTemplate.execute(status -> {
+            Conversation conversation = getConversationForUser(conversationId, userId);
+            User currentUser = userProfileCache.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+            return new ConversationDTO(conversation, currentUser, unreadCount);
+        });
+    }
+
+    /**
+     * Get some of a user's conversations; IDs of conversations the user is not in are skipped
+     * @param userId The ID of the user
+     * @param conversationIds The IDs of the conversations
+     * @return List of conversation DTOs, most recently active first
+     */
+    public List<ConversationDTO> getConversationsForUser(Integer userId, Collection<Integer> conversationIds) {
+        if (conversationIds.isEmpty()) {
+            userProfileCache.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+            return List.of();
+        }
         
-        long unreadCount = conversationRepository.countUnreadMessagesInConversation(conversationId, userId);
-        return new ConversationDTO(conversation, currentUser, (int) unreadCount);
+        Map<Integer, Integer> unreadCounts = unreadCounterService.getUnreadCounts(userId);
+        return readOnlyTemplate.execute(status -> {
+            User currentUser = userProfileCache.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+            return conversationRepository.findAllById(conversationIds).stream()
+                .filter(conversation -> conversation.hasParticipant(currentUser))
+                .sorted(Comparator.comparing(Conversation::getLastMessageTime,
+                    Comparator.nullsLast(Comparator.reverseOrder())))
+                .map(conversation -> new ConversationDTO(conversation, currentUser,
+                    unreadCounts.getOrDefault(conversation.getId(), 0)))
+                .collect(Collectors.toList());
+        });
     }
 
     /**
@@ -115,21 +190,48 @@ public class ConversationService {
      * @param limit The maximum number of conversations to return
      * @return List of conversation DTOs
      */
-    @Transactional(readOnly = true)
     public List<ConversationDTO> getConversationsForUserWithLimit(Integer userId, int limit) {
-        User currentUser = userRepository.findById(userId)
-            .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
-        
-        // Use PageRequest instead of raw limit parameter
-        PageRequest pageRequest = PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "lastMessageTime"));
-        List<Conversation> conversations = conversationRepository.findConversationsForUserWithLimit(userId, pageRequest);
-        
-        return conversations.stream()
-            .map(conversation -> {
-                long unreadCount = conversationRepository.countUnreadMessagesInConversation(
-                    conversation.getId(), userId);
-                return new ConversationDTO(conversation, currentUser, (int) unreadCount);
-            })
-            .collect(Collectors.toList());
+        // One lookup for all counters instead of a COUNT query per conversation
+        Map<Integer, Integer> unreadCounts = unreadCounterService.getUnreadCounts(userId);
+        return readOnlyTemplate.execute(status -> {
+            User currentUser = userProfileCache.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+            
+            // Use PageRequest instead of raw limit parameter
+            PageRequest pageRequest = PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "lastMessageTime"));
+            List<Conversation> conversations = conversationRepository.findConversationsForUserWithLimit(userId, pageRequest);
+            return conversations.stream()
+                .map(conversation -> new ConversationDTO(conversation, currentUser,
+                    unreadCounts.getOrDefault(conversation.getId(), 0)))
+                .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Get the total number of unread messages of a user across all conversations
+     * @param userId The ID of the user
+     * @return The unread message count
+     */
+    public int getTotalUnreadCount(Integer userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new IllegalArgumentException("User with ID " + userId + " not found");
+        }
+        return unreadCounterService.getTotalUnreadCount(userId);
+    }
+
+    /**
+     * Allocate a block of consecutive message sequence numbers in a conversation.
+     * Must run inside the transaction that inserts the messages: the conversation row stays
+     * locked until commit, which orders concurrent senders without locking other conversations.
+     * @param conversationId The ID of the conversation
+     * @param count The number of sequence numbers to allocate
+     * @return The first sequence number of the allocated block
+     */
+    @Transactional
+    public long allocateSequences(Integer conversationId, int count) {
+        if (conversationRepository.incrementSequence(conversationId, count) == 0) {
+            throw new IllegalArgumentException("Conversation with ID " + conversationId + " not found");
+        }
+        return conversationRepository.findLastSequence(conversationId) - count + 1;
     }
-} 
\ No newline at end of file
+}
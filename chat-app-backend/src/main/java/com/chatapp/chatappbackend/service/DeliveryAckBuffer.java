@@ -0,0 +1,336 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.DeliveryReceiptDTO;
+import com.chatapp.chatappbackend.model.ChangeType;
+import com.chatapp.chatappbackend.model.ConversationMember;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import com.chatapp.chatappbackend.websocket.FrameSender;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers delivery acknowledgements and applies them periodically. Each flush marks all
+ * acknowledged messages delivered with set-based UPDATEs in one transaction, then tells each
+ * sender about their delivered messages with one frame per conversation, instead of one
+ * request, two entity loads and one UPDATE per message.
+ *
+ * The pending limit counts messages, so a sequence range counts every sequence it covers. When a
+ * flush fails, each member's acknowledgements are retried in a transaction of their own, so one
+ * that cannot be applied does not hold back the rest; it is dropped with a log line once it has
+ * failed chat.delivery.max-attempts times.
+ */
+@Service
+public class DeliveryAckBuffer implements MetricsSource, InitializingBean, DisposableBean {
+
+    // Only undelivered, live messages the acknowledging user did not send themselves
+    private static final String SELECT_UNDELIVERED_SQL =
+        "SELECT id, seq, sender_id FROM messages WHERE conversation_id = :conversationId " +
+        "AND sender_id <> :userId AND is_delivered = false AND is_deleted = false AND (";
+
+    private static final String MARK_DELIVERED_SQL =
+        "UPDATE messages SET is_delivered = true, delivered_at = :deliveredAt " +
+        "WHERE id IN (:ids) AND is_delivered = false";
+
+    // Parameters per statement, keeping IN lists well under the server's packet and placeholder limits
+    private static final int CHUNK_SIZE = 1000;
+
+    @Value("${chat.delivery.max-pending:100000}")
+    private int maxPending;
+
+    @Value("${chat.delivery.max-attempts:50}")
+    private int maxAttempts;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MessageOutbox messageOutbox;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    // Acknowledgements waiting for the next flush, per acknowledging member; guarded by this
+    private Map<ConversationMember.Key, PendingAcks> pending = new LinkedHashMap<>();
+    // Messages they cover, IDs and range sequences alike; guarded by this
+    private long pendingCount;
+
+    private final AtomicLong acks = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong deliveredMessages = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong droppedAcks = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+
+    /**
+     * Queue a delivery acknowledgement for the next flush
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who received the messages
+     * @param messageIds The IDs of the messages received (may be empty)
+     * @param fromSequence The first sequence number of a received range, or null
+     * @param toSequence The last sequence number of a received range, or null
+     */
+    public void acknowledge(Integer conversationId, Integer userId, List<Long> messageIds,
+                            Long fromSequence, Long toSequence) {
+        long rangeSize = fromSequence != null ? toSequence - fromSequence + 1 : 0;
+        long size = (messageIds == null ? 0 : messageIds.size()) + rangeSize;
+        synchronized (this) {
+            if (pendingCount + size > maxPending) {
+                throw new IllegalStateException("Too many pending delivery acknowledgements, try again");
+            }
+            PendingAcks acksForMember = pending.computeIfAbsent(
+                new ConversationMember.Key(conversationId, userId), key -> new PendingAcks());
+            long before = acksForMember.size;
+            if (messageIds != null) {
+                for (Long messageId : messageIds) {
+                    if (acksForMember.messageIds.add(messageId)) {
+                        acksForMember.size++;
+                    }
+                }
+            }
+            if (fromSequence != null) {
+                acksForMember.ranges.add(new long[] { fromSequence, toSequence });
+                acksForMember.size += rangeSize;
+            }
+            pendingCount += acksForMember.size - before;
+        }
+        acks.incrementAndGet();
+    }
+
+    /**
+     * Apply every queued acknowledgement and notify the senders
+     */
+    @Scheduled(fixedDelayString = "${chat.delivery.flush-interval-ms:200}")
+    public void flush() {
+        Map<ConversationMember.Key, PendingAcks> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            pendingCount = 0;
+        }
+
+        List<DeliveredMessage> delivered;
+        try {
+            delivered = apply(batch);
+            flushes.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedFlushes.incrementAndGet();
+            System.err.println("Failed to apply delivery acknowledgements: " + e.getMessage());
+            // Apply each member's acknowledgements on their own, so only the ones that fail wait
+            delivered = new ArrayList<>();
+            for (Map.Entry<ConversationMember.Key, PendingAcks> entry : batch.entrySet()) {
+                if (batch.size() == 1) {
+                    retryLater(entry.getKey(), entry.getValue(), e);
+                    continue;
+                }
+                try {
+                    delivered.addAll(apply(Map.of(entry.getKey(), entry.getValue())));
+                } catch (RuntimeException memberError) {
+                    retryLater(entry.getKey(), entry.getValue(), memberError);
+                }
+            }
+        }
+        deliveredMessages.addAndGet(delivered.size());
+
+        for (DeliveredMessage message : delivered) {
+            recentMessageCache.markDelivered(message.conversationId, message.sequence);
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "deliveryAcks";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("pending", pendingCount);
+        }
+        metrics.put("acks", acks.get());
+        metrics.put("flushes", flushes.get());
+        metrics.put("deliveredMessages", deliveredMessages.get());
+        metrics.put("failedFlushes", failedFlushes.get());
+        metrics.put("droppedAcks", droppedAcks.get());
+        return metrics;
+    }
+
+    private List<DeliveredMessage> apply(Map<ConversationMember.Key, PendingAcks> batch) {
+        LocalDateTime deliveredAt = LocalDateTime.now();
+        // Receipts go through the outbox in the same transaction as the updates they report
+        return transactionTemplate.execute(status -> {
+            List<DeliveredMessage> marked = markDelivered(batch, deliveredAt);
+            publish(marked, deliveredAt);
+            return marked;
+        });
+    }
+
+    // Acknowledgements are idempotent, so put them back for the next flush until they run out of attempts
+    private void retryLater(ConversationMember.Key key, PendingAcks acksForMember, RuntimeException error) {
+        int attempts = acksForMember.attempts + 1;
+        if (attempts >= maxAttempts) {
+            droppedAcks.addAndGet(acksForMember.size);
+            System.err.println("Dropping " + acksForMember.size + " delivery acknowledgements of user " + key.getUserId() +
+                " in conversation " + key.getConversationId() + " after " + attempts + " attempts: " + error.getMessage());
+            return;
+        }
+        synchronized (this) {
+            PendingAcks merged = pending.computeIfAbsent(key, k -> new PendingAcks());
+            merged.messageIds.addAll(acksForMember.messageIds);
+            merged.ranges.addAll(acksForMember.ranges);
+            merged.size += acksForMember.size;
+            merged.attempts = Math.max(merged.attempts, attempts);
+            pendingCount += acksForMember.size;
+        }
+    }
+
+    private List<DeliveredMessage> markDelivered(Map<ConversationMember.Key, PendingAcks> batch, LocalDateTime deliveredAt) {
+        List<DeliveredMessage> delivered = new ArrayList<>();
+        for (Map.Entry<ConversationMember.Key, PendingAcks> entry : batch.entrySet()) {
+            ConversationMember.Key key = entry.getKey();
+            PendingAcks acksForMember = entry.getValue();
+            List<Long> messageIds = new ArrayList<>(acksForMember.messageIds);
+            List<long[]> ranges = acksForMember.ranges;
+            // A message named by ID and covered by a range in another chunk is reported once
+            Set<Long> selected = new HashSet<>();
+
+            // Each query selects up to CHUNK_SIZE acknowledged IDs and range bounds of the member
+            int idStart = 0;
+            int rangeStart = 0;
+            while (idStart < messageIds.size() || rangeStart < ranges.size()) {
+                int idEnd = Math.min(idStart + CHUNK_SIZE, messageIds.size());
+                int rangeEnd = Math.min(rangeStart + (CHUNK_SIZE - (idEnd - idStart)) / 2, ranges.size());
+
+                MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("conversationId", key.getConversationId())
+                    .addValue("userId", key.getUserId());
+                StringBuilder sql = new StringBuilder(SELECT_UNDELIVERED_SQL);
+                String separator = "";
+                if (idEnd > idStart) {
+                    sql.append("id IN (:messageIds)");
+                    params.addValue("messageIds", messageIds.subList(idStart, idEnd));
+                    separator = " OR ";
+                }
+                for (int i = rangeStart; i < rangeEnd; i++) {
+                    long[] range = ranges.get(i);
+                    sql.append(separator).append("seq BETWEEN :from").append(i).append(" AND :to").append(i);
+                    params.addValue("from" + i, range[0]).addValue("to" + i, range[1]);
+                    separator = " OR ";
+                }
+                sql.append(")");
+
+                namedJdbcTemplate.query(sql.toString(), params, rs -> {
+                    long id = rs.getLong("id");
+                    if (selected.add(id)) {
+                        delivered.add(new DeliveredMessage(key.getConversationId(), key.getUserId(),
+                            rs.getInt("sender_id"), id, rs.getLong("seq")));
+                    }
+                });
+                idStart = idEnd;
+                rangeStart = rangeEnd;
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(delivered.size());
+        for (DeliveredMessage message : delivered) {
+            ids.add(message.id);
+        }
+        Timestamp deliveredAtTimestamp = Timestamp.valueOf(deliveredAt);
+        for (int start = 0; start < ids.size(); start += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(start, Math.min(start + CHUNK_SIZE, ids.size()));
+            namedJdbcTemplate.update(MARK_DELIVERED_SQL, new MapSqlParameterSource()
+                .addValue("deliveredAt", deliveredAtTimestamp)
+                .addValue("ids", chunk));
+        }
+        return delivered;
+    }
+
+    private void publish(List<DeliveredMessage> delivered, LocalDateTime deliveredAt) {
+        // One receipt per (conversation, sender), however many acknowledgements it aggregates
+        Map<String, DeliveryReceiptDTO> receipts = new LinkedHashMap<>();
+        Map<String, Integer> receiptSenders = new LinkedHashMap<>();
+        for (DeliveredMessage message : delivered) {
+            String receiptKey = message.conversationId + ":" + message.senderId;
+            DeliveryReceiptDTO receipt = receipts.computeIfAbsent(receiptKey,
+                k -> new DeliveryReceiptDTO(message.conversationId, message.recipientId, deliveredAt));
+            receipt.getMessageIds().add(message.id);
+            receipt.getSequences().add(message.sequence);
+            receiptSenders.put(receiptKey, message.senderId);
+            changeLog.append(ChangeType.MESSAGE_DELIVERED, message.conversationId, message.id, message.recipientId, message.sequence);
+        }
+        receipts.forEach((receiptKey, receipt) -> messageOutbox.publish(
+            receipt, FrameSender.userDestination(receiptSenders.get(receiptKey), "/queue/delivered")));
+    }
+
+    /**
+     * Acknowledgements of one member since the last flush
+     */
+    private static final class PendingAcks {
+        private final Set<Long> messageIds = new HashSet<>();
+        private final List<long[]> ranges = new ArrayList<>();
+        // Messages covered, counting every sequence of a range
+        private long size;
+        // Failed flushes these acknowledgements have been part of
+        private int attempts;
+    }
+
+    /**
+     * A message that a flush marked as delivered
+     */
+    private static final class DeliveredMessage {
+        private final Integer conversationId;
+        private final Integer recipientId;
+        private final Integer senderId;
+        private final long id;
+        private final long sequence;
+
+        DeliveredMessage(Integer conversationId, Integer recipientId, Integer senderId, long id, long sequence) {
+            this.conversationId = conversationId;
+            this.recipientId = recipientId;
+            this.senderId = senderId;
+            this.id = id;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.repository.FriendshipRepository;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Who is friends with whom, in memory: each user's friend IDs as a sorted int[], so "are these two
+ * friends" is a binary search and a friend list is an array read. The friendships table stays the
+ * source of truth; the index is loaded from it at startup and on every rebuild, and kept current
+ * by FriendshipService after each accept and removal commits. Until the first load finishes,
+ * lookups go to the database. Arrays are replaced, never modified, so readers need no lock.
+ *
+ * Changes made on other instances only arrive with the next rebuild, so the index serves what may
+ * lag by that much (presence fan-out, mutual-friend counts, suggestions); decisions about whether
+ * two users are friends read the friendships table.
+ */
+@Service
+@Order(4)
+public class FriendGraph implements CommandLineRunner, MetricsSource {
+
+    private static final int[] NO_FRIENDS = new int[0];
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    // userId -> sorted friend IDs; null until the first load
+    private volatile Map<Integer, int[]> adjacency;
+
+    // Changes applied while a rebuild is loading, replayed onto the loaded graph; guarded by this
+    private List<long[]> changesDuringRebuild;
+
+    private final Object rebuildLock = new Object();
+
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private volatile long lastRebuildMillis;
+    private volatile long lastRebuildDurationMillis;
+    private volatile int edgeCount;
+
+    @Override
+    public void run(String... args) {
+        rebuild();
+    }
+
+    /**
+     * @return Whether two users are friends
+     */
+    public boolean areFriends(Integer userId, Integer otherId) {
+        Map<Integer, int[]> graph = adjacency;
+        if (graph == null) {
+            fallbacks.incrementAndGet();
+            return friendshipRepository.existsByUser1IdAndUser2Id(Math.min(userId, otherId), Math.max(userId, otherId));
+        }
+        return Arrays.binarySearch(graph.getOrDefault(userId, NO_FRIENDS), otherId) >= 0;
+    }
+
+    /**
+     * @return The IDs of a user's friends in ascending order; shared, so callers must not modify it
+     */
+    public int[] getFriendIds(Integer userId) {
+        Map<Integer, int[]> graph = adjacency;
+        if (graph == null) {
+            fallbacks.incrementAndGet();
+            int[] friendIds = friendshipRepository.findFriendIds(userId).stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(friendIds);
+            return friendIds;
+        }
+        return graph.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    /**
+     * @return How many friends two users have in common
+     */
+    public int countMutualFriends(Integer userId, Integer otherId) {
+        return intersectionSize(getFriendIds(userId), getFriendIds(otherId));
+    }
+
+    /**
+     * Record a friendship that was just committed
+     */
+    public synchronized void addFriendship(Integer userId, Integer friendId) {
+        change(userId, friendId, true);
+    }
+
+    /**
+     * Record the removal of a friendship that was just committed
+     */
+    public synchronized void removeFriendship(Integer userId, Integer friendId) {
+        change(userId, friendId, false);
+    }
+
+    /**
+     * Reload the whole graph from the friendships table. Accepts and removals committed during
+     * the load are replayed onto the new graph before it replaces the old one.
+     */
+    @Scheduled(fixedDelayString = "${chat.friend-graph.rebuild-interval-ms:3600000}",
+               initialDelayString = "${chat.friend-graph.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                changesDuringRebuild = new ArrayList<>();
+            }
+            Map<Integer, int[]> loaded;
+            try {
+                loaded = load();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    changesDuringRebuild = null;
+                }
+                System.err.println("Failed to load the friend graph: " + e.getMessage());
+                return;
+            }
+            synchronized (this) {
+                Map<Integer, int[]> graph = new ConcurrentHashMap<>(loaded);
+                for (long[] change : changesDuringRebuild) {
+                    apply(graph, (int) change[0], (int) change[1], change[2] == 1);
+                }
+                changesDuringRebuild = null;
+                adjacency = graph;
+                edgeCount = countEdges(graph);
+            }
+            rebuilds.incrementAndGet();
+            lastRebuildMillis = System.currentTimeMillis();
+            lastRebuildDurationMillis = lastRebuildMillis - start;
+        }
+    }
+
+    /**
+     * Compare the index against the friendships table without changing it
+     * @return The number of friendships in each and how many are missing from or extra in the index
+     */
+    public Map<String, Object> verify() {
+        Map<Integer, int[]> graph = adjacency;
+        Map<Integer, int[]> stored = load();
+        long missing = 0;
+        long extra = 0;
+        for (Map.Entry<Integer, int[]> entry : stored.entrySet()) {
+            int[] indexed = graph != null ? graph.getOrDefault(entry.getKey(), NO_FRIENDS) : NO_FRIENDS;
+            missing += countNotIn(entry.getValue(), indexed);
+        }
+        if (graph != null) {
+            for (Map.Entry<Integer, int[]> entry : graph.entrySet()) {
+                extra += countNotIn(entry.getValue(), stored.getOrDefault(entry.getKey(), NO_FRIENDS));
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("loaded", graph != null);
+        result.put("storedFriendships", countEdges(stored));
+        result.put("indexedFriendships", graph != null ? countEdges(graph) : 0);
+        // Each friendship is listed under both users
+        result.put("missing", missing / 2);
+        result.put("extra", extra / 2);
+        result.put("consistent", graph != null && missing == 0 && extra == 0);
+        return result;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "friendGraph";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Map<Integer, int[]> graph = adjacency;
+        metrics.put("loaded", graph != null);
+        metrics.put("users", graph != null ? graph.size() : 0);
+        metrics.put("friendships", edgeCount);
+        metrics.put("fallbacks", fallbacks.get());
+        metrics.put("rebuilds", rebuilds.get());
+        metrics.put("lastRebuildMillis", lastRebuildMillis);
+        metrics.put("lastRebuildDurationMillis", lastRebuildDurationMillis);
+        return metrics;
+    }
+
+    // Caller holds the lock on this
+    private void change(int userId, int friendId, boolean add) {
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(new long[] { userId, friendId, add ? 1 : 0 });
+        }
+        Map<Integer, int[]> graph = adjacency;
+        if (graph != null && apply(graph, userId, friendId, add)) {
+            edgeCount += add ? 1 : -1;
+        }
+    }
+
+    // Both directions; returns whether the friendship was added or removed rather than already so
+    private static boolean apply(Map<Integer, int[]> graph, int userId, int friendId, boolean add) {
+        boolean changed = update(graph, userId, friendId, add);
+        update(graph, friendId, userId, add);
+        return changed;
+    }
+
+    private static boolean update(Map<Integer, int[]> graph, int userId, int friendId, boolean add) {
+        int[] friends = graph.getOrDefault(userId, NO_FRIENDS);
+        int index = Arrays.binarySearch(friends, friendId);
+        if (add == (index >= 0)) {
+            return false;
+        }
+        int[] updated;
+        if (add) {
+            int insertAt = -index - 1;
+            updated = new int[friends.length + 1];
+            System.arraycopy(friends, 0, updated, 0, insertAt);
+            updated[insertAt] = friendId;
+            System.arraycopy(friends, insertAt, updated, insertAt + 1, friends.length - insertAt);
+        } else {
+            updated = new int[friends.length - 1];
+            System.arraycopy(friends, 0, updated, 0, index);
+            System.arraycopy(friends, index + 1, updated, index, friends.length - index - 1);
+        }
+        if (updated.length == 0) {
+            graph.remove(userId);
+        } else {
+            graph.put(userId, updated);
+        }
+        return true;
+    }
+
+    // One pass over the table; per-user arrays grow by doubling and are trimmed and sorted at the end
+    private Map<Integer, int[]> load() {
+        Map<Integer, int[]> friends = new HashMap<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT user1_id, user2_id FROM friendships", rs -> {
+            int user1 = rs.getInt("user1_id");
+            int user2 = rs.getInt("user2_id");
+            append(friends, counts, user1, user2);
+            append(friends, counts, user2, user1);
+        });
+        Map<Integer, int[]> graph = new HashMap<>(friends.size() * 4 / 3 + 1);
+        for (Map.Entry<Integer, int[]> entry : friends.entrySet()) {
+            int[] ids = Arrays.copyOf(entry.getValue(), counts.get(entry.getKey()));
+            Arrays.sort(ids);
+            graph.put(entry.getKey(), ids);
+        }
+        return graph;
+    }
+
+    private static void append(Map<Integer, int[]> friends, Map<Integer, Integer> counts, int userId, int friendId) {
+        int count = counts.getOrDefault(userId, 0);
+        int[] ids = friends.get(userId);
+        if (ids == null) {
+            ids = new int[4];
+            friends.put(userId, ids);
+        } else if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+            friends.put(userId, ids);
+        }
+        ids[count] = friendId;
+        counts.put(userId, count + 1);
+    }
+
+    private static int countEdges(Map<Integer, int[]> graph) {
+        long total = 0;
+        for (int[] friends : graph.values()) {
+            total += friends.length;
+        }
+        return (int) (total / 2);
+    }
+
+    /**
+     * Count the values two sorted arrays share. Arrays of similar length are merged; when one is
+     * much shorter its values are searched for in the longer one, each search starting where the
+     * previous one ended.
+     */
+    static int intersectionSize(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] swap = a;
+            a = b;
+            b = swap;
+        }
+        int count = 0;
+        if (a.length * 32 < b.length) {
+            int from = 0;
+            for (int value : a) {
+                int index = Arrays.binarySearch(b, from, b.length, value);
+                if (index >= 0) {
+                    count++;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+                if (from == b.length) {
+                    break;
+                }
+            }
+            return count;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    // How many of the sorted values in a are not in the sorted array b
+    private static long countNotIn(int[] a, int[] b) {
+        long count = 0;
+        int j = 0;
+        for (int value : a) {
+            while (j < b.length && b[j] < value) {
+                j++;
+            }
+            if (j == b.length || b[j] != value) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
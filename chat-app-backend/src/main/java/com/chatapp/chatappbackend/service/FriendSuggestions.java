@@ -0,0 +1,285 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.util.BoundedCache;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Friends of a user's friends who are not yet their friends, ranked by how many friends they have
+ * in common. The friend lists of all the user's friends are gathered into one array, sorted, and
+ * counted run by run; for users whose friends have many friends between them the lists are split
+ * into ranges that are counted in parallel on a fork-join pool and merged. Rankings are cached per
+ * user. A friendship between A and B changes the candidates of A, B and the friends of each, so
+ * exactly those rankings are dropped when it commits. Changes made on other instances reach the
+ * friend graph only at its next rebuild (chat.friend-graph.rebuild-interval-ms, an hour by
+ * default), and a ranking computed before that rebuild is kept until its entry expires
+ * (chat.friend-suggestions.ttl-ms), so such a change can take up to the sum of the two to show.
+ */
+@Service
+public class FriendSuggestions implements MetricsSource, InitializingBean, DisposableBean {
+
+    // Friend-of-friend entries one fork-join task counts by itself
+    private static final int LEAF_ENTRIES = 8192;
+
+    @Value("${chat.friend-suggestions.max-ranked:50}")
+    private int maxRanked;
+
+    @Value("${chat.friend-suggestions.parallel-threshold:65536}")
+    private int parallelThreshold;
+
+    @Value("${chat.friend-suggestions.parallelism:0}")
+    private int parallelism;
+
+    @Value("${chat.friend-suggestions.cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${chat.friend-suggestions.ttl-ms:600000}")
+    private long ttlMillis;
+
+    @Autowired
+    private FriendGraph friendGraph;
+
+    private ForkJoinPool pool;
+
+    private BoundedCache<Integer, Ranking> cache;
+
+    private final AtomicLong computations = new AtomicLong();
+    private final AtomicLong parallelComputations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.cache = new BoundedCache<>(cacheSize, ttlMillis, 16);
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Get the best-ranked suggestions for a user
+     * @param userId The ID of the user
+     * @param limit The maximum number of suggestions; at most chat.friend-suggestions.max-ranked are kept
+     * @return Candidates, most mutual friends first
+     */
+    public Ranking getSuggestions(Integer userId, int limit) {
+        Ranking ranking = cache.get(userId, this::rank);
+        return ranking.limit(limit);
+    }
+
+    /**
+     * Drop the rankings a friendship between two users changes; call after the friend graph has been updated
+     */
+    public void friendshipChanged(Integer userId, Integer friendId) {
+        int dropped = invalidateWithFriends(userId) + invalidateWithFriends(friendId);
+        invalidations.addAndGet(dropped);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "friendSuggestions";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(cache.getMetrics());
+        metrics.put("computations", computations.get());
+        metrics.put("parallelComputations", parallelComputations.get());
+        metrics.put("invalidations", invalidations.get());
+        return metrics;
+    }
+
+    private int invalidateWithFriends(int userId) {
+        cache.invalidate(userId);
+        int[] friendIds = friendGraph.getFriendIds(userId);
+        for (int friendId : friendIds) {
+            cache.invalidate(friendId);
+        }
+        return friendIds.length + 1;
+    }
+
+    private Ranking rank(Integer userId) {
+        computations.incrementAndGet();
+        int[] friends = friendGraph.getFriendIds(userId);
+        int[][] friendLists = new int[friends.length][];
+        long entries = 0;
+        for (int i = 0; i < friends.length; i++) {
+            friendLists[i] = friendGraph.getFriendIds(friends[i]);
+            entries += friendLists[i].length;
+        }
+
+        long[] counts;
+        if (entries > parallelThreshold && friends.length > 1) {
+            parallelComputations.incrementAndGet();
+            counts = pool.invoke(new CountTask(userId, friends, friendLists, 0, friends.length));
+        } else {
+            counts = count(userId, friends, friendLists, 0, friends.length);
+        }
+        return Ranking.top(counts, maxRanked);
+    }
+
+    /**
+     * Count how often each candidate appears in the friend lists of friends [from, to)
+     * @return (candidate << 32 | count) per candidate, ascending by candidate
+     */
+    static long[] count(int userId, int[] friends, int[][] friendLists, int from, int to) {
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            size += friendLists[i].length;
+        }
+        int[] candidates = new int[size];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            for (int candidate : friendLists[i]) {
+                if (candidate != userId && Arrays.binarySearch(friends, candidate) < 0) {
+                    candidates[n++] = candidate;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, n);
+
+        long[] counts = new long[n];
+        int runs = 0;
+        for (int i = 0; i < n; ) {
+            int j = i + 1;
+            while (j < n && candidates[j] == candidates[i]) {
+                j++;
+            }
+            counts[runs++] = (long) candidates[i] << 32 | (j - i);
+            i = j;
+        }
+        return Arrays.copyOf(counts, runs);
+    }
+
+    // Both ascending by candidate; counts of a candidate in both are added
+    static long[] merge(long[] a, long[] b) {
+        long[] merged = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            long candidateA = a[i] >>> 32;
+            long candidateB = b[j] >>> 32;
+            if (candidateA < candidateB) {
+                merged[n++] = a[i++];
+            } else if (candidateA > candidateB) {
+                merged[n++] = b[j++];
+            } else {
+                merged[n++] = a[i++] + (b[j++] & 0xffffffffL);
+            }
+        }
+        while (i < a.length) {
+            merged[n++] = a[i++];
+        }
+        while (j < b.length) {
+            merged[n++] = b[j++];
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    /**
+     * Splits a range of friends in two until each half holds at most LEAF_ENTRIES friend-of-friend entries
+     */
+    private static final class CountTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int userId;
+        private final int[] friends;
+        private final int[][] friendLists;
+        private final int from;
+        private final int to;
+
+        CountTask(int userId, int[] friends, int[][] friendLists, int from, int to) {
+            this.userId = userId;
+            this.friends = friends;
+            this.friendLists = friendLists;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            long entries = 0;
+            for (int i = from; i < to && entries <= LEAF_ENTRIES; i++) {
+                entries += friendLists[i].length;
+            }
+            if (to - from == 1 || entries <= LEAF_ENTRIES) {
+                return count(userId, friends, friendLists, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(userId, friends, friendLists, from, middle);
+            left.fork();
+            long[] right = new CountTask(userId, friends, friendLists, middle, to).compute();
+            return merge(left.join(), right);
+        }
+    }
+
+    /**
+     * Candidates of one user, most mutual friends first and by ascending ID among equals
+     */
+    public static final class Ranking {
+        private static final Ranking EMPTY = new Ranking(new int[0], new int[0]);
+
+        private final int[] userIds;
+        private final int[] mutualFriendCounts;
+
+        private Ranking(int[] userIds, int[] mutualFriendCounts) {
+            this.userIds = userIds;
+            this.mutualFriendCounts = mutualFriendCounts;
+        }
+
+        static Ranking top(long[] counts, int max) {
+            if (counts.length == 0) {
+                return EMPTY;
+            }
+            // Re-pack so that ascending order is descending count, then ascending candidate
+            long[] keys = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                long count = counts[i] & 0xffffffffL;
+                keys[i] = (Integer.MAX_VALUE - count) << 32 | (counts[i] >>> 32);
+            }
+            Arrays.sort(keys);
+            int size = Math.min(max, keys.length);
+            int[] userIds = new int[size];
+            int[] mutualFriendCounts = new int[size];
+            for (int i = 0; i < size; i++) {
+                userIds[i] = (int) keys[i];
+                mutualFriendCounts[i] = (int) (Integer.MAX_VALUE - (keys[i] >>> 32));
+            }
+            return new Ranking(userIds, mutualFriendCounts);
+        }
+
+        Ranking limit(int limit) {
+            if (limit >= userIds.length) {
+                return this;
+            }
+            int size = Math.max(limit, 0);
+            return new Ranking(Arrays.copyOf(userIds, size), Arrays.copyOf(mutualFriendCounts, size));
+        }
+
+        public int size() {
+            return userIds.length;
+        }
+
+        public int getUserId(int index) {
+            return userIds[index];
+        }
+
+        public int getMutualFriendCount(int index) {
+            return mutualFriendCounts[index];
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.chatapp.chatappbackend.service;
 
 import com.chatapp.chatappbackend.dto.FriendRequestDTO;
+import com.chatapp.chatappbackend.dto.FriendSuggestionDTO;
 import com.chatapp.chatappbackend.dto.FriendshipDTO;
 import com.chatapp.chatappbackend.dto.UserDetailsResponse;
 import com.chatapp.chatappbackend.model.FriendRequest;
@@ -9,7 +10,7 @@ import com.chatapp.chatappbackend.model.RequestStatus;
 import com.chatapp.chatappbackend.model.User;
 import com.chatapp.chatappbackend.repository.FriendRequestRepository;
 import com.chatapp.chatappbackend.repository.FriendshipRepository;
-import com.chatapp.chatappbackend.repository.UserRepository;
+import com.chatapp.chatappbackend.util.TransactionCallbacks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,19 +24,25 @@ import java.util.stream.Collectors;
 @Service
 public class FriendshipService {
 
-    private final UserRepository userRepository;
+    private final UserProfileCache userProfileCache;
     private final FriendRequestRepository friendRequestRepository;
     private final FriendshipRepository friendshipRepository;
+    private final FriendGraph friendGraph;
+    private final FriendSuggestions friendSuggestions;
     
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     @Autowired
-    public FriendshipService(UserRepository userRepository, 
+    public FriendshipService(UserProfileCache userProfileCache, 
                            FriendRequestRepository friendRequestRepository,
-                           FriendshipRepository friendshipRepository) {
-        this.userRepository = userRepository;
+                           FriendshipRepository friendshipRepository,
+                           FriendGraph friendGraph,
+                           FriendSuggestions friendSuggestions) {
+        this.userProfileCache = userProfileCache;
         this.friendRequestRepository = friendRequestRepository;
         this.friendshipRepository = friendshipRepository;
+        this.friendGraph = friendGraph;
+        this.friendSuggestions = friendSuggestions;
     }
 
     /**
@@ -49,13 +56,13 @@ public class FriendshipService {
         }
 
         // Get user entities
-        User sender = userRepository.findById(senderId)
+        User sender = userProfileCache.findById(senderId)
                 .orElseThrow(() -> new IllegalArgumentException("Sender not found"));
-        User receiver = userRepository.findById(receiverId)
+        User receiver = userProfileCache.findById(receiverId)
                 .orElseThrow(() -> new IllegalArgumentException("Receiver not found"));
 
-        // Check if they are already friends
-        if (friendshipRepository.areFriends(sender, receiver)) {
+        // Check if they are already friends; the table, since this instance's graph may lag other instances
+        if (friendshipRepository.existsByUser1IdAndUser2Id(Math.min(senderId, receiverId), Math.max(senderId, receiverId))) {
             throw new IllegalArgumentException("Users are already friends");
         }
 
@@ -115,6 +122,11 @@ public class FriendshipService {
         // Create friendship entry
         Friendship friendship = new Friendship(request.getSender(), request.getReceiver());
         Friendship savedFriendship = friendshipRepository.save(friendship);
+        Integer senderId = request.getSender().getId();
+        TransactionCallbacks.afterCommit(() -> {
+            friendGraph.addFriendship(senderId, userId);
+            friendSuggestions.friendshipChanged(senderId, userId);
+        });
 
         // Return the friend data
         User friend = request.getSender(); // The friend is the sender
@@ -130,7 +142,8 @@ public class FriendshipService {
         return new FriendshipDTO(
             savedFriendship.getId(),
             friendResponse,
-            savedFriendship.getCreatedAt().format(DATE_FORMATTER)
+            savedFriendship.getCreatedAt().format(DATE_FORMATTER),
+            friendGraph.countMutualFriends(senderId, userId)
         );
     }
 
@@ -163,7 +176,7 @@ public class FriendshipService {
      * Get all pending friend requests received by a user
      */
     public List<FriendRequestDTO> getPendingRequestsReceived(Integer userId) {
-        User user = userRepository.findById(userId)
+        User user = userProfileCache.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
         List<FriendRequest> requests = friendRequestRepository
@@ -178,7 +191,7 @@ public class FriendshipService {
      * Get all pending friend requests sent by a user
      */
     public List<FriendRequestDTO> getPendingRequestsSent(Integer userId) {
-        User user = userRepository.findById(userId)
+        User user = userProfileCache.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
         List<FriendRequest> requests = friendRequestRepository
@@ -193,42 +206,54 @@ public class FriendshipService {
      * Get all friends of a user
      */
     public List<FriendshipDTO> getFriends(Integer userId) {
-        User user = userRepository.findById(userId)
+        User user = userProfileCache.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
-        // Get both lists of friends and combine them
-        List<User> friends1 = friendshipRepository.findUser1ByUser2Id(userId);
-        List<User> friends2 = friendshipRepository.findUser2ByUser1Id(userId);
+        // Friendships and profiles in two indexed queries
+        List<Friendship> friendships = new ArrayList<>(friendshipRepository.findWithUsersByUser2Id(userId));
+        friendships.addAll(friendshipRepository.findWithUsersByUser1Id(userId));
         
-        // Combine both lists
-        List<User> allFriends = new ArrayList<>(friends1);
-        allFriends.addAll(friends2);
-        
-        List<FriendshipDTO> result = new ArrayList<>();
+        List<FriendshipDTO> result = new ArrayList<>(friendships.size());
+        for (Friendship friendship : friendships) {
+            User friend = friendship.getUser1().getId().equals(user.getId()) ? friendship.getUser2() : friendship.getUser1();
+            
+            UserDetailsResponse friendResponse = new UserDetailsResponse(
+                friend.getId(),
+                friend.getUsername(),
+                friend.getEmail(),
+                friend.getDisplayName(),
+                friend.getAbout(),
+                friend.getProfilePictureUrl()
+            );
+            
+            result.add(new FriendshipDTO(
+                friendship.getId(),
+                friendResponse,
+                friendship.getCreatedAt().format(DATE_FORMATTER),
+                friendGraph.countMutualFriends(userId, friend.getId())
+            ));
+        }
 
-        // Find the corresponding friendships and convert to DTOs
-        for (User friend : allFriends) {
-            Optional<Friendship> friendshipOpt = friendshipRepository.findByUsers(user, friend);
-            if (friendshipOpt.isPresent()) {
-                Friendship friendship = friendshipOpt.get();
-                
-                UserDetailsResponse friendResponse = new UserDetailsResponse(
-                    friend.getId(),
-                    friend.getUsername(),
-                    friend.getEmail(),
-                    friend.getDisplayName(),
-                    friend.getAbout(),
-                    friend.getProfilePictureUrl()
-                );
-                
-                FriendshipDTO dto = new FriendshipDTO(
-                    friendship.getId(),
-                    friendResponse,
-                    friendship.getCreatedAt().format(DATE_FORMATTER)
-                );
-                
-                result.add(dto);
-            }
+        return result;
+    }
+    
+    /**
+     * Get friends of a user's friends who are not their friends yet, most mutual friends first
+     */
+    public List<FriendSuggestionDTO> getSuggestions(Integer userId, int limit) {
+        userProfileCache.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+
+        FriendSuggestions.Ranking ranking = friendSuggestions.getSuggestions(userId, limit);
+        List<FriendSuggestionDTO> result = new ArrayList<>(ranking.size());
+        for (int i = 0; i < ranking.size(); i++) {
+            int mutualFriendCount = ranking.getMutualFriendCount(i);
+            // Users deleted since the graph was loaded are skipped
+            // Suggested users are strangers, so they get the directory entry, without the email address
+            userProfileCache.findById(ranking.getUserId(i)).ifPresent(candidate -> result.add(new FriendSuggestionDTO(
+                UserService.toDirectoryEntry(candidate),
+                mutualFriendCount
+            )));
         }
 
         return result;
@@ -238,13 +263,13 @@ public class FriendshipService {
      * Check if there's an existing friendship or pending request between users
      */
     public String checkRelationship(Integer userId1, Integer userId2) {
-        User user1 = userRepository.findById(userId1)
+        User user1 = userProfileCache.findById(userId1)
                 .orElseThrow(() -> new IllegalArgumentException("User 1 not found"));
-        User user2 = userRepository.findById(userId2)
+        User user2 = userProfileCache.findById(userId2)
                 .orElseThrow(() -> new IllegalArgumentException("User 2 not found"));
                 
         // Check if they're already friends
-        if (friendshipRepository.areFriends(user1, user2)) {
+        if (friendshipRepository.existsByUser1IdAndUser2Id(Math.min(userId1, userId2), Math.max(userId1, userId2))) {
             return "FRIENDS";
         }
         
@@ -292,13 +317,14 @@ public class FriendshipService {
      */
     @Transactional
     public boolean removeFriendship(Integer userId, Integer friendId) {
-        User user = userRepository.findById(userId)
+        User user = userProfileCache.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        User friend = userRepository.findById(friendId)
+        User friend = userProfileCache.findById(friendId)
                 .orElseThrow(() -> new IllegalArgumentException("Friend not found"));
         
         // Find friendship
-        Optional<Friendship> friendship = friendshipRepository.findByUsers(user, friend);
+        Optional<Friendship> friendship = friendshipRepository.findByUser1IdAndUser2Id(
+            Math.min(userId, friendId), Math.max(userId, friendId));
         if (!friendship.isPresent()) {
             throw new IllegalArgumentException("Friendship not found");
         }
@@ -313,6 +339,11 @@ public class FriendshipService {
         Optional<FriendRequest> request2 = friendRequestRepository.findBySenderAndReceiver(friend, user);
         request2.ifPresent(friendRequestRepository::delete);
         
+        TransactionCallbacks.afterCommit(() -> {
+            friendGraph.removeFriendship(userId, friendId);
+            friendSuggestions.friendshipChanged(userId, friendId);
+        });
+        
         return true;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,314 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.util.MetricsSource;
+import com.chatapp.chatappbackend.util.SnowflakeIdGenerator;
+import com.chatapp.chatappbackend.websocket.FrameSender;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional outbox for WebSocket frames. Services publish a frame while their transaction is
+ * open; the frames of a transaction are inserted into message_outbox with one batch statement
+ * just before it commits, and handed to a dispatcher thread once it has. The dispatcher pushes
+ * them to the broker in batches and deletes them with one statement per batch. Frames that were
+ * never dispatched (failed sends, a full hand-off queue, an instance that stopped) are picked up
+ * again by a periodic sweep, so every committed change is announced at least once and clients
+ * should de-duplicate by message ID or sequence number.
+ */
+@Service
+public class MessageOutbox implements MetricsSource, InitializingBean, DisposableBean {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO message_outbox (id, destinations, payload, created_at, attempts) VALUES (?, ?, ?, ?, 0)";
+
+    private static final String DELETE_SQL = "DELETE FROM message_outbox WHERE id IN (:ids)";
+
+    // SKIP LOCKED lets several instances sweep at once without sending the same row twice
+    private static final String SELECT_STALE_SQL =
+        "SELECT id, destinations, payload, attempts FROM message_outbox WHERE created_at < ? " +
+        "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String RETRY_SQL = "UPDATE message_outbox SET attempts = attempts + 1 WHERE id = ?";
+
+    @Value("${chat.outbox.batch-size:256}")
+    private int batchSize;
+
+    @Value("${chat.outbox.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.outbox.stale-after-ms:10000}")
+    private long staleAfterMillis;
+
+    @Value("${chat.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private FrameSender frameSender;
+
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private BlockingQueue<OutboundFrame> queue;
+    private Thread dispatcherThread;
+    private volatile boolean running;
+
+    // Frames handed to the dispatcher and not yet deleted, so the sweep leaves them alone
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+    private final AtomicLong swept = new AtomicLong();
+    private final AtomicLong failedSends = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.running = true;
+        this.dispatcherThread = new Thread(this::dispatchLoop, "message-outbox-dispatcher");
+        this.dispatcherThread.setDaemon(true);
+        this.dispatcherThread.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // Anything still queued stays in the table and is sent by the next sweep
+        running = false;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+            dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Publish a frame to clients once the current transaction commits. Must be called inside a
+     * transaction; if it rolls back, nothing is sent.
+     * @param payload The frame body, serialized as JSON
+     * @param destinations The broker destinations to send it to
+     */
+    public void publish(Object payload, String... destinations) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Outbox frames must be published inside a transaction");
+        }
+        if (destinations.length == 0) {
+            return;
+        }
+
+        // Encoded once here; the same bytes are stored and later sent to every destination
+        OutboundFrame frame = new OutboundFrame(SnowflakeIdGenerator.getDefault().nextId(), destinations,
+            frameSender.encode(payload));
+
+        // One synchronization per transaction collects all of its frames
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof OutboxSynchronization outboxSynchronization) {
+                outboxSynchronization.frames.add(frame);
+                return;
+            }
+        }
+        OutboxSynchronization synchronization = new OutboxSynchronization();
+        synchronization.frames.add(frame);
+        TransactionSynchronizationManager.registerSynchronization(synchronization);
+    }
+
+    /**
+     * Re-send frames that were committed but never dispatched, oldest first
+     */
+    @Scheduled(fixedDelayString = "${chat.outbox.sweep-interval-ms:5000}")
+    public void sweep() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(staleAfterMillis)));
+        int found;
+        do {
+            Integer count = transactionTemplate.execute(status -> sweepBatch(cutoff));
+            found = count != null ? count : 0;
+        } while (found == batchSize && running);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "outbox";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queued", queue.size());
+        metrics.put("inFlight", inFlight.size());
+        metrics.put("published", published.get());
+        metrics.put("dispatched", dispatched.get());
+        metrics.put("deliveries", deliveries.get());
+        metrics.put("swept", swept.get());
+        metrics.put("failedSends", failedSends.get());
+        metrics.put("overflows", overflows.get());
+        metrics.put("abandoned", abandoned.get());
+        return metrics;
+    }
+
+    private void insert(List<OutboundFrame> frames) {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(frames.size());
+        for (OutboundFrame frame : frames) {
+            rows.add(new Object[] {
+                frame.id, String.join("\n", frame.destinations), new String(frame.payload, StandardCharsets.UTF_8), createdAt
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        published.addAndGet(frames.size());
+    }
+
+    private void handOff(List<OutboundFrame> frames) {
+        for (OutboundFrame frame : frames) {
+            inFlight.add(frame.id);
+            if (!queue.offer(frame)) {
+                // Still in the table, so the sweep sends it a little later
+                inFlight.remove(frame.id);
+                overflows.incrementAndGet();
+            }
+        }
+    }
+
+    private void dispatchLoop() {
+        List<OutboundFrame> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                OutboundFrame first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                dispatchBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Outbox dispatch failed: " + e.getMessage());
+            } finally {
+                batch.forEach(frame -> inFlight.remove(frame.id));
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatchBatch(List<OutboundFrame> batch) {
+        List<Long> sent = new ArrayList<>(batch.size());
+        for (OutboundFrame frame : batch) {
+            if (send(frame)) {
+                sent.add(frame.id);
+            }
+        }
+        dispatched.addAndGet(sent.size());
+        if (!sent.isEmpty()) {
+            // If this fails the rows stay and the sweep sends them again, which clients tolerate
+            namedJdbcTemplate.update(DELETE_SQL, new MapSqlParameterSource("ids", sent));
+        }
+    }
+
+    private int sweepBatch(Timestamp cutoff) {
+        List<OutboundFrame> stale = jdbcTemplate.query(SELECT_STALE_SQL, (rs, rowNum) -> {
+            OutboundFrame frame = new OutboundFrame(rs.getLong("id"),
+                rs.getString("destinations").split("\n"), rs.getString("payload").getBytes(StandardCharsets.UTF_8));
+            frame.attempts = rs.getInt("attempts");
+            return frame;
+        }, cutoff, batchSize);
+
+        List<Long> done = new ArrayList<>();
+        for (OutboundFrame frame : stale) {
+            if (inFlight.contains(frame.id)) {
+                continue;
+            }
+            if (send(frame)) {
+                swept.incrementAndGet();
+                done.add(frame.id);
+            } else if (frame.attempts + 1 >= maxAttempts) {
+                abandoned.incrementAndGet();
+                System.err.println("Giving up on outbox frame " + frame.id + " after " + maxAttempts + " attempts");
+                done.add(frame.id);
+            } else {
+                jdbcTemplate.update(RETRY_SQL, frame.id);
+            }
+        }
+        if (!done.isEmpty()) {
+            namedJdbcTemplate.update(DELETE_SQL, new MapSqlParameterSource("ids", done));
+        }
+        return stale.size();
+    }
+
+    private boolean send(OutboundFrame frame) {
+        try {
+            frameSender.send(frame.payload, frame.destinations);
+            deliveries.addAndGet(frame.destinations.length);
+            return true;
+        } catch (RuntimeException e) {
+            failedSends.incrementAndGet();
+            System.err.println("Failed to send outbox frame " + frame.id + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the frames of one transaction before it commits and dispatches them after
+     */
+    private final class OutboxSynchronization implements TransactionSynchronization {
+        private final List<OutboundFrame> frames = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            insert(frames);
+        }
+
+        @Override
+        public void afterCommit() {
+            handOff(frames);
+        }
+    }
+
+    /**
+     * A frame with its body encoded once for all of its destinations
+     */
+    private static final class OutboundFrame {
+        private final long id;
+        private final String[] destinations;
+        private final byte[] payload;
+        private int attempts;
+
+        OutboundFrame(long id, String[] destinations, byte[] payload) {
+            this.id = id;
+            this.destinations = destinations;
+            this.payload = payload;
+        }
+    }
+}
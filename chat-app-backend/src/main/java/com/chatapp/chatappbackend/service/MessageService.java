@@ -1,38 +1,57 @@
 package com.chatapp.chatappbackend.service;
 
+import com.chatapp.chatappbackend.dto.DeliveryReceiptDTO;
 import com.chatapp.chatappbackend.dto.MessageDTO;
+import com.chatapp.chatappbackend.dto.MessageSliceDTO;
+import com.chatapp.chatappbackend.model.AttachmentType;
+import com.chatapp.chatappbackend.model.ChangeType;
 import com.chatapp.chatappbackend.model.Conversation;
+import com.chatapp.chatappbackend.model.ConversationMember;
 import com.chatapp.chatappbackend.model.Message;
 import com.chatapp.chatappbackend.model.MessageAttachment;
 import com.chatapp.chatappbackend.model.User;
+import com.chatapp.chatappbackend.repository.ConversationMemberRepository;
 import com.chatapp.chatappbackend.repository.ConversationRepository;
+import com.chatapp.chatappbackend.repository.MessageReadRepository;
 import com.chatapp.chatappbackend.repository.MessageRepository;
-import com.chatapp.chatappbackend.repository.UserRepository;
+import com.chatapp.chatappbackend.util.MessageCursor;
+import com.chatapp.chatappbackend.util.TransactionCallbacks;
+import com.chatapp.chatappbackend.websocket.FrameSender;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class MessageService {
 
+    private static final int MAX_SEQUENCE_RANGE = 500;
+    private static final int MAX_DELIVERY_ACK_SIZE = 1000;
+    private static final int MAX_CATCH_UP_PAGE = 500;
+    private static final int MAX_HISTORY_PAGE = 500;
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     @Autowired
     private MessageRepository messageRepository;
     
+    @Autowired
+    private MessageReadRepository messageReadRepository;
+    
     @Autowired
     private ConversationRepository conversationRepository;
     
     @Autowired
-    private UserRepository userRepository;
+    private UserProfileCache userProfileCache;
     
     @Autowired
     private ConversationService conversationService;
@@ -40,6 +59,27 @@ public class MessageService {
     @Autowired
     private FileStorageService fileStorageService;
     
+    @Autowired
+    private MessageWriteBatcher messageWriteBatcher;
+    
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+    
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+    
+    @Autowired
+    private ConversationMemberRepository conversationMemberRepository;
+    
+    @Autowired
+    private DeliveryAckBuffer deliveryAckBuffer;
+    
+    @Autowired
+    private MessageOutbox messageOutbox;
+    
+    @Autowired
+    private ChangeLog changeLog;
+    
     /**
      * Send a new message in a conversation
      * @param senderId The ID of the sender
@@ -52,17 +92,20 @@ public class MessageService {
         if (content == null || content.trim().isEmpty()) {
             throw new IllegalArgumentException("Message content cannot be empty");
         }
+        if (content.length() > Message.MAX_CONTENT_LENGTH) {
+            throw new IllegalArgumentException("Message content cannot be longer than " + Message.MAX_CONTENT_LENGTH + " characters");
+        }
         
         // Get or create conversation between the two users
         Conversation conversation = conversationService.getOrCreateConversation(senderId, recipientId);
         
-        User sender = userRepository.findById(senderId)
+        User sender = userProfileCache.findById(senderId)
             .orElseThrow(() -> new IllegalArgumentException("Sender with ID " + senderId + " not found"));
         
         // Create a new message
         Message message = new Message(conversation, sender, content);
         message.setDelivered(false);
-        message.setRead(false);
+        message.setSequence(conversationService.allocateSequences(conversation.getId(), 1));
         
         // Save the message
         message = messageRepository.save(message);
@@ -73,7 +116,19 @@ public class MessageService {
         conversation.setLastMessageSenderId(senderId);
         conversationRepository.save(conversation);
         
-        return new MessageDTO(message);
+        changeLog.append(ChangeType.MESSAGE_CREATED, conversation.getId(), message.getId(), senderId, message.getSequence());
+        
+        MessageDTO messageDTO = new MessageDTO(message);
+        Integer readerId = conversation.getOtherParticipant(sender).getId();
+        // Both participants get it on their own queue, the sender as confirmation
+        messageOutbox.publish(messageDTO,
+            FrameSender.userDestination(readerId, "/queue/messages"),
+            FrameSender.userDestination(senderId, "/queue/messages"));
+        TransactionCallbacks.afterCommit(() -> {
+            recentMessageCache.append(messageDTO);
+            unreadCounterService.increment(messageDTO.getConversationId(), readerId);
+        });
+        return messageDTO;
     }
     
     /**
@@ -88,17 +143,20 @@ public class MessageService {
         if (content == null || content.trim().isEmpty()) {
             throw new IllegalArgumentException("Message content cannot be empty");
         }
+        if (content.length() > Message.MAX_CONTENT_LENGTH) {
+            throw new IllegalArgumentException("Message content cannot be longer than " + Message.MAX_CONTENT_LENGTH + " characters");
+        }
         
         // Verify the conversation exists and the user is a participant
         Conversation conversation = conversationService.getConversationForUser(conversationId, senderId);
         
-        User sender = userRepository.findById(senderId)
+        User sender = userProfileCache.findById(senderId)
             .orElseThrow(() -> new IllegalArgumentException("Sender with ID " + senderId + " not found"));
         
         // Create a new message
         Message message = new Message(conversation, sender, content);
         message.setDelivered(false);
-        message.setRead(false);
+        message.setSequence(conversationService.allocateSequences(conversation.getId(), 1));
         
         // Save the message
         message = messageRepository.save(message);
@@ -109,7 +167,46 @@ public class MessageService {
         conversation.setLastMessageSenderId(senderId);
         conversationRepository.save(conversation);
         
-        return new MessageDTO(message);
+        changeLog.append(ChangeType.MESSAGE_CREATED, conversation.getId(), message.getId(), senderId, message.getSequence());
+        
+        MessageDTO messageDTO = new MessageDTO(message);
+        Integer readerId = conversation.getOtherParticipant(sender).getId();
+        messageOutbox.publish(messageDTO, conversationTopic(conversation.getId()));
+        TransactionCallbacks.afterCommit(() -> {
+            recentMessageCache.append(messageDTO);
+            unreadCounterService.increment(messageDTO.getConversationId(), readerId);
+        });
+        return messageDTO;
+    }
+    
+    /**
+     * Send a message to a user through the group-commit pipeline when it is enabled,
+     * falling back to a regular transactional send otherwise
+     * @param senderId The ID of the sender
+     * @param recipientId The ID of the recipient
+     * @param content The message content
+     * @return A future completed with the created message DTO
+     */
+    public CompletableFuture<MessageDTO> sendMessageAsync(Integer senderId, Integer recipientId, String content) {
+        if (messageWriteBatcher.isEnabled()) {
+            return messageWriteBatcher.submitToRecipient(senderId, recipientId, content);
+        }
+        return CompletableFuture.completedFuture(sendMessage(senderId, recipientId, content));
+    }
+    
+    /**
+     * Send a message to an existing conversation through the group-commit pipeline when it is
+     * enabled, falling back to a regular transactional send otherwise
+     * @param conversationId The ID of the conversation
+     * @param senderId The ID of the sender
+     * @param content The message content
+     * @return A future completed with the created message DTO
+     */
+    public CompletableFuture<MessageDTO> sendMessageToConversationAsync(Integer conversationId, Integer senderId, String content) {
+        if (messageWriteBatcher.isEnabled()) {
+            return messageWriteBatcher.submitToConversation(conversationId, senderId, content);
+        }
+        return CompletableFuture.completedFuture(sendMessageToConversation(conversationId, senderId, content));
     }
     
     /**
@@ -117,20 +214,75 @@ public class MessageService {
      * @param conversationId The ID of the conversation
      * @param userId The ID of the user requesting the messages
      * @param page The page number (0-based)
-     * @param size The page size
+     * @param size The page size; at most MAX_HISTORY_PAGE messages are returned
      * @return List of message DTOs, oldest first
      */
     @Transactional(readOnly = true)
     public List<MessageDTO> getMessagesForConversation(Integer conversationId, Integer userId, int page, int size) {
         // Verify the conversation exists and the user is a participant
-        Conversation conversation = conversationService.getConversationForUser(conversationId, userId);
+        conversationService.checkParticipant(conversationId, userId);
+        
+        // The offset follows the requested size, so pages still line up when one is cut short
+        return applyReadMarks(conversationId,
+            messageReadRepository.findPage(conversationId, page * size, Math.min(size, MAX_HISTORY_PAGE)));
+    }
+    
+    /**
+     * Get a page of conversation history using seek pagination
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user requesting the messages
+     * @param cursor The cursor returned with the previous page, or null for the newest messages
+     * @param limit The maximum number of messages to return, capped at MAX_HISTORY_PAGE
+     * @return The slice of message DTOs, newest first, with the cursor for the next (older) page
+     */
+    @Transactional(readOnly = true)
+    public MessageSliceDTO getMessageHistory(Integer conversationId, Integer userId, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        // A larger limit gets a full page and a cursor to read on from
+        limit = Math.min(limit, MAX_HISTORY_PAGE);
+        
+        // Verify the conversation exists and the user is a participant
+        conversationService.checkParticipant(conversationId, userId);
+        
+        boolean firstPage = cursor == null || cursor.isEmpty();
+        if (firstPage) {
+            // Opening a conversation is served from the recent-message cache when its tail is warm
+            List<MessageDTO> cached = recentMessageCache.getLatest(conversationId, limit);
+            if (cached != null) {
+                boolean hasMore = cached.size() == limit && cached.get(cached.size() - 1).getSequence() > 1;
+                String nextCursor = hasMore
+                    ? new MessageCursor(cached.get(cached.size() - 1).getSequence()).encode() : null;
+                return new MessageSliceDTO(cached, nextCursor, hasMore);
+            }
+        }
         
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "sentAt"));
-        Page<Message> messagePage = messageRepository.findByConversationAndDeletedFalseOrderBySentAt(conversation, pageable);
+        // Fetch limit + 1 rows to know whether more exist, so no COUNT(*) query is issued
+        long cacheVersion = recentMessageCache.getVersion(conversationId);
+        List<MessageDTO> messages;
+        if (firstPage) {
+            messages = messageReadRepository.findLatest(conversationId, limit + 1);
+        } else {
+            MessageCursor position = MessageCursor.decode(cursor);
+            messages = messageReadRepository.findBefore(conversationId, position.getSequence(), limit + 1);
+        }
         
-        return messagePage.getContent().stream()
-            .map(MessageDTO::new)
-            .collect(Collectors.toList());
+        boolean hasMore = messages.size() > limit;
+        if (hasMore) {
+            messages = new ArrayList<>(messages.subList(0, limit));
+        }
+        String nextCursor = null;
+        if (hasMore && !messages.isEmpty()) {
+            MessageDTO oldest = messages.get(messages.size() - 1);
+            nextCursor = new MessageCursor(oldest.getSequence()).encode();
+        }
+        
+        applyReadMarks(conversationId, messages);
+        if (firstPage) {
+            recentMessageCache.seedLatest(conversationId, messages, !hasMore, cacheVersion);
+        }
+        return new MessageSliceDTO(messages, nextCursor, hasMore);
     }
     
     /**
@@ -138,73 +290,276 @@ public class MessageService {
      * @param conversationId The ID of the conversation
      * @param userId The ID of the user requesting the messages
      * @param messageId The ID of the reference message
-     * @param limit The maximum number of messages to return
+     * @param limit The maximum number of messages to return, capped at MAX_HISTORY_PAGE
      * @return List of message DTOs, newest first (closer to the reference message first)
      */
     @Transactional(readOnly = true)
-    public List<MessageDTO> getOlderMessages(Integer conversationId, Integer userId, Integer messageId, int limit) {
+    public List<MessageDTO> getOlderMessages(Integer conversationId, Integer userId, Long messageId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        limit = Math.min(limit, MAX_HISTORY_PAGE);
+        
         // Verify the conversation exists and the user is a participant
-        Conversation conversation = conversationService.getConversationForUser(conversationId, userId);
+        conversationService.checkParticipant(conversationId, userId);
         
-        Message referenceMessage = messageRepository.findById(messageId)
-            .orElseThrow(() -> new IllegalArgumentException("Message with ID " + messageId + " not found"));
+        long referenceSequence = findReferenceSequence(conversationId, messageId);
         
-        if (!referenceMessage.getConversation().getId().equals(conversationId)) {
-            throw new IllegalArgumentException("Referenced message is not part of the specified conversation");
+        return applyReadMarks(conversationId, messageReadRepository.findBefore(conversationId, referenceSequence, limit));
+    }
+    
+    /**
+     * Get newer messages than a specific message in a conversation, one bounded page at a time
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user requesting the messages
+     * @param messageId The ID of the reference message (ignored when a cursor is given)
+     * @param cursor The cursor returned with the previous page, or null to start after the reference message
+     * @param limit The maximum number of messages to return
+     * @return The slice of message DTOs, oldest first, with the cursor for the next (newer) page
+     */
+    @Transactional(readOnly = true)
+    public MessageSliceDTO getNewerMessages(Integer conversationId, Integer userId, Long messageId,
+                                            String cursor, int limit) {
+        if (limit <= 0 || limit > MAX_CATCH_UP_PAGE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_CATCH_UP_PAGE);
         }
         
-        Pageable pageable = PageRequest.of(0, limit);
-        Page<Message> messagePage = messageRepository.findOlderMessages(
-            conversation, referenceMessage.getSentAt(), pageable);
+        // Verify the conversation exists and the user is a participant
+        conversationService.checkParticipant(conversationId, userId);
+        
+        long referenceSequence;
+        if (cursor != null && !cursor.isEmpty()) {
+            referenceSequence = MessageCursor.decode(cursor).getSequence();
+        } else if (messageId != null) {
+            // A client that is nearly caught up is answered from the tail without touching the
+            // database; finding the message in this conversation's tail also shows it belongs there
+            List<MessageDTO> cached = recentMessageCache.getAfter(conversationId, messageId);
+            if (cached != null) {
+                return sliceAfter(cached, limit);
+            }
+            referenceSequence = findReferenceSequence(conversationId, messageId);
+        } else {
+            throw new IllegalArgumentException("A message ID or cursor is required");
+        }
         
-        return messagePage.getContent().stream()
-            .map(MessageDTO::new)
-            .collect(Collectors.toList());
+        // Fetch limit + 1 rows to know whether more exist
+        MessageSliceDTO slice = sliceAfter(messageReadRepository.findAfter(conversationId, referenceSequence, limit + 1), limit);
+        applyReadMarks(conversationId, slice.getMessages());
+        return slice;
     }
     
     /**
-     * Get newer messages than a specific message in a conversation
+     * Open a stream of every message after a specific message, up to the newest one when it is opened.
+     * The messages are read in chunks of bounded sequence ranges, so memory stays constant however far
+     * behind the client is, and no database connection is held between chunks.
      * @param conversationId The ID of the conversation
      * @param userId The ID of the user requesting the messages
      * @param messageId The ID of the reference message
-     * @return List of message DTOs, oldest first (starting from just after the reference message)
+     * @return The stream, to be written after this call returns (e.g. from a response body)
      */
     @Transactional(readOnly = true)
-    public List<MessageDTO> getNewerMessages(Integer conversationId, Integer userId, Integer messageId) {
+    public MessageStream streamNewerMessages(Integer conversationId, Integer userId, Long messageId) {
         // Verify the conversation exists and the user is a participant
-        Conversation conversation = conversationService.getConversationForUser(conversationId, userId);
-        
-        Message referenceMessage = messageRepository.findById(messageId)
-            .orElseThrow(() -> new IllegalArgumentException("Message with ID " + messageId + " not found"));
-        
-        if (!referenceMessage.getConversation().getId().equals(conversationId)) {
+        conversationService.checkParticipant(conversationId, userId);
+        
+        long referenceSequence = findReferenceSequence(conversationId, messageId);
+        long lastSequence = conversationRepository.findLastSequence(conversationId);
+        return writer -> {
+            // Sequences are allocated without gaps, so a range never holds more than a chunk of messages
+            for (long from = referenceSequence + 1; from <= lastSequence; from += STREAM_CHUNK_SIZE) {
+                long to = Math.min(from + STREAM_CHUNK_SIZE - 1, lastSequence);
+                List<MessageDTO> chunk = messageReadRepository.findBySequenceRange(conversationId, from, to);
+                if (!chunk.isEmpty()) {
+                    writer.write(applyReadMarks(conversationId, chunk));
+                }
+            }
+        };
+    }
+    
+    /**
+     * Messages that are read and written one chunk at a time
+     */
+    @FunctionalInterface
+    public interface MessageStream {
+        void writeTo(ChunkWriter writer) throws IOException;
+    }
+    
+    /**
+     * Receives the chunks of a MessageStream, oldest first
+     */
+    @FunctionalInterface
+    public interface ChunkWriter {
+        void write(List<MessageDTO> chunk) throws IOException;
+    }
+    
+    // Cut a list of messages, oldest first, to a page and point the cursor at its newest message
+    private static MessageSliceDTO sliceAfter(List<MessageDTO> messages, int limit) {
+        boolean hasMore = messages.size() > limit;
+        if (hasMore) {
+            messages = new ArrayList<>(messages.subList(0, limit));
+        }
+        String nextCursor = hasMore ? new MessageCursor(messages.get(messages.size() - 1).getSequence()).encode() : null;
+        return new MessageSliceDTO(messages, nextCursor, hasMore);
+    }
+    
+    // Look up where a reference message sits without loading it
+    private long findReferenceSequence(Integer conversationId, Long messageId) {
+        long[] position = messageReadRepository.findPosition(messageId);
+        if (position == null) {
+            throw new IllegalArgumentException("Message with ID " + messageId + " not found");
+        }
+        if (position[0] != conversationId) {
             throw new IllegalArgumentException("Referenced message is not part of the specified conversation");
         }
+        return position[1];
+    }
+    
+    /**
+     * Get the messages in an inclusive sequence range, used by clients to fill detected gaps
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user requesting the messages
+     * @param fromSequence The first sequence number to return
+     * @param toSequence The last sequence number to return
+     * @return List of message DTOs, oldest first
+     */
+    @Transactional(readOnly = true)
+    public List<MessageDTO> getMessagesInSequenceRange(Integer conversationId, Integer userId,
+                                                      long fromSequence, long toSequence) {
+        if (fromSequence < 1 || toSequence < fromSequence) {
+            throw new IllegalArgumentException("Invalid sequence range");
+        }
+        if (toSequence - fromSequence >= MAX_SEQUENCE_RANGE) {
+            throw new IllegalArgumentException("Sequence range cannot exceed " + MAX_SEQUENCE_RANGE + " messages");
+        }
         
-        List<Message> messages = messageRepository.findNewerMessages(conversation, referenceMessage.getSentAt());
+        // Verify the conversation exists and the user is a participant
+        conversationService.checkParticipant(conversationId, userId);
         
-        return messages.stream()
-            .map(MessageDTO::new)
-            .collect(Collectors.toList());
+        return applyReadMarks(conversationId,
+            messageReadRepository.findBySequenceRange(conversationId, fromSequence, toSequence));
     }
     
     /**
-     * Mark specific messages in a conversation as read
+     * Get messages of a conversation by sequence number, without checking membership; callers
+     * only pass conversations the user is known to be in
+     * @param conversationId The ID of the conversation
+     * @param sequences The sequence numbers of the messages
+     * @return The messages that exist and are not deleted, oldest first
+     */
+    @Transactional(readOnly = true)
+    public List<MessageDTO> getMessagesBySequences(Integer conversationId, Collection<Long> sequences) {
+        return applyReadMarks(conversationId, messageReadRepository.findBySequences(conversationId, sequences));
+    }
+    
+    /**
+     * Mark specific messages in a conversation as read. Read state is a per-user high-water mark,
+     * so this moves the mark to the newest of the given messages, which also covers earlier ones.
      * @param conversationId The ID of the conversation
      * @param userId The ID of the user who read the messages
      * @param messageIds The list of message IDs to mark as read
      * @return The number of messages marked as read
      */
     @Transactional
-    public int markMessagesAsRead(Integer conversationId, Integer userId, List<Integer> messageIds) {
+    public int markMessagesAsRead(Integer conversationId, Integer userId, List<Long> messageIds) {
+        // Verify the conversation exists and the user is a participant
+        conversationService.checkParticipant(conversationId, userId);
+        
+        if (messageIds == null || messageIds.isEmpty()) {
+            return 0;
+        }
+        Long sequence = messageRepository.findMaxSequence(conversationId, messageIds);
+        return sequence == null ? 0 : advanceReadMark(conversationId, userId, sequence);
+    }
+    
+    /**
+     * Mark all unread messages in a conversation as read
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who read the messages
+     * @return The number of messages marked as read
+     */
+    @Transactional
+    public int markMessagesAsRead(Integer conversationId, Integer userId) {
+        // Verify the conversation exists and the user is a participant
+        conversationService.checkParticipant(conversationId, userId);
+        
+        return advanceReadMark(conversationId, userId, conversationRepository.findLastSequence(conversationId));
+    }
+    
+    /**
+     * Mark every message up to a sequence number in a conversation as read
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who read the messages
+     * @param sequence The sequence number of the last message read
+     * @return The number of messages marked as read
+     */
+    @Transactional
+    public int markMessagesAsReadUpTo(Integer conversationId, Integer userId, long sequence) {
         // Verify the conversation exists and the user is a participant
-        Conversation conversation = conversationService.getConversationForUser(conversationId, userId);
+        conversationService.checkParticipant(conversationId, userId);
         
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
+        // Never move the mark past messages that do not exist yet
+        long lastSequence = conversationRepository.findLastSequence(conversationId);
+        return advanceReadMark(conversationId, userId, Math.min(sequence, lastSequence));
+    }
+    
+    /**
+     * Move a user's read mark forward. This is a single-row update however many messages it covers.
+     * @return The number of unread messages (sent by others) the mark passed over
+     */
+    private int advanceReadMark(Integer conversationId, Integer userId, long sequence) {
+        // Lock the membership row so concurrent receipts do not count the same messages twice
+        Optional<Long> current = conversationMemberRepository.lockReadMark(conversationId, userId);
+        if (current.isEmpty()) {
+            conversationMemberRepository.insertIfAbsent(conversationId, userId);
+            current = conversationMemberRepository.lockReadMark(conversationId, userId);
+        }
+        long previous = current.orElse(0L);
+        if (sequence <= previous) {
+            return 0;
+        }
         
-        // Mark only the specified messages as read
-        return messageRepository.markSpecificMessagesAsRead(conversation, user, messageIds);
+        LocalDateTime readAt = LocalDateTime.now();
+        conversationMemberRepository.advanceReadMark(conversationId, userId, sequence, readAt);
+        changeLog.append(ChangeType.READ_MARK_MOVED, conversationId, null, userId, sequence);
+        int passed = (int) messageRepository.countFromOthersInSequenceRange(conversationId, userId, previous, sequence);
+        
+        Map<String, Object> receipt = new LinkedHashMap<>();
+        receipt.put("userId", userId);
+        receipt.put("count", passed);
+        receipt.put("sequence", sequence);
+        receipt.put("timestamp", System.currentTimeMillis());
+        messageOutbox.publish(receipt, conversationTopic(conversationId) + ".read");
+        TransactionCallbacks.afterCommit(() -> {
+            recentMessageCache.markReadUpTo(conversationId, userId, sequence, readAt);
+            unreadCounterService.decrement(conversationId, userId, passed);
+        });
+        return passed;
+    }
+    
+    /**
+     * Fill in the read state of messages from the read marks of the conversation's participants.
+     * A message is read once the mark of a participant other than its sender has reached it;
+     * its read time is when that mark last moved.
+     */
+    private List<MessageDTO> applyReadMarks(Integer conversationId, List<MessageDTO> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        List<ConversationMember> members = conversationMemberRepository.findByConversationId(conversationId);
+        for (MessageDTO message : messages) {
+            message.setRead(false);
+            message.setReadAt(null);
+            for (ConversationMember member : members) {
+                if (!member.getUserId().equals(message.getSender().getId())
+                        && message.getSequence() != null
+                        && message.getSequence() <= member.getLastReadSequence()) {
+                    message.setRead(true);
+                    message.setReadAt(member.getLastReadAt());
+                    break;
+                }
+            }
+        }
+        return messages;
     }
     
     /**
@@ -214,35 +569,76 @@ public class MessageService {
      * @return true if the message was marked as delivered, false otherwise
      */
     @Transactional
-    public boolean markMessageAsDelivered(Integer messageId, Integer userId) {
+    public boolean markMessageAsDelivered(Long messageId, Integer userId) {
         Message message = messageRepository.findById(messageId)
             .orElseThrow(() -> new IllegalArgumentException("Message with ID " + messageId + " not found"));
         
         // Verify the user is a participant in the conversation
         Conversation conversation = message.getConversation();
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new IllegalArgumentException("User with ID " + userId + " not found"));
-        
-        if (!conversation.hasParticipant(user)) {
-            throw new IllegalArgumentException("User is not a participant in this conversation");
-        }
+        conversationService.checkParticipant(conversation.getId(), userId);
         
         // Only mark as delivered if the user is the recipient (not the sender)
         if (message.getSender().getId().equals(userId)) {
             return false; // Sender can't mark their own message as delivered
         }
         
-        return messageRepository.markMessageAsDelivered(messageId) > 0;
+        boolean delivered = messageRepository.markMessageAsDelivered(messageId) > 0;
+        if (delivered) {
+            changeLog.append(ChangeType.MESSAGE_DELIVERED, conversation.getId(), messageId, userId, message.getSequence());
+            DeliveryReceiptDTO receipt = new DeliveryReceiptDTO(conversation.getId(), userId, LocalDateTime.now());
+            receipt.getMessageIds().add(messageId);
+            receipt.getSequences().add(message.getSequence());
+            messageOutbox.publish(receipt, FrameSender.userDestination(message.getSender().getId(), "/queue/delivered"));
+            TransactionCallbacks.afterCommit(() -> recentMessageCache.markDelivered(conversation.getId(), message.getSequence()));
+        }
+        return delivered;
+    }
+    
+    /**
+     * Acknowledge delivery of many messages at once. The acknowledgement is buffered and applied
+     * with the next flush, after which the senders are notified on their /queue/delivered.
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who received the messages
+     * @param messageIds The IDs of the messages received (optional)
+     * @param fromSequence The first sequence number of a received range (optional)
+     * @param toSequence The last sequence number of a received range (optional)
+     * @return The number of message IDs and sequence numbers accepted
+     */
+    public int acknowledgeDelivery(Integer conversationId, Integer userId, List<Long> messageIds,
+                                   Long fromSequence, Long toSequence) {
+        int idCount = messageIds == null ? 0 : messageIds.size();
+        if ((fromSequence == null) != (toSequence == null)) {
+            throw new IllegalArgumentException("A sequence range needs both fromSequence and toSequence");
+        }
+        long rangeSize = 0;
+        if (fromSequence != null) {
+            if (fromSequence < 1 || toSequence < fromSequence) {
+                throw new IllegalArgumentException("Invalid sequence range");
+            }
+            rangeSize = toSequence - fromSequence + 1;
+        }
+        if (idCount == 0 && rangeSize == 0) {
+            throw new IllegalArgumentException("Nothing to acknowledge");
+        }
+        if (idCount + rangeSize > MAX_DELIVERY_ACK_SIZE) {
+            throw new IllegalArgumentException("Cannot acknowledge more than " + MAX_DELIVERY_ACK_SIZE + " messages at once");
+        }
+        
+        // Verify the conversation exists and the user is a participant
+        conversationService.checkParticipant(conversationId, userId);
+        
+        deliveryAckBuffer.acknowledge(conversationId, userId, messageIds, fromSequence, toSequence);
+        return (int) (idCount + rangeSize);
     }
     
     /**
      * Delete a message (soft delete)
      * @param messageId The ID of the message
      * @param userId The ID of the user deleting the message
-     * @return true if the message was deleted, false otherwise
+     * @return true if the message was deleted, false if it already was
      */
     @Transactional
-    public boolean deleteMessage(Integer messageId, Integer userId) {
+    public boolean deleteMessage(Long messageId, Integer userId) {
         Message message = messageRepository.findById(messageId)
             .orElseThrow(() -> new IllegalArgumentException("Message with ID " + messageId + " not found"));
         
@@ -251,7 +647,33 @@ public class MessageService {
             throw new IllegalArgumentException("Only the sender can delete their message");
         }
         
-        return messageRepository.softDeleteMessage(messageId) > 0;
+        Conversation conversation = message.getConversation();
+        Integer readerId = conversation.getOtherParticipant(message.getSender()).getId();
+        long readerMark = conversationMemberRepository.findById(new ConversationMember.Key(conversation.getId(), readerId))
+            .map(ConversationMember::getLastReadSequence)
+            .orElse(0L);
+        boolean wasUnread = message.getSequence() != null && message.getSequence() > readerMark;
+        // Only the delete that flips the flag goes on: a repeated or concurrent one changes no row,
+        // and must not log, publish or decrement the unread counter a second time
+        if (messageRepository.softDeleteMessage(messageId) == 0) {
+            return false;
+        }
+        
+        changeLog.append(ChangeType.MESSAGE_DELETED, conversation.getId(), messageId, userId, message.getSequence());
+        Map<String, Object> notice = new LinkedHashMap<>();
+        notice.put("conversationId", conversation.getId());
+        notice.put("messageId", messageId.toString());
+        notice.put("sequence", message.getSequence());
+        notice.put("userId", userId);
+        messageOutbox.publish(notice, conversationTopic(conversation.getId()) + ".deleted");
+        TransactionCallbacks.afterCommit(() -> {
+            recentMessageCache.markDeleted(conversation.getId(), message.getSequence());
+            // Deleted messages no longer count as unread
+            if (wasUnread) {
+                unreadCounterService.decrement(conversation.getId(), readerId, 1);
+            }
+        });
+        return true;
     }
     
     /**
@@ -267,13 +689,13 @@ public class MessageService {
         // Verify the conversation exists and the user is a participant
         Conversation conversation = conversationService.getConversationForUser(conversationId, senderId);
         
-        User sender = userRepository.findById(senderId)
+        User sender = userProfileCache.findById(senderId)
             .orElseThrow(() -> new IllegalArgumentException("Sender with ID " + senderId + " not found"));
         
         // Create a new message
         Message message = new Message(conversation, sender, content != null ? content : "");
         message.setDelivered(false);
-        message.setRead(false);
+        message.setSequence(conversationService.allocateSequences(conversation.getId(), 1));
         
         // Handle attachments if present
         if (attachments != null && !attachments.isEmpty()) {
@@ -327,6 +749,19 @@ public class MessageService {
         conversation.setLastMessageSenderId(senderId);
         conversationRepository.save(conversation);
         
-        return new MessageDTO(message);
+        changeLog.append(ChangeType.MESSAGE_CREATED, conversation.getId(), message.getId(), senderId, message.getSequence());
+        
+        MessageDTO messageDTO = new MessageDTO(message);
+        Integer readerId = conversation.getOtherParticipant(sender).getId();
+        messageOutbox.publish(messageDTO, conversationTopic(conversation.getId()));
+        TransactionCallbacks.afterCommit(() -> {
+            recentMessageCache.append(messageDTO);
+            unreadCounterService.increment(messageDTO.getConversationId(), readerId);
+        });
+        return messageDTO;
+    }
+    
+    private static String conversationTopic(Integer conversationId) {
+        return "/topic/conversation." + conversationId;
     }
-} 
\ No newline at end of file
+}
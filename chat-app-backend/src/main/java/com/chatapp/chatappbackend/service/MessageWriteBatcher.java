@@ -0,0 +1,378 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.MessageDTO;
+import com.chatapp.chatappbackend.dto.UserDTO;
+import com.chatapp.chatappbackend.model.ChangeType;
+import com.chatapp.chatappbackend.model.Message;
+import com.chatapp.chatappbackend.model.User;
+import com.chatapp.chatappbackend.util.SnowflakeIdGenerator;
+import com.chatapp.chatappbackend.websocket.FrameSender;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group-commit pipeline for message inserts. Sends are queued into a bounded buffer and a
+ * single writer thread drains them in micro-batches (by count or after a short delay),
+ * inserting each batch with one JDBC batch statement in one transaction, so a burst of
+ * messages costs one commit instead of one per message. Callers' futures are completed on a
+ * small pool of their own, so whatever callers chain onto them never holds up the next batch.
+ * Messages are checked before they join a batch; if a batch still fails, each of its messages
+ * is retried in a transaction of its own, so only the offending sends fail.
+ */
+@Service
+public class MessageWriteBatcher implements InitializingBean, DisposableBean {
+
+    private static final String INSERT_MESSAGE_SQL =
+        "INSERT INTO messages (id, conversation_id, sender_id, seq, content, is_read, is_delivered, is_deleted, sent_at) " +
+        "VALUES (?, ?, ?, ?, ?, false, false, false, ?)";
+
+    private static final String UPDATE_CONVERSATION_SQL =
+        "UPDATE conversations SET last_message_text = ?, last_message_time = ?, last_message_sender_id = ?, " +
+        "updated_at = ? WHERE id = ?";
+
+    private static final int LAST_MESSAGE_TEXT_LENGTH = 500;
+
+    @Value("${chat.messages.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.messages.group-commit.max-batch-size:64}")
+    private int maxBatchSize;
+
+    @Value("${chat.messages.group-commit.max-delay-ms:5}")
+    private long maxDelayMillis;
+
+    @Value("${chat.messages.group-commit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.messages.group-commit.completion-threads:2}")
+    private int completionThreads;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private MessageOutbox messageOutbox;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private ConversationParticipants conversationParticipants;
+
+    private BlockingQueue<PendingMessage> queue;
+    private TransactionTemplate transactionTemplate;
+    private Thread writerThread;
+    private ExecutorService completionExecutor;
+    private volatile boolean running;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) {
+            return;
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // When completions fall behind by a whole queue's worth, the writer runs them itself
+        AtomicInteger threadCount = new AtomicInteger();
+        this.completionExecutor = new ThreadPoolExecutor(completionThreads, completionThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "message-write-completion-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.running = true;
+        this.writerThread = new Thread(this::drainLoop, "message-write-batcher");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        // After the writer has stopped, so every completion it handed off still runs
+        if (completionExecutor != null) {
+            completionExecutor.shutdown();
+            completionExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a message to another user for the next batch
+     * @param senderId The ID of the sender
+     * @param recipientId The ID of the recipient
+     * @param content The message content
+     * @return A future completed with the persisted message once its batch commits
+     */
+    public CompletableFuture<MessageDTO> submitToRecipient(Integer senderId, Integer recipientId, String content) {
+        return submit(new PendingMessage(senderId, recipientId, null, content));
+    }
+
+    /**
+     * Queue a message to an existing conversation for the next batch
+     * @param conversationId The ID of the conversation
+     * @param senderId The ID of the sender
+     * @param content The message content
+     * @return A future completed with the persisted message once its batch commits
+     */
+    public CompletableFuture<MessageDTO> submitToConversation(Integer conversationId, Integer senderId, String content) {
+        return submit(new PendingMessage(senderId, null, conversationId, content));
+    }
+
+    private CompletableFuture<MessageDTO> submit(PendingMessage pending) {
+        if (!enabled) {
+            throw new IllegalStateException("Group commit is not enabled");
+        }
+        if (pending.content == null || pending.content.trim().isEmpty()) {
+            pending.future.completeExceptionally(new IllegalArgumentException("Message content cannot be empty"));
+        } else if (pending.content.length() > Message.MAX_CONTENT_LENGTH) {
+            pending.future.completeExceptionally(new IllegalArgumentException(
+                "Message content cannot be longer than " + Message.MAX_CONTENT_LENGTH + " characters"));
+        } else if (!queue.offer(pending)) {
+            pending.future.completeExceptionally(new IllegalStateException("Message pipeline is full, try again"));
+        }
+        return pending.future;
+    }
+
+    private void drainLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep collecting until the batch is full or the oldest message has waited long enough
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                batch.forEach(pending -> fail(pending, new IllegalStateException("Message pipeline is shutting down")));
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                batch.forEach(pending -> fail(pending, e));
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Fail whatever is still queued so callers do not wait forever on shutdown
+        PendingMessage leftover;
+        while ((leftover = queue.poll()) != null) {
+            fail(leftover, new IllegalStateException("Message pipeline is shutting down"));
+        }
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        // Resolve and authorize every message first, each in its own transaction, so one bad
+        // message is rejected on its own instead of rolling back the whole batch
+        Map<Integer, User> senders = new HashMap<>();
+        List<PendingMessage> accepted = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            try {
+                // Sends to an existing conversation are authorized from the participant cache
+                if (pending.conversationId == null) {
+                    pending.conversationId = conversationService
+                        .getOrCreateConversation(pending.senderId, pending.recipientId).getId();
+                }
+                pending.readerId = conversationParticipants.getOtherParticipant(pending.conversationId, pending.senderId);
+
+                User sender = senders.get(pending.senderId);
+                if (sender == null) {
+                    sender = userProfileCache.findById(pending.senderId)
+                        .orElseThrow(() -> new IllegalArgumentException("Sender with ID " + pending.senderId + " not found"));
+                    senders.put(sender.getId(), sender);
+                }
+                pending.sender = sender;
+                accepted.add(pending);
+            } catch (RuntimeException e) {
+                fail(pending, e);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        List<MessageDTO> written;
+        try {
+            written = transactionTemplate.execute(status -> insertBatch(accepted));
+        } catch (RuntimeException e) {
+            if (accepted.size() == 1) {
+                fail(accepted.get(0), e);
+                return;
+            }
+            // Something in the batch was rejected; find it by writing each message on its own
+            for (PendingMessage pending : accepted) {
+                try {
+                    MessageDTO message = transactionTemplate.execute(status -> insertBatch(List.of(pending)).get(0));
+                    written(pending, message);
+                } catch (RuntimeException single) {
+                    fail(pending, single);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < accepted.size(); i++) {
+            written(accepted.get(i), written.get(i));
+        }
+    }
+
+    private void written(PendingMessage pending, MessageDTO message) {
+        recentMessageCache.append(message);
+        unreadCounterService.increment(pending.conversationId, pending.readerId);
+        complete(pending, message);
+    }
+
+    private void complete(PendingMessage pending, MessageDTO message) {
+        completionExecutor.execute(() -> pending.future.complete(message));
+    }
+
+    private void fail(PendingMessage pending, Throwable error) {
+        completionExecutor.execute(() -> pending.future.completeExceptionally(error));
+    }
+
+    private List<MessageDTO> insertBatch(List<PendingMessage> batch) {
+        // Allocate one block of sequence numbers per conversation in the batch. Conversations are
+        // locked in ascending ID order, so two transactions touching the same ones cannot deadlock.
+        Map<Integer, List<PendingMessage>> byConversation = new TreeMap<>();
+        for (PendingMessage pending : batch) {
+            byConversation.computeIfAbsent(pending.conversationId, id -> new ArrayList<>()).add(pending);
+        }
+        for (Map.Entry<Integer, List<PendingMessage>> entry : byConversation.entrySet()) {
+            long sequence = conversationService.allocateSequences(entry.getKey(), entry.getValue().size());
+            for (PendingMessage pending : entry.getValue()) {
+                pending.sequence = sequence++;
+            }
+        }
+
+        LocalDateTime sentAt = LocalDateTime.now();
+        Timestamp sentAtTimestamp = Timestamp.valueOf(sentAt);
+
+        // IDs are assigned here rather than by the database, so the batch needs no generated keys
+        SnowflakeIdGenerator idGenerator = SnowflakeIdGenerator.getDefault();
+        List<Object[]> messageRows = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            pending.id = idGenerator.nextId();
+            messageRows.add(new Object[] {
+                pending.id, pending.conversationId, pending.senderId, pending.sequence, pending.content, sentAtTimestamp
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, messageRows);
+
+        // The last message of each conversation in the batch becomes its preview
+        List<Object[]> conversationUpdates = new ArrayList<>(byConversation.size());
+        for (List<PendingMessage> messages : byConversation.values()) {
+            PendingMessage last = messages.get(messages.size() - 1);
+            String preview = last.content.length() > LAST_MESSAGE_TEXT_LENGTH
+                ? last.content.substring(0, LAST_MESSAGE_TEXT_LENGTH) : last.content;
+            conversationUpdates.add(new Object[] {
+                preview, sentAtTimestamp, last.senderId, sentAtTimestamp, last.conversationId
+            });
+        }
+        jdbcTemplate.batchUpdate(UPDATE_CONVERSATION_SQL, conversationUpdates);
+
+        List<MessageDTO> result = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PendingMessage pending = batch.get(i);
+            MessageDTO dto = new MessageDTO();
+            dto.setId(pending.id);
+            dto.setConversationId(pending.conversationId);
+            dto.setSequence(pending.sequence);
+            dto.setSender(new UserDTO(pending.sender));
+            dto.setContent(pending.content);
+            dto.setSentAt(sentAt);
+            result.add(dto);
+            changeLog.append(ChangeType.MESSAGE_CREATED, pending.conversationId, pending.id, pending.senderId, pending.sequence);
+
+            // Same destinations as the single-message sends: recipient queues or the conversation topic
+            if (pending.recipientId != null) {
+                messageOutbox.publish(dto,
+                    FrameSender.userDestination(pending.readerId, "/queue/messages"),
+                    FrameSender.userDestination(pending.senderId, "/queue/messages"));
+            } else {
+                messageOutbox.publish(dto, "/topic/conversation." + pending.conversationId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A message waiting in the pipeline, either addressed to a recipient or to a conversation
+     */
+    private static class PendingMessage {
+        private final Integer senderId;
+        private final Integer recipientId;
+        private final String content;
+        private final CompletableFuture<MessageDTO> future = new CompletableFuture<>();
+        private Integer conversationId;
+        private User sender;
+        private Integer readerId;
+        private long id;
+        private long sequence;
+
+        PendingMessage(Integer senderId, Integer recipientId, Integer conversationId, String content) {
+            this.senderId = senderId;
+            this.recipientId = recipientId;
+            this.conversationId = conversationId;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.cluster.ClusterFanout;
+import com.chatapp.chatappbackend.dto.PresenceDTO;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import com.chatapp.chatappbackend.util.StripedIntLongMap;
+import com.chatapp.chatappbackend.util.TimingWheel;
+import com.chatapp.chatappbackend.websocket.FrameSender;
+import com.chatapp.chatappbackend.websocket.UserPrincipal;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Who is online, driven by STOMP session events. A user is online while they have at least one
+ * connected session (one per device or tab); going online is pushed to their online friends at
+ * once, going offline only after a short grace period so reconnects and page reloads do not
+ * flicker. Every inbound frame refreshes the user's last-seen time in memory; those times are
+ * written to users.last_seen_at in one batch per flush interval instead of one UPDATE per event.
+ */
+@Service
+public class PresenceService implements MetricsSource, InitializingBean, DisposableBean {
+
+    // Per-user state: live session count in the low 32 bits, "friends were told I'm online" above
+    private static final long SESSION_MASK = 0xffffffffL;
+    private static final long ANNOUNCED = 1L << 32;
+
+    private static final String QUEUE = "/queue/presence";
+    private static final int MAX_QUERY_USERS = 500;
+
+    // Never moves last_seen_at backwards, e.g. when another instance wrote a newer time
+    private static final String UPDATE_LAST_SEEN_SQL =
+        "UPDATE users SET last_seen_at = ? WHERE id = ? AND (last_seen_at IS NULL OR last_seen_at < ?)";
+
+    @Value("${chat.presence.offline-grace-ms:5000}")
+    private long offlineGraceMillis;
+
+    @Value("${chat.presence.stripes:64}")
+    private int stripes;
+
+    @Autowired
+    private FriendGraph friendGraph;
+
+    @Autowired
+    private FrameSender frameSender;
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    private TimingWheel timingWheel;
+
+    // userId -> session count and announced flag
+    private StripedIntLongMap states;
+
+    // userId -> last-seen epoch millis not yet written to the users table
+    private StripedIntLongMap pendingLastSeen;
+
+    // sessionId -> userId; disconnect events can repeat for one session, this makes them count once
+    private final Map<String, Integer> sessionUsers = new ConcurrentHashMap<>();
+
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong wentOnline = new AtomicLong();
+    private final AtomicLong wentOffline = new AtomicLong();
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.states = new StripedIntLongMap(stripes);
+        this.pendingLastSeen = new StripedIntLongMap(stripes);
+        this.timingWheel = new TimingWheel("presence-timers", 100, 512);
+        clusterFanout.setLostUsersListener(this::remoteUsersLost);
+    }
+
+    @Override
+    public void destroy() {
+        timingWheel.close();
+        flushLastSeen();
+    }
+
+    /**
+     * A STOMP session finished its handshake
+     */
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Integer userId = userIdOf(event);
+        String sessionId = event.getMessage().getHeaders().get("simpSessionId", String.class);
+        if (userId == null || sessionId == null || sessionUsers.putIfAbsent(sessionId, userId) != null) {
+            return;
+        }
+        connects.incrementAndGet();
+        touch(userId);
+        long previous = states.getAndUpdate(userId, state -> (state + 1) | ANNOUNCED);
+        if ((previous & SESSION_MASK) == 0) {
+            clusterFanout.userConnected(userId);
+        }
+        if ((previous & ANNOUNCED) == 0) {
+            wentOnline.incrementAndGet();
+            pushToFriends(userId, true, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * A STOMP session ended, cleanly or not
+     */
+    @EventListener
+    public void onDisconnected(SessionDisconnectEvent event) {
+        Integer userId = sessionUsers.remove(event.getSessionId());
+        if (userId == null) {
+            return;
+        }
+        disconnects.incrementAndGet();
+        touch(userId);
+        long state = states.updateAndGet(userId, current -> (current & SESSION_MASK) > 0 ? current - 1 : current);
+        if ((state & SESSION_MASK) == 0) {
+            clusterFanout.userDisconnected(userId);
+            timingWheel.schedule(() -> goOfflineIfIdle(userId), offlineGraceMillis);
+        }
+    }
+
+    /**
+     * Record activity from a user; cheap enough to call for every inbound frame
+     * @param userId The ID of the user
+     */
+    public void touch(Integer userId) {
+        long now = System.currentTimeMillis();
+        pendingLastSeen.updateAndGet(userId, lastSeen -> Math.max(lastSeen, now));
+    }
+
+    /**
+     * @return Whether a user has a connected session on this instance
+     */
+    public boolean isOnline(Integer userId) {
+        return (states.get(userId) & SESSION_MASK) > 0;
+    }
+
+    /**
+     * Get the presence of several users
+     * @param userIds The IDs of the users
+     * @return Presence per user, in the order requested
+     */
+    public List<PresenceDTO> getPresence(List<Integer> userIds) {
+        if (userIds.size() > MAX_QUERY_USERS) {
+            throw new IllegalArgumentException("At most " + MAX_QUERY_USERS + " users per request");
+        }
+        Map<Integer, Long> stored = new HashMap<>();
+        if (!userIds.isEmpty()) {
+            namedJdbcTemplate.query("SELECT id, last_seen_at FROM users WHERE id IN (:ids)",
+                Map.of("ids", userIds),
+                rs -> {
+                    Timestamp lastSeen = rs.getTimestamp("last_seen_at");
+                    if (lastSeen != null) {
+                        stored.put(rs.getInt("id"), lastSeen.getTime());
+                    }
+                });
+        }
+
+        List<PresenceDTO> presence = new ArrayList<>(userIds.size());
+        for (Integer userId : userIds) {
+            long pending = pendingLastSeen.get(userId);
+            Long lastSeen = pending != 0 ? Long.valueOf(pending) : stored.get(userId);
+            boolean online = isOnline(userId) || clusterFanout.hasRemoteSessions(userId);
+            presence.add(new PresenceDTO(userId, online, lastSeen));
+        }
+        return presence;
+    }
+
+    /**
+     * Write the last-seen times collected since the previous flush
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:30000}")
+    public void flushLastSeen() {
+        List<Object[]> rows = new ArrayList<>();
+        pendingLastSeen.drain((userId, lastSeen) -> {
+            Timestamp timestamp = new Timestamp(lastSeen);
+            rows.add(new Object[] { timestamp, userId, timestamp });
+        });
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_LAST_SEEN_SQL, rows);
+            flushes.incrementAndGet();
+            flushedRows.addAndGet(rows.size());
+        } catch (RuntimeException e) {
+            // Put the times back unless newer ones arrived meanwhile, and retry next time
+            for (Object[] row : rows) {
+                long lastSeen = ((Timestamp) row[0]).getTime();
+                pendingLastSeen.updateAndGet((Integer) row[1], current -> Math.max(current, lastSeen));
+            }
+            failedFlushes.incrementAndGet();
+            System.err.println("Failed to write last-seen times: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "presence";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("onlineUsers", states.size());
+        metrics.put("sessions", sessionUsers.size());
+        metrics.put("connects", connects.get());
+        metrics.put("disconnects", disconnects.get());
+        metrics.put("wentOnline", wentOnline.get());
+        metrics.put("wentOffline", wentOffline.get());
+        metrics.put("pushes", pushes.get());
+        metrics.put("pendingLastSeen", pendingLastSeen.size());
+        metrics.put("flushes", flushes.get());
+        metrics.put("flushedRows", flushedRows.get());
+        metrics.put("failedFlushes", failedFlushes.get());
+        return metrics;
+    }
+
+    // Runs on the timing wheel once the grace period after a user's last disconnect is over.
+    // A user still connected to another node stays online; that node announces the offline.
+    private void goOfflineIfIdle(Integer userId) {
+        long previous = states.getAndUpdate(userId, state -> (state & SESSION_MASK) == 0 ? 0 : state);
+        if (previous == ANNOUNCED && !clusterFanout.hasRemoteSessions(userId)) {
+            wentOffline.incrementAndGet();
+            long lastSeen = pendingLastSeen.get(userId);
+            pushToFriends(userId, false, lastSeen != 0 ? lastSeen : System.currentTimeMillis());
+        }
+    }
+
+    // Users whose only sessions were on a node that left or timed out; nobody else will announce them
+    private void remoteUsersLost(List<Integer> userIds) {
+        long now = System.currentTimeMillis();
+        for (Integer userId : userIds) {
+            if (!isOnline(userId) && !clusterFanout.hasRemoteSessions(userId)) {
+                wentOffline.incrementAndGet();
+                pushToFriends(userId, false, now);
+            }
+        }
+    }
+
+    // Only friends who are online, here or on another node, can receive the push; everyone else asks on their next connect
+    private void pushToFriends(Integer userId, boolean online, long timestamp) {
+        int[] friendIds;
+        try {
+            friendIds = friendGraph.getFriendIds(userId);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to load friends for presence of user " + userId + ": " + e.getMessage());
+            return;
+        }
+        List<String> destinations = new ArrayList<>();
+        for (int friendId : friendIds) {
+            if (isOnline(friendId) || clusterFanout.hasRemoteSessions(friendId)) {
+                destinations.add(FrameSender.userDestination(friendId, QUEUE));
+            }
+        }
+        if (destinations.isEmpty()) {
+            return;
+        }
+        frameSender.send(frameSender.encode(new PresenceDTO(userId, online, timestamp)),
+            destinations.toArray(new String[0]));
+        pushes.addAndGet(destinations.size());
+    }
+
+    private static Integer userIdOf(AbstractSubProtocolEvent event) {
+        Principal user = event.getUser();
+        return user instanceof UserPrincipal principal ? principal.getUserId() : null;
+    }
+}
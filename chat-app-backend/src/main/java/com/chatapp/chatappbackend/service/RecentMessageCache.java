@@ -0,0 +1,483 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.cluster.ClusterFanout;
+import com.chatapp.chatappbackend.dto.MessageAttachmentDTO;
+import com.chatapp.chatappbackend.dto.MessageDTO;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * In-memory tail of the most recent messages of each active conversation, so opening a chat
+ * and catching up on just-broadcast messages do not have to go to the database.
+ *
+ * Each conversation gets a fixed-size ring indexed by message sequence number. A slot is either
+ * a message, a tombstone (deleted message) or empty (not known yet); a read is only answered
+ * from the ring when every sequence number it spans is known, otherwise it counts as a miss and
+ * the caller falls back to the database and seeds the ring with what it loaded. Conversations
+ * are evicted least-recently-used first once the conversation or memory cap is exceeded.
+ *
+ * A seed is only as current as the read it came from, and a delete, delivery or read receipt can
+ * commit between that read and the seed. Every such change bumps a version for its conversation
+ * (conversations share a fixed set of version counters, so the memory they take is bounded), even
+ * when the conversation is not cached; callers take the version before reading, and a seed whose
+ * version has moved since is dropped.
+ *
+ * With several nodes, every change is also announced to the others through ClusterFanout, which
+ * drop their tail of the conversation and bump its version the same way.
+ */
+@Service
+public class RecentMessageCache implements MetricsSource, InitializingBean {
+
+    // Rough per-message overhead of the DTO, its sender and the ring slot, on top of the text
+    private static final long MESSAGE_OVERHEAD_BYTES = 256;
+    private static final long ATTACHMENT_OVERHEAD_BYTES = 320;
+
+    // Number of change-version counters; a power of two
+    private static final int VERSION_STRIPES = 4096;
+
+    @Value("${chat.cache.recent-messages.capacity:64}")
+    private int capacity;
+
+    @Value("${chat.cache.recent-messages.max-conversations:10000}")
+    private int maxConversations;
+
+    @Value("${chat.cache.recent-messages.max-bytes:67108864}")
+    private long maxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used conversation
+    private final LinkedHashMap<Integer, ConversationTail> tails = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong staleSeeds = new AtomicLong();
+    private final AtomicLong remoteInvalidations = new AtomicLong();
+
+    // Changes to messages of the conversations that map to each counter
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    @Override
+    public void afterPropertiesSet() {
+        clusterFanout.setMessagesListener(this::invalidateChangedElsewhere);
+    }
+
+    /**
+     * Get the newest messages of a conversation
+     * @param conversationId The ID of the conversation
+     * @param limit The maximum number of messages to return
+     * @return The messages newest first, or null if the cache cannot answer
+     */
+    public List<MessageDTO> getLatest(Integer conversationId, int limit) {
+        ConversationTail tail = getTail(conversationId);
+        if (tail == null || limit > capacity) {
+            return record(null);
+        }
+        synchronized (tail) {
+            return record(tail.latest(limit));
+        }
+    }
+
+    /**
+     * Get the messages that follow a given message in a conversation
+     * @param conversationId The ID of the conversation
+     * @param messageId The ID of the reference message
+     * @return The messages oldest first, or null if the cache cannot answer
+     */
+    public List<MessageDTO> getAfter(Integer conversationId, Long messageId) {
+        ConversationTail tail = getTail(conversationId);
+        if (tail == null) {
+            return record(null);
+        }
+        synchronized (tail) {
+            return record(tail.after(messageId));
+        }
+    }
+
+    /**
+     * @return The change version of a conversation, to pass to seedLatest; take it before reading
+     */
+    public long getVersion(Integer conversationId) {
+        return versions.get(versionIndex(conversationId));
+    }
+
+    /**
+     * Seed a conversation's tail with the newest messages loaded from the database
+     * @param conversationId The ID of the conversation
+     * @param newestFirst The messages that were loaded, newest first
+     * @param reachedStart Whether the load reached the first message of the conversation
+     * @param versionBeforeLoad The conversation's version from before the load
+     */
+    public void seedLatest(Integer conversationId, List<MessageDTO> newestFirst, boolean reachedStart,
+                           long versionBeforeLoad) {
+        if (newestFirst.isEmpty() && !reachedStart) {
+            return;
+        }
+        for (MessageDTO message : newestFirst) {
+            if (message.getSequence() == null) {
+                return; // Not numbered yet, cannot be placed in the ring
+            }
+        }
+        ConversationTail tail = getOrCreateTail(conversationId);
+        synchronized (tail) {
+            // Changes bump the version before they take the tail's lock, so none can slip in after this check
+            if (getVersion(conversationId) != versionBeforeLoad) {
+                staleSeeds.incrementAndGet();
+                return;
+            }
+            tail.seed(newestFirst, reachedStart);
+        }
+        enforceLimits(conversationId);
+    }
+
+    /**
+     * Add a newly committed message to its conversation's tail
+     * @param message The message that was sent
+     */
+    public void append(MessageDTO message) {
+        if (message.getSequence() == null) {
+            return;
+        }
+        ConversationTail tail = getOrCreateTail(message.getConversationId());
+        synchronized (tail) {
+            tail.put(message.getSequence(), message);
+        }
+        enforceLimits(message.getConversationId());
+        clusterFanout.messagesChanged(List.of(message.getConversationId()));
+    }
+
+    /**
+     * Replace a deleted message with a tombstone
+     */
+    public void markDeleted(Integer conversationId, Long sequence) {
+        update(conversationId, tail -> tail.putIfKnown(sequence, null));
+    }
+
+    /**
+     * Flag a cached message as delivered
+     */
+    public void markDelivered(Integer conversationId, Long sequence) {
+        update(conversationId, tail -> {
+            MessageDTO current = tail.get(sequence);
+            if (current != null && !current.isDelivered()) {
+                MessageDTO updated = new MessageDTO(current);
+                updated.setDelivered(true);
+                updated.setDeliveredAt(LocalDateTime.now());
+                tail.putIfKnown(sequence, updated);
+            }
+        });
+    }
+
+    /**
+     * Flag the cached messages another participant sent, up to a sequence number, as read by a user
+     */
+    public void markReadUpTo(Integer conversationId, Integer readerId, long upToSequence, LocalDateTime readAt) {
+        update(conversationId, tail -> tail.markRead(readerId, upToSequence, readAt));
+    }
+
+    /**
+     * Drop the tails of conversations whose messages another node changed, and stop seeds read
+     * before the change from being cached
+     */
+    public void invalidateChangedElsewhere(List<Integer> conversationIds) {
+        for (Integer conversationId : conversationIds) {
+            versions.incrementAndGet(versionIndex(conversationId));
+            invalidate(conversationId);
+            remoteInvalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drop a conversation's tail entirely
+     */
+    public void invalidate(Integer conversationId) {
+        ConversationTail removed;
+        synchronized (tails) {
+            removed = tails.remove(conversationId);
+        }
+        if (removed != null) {
+            synchronized (removed) {
+                totalBytes.addAndGet(-removed.bytes);
+                removed.bytes = 0;
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "recentMessageCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        metrics.put("evictions", evictions.get());
+        metrics.put("staleSeeds", staleSeeds.get());
+        metrics.put("remoteInvalidations", remoteInvalidations.get());
+        synchronized (tails) {
+            metrics.put("conversations", tails.size());
+        }
+        metrics.put("estimatedBytes", totalBytes.get());
+        metrics.put("maxBytes", maxBytes);
+        return metrics;
+    }
+
+    private List<MessageDTO> record(List<MessageDTO> result) {
+        (result != null ? hits : misses).incrementAndGet();
+        return result;
+    }
+
+    private ConversationTail getTail(Integer conversationId) {
+        synchronized (tails) {
+            return tails.get(conversationId);
+        }
+    }
+
+    private ConversationTail getOrCreateTail(Integer conversationId) {
+        synchronized (tails) {
+            return tails.computeIfAbsent(conversationId, id -> new ConversationTail(capacity));
+        }
+    }
+
+    private void update(Integer conversationId, Consumer<ConversationTail> action) {
+        versions.incrementAndGet(versionIndex(conversationId));
+        ConversationTail tail = getTail(conversationId);
+        if (tail != null) {
+            synchronized (tail) {
+                action.accept(tail);
+            }
+        }
+        clusterFanout.messagesChanged(List.of(conversationId));
+    }
+
+    // Evict least recently used conversations, never the one that was just written to
+    private void enforceLimits(Integer justUsed) {
+        synchronized (tails) {
+            Iterator<Map.Entry<Integer, ConversationTail>> iterator = tails.entrySet().iterator();
+            while ((tails.size() > maxConversations || totalBytes.get() > maxBytes) && iterator.hasNext()) {
+                Map.Entry<Integer, ConversationTail> eldest = iterator.next();
+                if (eldest.getKey().equals(justUsed)) {
+                    continue;
+                }
+                iterator.remove();
+                ConversationTail tail = eldest.getValue();
+                synchronized (tail) {
+                    totalBytes.addAndGet(-tail.bytes);
+                    tail.bytes = 0;
+                }
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static int versionIndex(Integer conversationId) {
+        return (conversationId * 0x9E3779B9 >>> 20) & (VERSION_STRIPES - 1);
+    }
+
+    private static long estimateBytes(MessageDTO message) {
+        if (message == null) {
+            return MESSAGE_OVERHEAD_BYTES / 4;
+        }
+        long bytes = MESSAGE_OVERHEAD_BYTES;
+        if (message.getContent() != null) {
+            bytes += 2L * message.getContent().length();
+        }
+        List<MessageAttachmentDTO> attachments = message.getAttachments();
+        if (attachments != null) {
+            bytes += ATTACHMENT_OVERHEAD_BYTES * attachments.size();
+        }
+        return bytes;
+    }
+
+    /**
+     * One ring slot: a message, or a tombstone when {@code message} is null
+     */
+    private static final class Slot {
+        private final long sequence;
+        private final MessageDTO message;
+
+        Slot(long sequence, MessageDTO message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+
+    /**
+     * The ring of one conversation. All access is synchronized on the instance.
+     */
+    private final class ConversationTail {
+        private final Slot[] ring;
+        private long newestSequence;
+        // Every sequence number from here up to newestSequence that is still inside the ring is known
+        private long floorSequence = Long.MAX_VALUE;
+        private long bytes;
+
+        ConversationTail(int capacity) {
+            this.ring = new Slot[capacity];
+        }
+
+        private int index(long sequence) {
+            return (int) (sequence % ring.length);
+        }
+
+        private long lowestInRing() {
+            return Math.max(1, newestSequence - ring.length + 1);
+        }
+
+        private void setSlot(long sequence, MessageDTO message) {
+            int index = index(sequence);
+            Slot previous = ring[index];
+            long delta = estimateBytes(message) - (previous == null ? 0 : estimateBytes(previous.message));
+            ring[index] = new Slot(sequence, message);
+            bytes += delta;
+            totalBytes.addAndGet(delta);
+        }
+
+        private void clearSlot(long sequence) {
+            int index = index(sequence);
+            Slot previous = ring[index];
+            if (previous != null) {
+                long delta = -estimateBytes(previous.message);
+                ring[index] = null;
+                bytes += delta;
+                totalBytes.addAndGet(delta);
+            }
+        }
+
+        MessageDTO get(long sequence) {
+            Slot slot = ring[index(sequence)];
+            return slot != null && slot.sequence == sequence ? slot.message : null;
+        }
+
+        void put(long sequence, MessageDTO message) {
+            if (newestSequence == 0 && floorSequence == Long.MAX_VALUE) {
+                newestSequence = sequence;
+                floorSequence = sequence;
+            } else if (sequence > newestSequence) {
+                // Slots skipped over belong to commits that have not been seen yet
+                for (long skipped = Math.max(newestSequence + 1, sequence - ring.length + 1); skipped < sequence; skipped++) {
+                    clearSlot(skipped);
+                }
+                newestSequence = sequence;
+            } else if (sequence < lowestInRing()) {
+                return;
+            }
+            setSlot(sequence, message);
+            floorSequence = Math.min(floorSequence, sequence);
+        }
+
+        void putIfKnown(long sequence, MessageDTO message) {
+            Slot slot = ring[index(sequence)];
+            if (slot != null && slot.sequence == sequence) {
+                setSlot(sequence, message);
+            }
+        }
+
+        void seed(List<MessageDTO> newestFirst, boolean reachedStart) {
+            long high = newestFirst.isEmpty() ? 0 : newestFirst.get(0).getSequence();
+            long low = reachedStart ? 1 : newestFirst.get(newestFirst.size() - 1).getSequence();
+            if (high > newestSequence) {
+                for (long skipped = Math.max(newestSequence + 1, high - ring.length + 1); skipped <= high; skipped++) {
+                    clearSlot(skipped);
+                }
+                newestSequence = high;
+            }
+
+            // Sequence numbers in the loaded range that were not returned belong to deleted messages
+            Map<Long, MessageDTO> loaded = new HashMap<>();
+            for (MessageDTO message : newestFirst) {
+                loaded.put(message.getSequence(), message);
+            }
+            for (long sequence = Math.max(low, lowestInRing()); sequence <= high; sequence++) {
+                Slot slot = ring[index(sequence)];
+                if (slot == null || slot.sequence != sequence) {
+                    setSlot(sequence, loaded.get(sequence));
+                }
+            }
+            floorSequence = Math.min(floorSequence, low);
+        }
+
+        List<MessageDTO> latest(int limit) {
+            List<MessageDTO> result = new ArrayList<>(limit);
+            long bottom = Math.max(floorSequence, lowestInRing());
+            for (long sequence = newestSequence; sequence >= bottom && sequence > 0; sequence--) {
+                Slot slot = ring[index(sequence)];
+                if (slot == null || slot.sequence != sequence) {
+                    return null;
+                }
+                if (slot.message != null) {
+                    result.add(slot.message);
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+            // Fewer than requested is only a complete answer if the conversation starts inside the ring
+            return bottom == floorSequence && floorSequence <= 1 ? result : null;
+        }
+
+        List<MessageDTO> after(Long messageId) {
+            long bottom = Math.max(floorSequence, lowestInRing());
+            long referenceSequence = -1;
+            for (long sequence = newestSequence; sequence >= bottom && sequence > 0; sequence--) {
+                Slot slot = ring[index(sequence)];
+                if (slot != null && slot.sequence == sequence && slot.message != null
+                        && slot.message.getId().equals(messageId)) {
+                    referenceSequence = sequence;
+                    break;
+                }
+            }
+            if (referenceSequence < 0) {
+                return null;
+            }
+            List<MessageDTO> result = new ArrayList<>();
+            for (long sequence = referenceSequence + 1; sequence <= newestSequence; sequence++) {
+                Slot slot = ring[index(sequence)];
+                if (slot == null || slot.sequence != sequence) {
+                    return null;
+                }
+                if (slot.message != null) {
+                    result.add(slot.message);
+                }
+            }
+            return result;
+        }
+
+        void markRead(Integer readerId, long upToSequence, LocalDateTime readAt) {
+            for (Slot slot : ring) {
+                if (slot == null || slot.message == null) {
+                    continue;
+                }
+                MessageDTO message = slot.message;
+                if (!message.isRead() && !message.getSender().getId().equals(readerId) && slot.sequence <= upToSequence) {
+                    MessageDTO updated = new MessageDTO(message);
+                    updated.setRead(true);
+                    updated.setReadAt(readAt);
+                    setSlot(slot.sequence, updated);
+                }
+            }
+        }
+    }
+}
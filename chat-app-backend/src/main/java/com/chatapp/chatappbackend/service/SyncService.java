@@ -0,0 +1,140 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.ConversationDTO;
+import com.chatapp.chatappbackend.dto.SyncConversationDTO;
+import com.chatapp.chatappbackend.dto.SyncResponseDTO;
+import com.chatapp.chatappbackend.model.ChangeLogEntry;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One-round-trip catch-up for app start: everything that changed in a user's conversations since
+ * the sync token they got last time, read from the change log instead of querying every
+ * conversation. The token is a change log position; a client without one, or with one older than
+ * the log reaches back, gets a full resync of its conversation list instead.
+ */
+@Service
+public class SyncService implements MetricsSource {
+
+    @Value("${chat.sync.max-changes:2000}")
+    private int maxChanges;
+
+    @Value("${chat.sync.max-messages-per-conversation:50}")
+    private int maxMessagesPerConversation;
+
+    @Autowired
+    private ChangeLog changeLog;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private MessageService messageService;
+
+    private final AtomicLong deltaSyncs = new AtomicLong();
+    private final AtomicLong fullResyncs = new AtomicLong();
+
+    /**
+     * Get the changes to a user's conversations since a sync token
+     * @param userId The ID of the user
+     * @param syncToken The token from the previous sync, or null on first start
+     * @return The changes and the token to pass next time
+     */
+    public SyncResponseDTO sync(Integer userId, String syncToken) {
+        if (syncToken == null || syncToken.isEmpty()) {
+            return fullResync(userId);
+        }
+        long position = parseToken(syncToken);
+        // Positions below the oldest entry were pruned, so changes after the token may be gone
+        Long oldest = changeLog.getOldestPosition();
+        if (oldest != null && position < oldest - 1) {
+            return fullResync(userId);
+        }
+        deltaSyncs.incrementAndGet();
+
+        ChangeLog.Page page = changeLog.readForUser(userId, position, maxChanges);
+        Map<Integer, Changes> byConversation = new LinkedHashMap<>();
+        for (ChangeLogEntry entry : page.getEntries()) {
+            Changes changes = byConversation.computeIfAbsent(entry.getConversationId(), id -> new Changes());
+            switch (entry.getChangeType()) {
+                case CONVERSATION_CREATED -> { }
+                case MESSAGE_CREATED -> changes.createdSequences.add(entry.getSequence());
+                case MESSAGE_DELETED -> changes.deletedMessageIds.add(entry.getMessageId());
+                case MESSAGE_DELIVERED -> changes.deliveredMessageIds.add(entry.getMessageId());
+                case READ_MARK_MOVED -> changes.readMarks.merge(entry.getUserId(), entry.getSequence(), Math::max);
+            }
+        }
+
+        List<SyncConversationDTO> conversations = new ArrayList<>(byConversation.size());
+        for (ConversationDTO conversation : conversationService.getConversationsForUser(userId, byConversation.keySet())) {
+            Changes changes = byConversation.get(conversation.getId());
+            SyncConversationDTO synced = new SyncConversationDTO(conversation);
+            List<Long> sequences = changes.createdSequences;
+            // Keep the newest messages; the client pages back through history for the rest
+            if (sequences.size() > maxMessagesPerConversation) {
+                sequences = sequences.subList(sequences.size() - maxMessagesPerConversation, sequences.size());
+                synced.setMessagesTruncated(true);
+            }
+            synced.setMessages(messageService.getMessagesBySequences(conversation.getId(), sequences));
+            synced.setReadMarks(changes.readMarks);
+            synced.setDeliveredMessageIds(changes.deliveredMessageIds);
+            synced.setDeletedMessageIds(changes.deletedMessageIds);
+            conversations.add(synced);
+        }
+        return new SyncResponseDTO(Long.toString(page.getSettledThrough()), page.hasMore(), false, conversations);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "sync";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("deltaSyncs", deltaSyncs.get());
+        metrics.put("fullResyncs", fullResyncs.get());
+        return metrics;
+    }
+
+    // Every conversation without messages; the token is taken first so nothing after it is missed
+    private SyncResponseDTO fullResync(Integer userId) {
+        fullResyncs.incrementAndGet();
+        long position = changeLog.getSettledPosition();
+        List<SyncConversationDTO> conversations = new ArrayList<>();
+        for (ConversationDTO conversation : conversationService.getConversationsForUser(userId)) {
+            conversations.add(new SyncConversationDTO(conversation));
+        }
+        return new SyncResponseDTO(Long.toString(position), false, true, conversations);
+    }
+
+    private static long parseToken(String syncToken) {
+        try {
+            long position = Long.parseLong(syncToken);
+            if (position >= 0) {
+                return position;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through
+        }
+        throw new IllegalArgumentException("Invalid sync token");
+    }
+
+    /**
+     * Changes to one conversation, collected from the log
+     */
+    private static final class Changes {
+        private final List<Long> createdSequences = new ArrayList<>();
+        private final List<Long> deliveredMessageIds = new ArrayList<>();
+        private final List<Long> deletedMessageIds = new ArrayList<>();
+        private final Map<Integer, Long> readMarks = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,181 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.TypingEventDTO;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import com.chatapp.chatappbackend.util.TimingWheel;
+import com.chatapp.chatappbackend.websocket.FrameSender;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Typing state per (conversation, user). Clients report typing on every keystroke; this keeps
+ * the state and only broadcasts when it changes, or at most once per refresh interval while it
+ * does not, and broadcasts "stopped" by itself when a typist goes quiet for longer than the TTL
+ * (including when they disconnect). Each typist has at most one expiry timer, on a shared timing
+ * wheel, and keystrokes only move its deadline.
+ */
+@Service
+public class TypingService implements MetricsSource, InitializingBean, DisposableBean {
+
+    @Value("${chat.typing.ttl-ms:5000}")
+    private long ttlMillis;
+
+    @Value("${chat.typing.refresh-interval-ms:2000}")
+    private long refreshIntervalMillis;
+
+    @Value("${chat.typing.tick-ms:100}")
+    private long tickMillis;
+
+    @Autowired
+    private FrameSender frameSender;
+
+    private TimingWheel timingWheel;
+
+    // (conversationId << 32 | userId) -> state of a user who is typing
+    private final Map<Long, TypingState> typists = new ConcurrentHashMap<>();
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        this.timingWheel = new TimingWheel("typing-timers", tickMillis, 512);
+    }
+
+    @Override
+    public void destroy() {
+        timingWheel.close();
+    }
+
+    /**
+     * Record a typing report from a client
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user
+     * @param typing Whether the user is typing
+     */
+    public void update(Integer conversationId, Integer userId, boolean typing) {
+        updates.incrementAndGet();
+        long key = key(conversationId, userId);
+        long now = System.currentTimeMillis();
+
+        if (!typing) {
+            TypingState state = typists.remove(key);
+            if (state != null) {
+                state.stop();
+                broadcast(conversationId, userId, false, now);
+            }
+            return;
+        }
+
+        while (true) {
+            TypingState state = typists.computeIfAbsent(key, k -> new TypingState(conversationId, userId));
+            boolean emit;
+            synchronized (state) {
+                if (state.stopped) {
+                    // Expired concurrently; start over with a fresh state
+                    typists.remove(key, state);
+                    continue;
+                }
+                state.deadline = now + ttlMillis;
+                emit = now - state.lastBroadcastAt >= refreshIntervalMillis;
+                if (emit) {
+                    state.lastBroadcastAt = now;
+                }
+                if (state.timeout == null) {
+                    state.timeout = timingWheel.schedule(() -> expire(key, state), ttlMillis);
+                }
+            }
+            if (emit) {
+                broadcast(conversationId, userId, true, now);
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return Whether a user is currently typing in a conversation
+     */
+    public boolean isTyping(Integer conversationId, Integer userId) {
+        return typists.containsKey(key(conversationId, userId));
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "typing";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long received = updates.get();
+        long sent = broadcasts.get();
+        metrics.put("typists", typists.size());
+        metrics.put("updates", received);
+        metrics.put("broadcasts", sent);
+        metrics.put("suppressed", Math.max(received - sent, 0));
+        metrics.put("expired", expired.get());
+        return metrics;
+    }
+
+    // Runs on the timing wheel when a typist's timer is due
+    private void expire(long key, TypingState state) {
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            if (state.stopped) {
+                return;
+            }
+            if (now < state.deadline) {
+                // Typed since the timer was set; wait for the rest of the TTL
+                state.timeout = timingWheel.schedule(() -> expire(key, state), state.deadline - now);
+                return;
+            }
+            state.stopped = true;
+        }
+        typists.remove(key, state);
+        expired.incrementAndGet();
+        broadcast(state.conversationId, state.userId, false, now);
+    }
+
+    private void broadcast(Integer conversationId, Integer userId, boolean typing, long timestamp) {
+        broadcasts.incrementAndGet();
+        frameSender.encodeAndSend(new TypingEventDTO(userId, typing, timestamp),
+            "/topic/conversation." + conversationId + ".typing");
+    }
+
+    private static long key(Integer conversationId, Integer userId) {
+        return ((long) conversationId << 32) | (userId & 0xffffffffL);
+    }
+
+    /**
+     * A user who is typing; fields other than the IDs are guarded by the state itself
+     */
+    private static final class TypingState {
+        private final Integer conversationId;
+        private final Integer userId;
+        private long deadline;
+        private long lastBroadcastAt;
+        private TimingWheel.Timeout timeout;
+        private boolean stopped;
+
+        TypingState(Integer conversationId, Integer userId) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+}
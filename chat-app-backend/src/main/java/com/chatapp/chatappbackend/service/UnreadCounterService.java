@@ -0,0 +1,313 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.cluster.ClusterFanout;
+import com.chatapp.chatappbackend.model.UnreadCounter;
+import com.chatapp.chatappbackend.repository.UnreadCounterRepository;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Unread message counters per (conversation, user), kept in memory and written back to the
+ * unread_counters table in the background. Sends increment the reader's counter and read
+ * receipts decrement it by the number of messages they actually flipped (rather than resetting
+ * it, which could swallow a message committed concurrently), so the inbox and the global badge
+ * are answered from one row per conversation instead of counting messages.
+ *
+ * Counters are kept as signed sums and clamped at zero only when read, so a read receipt that
+ * lands before the increment it cancels (they commit independently) nets out instead of leaving
+ * a phantom unread message. After each flush the other nodes are told whose counters changed
+ * and drop their cached copies.
+ */
+@Service
+public class UnreadCounterService implements MetricsSource, InitializingBean, DisposableBean {
+
+    // Changes are written as deltas so concurrent writers (or instances) never overwrite each other
+    private static final String ADD_SQL =
+        "INSERT INTO unread_counters (conversation_id, user_id, unread_count) VALUES (?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE unread_count = unread_count + ?";
+
+    @Value("${chat.unread.max-cached-users:50000}")
+    private int maxCachedUsers;
+
+    @Autowired
+    private UnreadCounterRepository unreadCounterRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    private TransactionTemplate transactionTemplate;
+
+    // Loads share the read side; a flush takes the write side so a load never reads the table
+    // between a flush writing its changes and those changes leaving the pending map
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    // Counters of recently active users, userId -> (conversationId -> signed count), LRU-bounded; guarded by this
+    private final LinkedHashMap<Integer, Map<Integer, Integer>> loaded = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Map<Integer, Integer>> eldest) {
+            return size() > maxCachedUsers;
+        }
+    };
+
+    // Net changes not yet written to the table, userId -> (conversationId -> delta); guarded by this
+    private Map<Integer, Map<Integer, Integer>> pending = new HashMap<>();
+
+    // Bumped whenever another node changes counters, so a load that read the table before that
+    // is returned but not cached; guarded by this
+    private long remoteChanges;
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong remoteEvictions = new AtomicLong();
+    private final AtomicLong loadsInTransaction = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        // Joins a caller's transaction rather than taking a second pooled connection beside it
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        clusterFanout.setUnreadListener(this::evict);
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+
+    /**
+     * Count one new unread message for a user
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user who has not read the message yet
+     */
+    public void increment(Integer conversationId, Integer userId) {
+        apply(conversationId, userId, 1);
+    }
+
+    /**
+     * Remove messages that were read (or deleted while unread) from a user's count
+     * @param conversationId The ID of the conversation
+     * @param userId The ID of the user
+     * @param count The number of messages that are no longer unread
+     */
+    public void decrement(Integer conversationId, Integer userId, int count) {
+        if (count > 0) {
+            apply(conversationId, userId, -count);
+        }
+    }
+
+    /**
+     * Get the unread counts of a user in every conversation with unread messages.
+     * Call this before opening a transaction of your own: a load inside one reads that
+     * transaction's snapshot, which may predate the last flush, so its result is not cached.
+     * @param userId The ID of the user
+     * @return Map of conversation ID to unread count; conversations without an entry have none
+     */
+    public Map<Integer, Integer> getUnreadCounts(Integer userId) {
+        synchronized (this) {
+            Map<Integer, Integer> counts = loaded.get(userId);
+            if (counts != null) {
+                return positive(counts);
+            }
+        }
+        return positive(load(userId));
+    }
+
+    /**
+     * Get the unread count of a user in one conversation
+     */
+    public int getUnreadCount(Integer conversationId, Integer userId) {
+        return getUnreadCounts(userId).getOrDefault(conversationId, 0);
+    }
+
+    /**
+     * Get the total number of unread messages of a user across all conversations
+     */
+    public int getTotalUnreadCount(Integer userId) {
+        int total = 0;
+        for (int count : getUnreadCounts(userId).values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Drop cached counters that another node has changed; they are read again on next use
+     */
+    public synchronized void evict(List<Integer> userIds) {
+        remoteChanges++;
+        for (Integer userId : userIds) {
+            if (loaded.remove(userId) != null) {
+                remoteEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Write pending changes back to the counters table
+     */
+    @Scheduled(fixedDelayString = "${chat.unread.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            Map<Integer, Map<Integer, Integer>> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new HashMap<>();
+            }
+
+            List<Object[]> rows = new ArrayList<>();
+            List<Integer> changedUsers = new ArrayList<>();
+            for (Map.Entry<Integer, Map<Integer, Integer>> user : batch.entrySet()) {
+                int before = rows.size();
+                for (Map.Entry<Integer, Integer> entry : user.getValue().entrySet()) {
+                    int delta = entry.getValue();
+                    if (delta != 0) {
+                        rows.add(new Object[] { entry.getKey(), user.getKey(), delta, delta });
+                    }
+                }
+                if (rows.size() > before) {
+                    changedUsers.add(user.getKey());
+                }
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(ADD_SQL, rows));
+                flushes.incrementAndGet();
+                flushedRows.addAndGet(rows.size());
+            } catch (RuntimeException e) {
+                // Merge the changes back with anything that arrived meanwhile and retry next time
+                synchronized (this) {
+                    batch.forEach((userId, deltas) -> deltas.forEach(
+                        (conversationId, delta) -> addTo(pending.computeIfAbsent(userId, id -> new HashMap<>()), conversationId, delta)));
+                }
+                failedFlushes.incrementAndGet();
+                System.err.println("Failed to write unread counters: " + e.getMessage());
+                return;
+            }
+            clusterFanout.unreadCountersChanged(changedUsers);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "unreadCounters";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("cachedUsers", loaded.size());
+            metrics.put("pendingUsers", pending.size());
+        }
+        metrics.put("loads", loads.get());
+        metrics.put("flushes", flushes.get());
+        metrics.put("flushedRows", flushedRows.get());
+        metrics.put("failedFlushes", failedFlushes.get());
+        metrics.put("remoteEvictions", remoteEvictions.get());
+        metrics.put("loadsInTransaction", loadsInTransaction.get());
+        return metrics;
+    }
+
+    private synchronized void apply(Integer conversationId, Integer userId, int delta) {
+        addTo(pending.computeIfAbsent(userId, id -> new HashMap<>()), conversationId, delta);
+
+        Map<Integer, Integer> counts = loaded.get(userId);
+        if (counts != null) {
+            addTo(counts, conversationId, delta);
+        }
+    }
+
+    // Signed; an entry that sums to zero is removed
+    private static void addTo(Map<Integer, Integer> counts, Integer conversationId, int delta) {
+        int updated = counts.getOrDefault(conversationId, 0) + delta;
+        if (updated == 0) {
+            counts.remove(conversationId);
+        } else {
+            counts.put(conversationId, updated);
+        }
+    }
+
+    // Returns the signed counts; the caller clamps them
+    private Map<Integer, Integer> load(Integer userId) {
+        flushLock.readLock().lock();
+        try {
+            long remoteChangesBefore;
+            synchronized (this) {
+                remoteChangesBefore = remoteChanges;
+            }
+            // An older snapshot may miss changes that were flushed and left the pending map since
+            boolean fresh = !TransactionSynchronizationManager.isActualTransactionActive();
+            if (!fresh) {
+                loadsInTransaction.incrementAndGet();
+            }
+            List<UnreadCounter> rows = transactionTemplate.execute(status -> unreadCounterRepository.findByUserId(userId));
+            Map<Integer, Integer> counts = new HashMap<>();
+            for (UnreadCounter row : rows) {
+                if (row.getUnreadCount() != 0) {
+                    counts.put(row.getConversationId(), row.getUnreadCount());
+                }
+            }
+            loads.incrementAndGet();
+
+            synchronized (this) {
+                // Changes made since the last flush are not in the table yet
+                Map<Integer, Integer> deltas = pending.get(userId);
+                if (deltas != null) {
+                    deltas.forEach((conversationId, delta) -> addTo(counts, conversationId, delta));
+                }
+                if (fresh && remoteChanges == remoteChangesBefore) {
+                    loaded.put(userId, counts);
+                    return new HashMap<>(counts);
+                }
+                return counts;
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    // What callers see: only conversations with unread messages
+    private static Map<Integer, Integer> positive(Map<Integer, Integer> counts) {
+        Map<Integer, Integer> result = new HashMap<>();
+        counts.forEach((conversationId, count) -> {
+            if (count > 0) {
+                result.put(conversationId, count);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.model.User;
+import com.chatapp.chatappbackend.repository.UserRepository;
+import com.chatapp.chatappbackend.util.BoundedCache;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Users by ID, in front of UserRepository.findById for the many places that resolve a sender,
+ * participant or friend on every request. Entries are detached snapshots and every caller gets
+ * its own copy, so a caller that modifies and saves a user changes nothing in the cache; it calls
+ * invalidate() once the change is written. Other instances sharing the database see such changes
+ * after the TTL at the latest.
+ */
+@Component
+public class UserProfileCache implements MetricsSource, InitializingBean {
+
+    @Value("${chat.user-cache.max-size:50000}")
+    private int maxSize;
+
+    @Value("${chat.user-cache.ttl-ms:300000}")
+    private long ttlMillis;
+
+    @Value("${chat.user-cache.segments:16}")
+    private int segments;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private BoundedCache<Integer, User> cache;
+
+    @Override
+    public void afterPropertiesSet() {
+        this.cache = new BoundedCache<>(maxSize, ttlMillis, segments);
+    }
+
+    /**
+     * @return A copy of the user, or empty if there is none with that ID
+     */
+    public Optional<User> findById(Integer userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        User user = cache.get(userId, id -> userRepository.findById(id).map(User::new).orElse(null));
+        return Optional.ofNullable(user).map(User::new);
+    }
+
+    /**
+     * Drop a user whose profile changed
+     */
+    public void invalidate(Integer userId) {
+        cache.invalidate(userId);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "userProfiles";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        return cache.getMetrics();
+    }
+}
@@ -0,0 +1,460 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Username and display name search, in memory. Every trigram of a user's lowercased username and
+ * display name maps to the sorted IDs of the users containing it, so a query of three or more
+ * characters intersects a few short arrays instead of scanning the users table; one- and
+ * two-character queries use the same kind of list, kept for the first characters of every word.
+ * Candidates are then checked against the actual names, since sharing trigrams does not mean
+ * containing the query.
+ *
+ * Matches are ordered by relevance: an exact name first, then username prefixes, word prefixes of
+ * the display name, and other substrings, shorter names before longer ones and lower IDs last.
+ * Each match's place in that order is a single number, so the cursor of the next page is simply
+ * the number of the last match returned.
+ *
+ * The index is loaded at startup and reloaded every reload interval, which also picks up changes
+ * made on other instances; registrations and profile updates on this one are applied as they
+ * commit. Arrays are replaced, never modified, so searches need no lock.
+ */
+@Service
+@Order(5)
+public class UserSearchIndex implements CommandLineRunner, MetricsSource {
+
+    private static final String CURSOR_PREFIX = "r:";
+    private static final char WORD_START = '^';
+
+    // Relevance classes, best first
+    private static final int EXACT = 0;
+    private static final int USERNAME_PREFIX = 1;
+    private static final int WORD_PREFIX = 2;
+    private static final int SUBSTRING = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // null until the first load
+    private volatile Index index;
+
+    // Changes applied while a reload is loading, replayed onto the loaded index; guarded by this
+    private List<Entry> changesDuringReload;
+
+    private final Object reloadLock = new Object();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong candidatesChecked = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private volatile long lastReloadDurationMillis;
+
+    @Override
+    public void run(String... args) {
+        reload();
+    }
+
+    /**
+     * @return Whether the index has been loaded and can answer searches
+     */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    /**
+     * Find users whose username or display name contains the query
+     * @param query The text to look for; case does not matter
+     * @param excludeUserId A user to leave out, usually the one searching, or null
+     * @param after The position of the last match of the previous page, or null for the first page
+     * @param limit The maximum number of matches
+     * @return The matching user IDs in relevance order, and where the next page starts
+     * @throws IllegalStateException if the index is still loading
+     */
+    public Result search(String query, Integer excludeUserId, Long after, int limit) {
+        Index current = index;
+        if (current == null) {
+            throw new IllegalStateException("User search is still loading");
+        }
+        searches.incrementAndGet();
+        String normalized = normalize(query);
+        if (normalized == null || limit <= 0) {
+            return new Result(new int[0], null);
+        }
+
+        int[] candidates = candidates(current, normalized);
+        candidatesChecked.addAndGet(candidates.length);
+        long[] keys = new long[candidates.length];
+        int n = 0;
+        for (int userId : candidates) {
+            if (excludeUserId != null && userId == excludeUserId) {
+                continue;
+            }
+            Entry entry = current.entries.get(userId);
+            long key = entry != null ? rank(entry, normalized) : -1;
+            if (key >= 0 && (after == null || key > after)) {
+                keys[n++] = key;
+            }
+        }
+        Arrays.sort(keys, 0, n);
+
+        int size = Math.min(n, limit);
+        int[] userIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            userIds[i] = (int) keys[i];
+        }
+        return new Result(userIds, n > limit ? Long.valueOf(keys[size - 1]) : null);
+    }
+
+    /**
+     * Index a user's current names; call once the change is committed
+     */
+    public synchronized void put(Integer userId, String username, String displayName) {
+        Entry entry = new Entry(userId, normalize(username), normalize(displayName));
+        if (changesDuringReload != null) {
+            changesDuringReload.add(entry);
+        }
+        Index current = index;
+        if (current != null) {
+            apply(current, entry);
+        }
+        updates.incrementAndGet();
+    }
+
+    /**
+     * Reload every user's names from the users table. Changes applied during the load are
+     * replayed onto the new index before it replaces the old one.
+     */
+    @Scheduled(fixedDelayString = "${chat.user-search.reload-interval-ms:600000}",
+               initialDelayString = "${chat.user-search.reload-interval-ms:600000}")
+    public void reload() {
+        synchronized (reloadLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                changesDuringReload = new ArrayList<>();
+            }
+            Index loaded;
+            try {
+                loaded = load();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    changesDuringReload = null;
+                }
+                System.err.println("Failed to load the user search index: " + e.getMessage());
+                return;
+            }
+            synchronized (this) {
+                for (Entry entry : changesDuringReload) {
+                    apply(loaded, entry);
+                }
+                changesDuringReload = null;
+                index = loaded;
+            }
+            reloads.incrementAndGet();
+            lastReloadDurationMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Encode the position of a match into a URL-safe cursor token
+     */
+    public static String encodeCursor(long position) {
+        String raw = CURSOR_PREFIX + position;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor token produced by {@link #encodeCursor(long)}
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static long decodeCursor(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (!raw.startsWith(CURSOR_PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return Long.parseLong(raw.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "userSearch";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Index current = index;
+        metrics.put("loaded", current != null);
+        metrics.put("users", current != null ? current.entries.size() : 0);
+        metrics.put("grams", current != null ? current.postings.size() : 0);
+        metrics.put("searches", searches.get());
+        metrics.put("candidatesChecked", candidatesChecked.get());
+        metrics.put("updates", updates.get());
+        metrics.put("reloads", reloads.get());
+        metrics.put("lastReloadDurationMillis", lastReloadDurationMillis);
+        return metrics;
+    }
+
+    // Users who may match: those with every trigram of the query, or with a word starting with it
+    private static int[] candidates(Index index, String query) {
+        if (query.length() < 3) {
+            return index.postings.getOrDefault(WORD_START + query, new int[0]);
+        }
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            trigrams.add(query.substring(i, i + 3));
+        }
+        List<int[]> lists = new ArrayList<>(trigrams.size());
+        for (String trigram : trigrams) {
+            int[] ids = index.postings.get(trigram);
+            if (ids == null) {
+                return new int[0];
+            }
+            lists.add(ids);
+        }
+        // Shortest first, so every step works on the smallest possible result
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Where a user falls in the relevance order for a query: class, then name length, then ID
+     * @return The position, or -1 if the user does not match
+     */
+    static long rank(Entry entry, String query) {
+        String username = entry.username != null ? entry.username : "";
+        String displayName = entry.displayName != null ? entry.displayName : "";
+        int relevance;
+        int length;
+        if (username.equals(query) || displayName.equals(query)) {
+            relevance = EXACT;
+            length = query.length();
+        } else if (username.startsWith(query)) {
+            relevance = USERNAME_PREFIX;
+            length = username.length();
+        } else if (hasWordStartingWith(displayName, query)) {
+            relevance = WORD_PREFIX;
+            length = displayName.length();
+        } else if (username.contains(query)) {
+            relevance = SUBSTRING;
+            length = username.length();
+        } else if (displayName.contains(query)) {
+            relevance = SUBSTRING;
+            length = displayName.length();
+        } else {
+            return -1;
+        }
+        return (long) relevance << 40 | (long) Math.min(length, 0xff) << 32 | entry.userId;
+    }
+
+    private static boolean hasWordStartingWith(String text, String prefix) {
+        for (int i = text.indexOf(prefix); i >= 0; i = text.indexOf(prefix, i + 1)) {
+            if (i == 0 || Character.isWhitespace(text.charAt(i - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Caller holds the lock on this
+    private static void apply(Index index, Entry entry) {
+        Entry previous = index.entries.put(entry.userId, entry);
+        Set<String> before = previous != null ? grams(previous) : Set.of();
+        Set<String> after = grams(entry);
+        for (String gram : before) {
+            if (!after.contains(gram)) {
+                update(index.postings, gram, entry.userId, false);
+            }
+        }
+        for (String gram : after) {
+            if (!before.contains(gram)) {
+                update(index.postings, gram, entry.userId, true);
+            }
+        }
+    }
+
+    private static void update(Map<String, int[]> postings, String gram, int userId, boolean add) {
+        int[] ids = postings.getOrDefault(gram, new int[0]);
+        int index = Arrays.binarySearch(ids, userId);
+        if (add == (index >= 0)) {
+            return;
+        }
+        int[] updated;
+        if (add) {
+            int insertAt = -index - 1;
+            updated = new int[ids.length + 1];
+            System.arraycopy(ids, 0, updated, 0, insertAt);
+            updated[insertAt] = userId;
+            System.arraycopy(ids, insertAt, updated, insertAt + 1, ids.length - insertAt);
+        } else {
+            updated = new int[ids.length - 1];
+            System.arraycopy(ids, 0, updated, 0, index);
+            System.arraycopy(ids, index + 1, updated, index, ids.length - index - 1);
+        }
+        if (updated.length == 0) {
+            postings.remove(gram);
+        } else {
+            postings.put(gram, updated);
+        }
+    }
+
+    // One pass over the table in ID order, so every list is built already sorted
+    private Index load() {
+        Map<Integer, Entry> entries = new HashMap<>();
+        Map<String, int[]> lists = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT id, username, display_name FROM users ORDER BY id", rs -> {
+            Entry entry = new Entry(rs.getInt("id"), normalize(rs.getString("username")),
+                normalize(rs.getString("display_name")));
+            entries.put(entry.userId, entry);
+            for (String gram : grams(entry)) {
+                int count = counts.getOrDefault(gram, 0);
+                int[] ids = lists.get(gram);
+                if (ids == null) {
+                    ids = new int[4];
+                    lists.put(gram, ids);
+                } else if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    lists.put(gram, ids);
+                }
+                ids[count] = entry.userId;
+                counts.put(gram, count + 1);
+            }
+        });
+        Map<String, int[]> postings = new ConcurrentHashMap<>(lists.size() * 4 / 3 + 1);
+        for (Map.Entry<String, int[]> list : lists.entrySet()) {
+            postings.put(list.getKey(), Arrays.copyOf(list.getValue(), counts.get(list.getKey())));
+        }
+        return new Index(new ConcurrentHashMap<>(entries), postings);
+    }
+
+    // Every trigram of both names, plus the first one and two characters of every word
+    static Set<String> grams(Entry entry) {
+        Set<String> grams = new HashSet<>();
+        for (String name : new String[] { entry.username, entry.displayName }) {
+            if (name == null) {
+                continue;
+            }
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                grams.add(name.substring(i, i + 3));
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (!Character.isWhitespace(name.charAt(i)) && (i == 0 || Character.isWhitespace(name.charAt(i - 1)))) {
+                    grams.add(WORD_START + name.substring(i, i + 1));
+                    if (i + 2 <= name.length() && !Character.isWhitespace(name.charAt(i + 1))) {
+                        grams.add(WORD_START + name.substring(i, i + 2));
+                    }
+                }
+            }
+        }
+        return grams;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        String normalized = text.trim().toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * A user's names as indexed, lowercased
+     */
+    static final class Entry {
+        private final int userId;
+        private final String username;
+        private final String displayName;
+
+        Entry(int userId, String username, String displayName) {
+            this.userId = userId;
+            this.username = username;
+            this.displayName = displayName;
+        }
+    }
+
+    private static final class Index {
+        private final Map<Integer, Entry> entries;
+        // gram -> sorted IDs of the users whose names contain it
+        private final Map<String, int[]> postings;
+
+        Index(Map<Integer, Entry> entries, Map<String, int[]> postings) {
+            this.entries = entries;
+            this.postings = postings;
+        }
+    }
+
+    /**
+     * One page of matches
+     */
+    public static final class Result {
+        private final int[] userIds;
+        private final Long nextPosition;
+
+        Result(int[] userIds, Long nextPosition) {
+            this.userIds = userIds;
+            this.nextPosition = nextPosition;
+        }
+
+        /**
+         * @return The matching user IDs, most relevant first
+         */
+        public int[] getUserIds() {
+            return userIds;
+        }
+
+        /**
+         * @return Where the next page starts, or null if this is the last one
+         */
+        public Long getNextPosition() {
+            return nextPosition;
+        }
+    }
+}
@@ -1,24 +1,39 @@
 package com.chatapp.chatappbackend.service;
 
+import com.chatapp.chatappbackend.dto.UserDetailsResponse;
+import com.chatapp.chatappbackend.dto.UserSearchPageDTO;
 import com.chatapp.chatappbackend.model.User;
 import com.chatapp.chatappbackend.repository.UserRepository;
+import com.chatapp.chatappbackend.util.TransactionCallbacks;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Service
 public class UserService {
 
+    private static final int MAX_SEARCH_PAGE = 50;
+    private static final int MAX_LIST_PAGE = 500;
+
     private final UserRepository userRepository;
     private final FileStorageService fileStorageService;
+    private final UserProfileCache userProfileCache;
+    private final UserSearchIndex userSearchIndex;
 
     @Autowired
-    public UserService(UserRepository userRepository, FileStorageService fileStorageService) {
+    public UserService(UserRepository userRepository, FileStorageService fileStorageService,
+                       UserProfileCache userProfileCache, UserSearchIndex userSearchIndex) {
         this.userRepository = userRepository;
         this.fileStorageService = fileStorageService;
+        this.userProfileCache = userProfileCache;
+        this.userSearchIndex = userSearchIndex;
     }
 
     public User getUserById(Integer userId) {
@@ -27,7 +42,7 @@ public class UserService {
                 throw new IllegalArgumentException("User ID cannot be null");
             }
             
-            return userRepository.findById(userId)
+            return userProfileCache.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + userId));
         } catch (Exception e) {
             System.err.println("Error in getUserById method: " + e.getMessage());
@@ -35,8 +50,18 @@ public class UserService {
         }
     }
     
+    // Changes start from the stored row, never a cached copy, so they cannot write back stale fields
+    private User loadForUpdate(Integer userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("User ID cannot be null");
+        }
+        return userRepository.findById(userId)
+            .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + userId));
+    }
+    
+    @Transactional
     public User updateProfilePicture(Integer userId, MultipartFile profilePicture) {
-        User user = getUserById(userId);
+        User user = loadForUpdate(userId);
         
         // Store the file and get the filename
         String filename = fileStorageService.storeProfilePicture(profilePicture);
@@ -45,18 +70,15 @@ public class UserService {
         user.setProfilePictureUrl("/uploads/profile-pictures/" + filename);
         
         // Save the updated user
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        TransactionCallbacks.afterCommit(() -> userProfileCache.invalidate(userId));
+        return savedUser;
     }
     
+    @Transactional
     public User updateProfile(Integer userId, String displayName, String about) {
         try {
-            User user = getUserById(userId);
-            
-            // Log the current and new values
-            System.out.println("Current displayName: " + user.getDisplayName());
-            System.out.println("New displayName: " + displayName);
-            System.out.println("Current about: " + user.getAbout());
-            System.out.println("New about: " + about);
+            User user = loadForUpdate(userId);
             
             // Update fields, allowing empty strings (to clear values)
             user.setDisplayName(displayName);
@@ -64,7 +86,12 @@ public class UserService {
             
             // Save the updated user
             User savedUser = userRepository.save(user);
-            System.out.println("User saved with displayName: " + savedUser.getDisplayName() + ", about: " + savedUser.getAbout());
+            String username = savedUser.getUsername();
+            String savedDisplayName = savedUser.getDisplayName();
+            TransactionCallbacks.afterCommit(() -> {
+                userProfileCache.invalidate(userId);
+                userSearchIndex.put(userId, username, savedDisplayName);
+            });
             
             return savedUser;
         } catch (Exception e) {
@@ -81,19 +108,76 @@ public class UserService {
         return userRepository.existsById(userId);
     }
     
-    public List<User> getAllUsersExceptCurrent(Integer currentUserId) {
+    /**
+     * Get one page of the users other than the current one, in ID order
+     * @param currentUserId The user listing, left out of the results
+     * @param afterId The ID of the last user of the previous page, or null for the first page
+     * @param limit The maximum number of users, capped at MAX_LIST_PAGE
+     * @return The users, with email addresses as this listing has always returned them, and the
+     *         afterId of the next page
+     */
+    public UserSearchPageDTO getAllUsersExceptCurrent(Integer currentUserId, Integer afterId, int limit) {
         try {
-            // Get all users from the repository
-            List<User> allUsers = userRepository.findAll();
+            int size = Math.max(1, Math.min(limit, MAX_LIST_PAGE));
+            // One extra row tells whether there is a next page
+            List<User> users = userRepository.findByIdGreaterThanAndIdNot(
+                afterId != null ? afterId : 0, currentUserId, PageRequest.of(0, size + 1, Sort.by("id")));
             
-            // Filter out the current user
-            return allUsers.stream()
-                .filter(user -> !user.getId().equals(currentUserId))
+            boolean hasMore = users.size() > size;
+            List<UserDetailsResponse> page = users.stream()
+                .limit(size)
+                .map(user -> new UserDetailsResponse(
+                    user.getId(),
+                    user.getUsername(),
+                    user.getEmail(),
+                    user.getDisplayName(),
+                    user.getAbout(),
+                    user.getProfilePictureUrl()
+                ))
                 .collect(Collectors.toList());
+            String nextCursor = hasMore ? String.valueOf(page.get(page.size() - 1).getId()) : null;
+            return new UserSearchPageDTO(page, nextCursor, hasMore);
         } catch (Exception e) {
             System.err.println("Error in getAllUsersExceptCurrent method: " + e.getMessage());
             e.printStackTrace();
             throw new RuntimeException("Failed to fetch users: " + e.getMessage(), e);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Search users by username and display name, most relevant first
+     * @param query The text to look for
+     * @param currentUserId The user searching, left out of the results, or null
+     * @param cursor The nextCursor of the previous page, or null for the first page
+     * @param limit The maximum number of users
+     */
+    public UserSearchPageDTO searchUsers(String query, Integer currentUserId, String cursor, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query cannot be empty");
+        }
+        if (limit < 1 || limit > MAX_SEARCH_PAGE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_SEARCH_PAGE);
+        }
+        Long after = cursor != null ? UserSearchIndex.decodeCursor(cursor) : null;
+
+        UserSearchIndex.Result result = userSearchIndex.search(query, currentUserId, after, limit);
+        List<UserDetailsResponse> users = new ArrayList<>(result.getUserIds().length);
+        for (int userId : result.getUserIds()) {
+            userProfileCache.findById(userId).ifPresent(user -> users.add(toDirectoryEntry(user)));
+        }
+        Long next = result.getNextPosition();
+        return new UserSearchPageDTO(users, next != null ? UserSearchIndex.encodeCursor(next) : null, next != null);
+    }
+
+    // Email addresses are not part of search results or friend suggestions
+    static UserDetailsResponse toDirectoryEntry(User user) {
+        return new UserDetailsResponse(
+            user.getId(),
+            user.getUsername(),
+            null,
+            user.getDisplayName(),
+            user.getAbout(),
+            user.getProfilePictureUrl()
+        );
+    }
+}
@@ -0,0 +1,226 @@
+package com.chatapp.chatappbackend.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Size- and time-bounded loading cache. Keys are spread over segments, each an access-ordered LRU
+ * behind its own lock. A full segment only admits a new entry if a frequency sketch (TinyLFU: four
+ * rows of 4-bit counters, halved periodically so old popularity fades) has seen the new key more
+ * often than the LRU victim, so one-off lookups, e.g. a scan over many users, cannot flush the
+ * entries that are read all the time. Entries also expire a fixed time after they were loaded.
+ */
+public final class BoundedCache<K, V> {
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final long ttlNanos;
+
+    // Bumped by every invalidation; a load that overlapped one is returned but not cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * @param maxSize The maximum number of entries, spread evenly over the segments
+     * @param ttlMillis How long an entry is served after it was loaded
+     * @param segments The number of segments, rounded up to a power of two
+     */
+    public BoundedCache(int maxSize, long ttlMillis, int segments) {
+        int count = segments <= 1 ? 1 : Integer.highestOneBit(segments - 1) << 1;
+        int capacity = Math.max(1, maxSize / count);
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] created = (Segment<K, V>[]) new Segment<?, ?>[count];
+        this.segments = created;
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment<>(capacity);
+        }
+        this.segmentMask = count - 1;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Get the value of a key, loading it on a miss. Loads run outside the segment lock, so two
+     * threads missing the same key at once may both load it.
+     * @param key The key
+     * @param loader Loads the value; null means "no value" and is not cached
+     * @return The value, or null
+     */
+    public V get(K key, Function<K, V> loader) {
+        int hash = spread(key.hashCode());
+        Segment<K, V> segment = segments[hash & segmentMask];
+        long now = System.nanoTime();
+        synchronized (segment) {
+            segment.sketch.increment(hash);
+            Entry<V> entry = segment.entries.get(key);
+            if (entry != null) {
+                if (now - entry.loadedAt < ttlNanos) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                segment.entries.remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+
+        misses.incrementAndGet();
+        long generation = invalidations.get();
+        long start = System.nanoTime();
+        V value = loader.apply(key);
+        long loadedAt = System.nanoTime();
+        loadNanos.addAndGet(loadedAt - start);
+        if (value == null) {
+            return null;
+        }
+
+        synchronized (segment) {
+            if (invalidations.get() != generation) {
+                return value;
+            }
+            if (segment.entries.size() >= segment.capacity && !segment.entries.containsKey(key)) {
+                Iterator<Map.Entry<K, Entry<V>>> eldest = segment.entries.entrySet().iterator();
+                Map.Entry<K, Entry<V>> victim = eldest.next();
+                if (loadedAt - victim.getValue().loadedAt >= ttlNanos) {
+                    expirations.incrementAndGet();
+                } else if (segment.sketch.frequency(hash) > segment.sketch.frequency(spread(victim.getKey().hashCode()))) {
+                    evictions.incrementAndGet();
+                } else {
+                    rejections.incrementAndGet();
+                    return value;
+                }
+                eldest.remove();
+            }
+            segment.entries.put(key, new Entry<>(value, loadedAt));
+        }
+        return value;
+    }
+
+    /**
+     * Drop a key, and keep loads that were running meanwhile from caching what they read
+     */
+    public void invalidate(K key) {
+        invalidations.incrementAndGet();
+        Segment<K, V> segment = segments[spread(key.hashCode()) & segmentMask];
+        synchronized (segment) {
+            segment.entries.remove(key);
+        }
+    }
+
+    /**
+     * @return The number of entries, expired ones included until they are next touched
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Counters for a metrics endpoint
+     */
+    public Map<String, Object> getMetrics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", size());
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        metrics.put("evictions", evictions.get());
+        metrics.put("expirations", expirations.get());
+        metrics.put("rejections", rejections.get());
+        metrics.put("averageLoadMicros", missCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(loadNanos.get() / missCount));
+        return metrics;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * One LRU and its frequency sketch; guarded by the segment itself
+     */
+    private static final class Segment<K, V> {
+        private final int capacity;
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.sketch = new FrequencySketch(capacity);
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, sixteen to a long, four rows
+     */
+    static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97CB3127, 0xB0A61C2D, 0x5D5B8E3B, 0xC2B2AE35 };
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+            this.table = new long[size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * Math.max(capacity, 16);
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int h = hash * SEEDS[row];
+                h ^= h >>> 17;
+                frequency = Math.min(frequency, (int) ((table[(h >>> 4) & mask] >>> ((h & 15) << 2)) & 15));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            for (int row = 0; row < SEEDS.length; row++) {
+                int h = hash * SEEDS[row];
+                h ^= h >>> 17;
+                int index = (h >>> 4) & mask;
+                int shift = (h & 15) << 2;
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                }
+            }
+            // Halve every counter once a sample's worth of accesses has been counted
+            if (++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & HALF_MASK;
+                }
+                additions /= 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.chatapp.chatappbackend.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor for seek pagination over a conversation's message history.
+ * Encodes the sequence number of the last message a client has seen so the
+ * next page can be fetched with a range predicate instead of an OFFSET scan.
+ */
+public final class MessageCursor {
+
+    private static final String PREFIX = "s:";
+
+    private final long sequence;
+
+    public MessageCursor(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Encode this cursor into a URL-safe token
+     * @return The opaque cursor token
+     */
+    public String encode() {
+        String raw = PREFIX + sequence;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor token produced by {@link #encode()}
+     * @param token The opaque cursor token
+     * @return The decoded cursor
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static MessageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (!raw.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new MessageCursor(Long.parseLong(raw.substring(PREFIX.length())));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.chatapp.chatappbackend.util;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+
+/**
+ * Widens the message and attachment ID columns created by older versions (INT AUTO_INCREMENT)
+ * to BIGINT, since those IDs are now 64-bit values assigned by the application.
+ * ddl-auto=update never changes the type of an existing column, hence this one-off step.
+ * It runs once every singleton exists (so Hibernate has already updated the schema) but before
+ * the web server starts, so no request ever sees the old column type.
+ */
+@Component
+public class MessageIdColumnMigration implements SmartInitializingSingleton {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public MessageIdColumnMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        String idType = jdbcTemplate.queryForObject(
+            "SELECT DATA_TYPE FROM information_schema.COLUMNS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND COLUMN_NAME = 'id'",
+            String.class);
+        if (!"int".equalsIgnoreCase(idType)) {
+            return;
+        }
+
+        // The attachment foreign key must match the widened column, so alter both sides together.
+        // FOREIGN_KEY_CHECKS is per session, so every statement has to run on the same connection.
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+                try {
+                    statement.execute("ALTER TABLE messages MODIFY id BIGINT NOT NULL");
+                    statement.execute("ALTER TABLE message_attachments MODIFY id BIGINT NOT NULL, " +
+                                      "MODIFY message_id BIGINT NOT NULL");
+                } finally {
+                    statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+                }
+            }
+            return null;
+        });
+        System.out.println("Widened message ID columns to BIGINT");
+    }
+}
@@ -0,0 +1,63 @@
+package com.chatapp.chatappbackend.util;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Assigns per-conversation sequence numbers to messages stored before the seq column existed,
+ * numbering them after any sequence already allocated in the conversation, in (sent_at, id) order,
+ * and moves each conversation's last_seq up to the backfilled maximum.
+ * It runs before the web server starts, so no send can take a sequence from a conversation
+ * whose older messages are still unnumbered; on a fresh upgrade last_seq is 0 and the legacy
+ * messages come first, as they should.
+ */
+@Component
+public class MessageSequenceBackfill implements SmartInitializingSingleton {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private boolean done;
+
+    @Autowired
+    public MessageSequenceBackfill(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        backfill();
+    }
+
+    /**
+     * Run the backfill unless it already ran; backfills that read sequences call this first
+     */
+    synchronized void backfill() {
+        if (done) {
+            return;
+        }
+        Integer missing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages WHERE seq IS NULL", Integer.class);
+        if (missing != null && missing > 0) {
+            int updated = transactionTemplate.execute(status -> {
+                int numbered = jdbcTemplate.update(
+                    "UPDATE messages m " +
+                    "JOIN (SELECT id, ROW_NUMBER() OVER (PARTITION BY conversation_id ORDER BY sent_at, id) AS rn " +
+                    "      FROM messages WHERE seq IS NULL) r ON m.id = r.id " +
+                    "JOIN conversations c ON c.id = m.conversation_id " +
+                    "SET m.seq = c.last_seq + r.rn");
+                jdbcTemplate.update(
+                    "UPDATE conversations c SET c.last_seq = " +
+                    "(SELECT COALESCE(MAX(m.seq), 0) FROM messages m WHERE m.conversation_id = c.id) " +
+                    "WHERE c.last_seq < (SELECT COALESCE(MAX(m.seq), 0) FROM messages m WHERE m.conversation_id = c.id)");
+                return numbered;
+            });
+            System.out.println("Backfilled sequence numbers for " + updated + " messages");
+        }
+        done = true;
+    }
+}
@@ -0,0 +1,19 @@
+package com.chatapp.chatappbackend.util;
+
+import java.util.Map;
+
+/**
+ * A component that publishes counters on the /api/metrics endpoint
+ */
+public interface MetricsSource {
+
+    /**
+     * @return The key the metrics are grouped under
+     */
+    String getMetricsName();
+
+    /**
+     * @return A point-in-time snapshot of the component's counters
+     */
+    Map<String, Object> getMetrics();
+}
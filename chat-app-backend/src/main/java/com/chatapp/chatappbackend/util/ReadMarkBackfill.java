@@ -0,0 +1,59 @@
+package com.chatapp.chatappbackend.util;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the conversation memberships that are missing, placing each user's read mark at the
+ * newest message the user had flagged as read under the old per-message flags. Only pairs with
+ * no membership row are inserted, so memberships created since the upgrade are left alone and a
+ * single new row never keeps the legacy ones from being filled in.
+ * Runs after the sequence backfill, since read marks are sequence numbers, and before the web
+ * server starts.
+ */
+@Component
+public class ReadMarkBackfill implements SmartInitializingSingleton {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageSequenceBackfill sequenceBackfill;
+
+    private boolean done;
+
+    @Autowired
+    public ReadMarkBackfill(JdbcTemplate jdbcTemplate, MessageSequenceBackfill sequenceBackfill) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceBackfill = sequenceBackfill;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        backfill();
+    }
+
+    /**
+     * Run the backfill unless it already ran; backfills that read memberships call this first
+     */
+    synchronized void backfill() {
+        if (done) {
+            return;
+        }
+        sequenceBackfill.backfill();
+
+        int inserted = jdbcTemplate.update(
+            "INSERT INTO conversation_members (conversation_id, user_id, last_read_seq, last_read_at) " +
+            "SELECT p.conversation_id, p.user_id, COALESCE(MAX(m.seq), 0), MAX(m.read_at) " +
+            "FROM (SELECT id AS conversation_id, user1_id AS user_id FROM conversations " +
+            "      UNION ALL SELECT id, user2_id FROM conversations) p " +
+            "LEFT JOIN messages m ON m.conversation_id = p.conversation_id " +
+            "     AND m.sender_id <> p.user_id AND m.is_read = true " +
+            "WHERE NOT EXISTS (SELECT 1 FROM conversation_members cm " +
+            "                  WHERE cm.conversation_id = p.conversation_id AND cm.user_id = p.user_id) " +
+            "GROUP BY p.conversation_id, p.user_id");
+        if (inserted > 0) {
+            System.out.println("Backfilled " + inserted + " conversation memberships");
+        }
+        done = true;
+    }
+}
@@ -0,0 +1,82 @@
+package com.chatapp.chatappbackend.util;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of 64-bit, time-ordered IDs in the Snowflake layout:
+ * 41 bits of milliseconds since {@link #EPOCH}, 10 bits of node ID and a 12-bit
+ * per-millisecond sequence. IDs from one node are strictly increasing, and IDs from
+ * different nodes sort by creation time to the millisecond.
+ */
+public final class SnowflakeIdGenerator {
+
+    // 2024-01-01T00:00:00Z, keeps the 41-bit timestamp good for roughly 69 years
+    public static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private static volatile SnowflakeIdGenerator defaultInstance = new SnowflakeIdGenerator(0);
+
+    private final long nodeId;
+
+    // Packed (millis since epoch << SEQUENCE_BITS | sequence) of the last ID handed out
+    private final AtomicLong lastState = new AtomicLong();
+
+    public SnowflakeIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Generate the next ID
+     * @return A unique, time-ordered ID
+     */
+    public long nextId() {
+        while (true) {
+            long previous = lastState.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            // A new millisecond restarts the sequence. Within the same millisecond (or if the
+            // clock stepped backwards) keep counting; an overflowing sequence carries into the
+            // timestamp, borrowing the next millisecond rather than blocking.
+            long next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+            if (lastState.compareAndSet(previous, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Extract the creation time encoded in an ID
+     * @param id An ID produced by this generator
+     * @return The instant the ID was generated, to the millisecond
+     */
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli((id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH);
+    }
+
+    /**
+     * The process-wide generator used for entity IDs
+     */
+    public static SnowflakeIdGenerator getDefault() {
+        return defaultInstance;
+    }
+
+    /**
+     * Replace the process-wide generator, called once at startup with this node's ID
+     * @param nodeId The node ID, unique among the instances sharing a database
+     */
+    public static void configureDefault(long nodeId) {
+        defaultInstance = new SnowflakeIdGenerator(nodeId);
+    }
+}
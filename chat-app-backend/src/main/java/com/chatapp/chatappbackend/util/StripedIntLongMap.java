@@ -0,0 +1,237 @@
+package com.chatapp.chatappbackend.util;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Concurrent map from int keys to long values without boxing. Keys are spread over a fixed number
+ * of stripes, each an open-addressing table behind its own lock, so threads working on different
+ * users rarely contend and an entry costs twelve bytes instead of a node and two boxed numbers.
+ * A value of 0 means "absent": updates that produce 0 remove the entry.
+ */
+public final class StripedIntLongMap {
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * @param stripes The number of stripes, rounded up to a power of two
+     */
+    public StripedIntLongMap(int stripes) {
+        int count = Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * @return The value of a key, or 0 when it has none
+     */
+    public long get(int key) {
+        int hash = hash(key);
+        Stripe stripe = stripes[hash & stripeMask];
+        synchronized (stripe) {
+            int slot = stripe.find(key, hash);
+            return slot < 0 ? 0 : stripe.values[slot];
+        }
+    }
+
+    /**
+     * Atomically replace the value of a key
+     * @param key The key
+     * @param update Function of the current value (0 when absent); returning 0 removes the key
+     * @return The previous value
+     */
+    public long getAndUpdate(int key, LongUnaryOperator update) {
+        int hash = hash(key);
+        Stripe stripe = stripes[hash & stripeMask];
+        synchronized (stripe) {
+            int slot = stripe.find(key, hash);
+            long previous = slot < 0 ? 0 : stripe.values[slot];
+            stripe.set(key, hash, slot, update.applyAsLong(previous));
+            return previous;
+        }
+    }
+
+    /**
+     * Atomically replace the value of a key
+     * @param key The key
+     * @param update Function of the current value (0 when absent); returning 0 removes the key
+     * @return The new value
+     */
+    public long updateAndGet(int key, LongUnaryOperator update) {
+        int hash = hash(key);
+        Stripe stripe = stripes[hash & stripeMask];
+        synchronized (stripe) {
+            int slot = stripe.find(key, hash);
+            long next = update.applyAsLong(slot < 0 ? 0 : stripe.values[slot]);
+            stripe.set(key, hash, slot, next);
+            return next;
+        }
+    }
+
+    /**
+     * Add to the value of a key
+     * @return The new value
+     */
+    public long addAndGet(int key, long delta) {
+        return updateAndGet(key, value -> value + delta);
+    }
+
+    /**
+     * @return The number of keys; exact only while no other thread is writing
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Remove every entry, one stripe at a time, and hand each one to a consumer outside the locks
+     * @param consumer Receives the removed entries
+     */
+    public void drain(EntryConsumer consumer) {
+        for (Stripe stripe : stripes) {
+            int[] keys;
+            long[] values;
+            int count = 0;
+            synchronized (stripe) {
+                if (stripe.size == 0) {
+                    continue;
+                }
+                keys = new int[stripe.size];
+                values = new long[stripe.size];
+                for (int slot = 0; slot < stripe.used.length; slot++) {
+                    if (stripe.used[slot]) {
+                        keys[count] = stripe.keys[slot];
+                        values[count] = stripe.values[slot];
+                        count++;
+                    }
+                }
+                stripe.clear();
+            }
+            for (int i = 0; i < count; i++) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    // Spreads sequential IDs over stripes and slots
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Receives map entries
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+    /**
+     * Linear-probing table; every field is guarded by the stripe itself
+     */
+    private static final class Stripe {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private int[] keys = new int[INITIAL_CAPACITY];
+        private long[] values = new long[INITIAL_CAPACITY];
+        private boolean[] used = new boolean[INITIAL_CAPACITY];
+        private int size;
+
+        // The low hash bits picked the stripe, so slots are chosen from the high ones
+        private int indexFor(int hash) {
+            return (hash >>> 8) & (keys.length - 1);
+        }
+
+        private int find(int key, int hash) {
+            int mask = keys.length - 1;
+            for (int slot = indexFor(hash); used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void set(int key, int hash, int slot, long value) {
+            if (slot >= 0) {
+                if (value != 0) {
+                    values[slot] = value;
+                } else {
+                    delete(slot);
+                }
+                return;
+            }
+            if (value == 0) {
+                return;
+            }
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+            insert(key, hash, value);
+            size++;
+        }
+
+        private void insert(int key, int hash, long value) {
+            int mask = keys.length - 1;
+            int slot = indexFor(hash);
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            used[slot] = true;
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            int next = (slot + 1) & mask;
+            while (used[next]) {
+                int home = indexFor(hash(keys[next]));
+                // Move the entry into the hole unless its home lies cyclically in (hole, next]
+                boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+                if (!stays) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            used[hole] = false;
+            values[hole] = 0;
+            size--;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldUsed[slot]) {
+                    insert(oldKeys[slot], hash(oldKeys[slot]), oldValues[slot]);
+                }
+            }
+        }
+
+        private void clear() {
+            keys = new int[INITIAL_CAPACITY];
+            values = new long[INITIAL_CAPACITY];
+            used = new boolean[INITIAL_CAPACITY];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.chatapp.chatappbackend.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel for large numbers of short, coarse timers. Scheduling is a lock-free enqueue
+ * and costs no thread or scheduler entry; one worker thread advances the wheel every tick and runs
+ * the timers that are due, so expiry is accurate to one tick. Timer tasks run on that thread and
+ * must be short.
+ */
+public final class TimingWheel implements AutoCloseable {
+
+    private final long tickNanos;
+    private final List<Timeout>[] buckets;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param name The name of the worker thread
+     * @param tickMillis The resolution of the wheel
+     * @param ticksPerWheel The number of buckets; delays longer than one turn take several rounds
+     */
+    public TimingWheel(String name, long tickMillis, int ticksPerWheel) {
+        if (tickMillis <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        @SuppressWarnings("unchecked")
+        List<Timeout>[] created = (List<Timeout>[]) new List<?>[ticksPerWheel];
+        this.buckets = created;
+        for (int i = 0; i < ticksPerWheel; i++) {
+            this.buckets[i] = new ArrayList<>();
+        }
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Run a task after a delay
+     * @param task The task, run on the wheel's thread
+     * @param delayMillis The delay, rounded up to the next tick
+     * @return A handle to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickAt = (tick + 1) * tickNanos;
+            long sleepNanos = nextTickAt - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            tick++;
+            transferPending();
+            expire(buckets[(int) (tick % buckets.length)]);
+        }
+    }
+
+    // Only the worker touches the buckets, so they need no locking
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long dueTick = Math.max((timeout.deadline + tickNanos - 1) / tickNanos, tick);
+            timeout.rounds = (dueTick - tick) / buckets.length;
+            buckets[(int) (dueTick % buckets.length)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        for (Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                it.remove();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Timer task failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * A scheduled task
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled;
+        private long rounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Stop the task from running, if it has not run yet
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
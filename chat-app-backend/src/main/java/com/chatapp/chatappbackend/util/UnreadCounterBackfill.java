@@ -0,0 +1,64 @@
+package com.chatapp.chatappbackend.util;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Builds the unread counters of conversations created before the counters existed, so they report
+ * correct unread counts. Only (conversation, user) pairs without a counter row are filled in, and
+ * the backfill records itself in data_migrations so it runs once: counters are signed sums of
+ * deltas, and recounting a pair whose first delta another node has not flushed yet would count
+ * those messages twice.
+ * Runs after the read marks are in place, since unread means "after the reader's mark", and
+ * before the web server starts.
+ */
+@Component
+public class UnreadCounterBackfill implements SmartInitializingSingleton {
+
+    private static final String MIGRATION = "unread-counter-backfill";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ReadMarkBackfill readMarkBackfill;
+
+    @Autowired
+    public UnreadCounterBackfill(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 ReadMarkBackfill readMarkBackfill) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readMarkBackfill = readMarkBackfill;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        readMarkBackfill.backfill();
+
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS data_migrations (" +
+            "name VARCHAR(100) NOT NULL PRIMARY KEY, applied_at DATETIME(6) NOT NULL)");
+        Integer inserted = transactionTemplate.execute(status -> {
+            // Claiming the marker in the same transaction keeps two nodes starting together from both running it
+            if (jdbcTemplate.update("INSERT IGNORE INTO data_migrations (name, applied_at) VALUES (?, NOW(6))",
+                    MIGRATION) == 0) {
+                return 0;
+            }
+            // A message is unread by every other member whose read mark has not reached it
+            return jdbcTemplate.update(
+                "INSERT INTO unread_counters (conversation_id, user_id, unread_count) " +
+                "SELECT m.conversation_id, cm.user_id, COUNT(*) " +
+                "FROM messages m JOIN conversation_members cm " +
+                "     ON cm.conversation_id = m.conversation_id AND cm.user_id <> m.sender_id " +
+                "WHERE m.seq > cm.last_read_seq AND m.is_deleted = false " +
+                "  AND NOT EXISTS (SELECT 1 FROM unread_counters uc " +
+                "                  WHERE uc.conversation_id = m.conversation_id AND uc.user_id = cm.user_id) " +
+                "GROUP BY m.conversation_id, cm.user_id");
+        });
+        if (inserted != null && inserted > 0) {
+            System.out.println("Backfilled " + inserted + " unread counters");
+        }
+    }
+}
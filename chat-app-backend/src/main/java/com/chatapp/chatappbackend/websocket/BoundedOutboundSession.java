@@ -0,0 +1,341 @@
+package com.chatapp.chatappbackend.websocket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * A WebSocket session whose outgoing frames go through its own bounded queue, written to the
+ * socket by a dedicated drain task, so sending to a slow client never blocks the shared outbound
+ * channel threads. When the queue reaches its message or byte cap, frames are shed by destination
+ * type: typing events are dropped first (new ones and then queued ones), and a read receipt is
+ * merged into the queued receipt of the same reader in the same conversation (newest mark, summed
+ * count). Only when a chat frame or a receipt still does not fit is the session closed, after
+ * which the client reconnects and catches up from history.
+ */
+public class BoundedOutboundSession extends WebSocketSessionDecorator {
+
+    /**
+     * How a frame may be shed under pressure
+     */
+    enum FrameType {
+        TYPING, READ_RECEIPT, OTHER
+    }
+
+    private static final String DESTINATION_HEADER = "\ndestination:";
+    private static final String CONTENT_LENGTH_HEADER = "\ncontent-length:";
+
+    private final OutboundQueueRegistry registry;
+    private final int maxMessages;
+    private final int maxBytes;
+    private final long sendTimeLimitMillis;
+
+    // Frames waiting to be written; guarded by this
+    private final Deque<Frame> queue = new ArrayDeque<>();
+    private int queuedBytes;
+    private boolean draining;
+
+    // When the current socket write started, or 0 when none is in progress
+    private volatile long sendStartedAt;
+    private volatile boolean closed;
+
+    BoundedOutboundSession(WebSocketSession delegate, OutboundQueueRegistry registry,
+                           int maxMessages, int maxBytes, long sendTimeLimitMillis) {
+        super(delegate);
+        this.registry = registry;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closed) {
+            return;
+        }
+
+        // A write stuck past the time limit means the client stopped reading
+        long started = sendStartedAt;
+        if (started != 0 && System.currentTimeMillis() - started > sendTimeLimitMillis) {
+            limitExceeded("Send time " + (System.currentTimeMillis() - started) + " ms exceeded the limit");
+        }
+
+        Frame frame = new Frame(message);
+        boolean startDrain;
+        synchronized (this) {
+            if (!offer(frame)) {
+                limitExceeded("Outbound queue of " + queue.size() + " messages / " + queuedBytes + " bytes is full");
+            }
+            startDrain = !draining;
+            draining = true;
+        }
+        if (startDrain) {
+            registry.drain(this::drain);
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        discard();
+        super.close(status);
+    }
+
+    /**
+     * Close the session if its current socket write started more than the send time limit ago.
+     * Called from OutboundQueueRegistry's stall check, so a client that stopped reading is let go
+     * even when nothing more is sent to it.
+     * @return Whether the session was closed
+     */
+    boolean closeIfStalled(long now) {
+        long started = sendStartedAt;
+        if (closed || started == 0 || now - started <= sendTimeLimitMillis) {
+            return false;
+        }
+        discard();
+        registry.disconnected();
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+            // Already broken
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of frames waiting to be written
+     */
+    public synchronized int getQueuedMessages() {
+        return queue.size();
+    }
+
+    /**
+     * @return The size of the frames waiting to be written
+     */
+    public synchronized int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    // Guarded by this; false means a chat frame or a receipt does not fit
+    private boolean offer(Frame frame) {
+        if (frame.type == FrameType.READ_RECEIPT && frame.readerId != null) {
+            // A newer receipt from the same reader carries the newer read mark; its count is a
+            // delta, so the merged receipt carries both counts
+            for (Iterator<Frame> it = queue.iterator(); it.hasNext(); ) {
+                Frame queued = it.next();
+                if (queued.type == FrameType.READ_RECEIPT && queued.destination.equals(frame.destination)
+                        && frame.readerId.equals(queued.readerId)) {
+                    Frame merged = frame.withCountAdded(queued.count);
+                    if (merged != null) {
+                        it.remove();
+                        queuedBytes -= queued.size;
+                        registry.coalescedReceipt();
+                        frame = merged;
+                    }
+                    break;
+                }
+            }
+        }
+        if (fits(frame)) {
+            add(frame);
+            return true;
+        }
+        if (frame.type == FrameType.TYPING) {
+            registry.droppedTyping();
+            return true;
+        }
+
+        // Make room by shedding queued typing events, oldest first
+        for (Iterator<Frame> it = queue.iterator(); it.hasNext() && !fits(frame); ) {
+            Frame queued = it.next();
+            if (queued.type == FrameType.TYPING) {
+                it.remove();
+                queuedBytes -= queued.size;
+                registry.droppedTyping();
+            }
+        }
+        if (fits(frame)) {
+            add(frame);
+            return true;
+        }
+        // A receipt's count is a delta no later receipt repeats, so it is not dropped either
+        return false;
+    }
+
+    private boolean fits(Frame frame) {
+        return queue.size() < maxMessages && queuedBytes + frame.size <= maxBytes;
+    }
+
+    private void add(Frame frame) {
+        queue.add(frame);
+        queuedBytes += frame.size;
+    }
+
+    // Runs on the drain executor; at most one drain task per session, so frames stay in order
+    private void drain() {
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                frame = queue.poll();
+                if (frame == null || closed) {
+                    draining = false;
+                    return;
+                }
+                queuedBytes -= frame.size;
+            }
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(frame.message);
+                registry.sent();
+            } catch (IOException | RuntimeException e) {
+                discard();
+                try {
+                    getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (IOException ignored) {
+                    // Already broken
+                }
+                synchronized (this) {
+                    draining = false;
+                }
+                return;
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+    }
+
+    private void limitExceeded(String reason) {
+        discard();
+        registry.disconnected();
+        // SubProtocolWebSocketHandler closes the session with SESSION_NOT_RELIABLE and cleans up
+        throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private void discard() {
+        closed = true;
+        synchronized (this) {
+            queue.clear();
+            queuedBytes = 0;
+        }
+    }
+
+    static FrameType classify(String destination) {
+        if (destination == null) {
+            return FrameType.OTHER;
+        }
+        if (destination.endsWith(".typing")) {
+            return FrameType.TYPING;
+        }
+        if (destination.endsWith(".read")) {
+            return FrameType.READ_RECEIPT;
+        }
+        return FrameType.OTHER;
+    }
+
+    // Reads the destination header of an encoded STOMP MESSAGE frame without parsing the body
+    static String destinationOf(WebSocketMessage<?> message) {
+        if (!(message instanceof TextMessage textMessage)) {
+            return null;
+        }
+        String payload = textMessage.getPayload();
+        if (!payload.startsWith("MESSAGE")) {
+            return null;
+        }
+        int headersEnd = payload.indexOf("\n\n");
+        int start = payload.indexOf(DESTINATION_HEADER);
+        if (start < 0 || (headersEnd >= 0 && start > headersEnd)) {
+            return null;
+        }
+        start += DESTINATION_HEADER.length();
+        int end = payload.indexOf('\n', start);
+        return end < 0 ? null : payload.substring(start, end);
+    }
+
+    // Reads a whole-number field of a frame's JSON body, e.g. the userId of a read receipt
+    static Long numberField(String payload, String name) {
+        int headersEnd = payload.indexOf("\n\n");
+        if (headersEnd < 0) {
+            return null;
+        }
+        String key = "\"" + name + "\":";
+        int start = payload.indexOf(key, headersEnd);
+        if (start < 0) {
+            return null;
+        }
+        start += key.length();
+        int end = start < payload.length() && payload.charAt(start) == '-' ? start + 1 : start;
+        while (end < payload.length() && Character.isDigit(payload.charAt(end))) {
+            end++;
+        }
+        try {
+            return Long.parseLong(payload.substring(start, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * An encoded frame waiting to be written
+     */
+    private static final class Frame {
+        private final WebSocketMessage<?> message;
+        private final String destination;
+        private final FrameType type;
+        private final int size;
+        // Read receipts only: who read, and how many messages the receipt marks read
+        private final Long readerId;
+        private final long count;
+
+        Frame(WebSocketMessage<?> message) {
+            this.message = message;
+            this.destination = destinationOf(message);
+            this.type = classify(destination);
+            this.size = message.getPayloadLength();
+            Long reader = null;
+            long receiptCount = 0;
+            if (type == FrameType.READ_RECEIPT && message instanceof TextMessage textMessage) {
+                Long parsedCount = numberField(textMessage.getPayload(), "count");
+                if (parsedCount != null) {
+                    reader = numberField(textMessage.getPayload(), "userId");
+                    receiptCount = parsedCount;
+                }
+            }
+            this.readerId = reader;
+            this.count = receiptCount;
+        }
+
+        /**
+         * @return This receipt with another count added to its own, or null if it cannot be rewritten
+         */
+        Frame withCountAdded(long added) {
+            String payload = ((TextMessage) message).getPayload();
+            int headersEnd = payload.indexOf("\n\n");
+            String key = "\"count\":";
+            int start = payload.indexOf(key, headersEnd) + key.length();
+            String oldValue = Long.toString(count);
+            if (!payload.startsWith(oldValue, start)) {
+                return null;
+            }
+            String newValue = Long.toString(count + added);
+            String rewritten = payload.substring(0, start) + newValue + payload.substring(start + oldValue.length());
+
+            // The body grew or shrank by the difference in digits, which are one byte each
+            int lengthStart = rewritten.indexOf(CONTENT_LENGTH_HEADER);
+            if (lengthStart >= 0 && lengthStart < headersEnd) {
+                lengthStart += CONTENT_LENGTH_HEADER.length();
+                int lengthEnd = rewritten.indexOf('\n', lengthStart);
+                int length = Integer.parseInt(rewritten.substring(lengthStart, lengthEnd));
+                rewritten = rewritten.substring(0, lengthStart)
+                    + (length + newValue.length() - oldValue.length()) + rewritten.substring(lengthEnd);
+            }
+            return new Frame(new TextMessage(rewritten));
+        }
+    }
+}
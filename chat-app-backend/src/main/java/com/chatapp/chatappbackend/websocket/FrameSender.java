@@ -0,0 +1,156 @@
+package com.chatapp.chatappbackend.websocket;
+
+import com.chatapp.chatappbackend.cluster.ClusterFanout;
+import com.chatapp.chatappbackend.util.MetricsSource;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one outbound path for WebSocket frames. A payload is encoded to JSON once per logical
+ * event and the same byte array is handed to the broker for every destination, which in turn
+ * shares it across every subscribed session, instead of running the message converter once per
+ * send call. The encode and delivery counters on /api/metrics show the ratio. Frames to replayed
+ * user queues are numbered and kept by the ReplayBuffer on the way out, and every frame is also
+ * offered to the ClusterFanout for sessions on other nodes.
+ */
+@Component
+public class FrameSender implements MetricsSource, InitializingBean {
+
+    private static final String USER_PREFIX = "/user/";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ReplayBuffer replayBuffer;
+
+    @Autowired
+    private ClusterFanout clusterFanout;
+
+    private final AtomicLong encodes = new AtomicLong();
+    private final AtomicLong encodedBytes = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        // Frames from other nodes take the local half of the same path, without being forwarded again
+        clusterFanout.setLocalDelivery(this::deliverLocally);
+    }
+
+    /**
+     * Build the broker destination of a user-specific queue
+     * @param userId The ID of the user
+     * @param queueName The queue, e.g. /queue/messages
+     * @return The destination, e.g. /user/42/queue/messages
+     */
+    public static String userDestination(Integer userId, String queueName) {
+        return USER_PREFIX + userId + queueName;
+    }
+
+    /**
+     * Encode a frame body once
+     * @param payload The frame body
+     * @return The JSON bytes; shared by every send, so never modify them
+     */
+    public byte[] encode(Object payload) {
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(payload);
+            encodes.incrementAndGet();
+            encodedBytes.addAndGet(bytes.length);
+            return bytes;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize frame", e);
+        }
+    }
+
+    /**
+     * Send an encoded frame to one or more broker destinations without converting it again
+     * @param payload The JSON bytes returned by encode
+     * @param destinations The broker destinations
+     */
+    public void send(byte[] payload, String... destinations) {
+        for (String destination : destinations) {
+            deliverLocally(destination, payload);
+            clusterFanout.forward(destination, payload);
+        }
+    }
+
+    // Sends to this node's broker; frames to replayed user queues are numbered and kept first
+    private void deliverLocally(String destination, byte[] payload) {
+        int queueStart = destination.startsWith(USER_PREFIX) ? destination.indexOf('/', USER_PREFIX.length()) : -1;
+        String queueName = queueStart > 0 ? destination.substring(queueStart) : null;
+        Integer userId = queueName != null && replayBuffer.isReplayed(queueName)
+            ? parseUserId(destination.substring(USER_PREFIX.length(), queueStart)) : null;
+        if (userId != null) {
+            replayBuffer.record(userId, queueName, payload, sequence -> send(destination, payload, sequence));
+        } else {
+            send(destination, payload, 0);
+        }
+    }
+
+    /**
+     * Encode a frame once and send it to one or more broker destinations
+     */
+    public void encodeAndSend(Object payload, String... destinations) {
+        send(encode(payload), destinations);
+    }
+
+    /**
+     * Encode a frame and send it to a user-specific queue
+     */
+    public void sendToUser(Integer userId, String queueName, Object payload) {
+        send(encode(payload), userDestination(userId, queueName));
+    }
+
+    private static Integer parseUserId(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void send(String destination, byte[] payload, long sequence) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (sequence != 0) {
+            accessor.setNativeHeader(ReplayBuffer.SEQUENCE_HEADER, Long.toString(sequence));
+        }
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+        deliveries.incrementAndGet();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "frames";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long encoded = encodes.get();
+        long delivered = deliveries.get();
+        metrics.put("encodes", encoded);
+        metrics.put("encodedBytes", encodedBytes.get());
+        // Broker destinations per encode; the broker's own "deliveries" counts per-session sends
+        metrics.put("deliveries", delivered);
+        metrics.put("deliveriesPerEncode", encoded == 0 ? 0.0 : (double) delivered / encoded);
+        return metrics;
+    }
+}
@@ -0,0 +1,211 @@
+package com.chatapp.chatappbackend.websocket;
+
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives every WebSocket session a bounded outbound queue (see BoundedOutboundSession) and reports
+ * their depth. Registered as a handler decorator in WebSocketConfig.
+ *
+ * Drain tasks run on a fixed number of threads. A client that stops reading would hold one of
+ * them until its write fails, so every stall-check interval sessions whose current write has
+ * run past the send time limit are closed, which fails the write and frees the thread.
+ */
+@Component
+public class OutboundQueueRegistry implements MetricsSource, InitializingBean, DisposableBean {
+
+    private static final int DEEPEST_SESSIONS_REPORTED = 10;
+
+    @Value("${chat.websocket.outbound.max-messages:1000}")
+    private int maxMessages;
+
+    @Value("${chat.websocket.outbound.max-bytes:1048576}")
+    private int maxBytes;
+
+    @Value("${chat.websocket.send-time-limit-ms:10000}")
+    private long sendTimeLimitMillis;
+
+    @Value("${chat.websocket.outbound.drain-threads:64}")
+    private int drainThreads;
+
+    @Value("${chat.websocket.outbound.stall-check-interval-ms:1000}")
+    private long stallCheckIntervalMillis;
+
+    private final Map<String, BoundedOutboundSession> sessions = new ConcurrentHashMap<>();
+
+    // Drain tasks block on slow sockets, so they get their own threads rather than the outbound
+    // channel's. Each session has at most one task queued or running, so the queue is bounded by
+    // the number of sessions.
+    private ExecutorService drainExecutor;
+
+    private ScheduledExecutorService stallChecker;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong droppedTyping = new AtomicLong();
+    private final AtomicLong coalescedReceipts = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong stalledSessions = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        AtomicInteger count = new AtomicInteger();
+        this.drainExecutor = new ThreadPoolExecutor(drainThreads, drainThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "ws-outbound-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.stallChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-outbound-stall-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stallChecker.scheduleWithFixedDelay(this::closeStalledSessions,
+            stallCheckIntervalMillis, stallCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        stallChecker.shutdownNow();
+        drainExecutor.shutdownNow();
+    }
+
+    /**
+     * Wrap the STOMP handler so every session it sees has a bounded outbound queue
+     * @param handler The handler to decorate
+     * @return The decorated handler
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                BoundedOutboundSession bounded =
+                    new BoundedOutboundSession(session, OutboundQueueRegistry.this, maxMessages, maxBytes, sendTimeLimitMillis);
+                sessions.put(session.getId(), bounded);
+                super.afterConnectionEstablished(bounded);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                super.handleMessage(boundedOrSelf(session), message);
+            }
+
+            @Override
+            public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+                super.handleTransportError(boundedOrSelf(session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                WebSocketSession bounded = sessions.remove(session.getId());
+                super.afterConnectionClosed(bounded != null ? bounded : session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Close every session whose current socket write has run past the send time limit
+     */
+    void closeStalledSessions() {
+        long now = System.currentTimeMillis();
+        for (BoundedOutboundSession session : sessions.values()) {
+            try {
+                if (session.closeIfStalled(now)) {
+                    stalledSessions.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Failed to close stalled WebSocket session " + session.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private WebSocketSession boundedOrSelf(WebSocketSession session) {
+        WebSocketSession bounded = sessions.get(session.getId());
+        return bounded != null ? bounded : session;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "outboundQueues";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long queuedMessages = 0;
+        long queuedBytes = 0;
+        List<Map<String, Object>> depths = new ArrayList<>();
+        for (Map.Entry<String, BoundedOutboundSession> entry : sessions.entrySet()) {
+            int messages = entry.getValue().getQueuedMessages();
+            int bytes = entry.getValue().getQueuedBytes();
+            queuedMessages += messages;
+            queuedBytes += bytes;
+            if (messages > 0) {
+                Map<String, Object> depth = new LinkedHashMap<>();
+                depth.put("sessionId", entry.getKey());
+                depth.put("messages", messages);
+                depth.put("bytes", bytes);
+                depths.add(depth);
+            }
+        }
+        depths.sort(Comparator.comparingInt((Map<String, Object> depth) -> (Integer) depth.get("messages")).reversed());
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("sessions", sessions.size());
+        metrics.put("drainThreads", drainThreads);
+        metrics.put("maxMessagesPerSession", maxMessages);
+        metrics.put("maxBytesPerSession", maxBytes);
+        metrics.put("queuedMessages", queuedMessages);
+        metrics.put("queuedBytes", queuedBytes);
+        metrics.put("backloggedSessions", depths.size());
+        metrics.put("deepestSessions", depths.subList(0, Math.min(DEEPEST_SESSIONS_REPORTED, depths.size())));
+        metrics.put("sent", sent.get());
+        metrics.put("droppedTyping", droppedTyping.get());
+        metrics.put("coalescedReceipts", coalescedReceipts.get());
+        metrics.put("disconnects", disconnects.get());
+        metrics.put("stalledSessions", stalledSessions.get());
+        return metrics;
+    }
+
+    void drain(Runnable task) {
+        drainExecutor.execute(task);
+    }
+
+    void sent() {
+        sent.incrementAndGet();
+    }
+
+    void droppedTyping() {
+        droppedTyping.incrementAndGet();
+    }
+
+    void coalescedReceipt() {
+        coalescedReceipts.incrementAndGet();
+    }
+
+    void disconnected() {
+        disconnects.incrementAndGet();
+    }
+}
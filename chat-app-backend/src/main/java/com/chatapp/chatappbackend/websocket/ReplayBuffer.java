@@ -0,0 +1,547 @@
+package com.chatapp.chatappbackend.websocket;
+
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Recent frames sent to each user's queues, so a client that reconnects after a dropped socket
+ * gets exactly what it missed instead of refetching every open conversation. Every frame sent to a
+ * replayed /user/{id}/queue/... destination gets the next number of that user's delivery sequence
+ * in a "delivery-seq" header. The broker sends all queues of a session through one lane (see
+ * ShardedBrokerMessageHandler), so a session sees the sequence rise across its queues and the
+ * highest number seen says nothing below it is missing. A reconnecting client sends that number as
+ * "last-delivery-seq" on CONNECT, and each of its queue subscriptions is then sent the buffered
+ * frames after it. When the buffer no longer reaches back that far (too many frames, too old, or
+ * a server restart) the subscription gets a single "replay-gap" frame instead, and the client
+ * falls back to the REST history endpoints.
+ *
+ * The replay is sent once the subscription has reached the broker (see subscriptionInterceptor),
+ * not when the SUBSCRIBE arrives. Otherwise a frame sent between the two would be neither replayed
+ * nor delivered. Until the replay has gone out, live frames for the subscription are held back and
+ * sent after it. For each reconnected session the highest sequence sent on each queue is kept (see
+ * deliveryInterceptor), so a frame both replayed and delivered live, or replayed again by a repeated
+ * SUBSCRIBE, reaches the client once.
+ */
+@Component
+public class ReplayBuffer implements MetricsSource {
+
+    /** Header carrying a frame's delivery sequence */
+    public static final String SEQUENCE_HEADER = "delivery-seq";
+
+    /** CONNECT header carrying the highest delivery sequence the client has seen */
+    public static final String LAST_SEQUENCE_HEADER = "last-delivery-seq";
+
+    /** Header marking the frame that says the buffer cannot cover the gap */
+    public static final String GAP_HEADER = "replay-gap";
+
+    // Session attribute holding the last-delivery-seq sent on CONNECT
+    static final String LAST_SEQUENCE_ATTRIBUTE = "chat.lastDeliverySeq";
+
+    @Value("${chat.replay.max-frames-per-user:256}")
+    private int maxFrames;
+
+    @Value("${chat.replay.max-bytes-per-user:262144}")
+    private int maxBytes;
+
+    @Value("${chat.replay.retention-ms:600000}")
+    private long retentionMillis;
+
+    @Value("${chat.replay.queues:/queue/messages,/queue/delivered}")
+    private Set<String> replayedQueues = new HashSet<>();
+
+    // Lazy: the channel is built by the WebSocket configuration, which registers this bean's interceptors
+    @Lazy
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    private final Map<Integer, UserBuffer> buffers = new ConcurrentHashMap<>();
+
+    // Reconnected sessions, by session ID
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong replayedFrames = new AtomicLong();
+    private final AtomicLong gaps = new AtomicLong();
+    private final AtomicLong heldFrames = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * @return Whether frames to a user queue are kept for replay
+     */
+    public boolean isReplayed(String queueName) {
+        return replayedQueues.contains(queueName);
+    }
+
+    /**
+     * Number a frame for a user and keep it. The send runs under the user's lock, so frames reach
+     * the broker in sequence order.
+     * @param userId The ID of the user
+     * @param queueName The queue, e.g. /queue/messages
+     * @param payload The encoded frame body, shared rather than copied
+     * @param send Sends the frame with the sequence it was given
+     */
+    public void record(Integer userId, String queueName, byte[] payload, LongConsumer send) {
+        while (true) {
+            UserBuffer buffer = buffers.computeIfAbsent(userId, id -> new UserBuffer());
+            synchronized (buffer) {
+                if (buffer.retired) {
+                    buffers.remove(userId, buffer);
+                    continue;
+                }
+                long sequence = buffer.append(queueName, payload, maxFrames, maxBytes);
+                recorded.incrementAndGet();
+                send.accept(sequence);
+                return;
+            }
+        }
+    }
+
+    /**
+     * For the client inbound channel: holds back live frames when a reconnected session subscribes
+     * to a replayed queue, and sends the replay once the user destination handler has passed the
+     * subscription to the broker
+     */
+    public ChannelInterceptor subscriptionInterceptor() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                MessageHeaders headers = message.getHeaders();
+                SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+                if (SimpMessageType.SUBSCRIBE.equals(type)) {
+                    Replay replay = replayFor(headers);
+                    if (replay != null) {
+                        hold(replay.sessionId, replay.subscriptionId, replay.queueName);
+                    }
+                } else if (SimpMessageType.UNSUBSCRIBE.equals(type)) {
+                    SessionState state = sessionOf(headers);
+                    if (state != null) {
+                        synchronized (state) {
+                            release(state, SimpMessageHeaderAccessor.getSubscriptionId(headers));
+                        }
+                    }
+                }
+                return message;
+            }
+
+            @Override
+            public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+                // Rejected before any handler saw it, so no replay will come to release the held frames
+                if (!sent || ex != null) {
+                    Replay replay = replayFor(message.getHeaders());
+                    if (replay != null) {
+                        unhold(replay.sessionId, replay.subscriptionId);
+                    }
+                }
+            }
+
+            @Override
+            public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+                // The user destination handler passes /user/... subscriptions to the broker synchronously
+                if (handler instanceof UserDestinationMessageHandler) {
+                    Replay replay = replayFor(message.getHeaders());
+                    if (replay != null) {
+                        replay(replay.userId, replay.queueName, replay.lastSequence,
+                            replay.sessionId, replay.subscriptionId, replay.destination);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * For the client outbound channel: holds frames to subscriptions whose replay has not gone out
+     * yet, and drops frames a reconnected session has already been sent
+     */
+    public ChannelInterceptor deliveryInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                SessionState state = sessionOf(message.getHeaders());
+                if (state == null) {
+                    return message;
+                }
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+                synchronized (state) {
+                    // The replay's own frames, already checked
+                    if (state.replaying == Thread.currentThread()) {
+                        return message;
+                    }
+                    String queueName = subscriptionId != null ? state.queues.get(subscriptionId) : null;
+                    if (queueName == null) {
+                        return message;
+                    }
+                    List<Message<?>> held = state.held.get(subscriptionId);
+                    if (held != null) {
+                        held.add(message);
+                        heldFrames.incrementAndGet();
+                        return null;
+                    }
+                    return admit(state, queueName, sequenceOf(message)) ? message : null;
+                }
+            }
+        };
+    }
+
+    /**
+     * Forget a session's delivered sequences once it is gone
+     */
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    /**
+     * Drop frames past the retention period, and the buffers of users with nothing left
+     */
+    @Scheduled(fixedDelayString = "${chat.replay.prune-interval-ms:60000}")
+    public void prune() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (Map.Entry<Integer, UserBuffer> entry : buffers.entrySet()) {
+            UserBuffer buffer = entry.getValue();
+            synchronized (buffer) {
+                buffer.evictOlderThan(cutoff);
+                if (buffer.frames.isEmpty()) {
+                    buffer.retired = true;
+                    buffers.remove(entry.getKey(), buffer);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "replay";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long frames = 0;
+        long bytes = 0;
+        for (UserBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                frames += buffer.frames.size();
+                bytes += buffer.bytes;
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("users", buffers.size());
+        metrics.put("bufferedFrames", frames);
+        metrics.put("bufferedBytes", bytes);
+        metrics.put("recorded", recorded.get());
+        metrics.put("replays", replays.get());
+        metrics.put("replayedFrames", replayedFrames.get());
+        metrics.put("gaps", gaps.get());
+        metrics.put("replayingSessions", sessions.size());
+        metrics.put("heldFrames", heldFrames.get());
+        metrics.put("duplicates", duplicates.get());
+        return metrics;
+    }
+
+    /**
+     * Send a subscription the buffered frames after lastSequence (or a gap marker), then any live
+     * frames that were held back for it
+     */
+    void replay(Integer userId, String queueName, long lastSequence,
+                String sessionId, String subscriptionId, String destination) {
+        SessionState state = sessions.computeIfAbsent(sessionId, id -> new SessionState());
+        long from;
+        synchronized (state) {
+            // Nothing the session already received on this queue is sent again
+            Long delivered = state.delivered.get(queueName);
+            from = delivered != null ? Math.max(lastSequence, delivered) : lastSequence;
+        }
+        // Read before taking the session's lock: record() sends while holding the user's buffer,
+        // and a synchronous broker passes that send through the delivery interceptor
+        List<Frame> missed = missedSince(userId, queueName, from);
+
+        replays.incrementAndGet();
+        synchronized (state) {
+            state.replaying = Thread.currentThread();
+            try {
+                if (missed == null) {
+                    gaps.incrementAndGet();
+                    String body = "{\"replayGap\":true,\"lastDeliverySeq\":" + from + "}";
+                    SimpMessageHeaderAccessor accessor = replyHeaders(sessionId, subscriptionId, destination);
+                    accessor.setNativeHeader(GAP_HEADER, "true");
+                    clientOutboundChannel.send(MessageBuilder.createMessage(
+                        body.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders()));
+                } else {
+                    for (Frame frame : missed) {
+                        if (admit(state, queueName, frame.sequence)) {
+                            SimpMessageHeaderAccessor accessor = replyHeaders(sessionId, subscriptionId, destination);
+                            accessor.setNativeHeader(SEQUENCE_HEADER, Long.toString(frame.sequence));
+                            clientOutboundChannel.send(MessageBuilder.createMessage(frame.payload, accessor.getMessageHeaders()));
+                            replayedFrames.incrementAndGet();
+                        }
+                    }
+                }
+                state.queues.put(subscriptionId, queueName);
+                sendHeld(state, subscriptionId, queueName);
+            } finally {
+                state.replaying = null;
+            }
+        }
+    }
+
+    // The buffered frames of a queue after a sequence, or null if the buffer no longer reaches back that far
+    private List<Frame> missedSince(Integer userId, String queueName, long lastSequence) {
+        UserBuffer buffer = buffers.get(userId);
+        if (buffer == null) {
+            return null;
+        }
+        synchronized (buffer) {
+            // Anything at or below evictedThrough is gone; a sequence from the future is from another epoch
+            if (lastSequence < buffer.evictedThrough || lastSequence >= buffer.nextSequence) {
+                return null;
+            }
+            List<Frame> missed = new ArrayList<>();
+            for (Frame frame : buffer.frames) {
+                if (frame.sequence > lastSequence && frame.queueName.equals(queueName)) {
+                    missed.add(frame);
+                }
+            }
+            return missed;
+        }
+    }
+
+    // Caller holds the lock on state and has set state.replaying
+    private void sendHeld(SessionState state, String subscriptionId, String queueName) {
+        List<Message<?>> held = state.held.remove(subscriptionId);
+        if (held != null) {
+            for (Message<?> message : held) {
+                if (admit(state, queueName, sequenceOf(message))) {
+                    clientOutboundChannel.send(message);
+                }
+            }
+        }
+    }
+
+    // Start holding live frames for a subscription whose replay is still to come
+    private void hold(String sessionId, String subscriptionId, String queueName) {
+        SessionState state = sessions.computeIfAbsent(sessionId, id -> new SessionState());
+        synchronized (state) {
+            state.queues.put(subscriptionId, queueName);
+            state.held.putIfAbsent(subscriptionId, new ArrayList<>());
+        }
+    }
+
+    // Send what was held for a subscription whose replay will not happen
+    private void unhold(String sessionId, String subscriptionId) {
+        SessionState state = sessions.get(sessionId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            String queueName = state.queues.get(subscriptionId);
+            if (queueName == null) {
+                return;
+            }
+            state.replaying = Thread.currentThread();
+            try {
+                sendHeld(state, subscriptionId, queueName);
+            } finally {
+                state.replaying = null;
+            }
+        }
+    }
+
+    // Caller holds the lock on state
+    private static void release(SessionState state, String subscriptionId) {
+        if (subscriptionId != null) {
+            state.queues.remove(subscriptionId);
+            state.held.remove(subscriptionId);
+        }
+    }
+
+    // Caller holds the lock on state; false means the session was already sent this frame
+    private boolean admit(SessionState state, String queueName, Long sequence) {
+        if (sequence == null) {
+            return true;
+        }
+        Long delivered = state.delivered.get(queueName);
+        if (delivered != null && sequence <= delivered) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+        state.delivered.put(queueName, sequence);
+        return true;
+    }
+
+    private SessionState sessionOf(MessageHeaders headers) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    // The replay a SUBSCRIBE asks for, or null if it is not a reconnect to a replayed queue
+    private Replay replayFor(MessageHeaders headers) {
+        if (!SimpMessageType.SUBSCRIBE.equals(SimpMessageHeaderAccessor.getMessageType(headers))) {
+            return null;
+        }
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        Object lastSequence = attributes != null ? attributes.get(LAST_SEQUENCE_ATTRIBUTE) : null;
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (!(lastSequence instanceof Long) || !(user instanceof UserPrincipal principal)
+                || sessionId == null || subscriptionId == null) {
+            return null;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String queueName = queueOf(destination, principal.getUserId());
+        if (queueName == null || !isReplayed(queueName)) {
+            return null;
+        }
+        return new Replay(principal.getUserId(), queueName, (Long) lastSequence, sessionId, subscriptionId, destination);
+    }
+
+    private static Long sequenceOf(Message<?> message) {
+        String sequence = SimpMessageHeaderAccessor.wrap(message).getFirstNativeHeader(SEQUENCE_HEADER);
+        return sequence != null ? Long.valueOf(sequence) : null;
+    }
+
+    private static SimpMessageHeaderAccessor replyHeaders(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return accessor;
+    }
+
+    /**
+     * The queue a subscription is for, from either /user/queue/x or /user/{userId}/queue/x
+     * @return The queue, e.g. /queue/messages, or null if it is not one of this user's queues
+     */
+    static String queueOf(String destination, Integer userId) {
+        if (destination == null || !destination.startsWith("/user/")) {
+            return null;
+        }
+        String rest = destination.substring("/user".length());
+        String ownPrefix = "/" + userId + "/";
+        if (rest.startsWith(ownPrefix)) {
+            rest = rest.substring(ownPrefix.length() - 1);
+        }
+        return rest.startsWith("/queue/") ? rest : null;
+    }
+
+    /**
+     * Frames of one user; guarded by the buffer itself
+     */
+    private static final class UserBuffer {
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private int bytes;
+        // Starts from the clock so a new buffer (after a restart or pruning) never reuses old numbers
+        private long nextSequence = System.currentTimeMillis() * 1000;
+        // Every sequence up to this one has left the buffer, or was never in it
+        private long evictedThrough = nextSequence - 1;
+        private boolean retired;
+
+        long append(String queueName, byte[] payload, int maxFrames, int maxBytes) {
+            Frame frame = new Frame(nextSequence++, queueName, payload, System.currentTimeMillis());
+            frames.addLast(frame);
+            bytes += payload.length;
+            while (frames.size() > maxFrames || (bytes > maxBytes && frames.size() > 1)) {
+                evict();
+            }
+            return frame.sequence;
+        }
+
+        void evictOlderThan(long cutoff) {
+            while (!frames.isEmpty() && frames.peekFirst().sentAt < cutoff) {
+                evict();
+            }
+        }
+
+        private void evict() {
+            Frame evicted = frames.removeFirst();
+            bytes -= evicted.payload.length;
+            evictedThrough = evicted.sequence;
+        }
+    }
+
+    /**
+     * What one reconnected session has been sent on its replayed queues; guarded by itself
+     */
+    private static final class SessionState {
+        // subscriptionId -> queue, for the session's subscriptions to replayed queues
+        private final Map<String, String> queues = new HashMap<>();
+        // queue -> highest delivery sequence sent to the session
+        private final Map<String, Long> delivered = new HashMap<>();
+        // subscriptionId -> live frames held until the subscription's replay has been sent
+        private final Map<String, List<Message<?>>> held = new HashMap<>();
+        // The thread sending this session's replay, whose frames the delivery interceptor lets through
+        private Thread replaying;
+    }
+
+    /**
+     * A replay a SUBSCRIBE frame asks for
+     */
+    private static final class Replay {
+        private final Integer userId;
+        private final String queueName;
+        private final long lastSequence;
+        private final String sessionId;
+        private final String subscriptionId;
+        private final String destination;
+
+        Replay(Integer userId, String queueName, long lastSequence,
+               String sessionId, String subscriptionId, String destination) {
+            this.userId = userId;
+            this.queueName = queueName;
+            this.lastSequence = lastSequence;
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.destination = destination;
+        }
+    }
+
+    private static final class Frame {
+        private final long sequence;
+        private final String queueName;
+        private final byte[] payload;
+        private final long sentAt;
+
+        Frame(long sequence, String queueName, byte[] payload, long sentAt) {
+            this.sequence = sequence;
+            this.queueName = queueName;
+            this.payload = payload;
+            this.sentAt = sentAt;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.chatapp.chatappbackend.websocket;
+
+import com.chatapp.chatappbackend.util.MetricsSource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process STOMP broker that replaces the simple broker. Every destination this application
+ * uses is exact: conversation topics (/topic/conversation.{id}, .read, .typing, ...) and user
+ * queues, which reach the broker already resolved to one destination per session
+ * (/queue/messages-user{sessionId}). Subscriptions are therefore indexed in a concurrent map
+ * from destination to a copy-on-write array of subscribers, so finding the recipients of a frame
+ * is one hash lookup instead of matching it against every subscription. Published frames are
+ * sharded by destination across single-threaded lanes fed by lock-free queues, which spreads the
+ * fan-out over several cores while keeping frames to the same destination in order. All queues of
+ * one session share a lane, so the session gets its queue frames in the order they were published
+ * (the replay buffer numbers a user's queues with one sequence and relies on that).
+ * Pattern subscriptions are still accepted and matched the slow way.
+ *
+ * Each lane holds at most laneCapacity frames. A full lane sheds frames the way the per-session
+ * outbound queues do: typing events are dropped (the next one carries the same information), while
+ * chat frames and read receipts, whose counts are deltas no later receipt repeats, make the
+ * publisher wait up to fullWaitMillis for room before they too are dropped and logged; clients
+ * recover them from history.
+ */
+public class ShardedBrokerMessageHandler extends AbstractBrokerMessageHandler implements MetricsSource {
+
+    // Separates a user queue from the session ID the user destination resolver appends
+    private static final String USER_SUFFIX = "-user";
+
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    // destination -> subscribers; arrays are replaced, never modified, so lanes read them without locking
+    private final ConcurrentHashMap<String, Subscriber[]> subscribersByDestination = new ConcurrentHashMap<>();
+
+    // sessionId -> (subscriptionId -> destination), to unsubscribe and clean up on disconnect
+    private final ConcurrentHashMap<String, Map<String, String>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    // Subscriptions with wildcards, which cannot be indexed by destination
+    private final List<PatternSubscriber> patternSubscribers = new CopyOnWriteArrayList<>();
+
+    private final Lane[] lanes;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+    private final AtomicLong failedDeliveries = new AtomicLong();
+    private final AtomicLong droppedTyping = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+
+    private final int laneCapacity;
+    private final long fullWaitNanos;
+
+    public ShardedBrokerMessageHandler(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+                                       SubscribableChannel brokerChannel, Collection<String> destinationPrefixes,
+                                       int laneCount, int laneCapacity, long fullWaitMillis) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, destinationPrefixes);
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("A broker needs at least one lane");
+        }
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("A broker lane needs room for at least one frame");
+        }
+        this.laneCapacity = laneCapacity;
+        this.fullWaitNanos = TimeUnit.MILLISECONDS.toNanos(fullWaitMillis);
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            this.lanes[i] = new Lane(i);
+        }
+    }
+
+    @Override
+    protected void startInternal() {
+        for (Lane lane : lanes) {
+            lane.start();
+        }
+        publishBrokerAvailableEvent();
+    }
+
+    @Override
+    protected void stopInternal() {
+        for (Lane lane : lanes) {
+            lane.stop();
+        }
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+
+        if (!checkDestinationPrefix(destination)) {
+            return;
+        }
+
+        if (SimpMessageType.MESSAGE.equals(messageType)) {
+            published.incrementAndGet();
+            lanes[laneOf(destination)].submit(message, destination);
+        } else if (SimpMessageType.SUBSCRIBE.equals(messageType)) {
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+            if (sessionId != null && subscriptionId != null && destination != null) {
+                subscribe(sessionId, subscriptionId, destination);
+            }
+        } else if (SimpMessageType.UNSUBSCRIBE.equals(messageType)) {
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+            if (sessionId != null && subscriptionId != null) {
+                unsubscribe(sessionId, subscriptionId);
+            }
+        } else if (SimpMessageType.CONNECT.equals(messageType)) {
+            if (sessionId != null) {
+                subscriptionsBySession.putIfAbsent(sessionId, new ConcurrentHashMap<>());
+                SimpMessageHeaderAccessor connectAck = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+                connectAck.setSessionId(sessionId);
+                Principal user = SimpMessageHeaderAccessor.getUser(headers);
+                if (user != null) {
+                    connectAck.setUser(user);
+                }
+                connectAck.setHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER, message);
+                connectAck.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[] {0, 0});
+                getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, connectAck.getMessageHeaders()));
+            }
+        } else if (SimpMessageType.DISCONNECT.equals(messageType)) {
+            if (sessionId != null) {
+                removeSession(sessionId);
+                SimpMessageHeaderAccessor disconnectAck = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT_ACK);
+                disconnectAck.setSessionId(sessionId);
+                Principal user = SimpMessageHeaderAccessor.getUser(headers);
+                if (user != null) {
+                    disconnectAck.setUser(user);
+                }
+                disconnectAck.setHeader(SimpMessageHeaderAccessor.DISCONNECT_MESSAGE_HEADER, message);
+                getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, disconnectAck.getMessageHeaders()));
+            }
+        }
+    }
+
+    /**
+     * @return The number of subscriptions across all sessions
+     */
+    public int getSubscriptionCount() {
+        int count = 0;
+        for (Map<String, String> subscriptions : subscriptionsBySession.values()) {
+            count += subscriptions.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "broker";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("sessions", subscriptionsBySession.size());
+        metrics.put("destinations", subscribersByDestination.size());
+        metrics.put("subscriptions", getSubscriptionCount());
+        metrics.put("patternSubscriptions", patternSubscribers.size());
+        int[] depths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            depths[i] = lanes[i].depth.get();
+        }
+        metrics.put("laneDepths", depths);
+        metrics.put("laneCapacity", laneCapacity);
+        metrics.put("published", published.get());
+        metrics.put("deliveries", deliveries.get());
+        metrics.put("failedDeliveries", failedDeliveries.get());
+        metrics.put("droppedTyping", droppedTyping.get());
+        metrics.put("droppedFrames", droppedFrames.get());
+        metrics.put("publisherWaits", waits.get());
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedBroker[" + lanes.length + " lanes, " + subscribersByDestination.size() + " destinations]";
+    }
+
+    private int laneOf(String destination) {
+        // Resolved user queues (/queue/messages-user{sessionId}) go by session rather than by queue
+        int sessionSuffix = destination.startsWith("/queue/") ? destination.lastIndexOf(USER_SUFFIX) : -1;
+        int hash = sessionSuffix > 0 ? destination.substring(sessionSuffix).hashCode() : destination.hashCode();
+        return ((hash ^ (hash >>> 16)) & 0x7fffffff) % lanes.length;
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        Map<String, String> subscriptions = subscriptionsBySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>());
+        String previous = subscriptions.put(subscriptionId, destination);
+        if (previous != null) {
+            removeSubscriber(sessionId, subscriptionId, previous);
+        }
+        if (pathMatcher.isPattern(destination)) {
+            patternSubscribers.add(new PatternSubscriber(sessionId, subscriptionId, destination));
+            return;
+        }
+        Subscriber subscriber = new Subscriber(sessionId, subscriptionId);
+        subscribersByDestination.compute(destination, (key, current) -> {
+            if (current == null) {
+                return new Subscriber[] { subscriber };
+            }
+            Subscriber[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscriber;
+            return updated;
+        });
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = subscriptionsBySession.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            removeSubscriber(sessionId, subscriptionId, destination);
+        }
+    }
+
+    private void removeSession(String sessionId) {
+        Map<String, String> subscriptions = subscriptionsBySession.remove(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        subscriptions.forEach((subscriptionId, destination) -> removeSubscriber(sessionId, subscriptionId, destination));
+    }
+
+    private void removeSubscriber(String sessionId, String subscriptionId, String destination) {
+        if (pathMatcher.isPattern(destination)) {
+            patternSubscribers.removeIf(subscriber ->
+                subscriber.sessionId.equals(sessionId) && subscriber.subscriptionId.equals(subscriptionId));
+            return;
+        }
+        subscribersByDestination.computeIfPresent(destination, (key, current) -> {
+            List<Subscriber> remaining = new ArrayList<>(current.length);
+            for (Subscriber subscriber : current) {
+                if (!subscriber.sessionId.equals(sessionId) || !subscriber.subscriptionId.equals(subscriptionId)) {
+                    remaining.add(subscriber);
+                }
+            }
+            // Returning null drops the destination once its last subscriber is gone
+            return remaining.isEmpty() ? null : remaining.toArray(NO_SUBSCRIBERS);
+        });
+    }
+
+    // Runs on the destination's lane
+    private void deliver(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        Subscriber[] subscribers = subscribersByDestination.get(destination);
+        if (subscribers != null) {
+            for (Subscriber subscriber : subscribers) {
+                send(message, subscriber.sessionId, subscriber.subscriptionId);
+            }
+        }
+        for (PatternSubscriber subscriber : patternSubscribers) {
+            if (pathMatcher.match(subscriber.pattern, destination)) {
+                send(message, subscriber.sessionId, subscriber.subscriptionId);
+            }
+        }
+    }
+
+    private void send(Message<?> message, String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.copyHeadersIfAbsent(message.getHeaders());
+        accessor.setLeaveMutable(true);
+        // The payload is shared by every subscriber; only the headers are per session
+        Message<?> reply = MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+        try {
+            getClientOutboundChannelForSession(sessionId).send(reply);
+            deliveries.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedDeliveries.incrementAndGet();
+            if (logger.isErrorEnabled()) {
+                logger.error("Failed to send " + message, e);
+            }
+        }
+    }
+
+    /**
+     * A subscription to an exact destination
+     */
+    private static final class Subscriber {
+        private final String sessionId;
+        private final String subscriptionId;
+
+        Subscriber(String sessionId, String subscriptionId) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+        }
+    }
+
+    /**
+     * A subscription to a destination pattern
+     */
+    private static final class PatternSubscriber {
+        private final String sessionId;
+        private final String subscriptionId;
+        private final String pattern;
+
+        PatternSubscriber(String sessionId, String subscriptionId, String pattern) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * A worker thread that delivers the frames of the destinations hashed to it, in arrival order
+     */
+    private final class Lane implements Runnable {
+        private final int index;
+        private final ConcurrentLinkedQueue<Message<?>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private volatile boolean parked;
+        private volatile boolean running;
+        private Thread thread;
+
+        Lane(int index) {
+            this.index = index;
+        }
+
+        void start() {
+            running = true;
+            thread = new Thread(this, "broker-lane-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        void submit(Message<?> message, String destination) {
+            if (depth.get() >= laneCapacity && !makeRoom(destination)) {
+                return;
+            }
+            queue.offer(message);
+            depth.incrementAndGet();
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        // The lane is full; false means the frame is dropped
+        private boolean makeRoom(String destination) {
+            if (BoundedOutboundSession.classify(destination) == BoundedOutboundSession.FrameType.TYPING) {
+                droppedTyping.incrementAndGet();
+                return false;
+            }
+            // Back-pressure: hold the publisher until the lane has drained a little
+            waits.incrementAndGet();
+            long deadline = System.nanoTime() + fullWaitNanos;
+            while (depth.get() >= laneCapacity) {
+                if (System.nanoTime() - deadline >= 0 || !running) {
+                    droppedFrames.incrementAndGet();
+                    System.err.println("Broker lane " + index + " is full, dropping a frame to " + destination);
+                    return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Message<?> message = queue.poll();
+                if (message == null) {
+                    // Announce the park before re-checking, so a submit in between always unparks us
+                    parked = true;
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    }
+                    parked = false;
+                    continue;
+                }
+                depth.decrementAndGet();
+                deliver(message);
+            }
+        }
+    }
+}
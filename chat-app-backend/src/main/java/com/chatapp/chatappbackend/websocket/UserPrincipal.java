@@ -0,0 +1,40 @@
+package com.chatapp.chatappbackend.websocket;
+
+import java.security.Principal;
+
+/**
+ * The user behind a STOMP session. Its name is the user ID, which is what /user/{id}/... destinations
+ * resolve against.
+ */
+public final class UserPrincipal implements Principal {
+
+    private final Integer userId;
+
+    public UserPrincipal(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    @Override
+    public String getName() {
+        return String.valueOf(userId);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof UserPrincipal principal && principal.userId.equals(userId);
+    }
+
+    @Override
+    public int hashCode() {
+        return userId.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "UserPrincipal[" + userId + "]";
+    }
+}
@@ -0,0 +1,81 @@
+package com.chatapp.chatappbackend.websocket;
+
+import com.chatapp.chatappbackend.service.PresenceService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Ties STOMP sessions to users. Clients name themselves in a "userId" header on CONNECT, which
+ * becomes the session's principal (and so the owner of its /user/... queues and of the connect and
+ * disconnect events PresenceService listens to), and a reconnecting client's "last-delivery-seq"
+ * header is kept for the ReplayBuffer; every later frame from the session, heartbeats included,
+ * counts as activity for its last-seen time.
+ */
+public class UserSessionChannelInterceptor implements ChannelInterceptor {
+
+    static final String USER_ID_HEADER = "userId";
+
+    // Resolved lazily: the presence service sends through the broker this channel belongs to
+    private final ObjectProvider<PresenceService> presenceService;
+
+    public UserSessionChannelInterceptor(ObjectProvider<PresenceService> presenceService) {
+        this.presenceService = presenceService;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
+            Integer userId = parseUserId(accessor.getFirstNativeHeader(USER_ID_HEADER));
+            if (userId != null) {
+                accessor.setUser(new UserPrincipal(userId));
+            }
+            Long lastSequence = parseSequence(accessor.getFirstNativeHeader(ReplayBuffer.LAST_SEQUENCE_HEADER));
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (lastSequence != null && attributes != null) {
+                attributes.put(ReplayBuffer.LAST_SEQUENCE_ATTRIBUTE, lastSequence);
+            }
+            return message;
+        }
+
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        Principal user = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        if (user instanceof UserPrincipal principal && type != SimpMessageType.DISCONNECT) {
+            presenceService.getObject().touch(principal.getUserId());
+        }
+        return message;
+    }
+
+    private static Long parseSequence(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer parseUserId(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid userId header on STOMP CONNECT: " + value);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.chatapp.chatappbackend.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Frames reach the nodes that hold the recipient's sessions, and only those
+ */
+class ClusterFanoutTest {
+
+    private final List<ClusterFanout> nodes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        nodes.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ClusterFanout::destroy);
+    }
+
+    @Test
+    void forwardsUserFramesOnlyToNodesWithTheUser() throws Exception {
+        String cluster = "test-" + System.nanoTime();
+        Queue<String> deliveredToB = new ConcurrentLinkedQueue<>();
+        Queue<String> deliveredToC = new ConcurrentLinkedQueue<>();
+        ClusterFanout a = node(new LoopbackClusterTransport(cluster, "a"), new ConcurrentLinkedQueue<>());
+        ClusterFanout b = node(new LoopbackClusterTransport(cluster, "b"), deliveredToB);
+        ClusterFanout c = node(new LoopbackClusterTransport(cluster, "c"), deliveredToC);
+
+        b.userConnected(42);
+        awaitTrue(() -> a.hasRemoteSessions(42));
+
+        a.forward("/user/42/queue/messages", "hello".getBytes(StandardCharsets.UTF_8));
+        awaitTrue(() -> !deliveredToB.isEmpty());
+
+        assertThat(deliveredToB).containsExactly("/user/42/queue/messages:hello");
+        assertThat(deliveredToC).isEmpty();
+        assertThat(c.hasRemoteSessions(42)).isTrue();
+
+        b.userDisconnected(42);
+        awaitTrue(() -> !a.hasRemoteSessions(42));
+        a.forward("/user/42/queue/messages", "gone".getBytes(StandardCharsets.UTF_8));
+        assertThat(a.getMetrics()).containsEntry("forwardedFrames", 1L);
+    }
+
+    @Test
+    void forgetsNodesThatLeaveOrGoQuiet() throws Exception {
+        String cluster = "test-" + System.nanoTime();
+        ClusterFanout a = node(new LoopbackClusterTransport(cluster, "a"), new ConcurrentLinkedQueue<>());
+        ClusterFanout b = node(new LoopbackClusterTransport(cluster, "b"), new ConcurrentLinkedQueue<>());
+        b.userConnected(7);
+        awaitTrue(() -> a.hasRemoteSessions(7));
+
+        b.destroy();
+        nodes.remove(b);
+        awaitTrue(() -> !a.hasRemoteSessions(7));
+        assertThat(a.getMetrics()).containsEntry("knownNodes", 0);
+    }
+
+    @Test
+    void reportsUsersLeftWithoutSessionsOnceWhenANodeLeaves() throws Exception {
+        String cluster = "test-" + System.nanoTime();
+        Queue<List<Integer>> lostOnA = new ConcurrentLinkedQueue<>();
+        Queue<List<Integer>> lostOnC = new ConcurrentLinkedQueue<>();
+        ClusterFanout a = node(new LoopbackClusterTransport(cluster, "a"), new ConcurrentLinkedQueue<>());
+        ClusterFanout b = node(new LoopbackClusterTransport(cluster, "b"), new ConcurrentLinkedQueue<>());
+        ClusterFanout c = node(new LoopbackClusterTransport(cluster, "c"), new ConcurrentLinkedQueue<>());
+        a.setLostUsersListener(lostOnA::add);
+        c.setLostUsersListener(lostOnC::add);
+        b.userConnected(7);
+        b.userConnected(8);
+        c.userConnected(8);
+        awaitTrue(() -> a.hasRemoteSessions(7) && a.hasRemoteSessions(8) && c.hasRemoteSessions(7));
+
+        b.destroy();
+        nodes.remove(b);
+        awaitTrue(() -> !lostOnA.isEmpty() && !c.hasRemoteSessions(7));
+
+        // User 8 is still connected to c; only the lowest surviving node reports user 7
+        assertThat(lostOnA).containsExactly(List.of(7));
+        assertThat(a.hasRemoteSessions(8)).isTrue();
+        assertThat(lostOnC).isEmpty();
+    }
+
+    @Test
+    void tellsOtherNodesWhoseUnreadCountersChanged() throws Exception {
+        String cluster = "test-" + System.nanoTime();
+        Queue<List<Integer>> changedOnB = new ConcurrentLinkedQueue<>();
+        ClusterFanout a = node(new LoopbackClusterTransport(cluster, "a"), new ConcurrentLinkedQueue<>());
+        ClusterFanout b = node(new LoopbackClusterTransport(cluster, "b"), new ConcurrentLinkedQueue<>());
+        b.setUnreadListener(changedOnB::add);
+
+        a.unreadCountersChanged(List.of(3, 9));
+        awaitTrue(() -> !changedOnB.isEmpty());
+
+        assertThat(changedOnB).containsExactly(List.of(3, 9));
+    }
+
+    @Test
+    void carriesFramesOverTcp() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        List<String> peers = List.of("127.0.0.1:" + portA, "127.0.0.1:" + portB);
+        Queue<String> deliveredToB = new ConcurrentLinkedQueue<>();
+        ClusterFanout a = node(new TcpClusterTransport(peers.get(0), "127.0.0.1", portA, "secret", peers, 100),
+            new ConcurrentLinkedQueue<>());
+        ClusterFanout b = node(new TcpClusterTransport(peers.get(1), "127.0.0.1", portB, "secret", peers, 100), deliveredToB);
+
+        b.userConnected(9);
+        awaitTrue(() -> a.hasRemoteSessions(9));
+        a.forward("/user/9/queue/messages", "over tcp".getBytes(StandardCharsets.UTF_8));
+
+        awaitTrue(() -> !deliveredToB.isEmpty());
+        assertThat(deliveredToB).containsExactly("/user/9/queue/messages:over tcp");
+    }
+
+    @Test
+    void refusesTcpPeersWithoutTheSecret() throws Exception {
+        int portA = freePort();
+        int portB = freePort();
+        List<String> peers = List.of("127.0.0.1:" + portA, "127.0.0.1:" + portB);
+        TcpClusterTransport transportA = new TcpClusterTransport(peers.get(0), "127.0.0.1", portA, "secret", peers, 100);
+        TcpClusterTransport transportB = new TcpClusterTransport(peers.get(1), "127.0.0.1", portB, "other", peers, 100);
+        ClusterFanout a = node(transportA, new ConcurrentLinkedQueue<>());
+        ClusterFanout b = node(transportB, new ConcurrentLinkedQueue<>());
+
+        // The first snapshot may go out before the other node listens; keep syncing as the scheduler would
+        awaitTrue(() -> {
+            a.sync();
+            b.sync();
+            return (Long) transportA.getMetrics().get("rejectedConnections") > 0
+                && (Long) transportB.getMetrics().get("rejectedConnections") > 0;
+        });
+        assertThat(a.getMetrics()).containsEntry("knownNodes", 0);
+    }
+
+    @Test
+    void needsASecretToListenBeyondLoopback() {
+        assertThatThrownBy(() -> new TcpClusterTransport("10.0.0.1:7900", "0.0.0.0", 7900, "", List.of(), 100))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ClusterFanout node(ClusterTransport transport, Queue<String> delivered) {
+        ClusterFanout fanout = new ClusterFanout();
+        ReflectionTestUtils.setField(fanout, "transport", transport);
+        ReflectionTestUtils.setField(fanout, "peerTimeoutMillis", 15_000L);
+        fanout.setLocalDelivery((destination, payload) ->
+            delivered.add(destination + ":" + new String(payload, StandardCharsets.UTF_8)));
+        fanout.afterPropertiesSet();
+        nodes.add(fanout);
+        return fanout;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition not met within 10 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.chatapp.chatappbackend.repository;
+
+import com.chatapp.chatappbackend.dto.MessageAttachmentDTO;
+import com.chatapp.chatappbackend.dto.MessageDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * A history page must cost a fixed number of queries, however many messages and attachments it holds
+ */
+class MessageReadRepositoryTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private MessageReadRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        repository = new MessageReadRepository(jdbcTemplate);
+    }
+
+    @Test
+    void pageWithAttachmentsCostsTwoQueries() {
+        stubMessages(50);
+        stubAttachments(List.of(attachment(1L, 10L), attachment(2L, 10L), attachment(3L, 25L)));
+
+        List<MessageDTO> page = repository.findLatest(7, 50);
+
+        assertThat(page).hasSize(50);
+        assertThat(page.get(9).getAttachments()).extracting(MessageAttachmentDTO::getId).containsExactly(1L, 2L);
+        assertThat(page.get(24).getAttachments()).extracting(MessageAttachmentDTO::getId).containsExactly(3L);
+        assertThat(page.get(0).getAttachments()).isEmpty();
+        verifyQueryCount(2);
+    }
+
+    @Test
+    void queryCountDoesNotGrowWithPageSize() {
+        stubMessages(500);
+        stubAttachments(List.of());
+
+        repository.findBefore(7, 1000L, 500);
+
+        // All attachment lookups go into a single IN list
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).query(startsWith("SELECT id, message_id"), ArgumentMatchers.<RowMapper<MessageAttachmentDTO>>any(), args.capture());
+        assertThat(args.getValue()).hasSize(500);
+        verifyQueryCount(2);
+    }
+
+    @Test
+    void emptyPageCostsOneQuery() {
+        stubMessages(0);
+
+        assertThat(repository.findAfter(7, 42L, 101)).isEmpty();
+        verifyQueryCount(1);
+    }
+
+    private void stubMessages(int count) {
+        List<MessageDTO> messages = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            MessageDTO message = new MessageDTO();
+            message.setId((long) i);
+            message.setConversationId(7);
+            message.setSequence((long) i);
+            messages.add(message);
+        }
+        when(jdbcTemplate.query(startsWith("SELECT m.id"), ArgumentMatchers.<RowMapper<MessageDTO>>any(), any(Object[].class)))
+            .thenReturn(messages);
+    }
+
+    private void stubAttachments(List<MessageAttachmentDTO> attachments) {
+        when(jdbcTemplate.query(startsWith("SELECT id, message_id"), ArgumentMatchers.<RowMapper<MessageAttachmentDTO>>any(), any(Object[].class)))
+            .thenReturn(new ArrayList<>(attachments));
+    }
+
+    private void verifyQueryCount(int expected) {
+        verify(jdbcTemplate, times(expected)).query(anyString(), ArgumentMatchers.<RowMapper<?>>any(), any(Object[].class));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    private static MessageAttachmentDTO attachment(Long id, Long messageId) {
+        MessageAttachmentDTO attachment = new MessageAttachmentDTO();
+        attachment.setId(id);
+        attachment.setMessageId(messageId);
+        return attachment;
+    }
+}
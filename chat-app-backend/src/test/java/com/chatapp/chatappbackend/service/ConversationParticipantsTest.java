@@ -0,0 +1,68 @@
+package com.chatapp.chatappbackend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Access checks hit the database once per conversation, then answer from memory
+ */
+class ConversationParticipantsTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ConversationParticipants participants;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        participants = new ConversationParticipants();
+        ReflectionTestUtils.setField(participants, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(participants, "stripes", 4);
+        ReflectionTestUtils.setField(participants, "maxEntries", 100);
+        participants.afterPropertiesSet();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void loadsEachConversationOnce() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(7)))
+            .thenReturn(List.of(ConversationParticipants.pack(3, Integer.MAX_VALUE)));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(participants.isParticipant(7, 3)).isTrue();
+            assertThat(participants.isParticipant(7, 4)).isFalse();
+        }
+        assertThat(participants.getOtherParticipant(7, 3)).isEqualTo(Integer.MAX_VALUE);
+        assertThat(participants.getOtherParticipant(7, Integer.MAX_VALUE)).isEqualTo(3);
+        assertThatThrownBy(() -> participants.getOtherParticipant(7, 4)).isInstanceOf(IllegalArgumentException.class);
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), eq(7));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void createdConversationsNeedNoLoadAndUnknownOnesAreRejected() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(8))).thenReturn(List.of());
+
+        participants.put(9, 1, 2);
+
+        assertThat(participants.isParticipant(9, 2)).isTrue();
+        assertThatThrownBy(() -> participants.isParticipant(8, 1))
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("not found");
+        participants.evict(9);
+        assertThat(participants.getMetrics()).containsEntry("conversations", 0).containsEntry("hits", 1L);
+    }
+}
@@ -0,0 +1,96 @@
+package com.chatapp.chatappbackend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sequence ranges count against the pending limit message by message, acknowledgements that
+ * keep failing are dropped instead of retried forever, and large ones are read in bounded chunks
+ */
+class DeliveryAckBufferTest {
+
+    private PlatformTransactionManager transactionManager;
+    private DeliveryAckBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        transactionManager = mock(PlatformTransactionManager.class);
+        buffer = new DeliveryAckBuffer();
+        ReflectionTestUtils.setField(buffer, "maxPending", 15);
+        ReflectionTestUtils.setField(buffer, "maxAttempts", 2);
+        ReflectionTestUtils.setField(buffer, "jdbcTemplate", mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(buffer, "transactionManager", transactionManager);
+        buffer.afterPropertiesSet();
+    }
+
+    @Test
+    void countsEverySequenceOfARange() {
+        buffer.acknowledge(1, 7, List.of(100L, 100L), 1L, 10L);
+        assertThat(buffer.getMetrics()).containsEntry("pending", 11L);
+
+        assertThatThrownBy(() -> buffer.acknowledge(1, 7, null, 11L, 15L))
+            .isInstanceOf(IllegalStateException.class);
+        buffer.acknowledge(1, 7, List.of(101L), 11L, 13L);
+        assertThat(buffer.getMetrics()).containsEntry("pending", 15L);
+    }
+
+    @Test
+    void dropsAcknowledgementsThatKeepFailing() {
+        when(transactionManager.getTransaction(any())).thenThrow(new CannotCreateTransactionException("down"));
+        buffer.acknowledge(1, 7, List.of(100L), 1L, 4L);
+
+        buffer.flush();
+        assertThat(buffer.getMetrics()).containsEntry("pending", 5L).containsEntry("droppedAcks", 0L);
+
+        buffer.flush();
+        assertThat(buffer.getMetrics()).containsEntry("pending", 0L).containsEntry("droppedAcks", 5L)
+            .containsEntry("failedFlushes", 2L);
+    }
+
+    @Test
+    void selectsLargeAcknowledgementsInChunks() {
+        ReflectionTestUtils.setField(buffer, "maxPending", 10000);
+        ReflectionTestUtils.setField(buffer, "messageOutbox", mock(MessageOutbox.class));
+        ReflectionTestUtils.setField(buffer, "recentMessageCache", mock(RecentMessageCache.class));
+        ReflectionTestUtils.setField(buffer, "changeLog", mock(ChangeLog.class));
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        // Records how many IDs each select names
+        NamedParameterJdbcTemplate namedJdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+        List<Integer> idsPerSelect = new ArrayList<>();
+        doAnswer(invocation -> {
+            MapSqlParameterSource params = invocation.getArgument(1);
+            List<?> ids = params.hasValue("messageIds") ? (List<?>) params.getValue("messageIds") : List.of();
+            idsPerSelect.add(ids.size());
+            return null;
+        }).when(namedJdbcTemplate).query(startsWith("SELECT"), any(MapSqlParameterSource.class), any(RowCallbackHandler.class));
+        ReflectionTestUtils.setField(buffer, "namedJdbcTemplate", namedJdbcTemplate);
+
+        buffer.acknowledge(1, 7, LongStream.rangeClosed(1, 2500).boxed().collect(Collectors.toList()), null, null);
+        buffer.flush();
+
+        assertThat(idsPerSelect).containsExactly(1000, 1000, 500);
+        assertThat(buffer.getMetrics()).containsEntry("pending", 0L).containsEntry("failedFlushes", 0L);
+    }
+}
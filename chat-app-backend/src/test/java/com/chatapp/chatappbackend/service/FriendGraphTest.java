@@ -0,0 +1,88 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.repository.FriendshipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * The index answers from memory once loaded, follows committed changes and reports drift
+ */
+class FriendGraphTest {
+
+    private final List<int[]> stored = new ArrayList<>();
+    private FriendshipRepository friendshipRepository;
+    private FriendGraph friendGraph;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int[] row : new ArrayList<>(stored)) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getInt("user1_id")).thenReturn(row[0]);
+                when(rs.getInt("user2_id")).thenReturn(row[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        friendshipRepository = mock(FriendshipRepository.class);
+        friendGraph = new FriendGraph();
+        ReflectionTestUtils.setField(friendGraph, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(friendGraph, "friendshipRepository", friendshipRepository);
+    }
+
+    @Test
+    void answersFromMemoryAndFollowsChanges() {
+        for (int friend = 2; friend <= 6; friend++) {
+            stored.add(new int[] { 1, friend });
+        }
+        stored.add(new int[] { 2, 3 });
+        friendGraph.run();
+
+        assertThat(friendGraph.getFriendIds(1)).containsExactly(2, 3, 4, 5, 6);
+        assertThat(friendGraph.areFriends(3, 2)).isTrue();
+        assertThat(friendGraph.areFriends(3, 4)).isFalse();
+
+        friendGraph.addFriendship(4, 3);
+        friendGraph.removeFriendship(1, 5);
+        friendGraph.removeFriendship(1, 5);
+        assertThat(friendGraph.getFriendIds(3)).containsExactly(1, 2, 4);
+        assertThat(friendGraph.getFriendIds(1)).containsExactly(2, 3, 4, 6);
+        assertThat(friendGraph.getFriendIds(5)).isEmpty();
+        assertThat(friendGraph.getMetrics()).containsEntry("friendships", 6);
+        verifyNoInteractions(friendshipRepository);
+    }
+
+    @Test
+    void verifyReportsDriftAndRebuildRepairsIt() {
+        stored.add(new int[] { 1, 2 });
+        stored.add(new int[] { 1, 3 });
+        friendGraph.run();
+
+        // Changed by another instance, which this one was not told about
+        stored.remove(0);
+        stored.add(new int[] { 2, 3 });
+        assertThat(friendGraph.verify())
+            .containsEntry("missing", 1L).containsEntry("extra", 1L).containsEntry("consistent", false);
+
+        friendGraph.rebuild();
+        assertThat(friendGraph.verify()).containsEntry("consistent", true);
+        assertThat(friendGraph.areFriends(1, 2)).isFalse();
+    }
+}
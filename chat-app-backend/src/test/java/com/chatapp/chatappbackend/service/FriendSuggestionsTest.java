@@ -0,0 +1,114 @@
+package com.chatapp.chatappbackend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Candidates are ranked by mutual friends, the parallel count agrees with the serial one, and
+ * rankings a new friendship affects are recomputed
+ */
+class FriendSuggestionsTest {
+
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final List<FriendSuggestions> created = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        created.forEach(FriendSuggestions::destroy);
+    }
+
+    @Test
+    void ranksFriendsOfFriendsByMutualFriends() {
+        load(new int[][] { { 1, 2 }, { 1, 3 }, { 1, 4 }, { 2, 5 }, { 3, 5 }, { 4, 5 }, { 2, 6 }, { 3, 6 }, { 4, 7 }, { 2, 3 } });
+        FriendSuggestions suggestions = suggestions(0);
+
+        FriendSuggestions.Ranking ranking = suggestions.getSuggestions(1, 10);
+        assertThat(ids(ranking)).containsExactly(5, 6, 7);
+        assertThat(ranking.getMutualFriendCount(0)).isEqualTo(3);
+        assertThat(ranking.getMutualFriendCount(1)).isEqualTo(2);
+        assertThat(ids(suggestions.getSuggestions(1, 2))).containsExactly(5, 6);
+        assertThat(friendGraph.countMutualFriends(1, 5)).isEqualTo(3);
+        assertThat(friendGraph.countMutualFriends(2, 3)).isEqualTo(3);
+        assertThat(ids(suggestions.getSuggestions(2, 10))).containsExactly(4);
+
+        // 7 becomes a friend of 2's friend 5, so the ranking cached for 2 is recomputed
+        friendGraph.addFriendship(5, 7);
+        suggestions.friendshipChanged(5, 7);
+        assertThat(ids(suggestions.getSuggestions(2, 10))).containsExactly(4, 7);
+        friendGraph.addFriendship(1, 5);
+        suggestions.friendshipChanged(1, 5);
+        assertThat(ids(suggestions.getSuggestions(1, 10))).containsExactly(6, 7);
+        assertThat(suggestions.getSuggestions(1, 10).getMutualFriendCount(1)).isEqualTo(2);
+    }
+
+    @Test
+    void parallelCountMatchesSerialCount() {
+        Random random = new Random(7);
+        List<int[]> edges = new ArrayList<>();
+        for (int friend = 2; friend <= 400; friend++) {
+            edges.add(new int[] { 1, friend });
+        }
+        for (int i = 0; i < 40_000; i++) {
+            int a = 2 + random.nextInt(3000);
+            int b = 2 + random.nextInt(3000);
+            if (a != b) {
+                edges.add(new int[] { a, b });
+            }
+        }
+        load(edges.toArray(new int[0][]));
+
+        FriendSuggestions serial = suggestions(Integer.MAX_VALUE);
+        FriendSuggestions parallel = suggestions(0);
+        FriendSuggestions.Ranking expected = serial.getSuggestions(1, 50);
+        FriendSuggestions.Ranking actual = parallel.getSuggestions(1, 50);
+
+        assertThat(parallel.getMetrics()).containsEntry("parallelComputations", 1L);
+        assertThat(ids(actual)).containsExactly(ids(expected).toArray(new Integer[0]));
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(actual.getMutualFriendCount(i)).isEqualTo(friendGraph.countMutualFriends(1, actual.getUserId(i)));
+        }
+    }
+
+    private void load(int[][] edges) {
+        Map<Integer, List<Integer>> lists = new HashMap<>();
+        for (int[] edge : edges) {
+            lists.computeIfAbsent(edge[0], id -> new ArrayList<>()).add(edge[1]);
+            lists.computeIfAbsent(edge[1], id -> new ArrayList<>()).add(edge[0]);
+        }
+        Map<Integer, int[]> adjacency = new ConcurrentHashMap<>();
+        lists.forEach((userId, friends) -> adjacency.put(userId,
+            friends.stream().mapToInt(Integer::intValue).distinct().sorted().toArray()));
+        ReflectionTestUtils.setField(friendGraph, "adjacency", adjacency);
+    }
+
+    private FriendSuggestions suggestions(int parallelThreshold) {
+        FriendSuggestions suggestions = new FriendSuggestions();
+        ReflectionTestUtils.setField(suggestions, "friendGraph", friendGraph);
+        ReflectionTestUtils.setField(suggestions, "maxRanked", 50);
+        ReflectionTestUtils.setField(suggestions, "parallelThreshold", parallelThreshold);
+        ReflectionTestUtils.setField(suggestions, "parallelism", 4);
+        ReflectionTestUtils.setField(suggestions, "cacheSize", 100);
+        ReflectionTestUtils.setField(suggestions, "ttlMillis", 60_000L);
+        suggestions.afterPropertiesSet();
+        created.add(suggestions);
+        return suggestions;
+    }
+
+    private static List<Integer> ids(FriendSuggestions.Ranking ranking) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < ranking.size(); i++) {
+            ids.add(ranking.getUserId(i));
+        }
+        return ids;
+    }
+}
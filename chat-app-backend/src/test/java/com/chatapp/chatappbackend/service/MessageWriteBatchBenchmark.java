@@ -0,0 +1,153 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.MessageDTO;
+import com.chatapp.chatappbackend.model.User;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares one commit per message (max-batch-size 1) with group commit: several threads send
+ * messages to a number of conversations through MessageWriteBatcher and wait for every future.
+ * There is no database; JDBC calls do nothing and each commit busy-waits for the given time,
+ * standing in for the log flush that dominates a real commit. The results show how much the
+ * pipeline saves for a given commit cost, not what MySQL will do. Not a unit test; run it by hand, e.g.
+ * java -cp target/test-classes:target/classes:&lt;classpath&gt; com.chatapp.chatappbackend.service.MessageWriteBatchBenchmark [messages] [threads] [commit-micros]
+ */
+public class MessageWriteBatchBenchmark {
+
+    private static final int CONVERSATIONS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        long commitMicros = args.length > 2 ? Long.parseLong(args[2]) : 500;
+
+        System.out.printf("%d messages from %d threads to %d conversations, %d us per commit%n",
+            messages, threads, CONVERSATIONS, commitMicros);
+        for (int round = 1; round <= 3; round++) {
+            run("per-message  #" + round, 1, messages, threads, commitMicros);
+            run("group commit #" + round, 64, messages, threads, commitMicros);
+        }
+    }
+
+    private static void run(String name, int maxBatchSize, int messages, int threads, long commitMicros)
+            throws Exception {
+        AtomicLong commits = new AtomicLong();
+        MessageWriteBatcher batcher = batcher(maxBatchSize, commitMicros, commits);
+
+        long start = System.nanoTime();
+        List<Thread> senders = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int sender = t;
+            Thread thread = new Thread(() -> {
+                List<CompletableFuture<MessageDTO>> futures = new ArrayList<>();
+                for (int i = sender; i < messages; i += threads) {
+                    futures.add(batcher.submitToConversation(i % CONVERSATIONS + 1, sender + 1, "message " + i));
+                }
+                try {
+                    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+                } catch (RuntimeException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            senders.add(thread);
+            thread.start();
+        }
+        for (Thread thread : senders) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - start;
+        batcher.destroy();
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException(name + " failed", failures.get(0));
+        }
+        System.out.printf("%s: %6d ms, %,10.0f messages/s, %6d commits%n", name,
+            nanos / 1_000_000, messages / (nanos / 1e9), commits.get());
+    }
+
+    private static MessageWriteBatcher batcher(int maxBatchSize, long commitMicros, AtomicLong commits) {
+        ConversationService conversationService = mock(ConversationService.class);
+        AtomicLong sequences = new AtomicLong();
+        when(conversationService.allocateSequences(anyInt(), anyInt()))
+            .thenAnswer(invocation -> sequences.getAndAdd(invocation.<Integer>getArgument(1)) + 1);
+
+        UserProfileCache userProfileCache = mock(UserProfileCache.class);
+        when(userProfileCache.findById(anyInt())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            user.setUsername("user" + user.getId());
+            return Optional.of(user);
+        });
+
+        ConversationParticipants participants = mock(ConversationParticipants.class);
+        when(participants.getOtherParticipant(anyInt(), anyInt())).thenReturn(0);
+
+        MessageWriteBatcher batcher = new MessageWriteBatcher();
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", maxBatchSize);
+        ReflectionTestUtils.setField(batcher, "maxDelayMillis", 5L);
+        ReflectionTestUtils.setField(batcher, "queueCapacity", 100000);
+        ReflectionTestUtils.setField(batcher, "completionThreads", 2);
+        ReflectionTestUtils.setField(batcher, "conversationService", conversationService);
+        ReflectionTestUtils.setField(batcher, "userProfileCache", userProfileCache);
+        ReflectionTestUtils.setField(batcher, "jdbcTemplate", mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(batcher, "transactionManager", new FixedCostTransactionManager(commitMicros, commits));
+        ReflectionTestUtils.setField(batcher, "recentMessageCache", mock(RecentMessageCache.class));
+        ReflectionTestUtils.setField(batcher, "unreadCounterService", mock(UnreadCounterService.class));
+        ReflectionTestUtils.setField(batcher, "messageOutbox", mock(MessageOutbox.class));
+        ReflectionTestUtils.setField(batcher, "changeLog", mock(ChangeLog.class));
+        ReflectionTestUtils.setField(batcher, "conversationParticipants", participants);
+        batcher.afterPropertiesSet();
+        return batcher;
+    }
+
+    /**
+     * Commits take a fixed time (spinning, as sleeps are too coarse) and are counted; nothing else happens
+     */
+    private static final class FixedCostTransactionManager implements PlatformTransactionManager {
+        private final long commitNanos;
+        private final AtomicLong commits;
+
+        FixedCostTransactionManager(long commitMicros, AtomicLong commits) {
+            this.commitNanos = TimeUnit.MICROSECONDS.toNanos(commitMicros);
+            this.commits = commits;
+        }
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            long end = System.nanoTime() + commitNanos;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            commits.incrementAndGet();
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
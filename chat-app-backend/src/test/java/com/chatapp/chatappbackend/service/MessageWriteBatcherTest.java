@@ -0,0 +1,115 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.MessageDTO;
+import com.chatapp.chatappbackend.model.Message;
+import com.chatapp.chatappbackend.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A message the database rejects fails its own send, not the others batched with it
+ */
+class MessageWriteBatcherTest {
+
+    private MessageWriteBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        ConversationService conversationService = mock(ConversationService.class);
+        AtomicLong sequences = new AtomicLong();
+        when(conversationService.allocateSequences(anyInt(), anyInt()))
+            .thenAnswer(invocation -> sequences.getAndAdd(invocation.<Integer>getArgument(1)) + 1);
+
+        UserProfileCache userProfileCache = mock(UserProfileCache.class);
+        when(userProfileCache.findById(anyInt())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            user.setUsername("user" + user.getId());
+            return Optional.of(user);
+        });
+
+        ConversationParticipants participants = mock(ConversationParticipants.class);
+        when(participants.getOtherParticipant(anyInt(), anyInt())).thenReturn(2);
+
+        // Any insert holding the poisoned row fails, as a constraint violation would
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO messages"), anyList())).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            for (Object[] row : rows) {
+                if ("poison".equals(row[4])) {
+                    throw new DataIntegrityViolationException("rejected");
+                }
+            }
+            return new int[rows.size()];
+        });
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        batcher = new MessageWriteBatcher();
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", 64);
+        // Long enough for the three sends below to land in one batch
+        ReflectionTestUtils.setField(batcher, "maxDelayMillis", 200L);
+        ReflectionTestUtils.setField(batcher, "queueCapacity", 100);
+        ReflectionTestUtils.setField(batcher, "completionThreads", 1);
+        ReflectionTestUtils.setField(batcher, "conversationService", conversationService);
+        ReflectionTestUtils.setField(batcher, "userProfileCache", userProfileCache);
+        ReflectionTestUtils.setField(batcher, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(batcher, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(batcher, "recentMessageCache", mock(RecentMessageCache.class));
+        ReflectionTestUtils.setField(batcher, "unreadCounterService", mock(UnreadCounterService.class));
+        ReflectionTestUtils.setField(batcher, "messageOutbox", mock(MessageOutbox.class));
+        ReflectionTestUtils.setField(batcher, "changeLog", mock(ChangeLog.class));
+        ReflectionTestUtils.setField(batcher, "conversationParticipants", participants);
+        batcher.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        batcher.destroy();
+    }
+
+    @Test
+    void failsOnlyTheMessageTheDatabaseRejects() throws Exception {
+        CompletableFuture<MessageDTO> first = batcher.submitToConversation(1, 1, "first");
+        CompletableFuture<MessageDTO> poison = batcher.submitToConversation(2, 3, "poison");
+        CompletableFuture<MessageDTO> last = batcher.submitToConversation(1, 1, "last");
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getContent()).isEqualTo("first");
+        assertThat(last.get(5, TimeUnit.SECONDS).getContent()).isEqualTo("last");
+        assertThatThrownBy(() -> poison.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void rejectsContentLongerThanTheColumnBeforeBatching() {
+        CompletableFuture<MessageDTO> tooLong = batcher.submitToConversation(1, 1, "x".repeat(Message.MAX_CONTENT_LENGTH + 1));
+
+        assertThat(tooLong).isCompletedExceptionally();
+        assertThatThrownBy(tooLong::join).hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,84 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.cluster.ClusterFanout;
+import com.chatapp.chatappbackend.dto.MessageDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * A seed read before a change committed, here or on another node, must not bring the pre-change
+ * state back into the cache
+ */
+class RecentMessageCacheTest {
+
+    private final ClusterFanout clusterFanout = mock(ClusterFanout.class);
+    private RecentMessageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new RecentMessageCache();
+        ReflectionTestUtils.setField(cache, "capacity", 16);
+        ReflectionTestUtils.setField(cache, "maxConversations", 10);
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "clusterFanout", clusterFanout);
+        cache.afterPropertiesSet();
+    }
+
+    @Test
+    void seedFromBeforeAChangeIsDropped() {
+        long version = cache.getVersion(7);
+        List<MessageDTO> loaded = messages(5);
+        // Deleted after the read, before the seed; the conversation was not cached yet
+        cache.markDeleted(7, 5L);
+        cache.seedLatest(7, loaded, true, version);
+
+        assertThat(cache.getLatest(7, 10)).isNull();
+        assertThat(cache.getMetrics()).containsEntry("staleSeeds", 1L);
+    }
+
+    @Test
+    void seedWithCurrentVersionIsServedAndLaterChangesApply() {
+        cache.seedLatest(7, messages(5), true, cache.getVersion(7));
+        cache.markDeleted(7, 5L);
+
+        assertThat(cache.getLatest(7, 10)).extracting(MessageDTO::getSequence).containsExactly(4L, 3L, 2L, 1L);
+    }
+
+    @Test
+    void changesOnAnotherNodeDropTheTailAndInFlightSeeds() {
+        cache.seedLatest(7, messages(5), true, cache.getVersion(7));
+        verify(clusterFanout, never()).messagesChanged(any());
+        cache.markDeleted(7, 5L);
+        verify(clusterFanout).messagesChanged(List.of(7));
+
+        long version = cache.getVersion(8);
+        cache.invalidateChangedElsewhere(List.of(7, 8));
+        cache.seedLatest(8, messages(3), true, version);
+
+        assertThat(cache.getLatest(7, 10)).isNull();
+        assertThat(cache.getLatest(8, 10)).isNull();
+        assertThat(cache.getMetrics()).containsEntry("remoteInvalidations", 2L).containsEntry("staleSeeds", 1L);
+    }
+
+    private static List<MessageDTO> messages(int count) {
+        List<MessageDTO> newestFirst = new ArrayList<>();
+        for (long sequence = count; sequence >= 1; sequence--) {
+            MessageDTO message = new MessageDTO();
+            message.setId(100 + sequence);
+            message.setConversationId(7);
+            message.setSequence(sequence);
+            newestFirst.add(message);
+        }
+        return newestFirst;
+    }
+}
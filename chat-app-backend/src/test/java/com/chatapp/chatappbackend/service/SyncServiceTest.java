@@ -0,0 +1,108 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.ConversationDTO;
+import com.chatapp.chatappbackend.dto.SyncConversationDTO;
+import com.chatapp.chatappbackend.dto.SyncResponseDTO;
+import com.chatapp.chatappbackend.model.ChangeLogEntry;
+import com.chatapp.chatappbackend.model.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Change log entries fold into per-conversation changes, with the message list capped
+ */
+class SyncServiceTest {
+
+    private ChangeLog changeLog;
+    private ConversationService conversationService;
+    private MessageService messageService;
+    private SyncService syncService;
+
+    @BeforeEach
+    void setUp() {
+        changeLog = mock(ChangeLog.class);
+        conversationService = mock(ConversationService.class);
+        messageService = mock(MessageService.class);
+        syncService = new SyncService();
+        ReflectionTestUtils.setField(syncService, "changeLog", changeLog);
+        ReflectionTestUtils.setField(syncService, "conversationService", conversationService);
+        ReflectionTestUtils.setField(syncService, "messageService", messageService);
+        ReflectionTestUtils.setField(syncService, "maxChanges", 100);
+        ReflectionTestUtils.setField(syncService, "maxMessagesPerConversation", 2);
+    }
+
+    @Test
+    void foldsEntriesIntoConversationChanges() {
+        List<ChangeLogEntry> entries = new ArrayList<>();
+        entries.add(entry(11, ChangeType.MESSAGE_CREATED, 7, 101L, 1, 1L));
+        entries.add(entry(12, ChangeType.MESSAGE_CREATED, 7, 102L, 1, 2L));
+        entries.add(entry(13, ChangeType.MESSAGE_CREATED, 7, 103L, 2, 3L));
+        entries.add(entry(14, ChangeType.READ_MARK_MOVED, 7, null, 2, 2L));
+        entries.add(entry(15, ChangeType.READ_MARK_MOVED, 7, null, 2, 1L));
+        entries.add(entry(16, ChangeType.MESSAGE_DELIVERED, 7, 101L, 2, 1L));
+        entries.add(entry(17, ChangeType.MESSAGE_DELETED, 7, 102L, 1, 2L));
+        when(changeLog.getOldestPosition()).thenReturn(5L);
+        when(changeLog.readForUser(1, 10L, 100)).thenReturn(new ChangeLog.Page(entries, 16L, false));
+        when(conversationService.getConversationsForUser(eq(1), anyCollection())).thenReturn(List.of(conversation(7)));
+        when(messageService.getMessagesBySequences(eq(7), any())).thenReturn(new ArrayList<>());
+
+        SyncResponseDTO response = syncService.sync(1, "10");
+
+        assertThat(response.isFullResync()).isFalse();
+        assertThat(response.getSyncToken()).isEqualTo("16");
+        assertThat(response.getConversations()).hasSize(1);
+        SyncConversationDTO synced = response.getConversations().get(0);
+        assertThat(synced.isMessagesTruncated()).isTrue();
+        assertThat(synced.getReadMarks()).containsEntry(2, 2L);
+        assertThat(synced.getDeliveredMessageIds()).containsExactly(101L);
+        assertThat(synced.getDeletedMessageIds()).containsExactly(102L);
+        // Only the newest messages are loaded
+        verify(messageService).getMessagesBySequences(7, List.of(2L, 3L));
+    }
+
+    @Test
+    void fallsBackToFullResyncWhenTheTokenWasPruned() {
+        when(changeLog.getOldestPosition()).thenReturn(500L);
+        when(changeLog.getSettledPosition()).thenReturn(900L);
+        when(conversationService.getConversationsForUser(1)).thenReturn(List.of(conversation(7), conversation(8)));
+
+        SyncResponseDTO response = syncService.sync(1, "10");
+
+        assertThat(response.isFullResync()).isTrue();
+        assertThat(response.getSyncToken()).isEqualTo("900");
+        assertThat(response.getConversations()).extracting(synced -> synced.getConversation().getId())
+            .containsExactly(7, 8);
+        assertThatThrownBy(() -> syncService.sync(1, "abc")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ChangeLogEntry entry(long id, ChangeType type, int conversationId, Long messageId,
+                                        int userId, Long sequence) {
+        ChangeLogEntry entry = new ChangeLogEntry();
+        entry.setId(id);
+        entry.setChangeType(type);
+        entry.setConversationId(conversationId);
+        entry.setMessageId(messageId);
+        entry.setUserId(userId);
+        entry.setSequence(sequence);
+        return entry;
+    }
+
+    private static ConversationDTO conversation(int id) {
+        ConversationDTO conversation = new ConversationDTO();
+        conversation.setId(id);
+        return conversation;
+    }
+}
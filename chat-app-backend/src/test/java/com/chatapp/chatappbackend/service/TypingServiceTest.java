@@ -0,0 +1,81 @@
+package com.chatapp.chatappbackend.service;
+
+import com.chatapp.chatappbackend.dto.TypingEventDTO;
+import com.chatapp.chatappbackend.websocket.FrameSender;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Keystrokes collapse into state changes, and a typist who goes quiet is reported as stopped
+ */
+class TypingServiceTest {
+
+    private static final String TOPIC = "/topic/conversation.7.typing";
+
+    private FrameSender frameSender;
+    private TypingService typingService;
+
+    @BeforeEach
+    void setUp() {
+        frameSender = mock(FrameSender.class);
+        typingService = new TypingService();
+        ReflectionTestUtils.setField(typingService, "frameSender", frameSender);
+        ReflectionTestUtils.setField(typingService, "ttlMillis", 300L);
+        ReflectionTestUtils.setField(typingService, "refreshIntervalMillis", 60_000L);
+        ReflectionTestUtils.setField(typingService, "tickMillis", 10L);
+        typingService.afterPropertiesSet();
+    }
+
+    @Test
+    void broadcastsOnlyStateChanges() {
+        for (int i = 0; i < 50; i++) {
+            typingService.update(7, 1, true);
+        }
+        typingService.update(7, 1, false);
+        typingService.update(7, 1, false);
+
+        List<TypingEventDTO> events = captureEvents(2);
+        assertThat(events).extracting(TypingEventDTO::isTyping).containsExactly(true, false);
+        assertThat(typingService.getMetrics()).containsEntry("updates", 52L).containsEntry("broadcasts", 2L);
+        typingService.destroy();
+    }
+
+    @Test
+    void reportsStoppedWhenTheTtlLapses() {
+        typingService.update(7, 1, true);
+        typingService.update(7, 1, true);
+
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(frameSender, timeout(2000).times(2)).encodeAndSend(payloads.capture(), eq(TOPIC));
+        assertThat(payloads.getAllValues()).extracting(payload -> ((TypingEventDTO) payload).isTyping())
+            .containsExactly(true, false);
+        assertThat(typingService.isTyping(7, 1)).isFalse();
+        assertThat(typingService.getMetrics()).containsEntry("expired", 1L);
+        typingService.destroy();
+    }
+
+    @Test
+    void keepsTheClientFieldName() throws Exception {
+        String json = new ObjectMapper().writeValueAsString(new TypingEventDTO(1, true, 5L));
+        assertThat(json).isEqualTo("{\"userId\":1,\"timestamp\":5,\"isTyping\":true}");
+        typingService.destroy();
+    }
+
+    private List<TypingEventDTO> captureEvents(int count) {
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(frameSender, times(count)).encodeAndSend(payloads.capture(), eq(TOPIC));
+        return payloads.getAllValues().stream().map(TypingEventDTO.class::cast).toList();
+    }
+}
@@ -0,0 +1,108 @@
+package com.chatapp.chatappbackend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Searches find names by prefix and substring in relevance order, page with a cursor and follow updates
+ */
+class UserSearchIndexTest {
+
+    private final List<Object[]> stored = new ArrayList<>();
+    private UserSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object[] row : stored) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getInt("id")).thenReturn((Integer) row[0]);
+                when(rs.getString("username")).thenReturn((String) row[1]);
+                when(rs.getString("display_name")).thenReturn((String) row[2]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        index = new UserSearchIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbcTemplate);
+
+        stored.add(new Object[] { 1, "alice", "Alice Smith" });
+        stored.add(new Object[] { 2, "malik", "Malik Ali" });
+        stored.add(new Object[] { 3, "alicia_k", null });
+        stored.add(new Object[] { 4, "bob", "Bob Alinsky" });
+        stored.add(new Object[] { 5, "carol", "Carol" });
+        stored.add(new Object[] { 6, "ali", null });
+    }
+
+    @Test
+    void ordersMatchesByRelevance() {
+        assertThatThrownBy(() -> index.search("ali", null, null, 10)).isInstanceOf(IllegalStateException.class);
+        index.run();
+
+        // Exact, username prefixes (shorter first), display name word prefixes, then other substrings
+        assertThat(index.search("ALI", null, null, 10).getUserIds()).containsExactly(6, 1, 3, 2, 4);
+        assertThat(index.search("ali", 6, null, 10).getUserIds()).containsExactly(1, 3, 2, 4);
+        assertThat(index.search("lic", null, null, 10).getUserIds()).containsExactly(1, 3);
+        assertThat(index.search("ith", null, null, 10).getUserIds()).containsExactly(1);
+        assertThat(index.search("al", null, null, 10).getUserIds()).containsExactly(6, 1, 3, 2, 4);
+        assertThat(index.search("s", null, null, 10).getUserIds()).containsExactly(1);
+        assertThat(index.search("xyz", null, null, 10).getUserIds()).isEmpty();
+    }
+
+    @Test
+    void pagesWithCursor() {
+        index.run();
+
+        List<Integer> seen = new ArrayList<>();
+        Long after = null;
+        int pages = 0;
+        do {
+            UserSearchIndex.Result result = index.search("ali", null, after, 2);
+            for (int userId : result.getUserIds()) {
+                seen.add(userId);
+            }
+            after = result.getNextPosition() != null
+                ? UserSearchIndex.decodeCursor(UserSearchIndex.encodeCursor(result.getNextPosition())) : null;
+            pages++;
+        } while (after != null);
+
+        assertThat(seen).containsExactly(6, 1, 3, 2, 4);
+        assertThat(pages).isEqualTo(3);
+        assertThatThrownBy(() -> UserSearchIndex.decodeCursor("not-a-cursor")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void followsRegistrationsAndRenames() {
+        index.run();
+
+        index.put(7, "alina", null);
+        index.put(1, "alice", "Wonderland");
+        assertThat(index.search("ali", null, null, 10).getUserIds()).containsExactly(6, 1, 7, 3, 2, 4);
+        assertThat(index.search("smith", null, null, 10).getUserIds()).isEmpty();
+        assertThat(index.search("wonder", null, null, 10).getUserIds()).containsExactly(1);
+
+        // A reload keeps what is in the table
+        stored.add(new Object[] { 7, "alina", null });
+        stored.set(0, new Object[] { 1, "alice", "Wonderland" });
+        index.reload();
+        assertThat(index.search("won", null, null, 10).getUserIds()).containsExactly(1);
+        assertThat(index.getMetrics()).containsEntry("users", 7);
+    }
+}
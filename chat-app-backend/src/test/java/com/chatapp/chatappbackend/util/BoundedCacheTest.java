@@ -0,0 +1,54 @@
+package com.chatapp.chatappbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Frequently read entries survive a scan of one-off keys, and invalidation beats a racing load
+ */
+class BoundedCacheTest {
+
+    @Test
+    void hotEntriesSurviveAScan() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 60_000, 1);
+        AtomicInteger loads = new AtomicInteger();
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 10; key++) {
+                cache.get(key, k -> { loads.incrementAndGet(); return "user" + k; });
+            }
+        }
+        assertThat(loads.get()).isEqualTo(10);
+
+        // Each scanned key is seen once, less often than any resident entry, so none is admitted
+        for (int key = 1000; key < 1100; key++) {
+            cache.get(key, k -> "user" + k);
+        }
+        for (int key = 0; key < 10; key++) {
+            cache.get(key, k -> { loads.incrementAndGet(); return "user" + k; });
+        }
+        assertThat(loads.get()).isEqualTo(10);
+        assertThat(cache.getMetrics()).containsEntry("rejections", 100L).containsEntry("size", 10);
+    }
+
+    @Test
+    void expiresAndInvalidates() throws InterruptedException {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 50, 2);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(1, k -> "v" + loads.incrementAndGet());
+        assertThat(cache.get(1, k -> "v" + loads.incrementAndGet())).isEqualTo("v1");
+
+        Thread.sleep(80);
+        assertThat(cache.get(1, k -> "v" + loads.incrementAndGet())).isEqualTo("v2");
+
+        // A load that overlaps an invalidation returns what it read but does not cache it
+        assertThat(cache.get(2, k -> { cache.invalidate(2); return "stale"; })).isEqualTo("stale");
+        assertThat(cache.get(2, k -> "fresh")).isEqualTo("fresh");
+        cache.invalidate(1);
+        assertThat(cache.get(1, k -> "v" + loads.incrementAndGet())).isEqualTo("v3");
+        assertThat(cache.get(7, k -> null)).isNull();
+        assertThat(cache.getMetrics()).containsEntry("expirations", 1L);
+    }
+}
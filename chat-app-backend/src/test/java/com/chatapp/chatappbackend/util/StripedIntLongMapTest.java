@@ -0,0 +1,56 @@
+package com.chatapp.chatappbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The striped map behaves like a map whose zero values are absent, through growth and deletion
+ */
+class StripedIntLongMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomUpdates() {
+        StripedIntLongMap map = new StripedIntLongMap(4);
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000);
+            long delta = random.nextInt(3) - 1;
+            long value = map.addAndGet(key, delta);
+            long next = expected.getOrDefault(key, 0L) + delta;
+            if (next == 0) {
+                expected.remove(key);
+            } else {
+                expected.put(key, next);
+            }
+            assertThat(value).isEqualTo(next);
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (int key = 0; key < 5_000; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.getOrDefault(key, 0L));
+        }
+    }
+
+    @Test
+    void drainRemovesAndReportsEveryEntry() {
+        StripedIntLongMap map = new StripedIntLongMap(8);
+        for (int key = 1; key <= 1_000; key++) {
+            map.updateAndGet(key, value -> Math.max(value, 7));
+        }
+        assertThat(map.getAndUpdate(5, value -> value + 1)).isEqualTo(7);
+
+        Map<Integer, Long> drained = new HashMap<>();
+        map.drain(drained::put);
+
+        assertThat(drained).hasSize(1_000).containsEntry(5, 8L).containsEntry(1_000, 7L);
+        assertThat(map.size()).isZero();
+        assertThat(map.get(5)).isZero();
+    }
+}
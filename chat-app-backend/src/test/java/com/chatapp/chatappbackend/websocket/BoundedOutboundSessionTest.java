@@ -0,0 +1,141 @@
+package com.chatapp.chatappbackend.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * A slow client sheds typing events first, merges the read receipts of each reader per conversation
+ * and is disconnected only when chat frames no longer fit or a write stalls past the time limit
+ */
+class BoundedOutboundSessionTest {
+
+    private final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private OutboundQueueRegistry registry;
+    private WebSocketSession delegate;
+    private BoundedOutboundSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // The socket accepts nothing until released, like a client on a stalled network
+        delegate = mock(WebSocketSession.class);
+        doAnswer(invocation -> {
+            firstWriteStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(delegate).sendMessage(any());
+        registry = new OutboundQueueRegistry();
+        ReflectionTestUtils.setField(registry, "drainThreads", 2);
+        ReflectionTestUtils.setField(registry, "stallCheckIntervalMillis", 60_000L);
+        registry.afterPropertiesSet();
+        session = new BoundedOutboundSession(delegate, registry, 4, 1 << 20, 60_000);
+
+        session.sendMessage(frame("/topic/conversation.1", "first"));
+        assertThat(firstWriteStarted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void dropsTypingEventsFirst() throws Exception {
+        session.sendMessage(frame("/topic/conversation.1.typing", "typing"));
+        session.sendMessage(frame("/topic/conversation.1.typing", "typing"));
+        session.sendMessage(frame("/topic/conversation.1", "chat"));
+        session.sendMessage(frame("/topic/conversation.1", "chat"));
+        assertThat(session.getQueuedMessages()).isEqualTo(4);
+
+        // Full: a new typing event is dropped, a chat frame evicts a queued typing event
+        session.sendMessage(frame("/topic/conversation.1.typing", "typing"));
+        session.sendMessage(frame("/topic/conversation.1", "chat"));
+
+        assertThat(session.getQueuedMessages()).isEqualTo(4);
+        assertThat(registry.getMetrics()).containsEntry("droppedTyping", 2L).containsEntry("disconnects", 0L);
+    }
+
+    @Test
+    void mergesReadReceiptsPerReaderAndConversation() throws Exception {
+        session.sendMessage(frame("/topic/conversation.1.read", receipt(7, 2, 5)));
+        session.sendMessage(frame("/topic/conversation.1.read", receipt(8, 1, 6)));
+        session.sendMessage(frame("/topic/conversation.2.read", receipt(7, 4, 9)));
+        session.sendMessage(frame("/topic/conversation.1.read", receipt(7, 10, 15)));
+        assertThat(session.getQueuedMessages()).isEqualTo(3);
+        assertThat(registry.getMetrics()).containsEntry("coalescedReceipts", 1L);
+
+        // Reader 8's receipt is untouched; reader 7's carries the newest mark and both counts
+        List<String> written = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> written.add(((TextMessage) invocation.getArgument(0)).getPayload()))
+            .when(delegate).sendMessage(any());
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (written.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(written).hasSize(3);
+        String merged = written.get(2);
+        assertThat(merged).endsWith("\n\n" + receipt(7, 12, 15) + "\u0000");
+        assertThat(merged).contains("\ncontent-length:" + receipt(7, 12, 15).length() + "\n");
+        assertThat(written.get(0)).contains(receipt(8, 1, 6));
+    }
+
+    @Test
+    void disconnectsWhenChatFramesExceedTheCap() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            session.sendMessage(frame("/queue/messages-user" + i, "chat"));
+        }
+
+        assertThatThrownBy(() -> session.sendMessage(frame("/queue/messages-user9", "chat")))
+            .isInstanceOf(SessionLimitExceededException.class);
+        assertThat(session.getQueuedMessages()).isZero();
+        assertThat(registry.getMetrics()).containsEntry("disconnects", 1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        registry.destroy();
+    }
+
+    @Test
+    void closesSessionsWhoseWriteStalls() throws Exception {
+        session.sendMessage(frame("/topic/conversation.1", "chat"));
+
+        assertThat(session.closeIfStalled(System.currentTimeMillis())).isFalse();
+        assertThat(session.closeIfStalled(System.currentTimeMillis() + 61_000)).isTrue();
+        verify(delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(session.getQueuedMessages()).isZero();
+        assertThat(registry.getMetrics()).containsEntry("disconnects", 1L);
+    }
+
+    @Test
+    void readsTheDestinationFromTheStompHeaders() {
+        assertThat(BoundedOutboundSession.destinationOf(frame("/topic/conversation.3.typing", "x")))
+            .isEqualTo("/topic/conversation.3.typing");
+        assertThat(BoundedOutboundSession.destinationOf(new TextMessage("CONNECTED\nversion:1.2\n\n\u0000"))).isNull();
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\ncontent-type:application/json\n" +
+            "subscription:sub-0\nmessage-id:1\ncontent-length:" + body.length() + "\n\n" + body + "\u0000");
+    }
+
+    // Shaped like MessageService.advanceReadMark's receipts
+    private static String receipt(int userId, int count, long sequence) {
+        return "{\"userId\":" + userId + ",\"count\":" + count + ",\"sequence\":" + sequence + ",\"timestamp\":1}";
+    }
+}
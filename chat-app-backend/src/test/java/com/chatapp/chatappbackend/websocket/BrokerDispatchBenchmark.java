@@ -0,0 +1,119 @@
+package com.chatapp.chatappbackend.websocket;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the sharded broker with Spring's SimpleBrokerMessageHandler: subscribes a number of
+ * two-member conversations, then publishes from several threads and times until every frame has
+ * reached the outbound channel. Not a unit test; run it by hand, e.g.
+ * java -cp target/test-classes:target/classes:&lt;classpath&gt; com.chatapp.chatappbackend.websocket.BrokerDispatchBenchmark [conversations] [messages] [threads]
+ */
+public class BrokerDispatchBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int conversations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int lanes = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%d conversations (%d subscriptions), %d messages from %d threads, %d lanes%n",
+            conversations, conversations * 2, messages, threads, lanes);
+        for (int round = 1; round <= 3; round++) {
+            run("simple  #" + round, conversations, messages, threads, (inbound, outbound, broker) ->
+                new SimpleBrokerMessageHandler(inbound, outbound, broker, List.of("/topic", "/queue")));
+            run("sharded #" + round, conversations, messages, threads, (inbound, outbound, broker) ->
+                new ShardedBrokerMessageHandler(inbound, outbound, broker, List.of("/topic", "/queue"), lanes, messages, 100));
+        }
+    }
+
+    private static void run(String name, int conversations, int messages, int threads, BrokerFactory factory)
+            throws InterruptedException {
+        AtomicLong delivered = new AtomicLong();
+        MessageChannel outbound = (message, timeout) -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                delivered.incrementAndGet();
+            }
+            return true;
+        };
+        AbstractBrokerMessageHandler broker = factory.create(
+            new ExecutorSubscribableChannel(), outbound, new ExecutorSubscribableChannel());
+        broker.start();
+
+        long subscribeStart = System.nanoTime();
+        for (int conversation = 0; conversation < conversations; conversation++) {
+            for (String sessionId : new String[] { "a" + conversation, "b" + conversation }) {
+                // The simple broker only delivers to sessions it saw connect
+                broker.handleMessage(connect(sessionId));
+                broker.handleMessage(subscribe(sessionId, "/topic/conversation." + conversation));
+            }
+        }
+        long subscribeNanos = System.nanoTime() - subscribeStart;
+
+        // Frames are built up front so only dispatch is timed
+        List<List<Message<byte[]>>> frames = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<Message<byte[]>> batch = new ArrayList<>(messages / threads);
+            for (int i = t; i < messages; i += threads) {
+                batch.add(publish("/topic/conversation." + (i % conversations)));
+            }
+            frames.add(batch);
+        }
+
+        long expected = (long) (messages / threads) * threads * 2;
+        long start = System.nanoTime();
+        List<Thread> publishers = new ArrayList<>();
+        for (List<Message<byte[]>> batch : frames) {
+            Thread publisher = new Thread(() -> batch.forEach(broker::handleMessage));
+            publishers.add(publisher);
+            publisher.start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        // Sleep rather than spin, so the lanes are not starved on small machines
+        while (delivered.get() < expected) {
+            Thread.sleep(1);
+        }
+        long dispatchNanos = System.nanoTime() - start;
+        broker.stop();
+
+        System.out.printf("%s: subscribe %6d ms, dispatch %6d ms, %,10.0f deliveries/s%n", name,
+            subscribeNanos / 1_000_000, dispatchNanos / 1_000_000, expected / (dispatchNanos / 1e9));
+    }
+
+    private static Message<byte[]> connect(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> publish(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[64], accessor.getMessageHeaders());
+    }
+
+    private interface BrokerFactory {
+        AbstractBrokerMessageHandler create(ExecutorSubscribableChannel inbound, MessageChannel outbound,
+                                            ExecutorSubscribableChannel broker);
+    }
+}
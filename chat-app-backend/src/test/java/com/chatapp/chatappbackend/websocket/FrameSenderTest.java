@@ -0,0 +1,53 @@
+package com.chatapp.chatappbackend.websocket;
+
+import com.chatapp.chatappbackend.cluster.ClusterFanout;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * A frame sent to several destinations is encoded once and every send carries the same bytes
+ */
+class FrameSenderTest {
+
+    private SimpMessagingTemplate messagingTemplate;
+    private FrameSender frameSender;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        frameSender = new FrameSender();
+        ReflectionTestUtils.setField(frameSender, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(frameSender, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(frameSender, "clusterFanout", new ClusterFanout());
+        ReflectionTestUtils.setField(frameSender, "replayBuffer", new ReplayBuffer());
+    }
+
+    @Test
+    void encodesOncePerEvent() {
+        frameSender.encodeAndSend(Map.of("userId", 1, "isTyping", true),
+            "/topic/conversation.1.typing", "/user/1/queue/typing", "/user/2/queue/typing");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate, times(3)).send(anyString(), sent.capture());
+        Object payload = sent.getAllValues().get(0).getPayload();
+        assertThat(sent.getAllValues()).allSatisfy(message -> assertThat(message.getPayload()).isSameAs(payload));
+        assertThat(frameSender.getMetrics())
+            .containsEntry("encodes", 1L)
+            .containsEntry("deliveries", 3L)
+            .containsEntry("deliveriesPerEncode", 3.0);
+    }
+}
@@ -0,0 +1,194 @@
+package com.chatapp.chatappbackend.websocket;
+
+import com.chatapp.chatappbackend.cluster.ClusterFanout;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Frames to a user's queues are numbered in order, and a reconnect gets exactly the ones after its
+ * last sequence, or a gap marker once the buffer no longer reaches back that far; live frames wait
+ * for the replay, and nothing reaches a session twice
+ */
+class ReplayBufferTest {
+
+    private SimpMessagingTemplate messagingTemplate;
+    private MessageChannel clientOutboundChannel;
+    private ReplayBuffer replayBuffer;
+    private FrameSender frameSender;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        clientOutboundChannel = mock(MessageChannel.class);
+        replayBuffer = new ReplayBuffer();
+        ReflectionTestUtils.setField(replayBuffer, "maxFrames", 3);
+        ReflectionTestUtils.setField(replayBuffer, "maxBytes", 1 << 20);
+        ReflectionTestUtils.setField(replayBuffer, "retentionMillis", 60_000L);
+        ReflectionTestUtils.setField(replayBuffer, "replayedQueues", Set.of("/queue/messages"));
+        ReflectionTestUtils.setField(replayBuffer, "clientOutboundChannel", clientOutboundChannel);
+        frameSender = new FrameSender();
+        ReflectionTestUtils.setField(frameSender, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(frameSender, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(frameSender, "clusterFanout", new ClusterFanout());
+        ReflectionTestUtils.setField(frameSender, "replayBuffer", replayBuffer);
+    }
+
+    @Test
+    void numbersFramesPerUserAndReplaysOnlyTheMissedOnes() {
+        List<Long> sequences = List.of(
+            sendMessage(1), sendMessage(2), sendMessage(3));
+        assertThat(sequences.get(1)).isEqualTo(sequences.get(0) + 1);
+        assertThat(sequences.get(2)).isEqualTo(sequences.get(1) + 1);
+
+        replayBuffer.replay(7, "/queue/messages", sequences.get(0), "s1", "sub-0", "/user/queue/messages");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<?>> replayed = ArgumentCaptor.forClass(Message.class);
+        verify(clientOutboundChannel, times(2)).send(replayed.capture());
+        assertThat(replayed.getAllValues()).extracting(ReplayBufferTest::sequenceOf)
+            .containsExactly(sequences.get(1), sequences.get(2));
+        assertThat(replayed.getAllValues()).allSatisfy(message -> {
+            assertThat(SimpMessageHeaderAccessor.getSessionId(message.getHeaders())).isEqualTo("s1");
+            assertThat(SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders())).isEqualTo("sub-0");
+        });
+        assertThat(body(replayed.getAllValues().get(0))).contains("\"n\":2");
+    }
+
+    @Test
+    void reportsGapOnceFramesWereEvicted() {
+        long first = sendMessage(1);
+        sendMessage(2);
+        sendMessage(3);
+        sendMessage(4);
+
+        replayBuffer.replay(7, "/queue/messages", first - 1, "s1", "sub-0", "/user/queue/messages");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<?>> replayed = ArgumentCaptor.forClass(Message.class);
+        verify(clientOutboundChannel).send(replayed.capture());
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(replayed.getValue());
+        assertThat(accessor.getFirstNativeHeader(ReplayBuffer.GAP_HEADER)).isEqualTo("true");
+        assertThat(replayBuffer.getMetrics()).containsEntry("gaps", 1L);
+    }
+
+    @Test
+    void leavesOtherQueuesAndUpToDateClientsAlone() {
+        frameSender.sendToUser(7, "/queue/presence", Map.of("online", true));
+        long last = sendMessage(1);
+
+        replayBuffer.replay(7, "/queue/messages", last, "s1", "sub-0", "/user/queue/messages");
+
+        verify(clientOutboundChannel, never()).send(any());
+        verify(messagingTemplate).send(eq("/user/7/queue/presence"), any());
+        assertThat(replayBuffer.getMetrics()).containsEntry("recorded", 1L);
+    }
+
+    @Test
+    void holdsLiveFramesUntilTheSubscriptionIsReplayedAndDropsDuplicates() {
+        long seen = sendMessage(1);
+        long missed = sendMessage(2);
+        ExecutorChannelInterceptor inbound = (ExecutorChannelInterceptor) replayBuffer.subscriptionInterceptor();
+        ChannelInterceptor outbound = replayBuffer.deliveryInterceptor();
+
+        Message<byte[]> subscribe = subscribe("sub-0", seen);
+        inbound.preSend(subscribe, mock(MessageChannel.class));
+        // The broker delivers the missed frame and a new one before the replay has gone out
+        long live = sendMessage(3);
+        assertThat(outbound.preSend(delivered("sub-0", missed), clientOutboundChannel)).isNull();
+        assertThat(outbound.preSend(delivered("sub-0", live), clientOutboundChannel)).isNull();
+
+        inbound.afterMessageHandled(subscribe, mock(MessageChannel.class), mock(UserDestinationMessageHandler.class), null);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(clientOutboundChannel, times(2)).send(sent.capture());
+        assertThat(sent.getAllValues()).extracting(ReplayBufferTest::sequenceOf).containsExactly(missed, live);
+        // Both were recorded before the replay, so it sent them and the held copies were dropped
+        assertThat(replayBuffer.getMetrics()).containsEntry("heldFrames", 2L).containsEntry("duplicates", 2L);
+
+        // Subscribing again replays nothing the session already has, and live frames flow again
+        Message<byte[]> again = subscribe("sub-1", seen);
+        inbound.preSend(again, mock(MessageChannel.class));
+        inbound.afterMessageHandled(again, mock(MessageChannel.class), mock(UserDestinationMessageHandler.class), null);
+        verify(clientOutboundChannel, times(2)).send(any());
+        assertThat(outbound.preSend(delivered("sub-0", live), clientOutboundChannel)).isNull();
+        assertThat(outbound.preSend(delivered("sub-0", live + 1), clientOutboundChannel)).isNotNull();
+    }
+
+    @Test
+    void parsesBothSubscriptionForms() {
+        assertThat(ReplayBuffer.queueOf("/user/queue/messages", 7)).isEqualTo("/queue/messages");
+        assertThat(ReplayBuffer.queueOf("/user/7/queue/messages", 7)).isEqualTo("/queue/messages");
+        assertThat(ReplayBuffer.queueOf("/user/8/queue/messages", 7)).isNull();
+        assertThat(ReplayBuffer.queueOf("/topic/conversation.1", 7)).isNull();
+    }
+
+    // Sends one chat frame to user 7 and returns the sequence it was given
+    private long sendMessage(int n) {
+        frameSender.sendToUser(7, "/queue/messages", Map.of("n", n));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate, atLeastOnce()).send(anyString(), sent.capture());
+        return sequenceOf(sent.getValue());
+    }
+
+    // A reconnected session s1 of user 7 subscribing to its message queue
+    private static Message<byte[]> subscribe(String subscriptionId, long lastSequence) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setUser(new UserPrincipal(7));
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ReplayBuffer.LAST_SEQUENCE_ATTRIBUTE, lastSequence);
+        accessor.setSessionAttributes(attributes);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    // A frame the broker sends to session s1
+    private static Message<byte[]> delivered(String subscriptionId, long sequence) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination("/user/queue/messages");
+        accessor.setNativeHeader(ReplayBuffer.SEQUENCE_HEADER, Long.toString(sequence));
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static long sequenceOf(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        return Long.parseLong(accessor.getFirstNativeHeader(ReplayBuffer.SEQUENCE_HEADER));
+    }
+
+    private static String body(Message<?> message) {
+        return new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+    }
+}
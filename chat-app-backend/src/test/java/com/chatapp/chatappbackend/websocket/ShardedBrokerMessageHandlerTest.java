@@ -0,0 +1,211 @@
+package com.chatapp.chatappbackend.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The sharded broker must deliver like the simple broker: to every subscriber of a destination,
+ * in publish order per destination, and never to sessions that unsubscribed or disconnected.
+ * A full lane sheds frames like an outbound session queue.
+ */
+class ShardedBrokerMessageHandlerTest {
+
+    private final Queue<Message<?>> outbound = new ConcurrentLinkedQueue<>();
+    private ShardedBrokerMessageHandler broker;
+
+    @BeforeEach
+    void setUp() {
+        MessageChannel clientOutboundChannel = (message, timeout) -> outbound.add(message);
+        broker = new ShardedBrokerMessageHandler(new ExecutorSubscribableChannel(), clientOutboundChannel,
+            new ExecutorSubscribableChannel(), List.of("/topic", "/queue"), 4, 1000, 100);
+        broker.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.stop();
+    }
+
+    @Test
+    void deliversToEverySubscriberOfTheDestination() throws InterruptedException {
+        broker.handleMessage(subscribe("s1", "sub-1", "/topic/conversation.1"));
+        broker.handleMessage(subscribe("s2", "sub-7", "/topic/conversation.1"));
+        broker.handleMessage(subscribe("s3", "sub-1", "/topic/conversation.2"));
+
+        broker.handleMessage(publish("/topic/conversation.1", "hello"));
+
+        List<Message<?>> received = await(2);
+        assertThat(received).extracting(message -> SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))
+            .containsExactlyInAnyOrder("s1", "s2");
+        assertThat(received).extracting(message -> SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()))
+            .containsExactlyInAnyOrder("sub-1", "sub-7");
+        assertThat(received).extracting(message -> new String((byte[]) message.getPayload())).containsOnly("hello");
+    }
+
+    @Test
+    void preservesOrderPerDestination() throws InterruptedException {
+        broker.handleMessage(subscribe("s1", "sub-1", "/topic/conversation.1"));
+        broker.handleMessage(subscribe("s1", "sub-2", "/queue/messages-users1"));
+
+        for (int i = 0; i < 1000; i++) {
+            broker.handleMessage(publish("/topic/conversation.1", "t" + i));
+            broker.handleMessage(publish("/queue/messages-users1", "q" + i));
+        }
+
+        List<Message<?>> received = await(2000);
+        List<String> topic = new ArrayList<>();
+        List<String> queue = new ArrayList<>();
+        for (Message<?> message : received) {
+            String payload = new String((byte[]) message.getPayload());
+            (payload.startsWith("t") ? topic : queue).add(payload);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(topic.get(i)).isEqualTo("t" + i);
+            assertThat(queue.get(i)).isEqualTo("q" + i);
+        }
+    }
+
+    @Test
+    void preservesOrderAcrossTheQueuesOfASession() throws InterruptedException {
+        broker.handleMessage(subscribe("s1", "sub-1", "/queue/messages-users1"));
+        broker.handleMessage(subscribe("s1", "sub-2", "/queue/delivered-users1"));
+
+        // The two queues share one numbering, as they do in the replay buffer
+        for (int i = 0; i < 1000; i++) {
+            broker.handleMessage(publish(i % 2 == 0 ? "/queue/messages-users1" : "/queue/delivered-users1", "" + i));
+        }
+
+        List<Message<?>> received = await(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(new String((byte[]) received.get(i).getPayload())).isEqualTo("" + i);
+        }
+    }
+
+    @Test
+    void stopsDeliveringAfterUnsubscribeAndDisconnect() throws InterruptedException {
+        broker.handleMessage(subscribe("s1", "sub-1", "/topic/conversation.1"));
+        broker.handleMessage(subscribe("s2", "sub-1", "/topic/conversation.1"));
+        broker.handleMessage(subscribe("s2", "sub-2", "/topic/conversation.1.typing"));
+        broker.handleMessage(unsubscribe("s1", "sub-1"));
+        broker.handleMessage(disconnect("s2"));
+
+        assertThat(broker.getSubscriptionCount()).isZero();
+        // Only the DISCONNECT_ACK is sent
+        assertThat(await(1)).extracting(message -> SimpMessageHeaderAccessor.getMessageType(message.getHeaders()))
+            .containsExactly(SimpMessageType.DISCONNECT_ACK);
+
+        broker.handleMessage(publish("/topic/conversation.1", "hello"));
+        broker.handleMessage(publish("/topic/conversation.1.typing", "typing"));
+        Thread.sleep(100);
+        assertThat(outbound).isEmpty();
+    }
+
+    @Test
+    void matchesPatternSubscriptions() throws InterruptedException {
+        broker.handleMessage(subscribe("s1", "sub-1", "/topic/conversation.*"));
+
+        broker.handleMessage(publish("/topic/conversation.5", "hello"));
+
+        assertThat(await(1)).extracting(message -> SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()))
+            .containsExactly("sub-1");
+    }
+
+    @Test
+    void shedsFramesWhenALaneIsFull() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageChannel slowChannel = (message, timeout) -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return outbound.add(message);
+        };
+        ShardedBrokerMessageHandler full = new ShardedBrokerMessageHandler(new ExecutorSubscribableChannel(),
+            slowChannel, new ExecutorSubscribableChannel(), List.of("/topic", "/queue"), 1, 1, 50);
+        full.start();
+        try {
+            full.handleMessage(subscribe("s1", "sub-1", "/topic/conversation.1"));
+            full.handleMessage(subscribe("s1", "sub-2", "/topic/conversation.1.typing"));
+            full.handleMessage(subscribe("s1", "sub-3", "/topic/conversation.1.read"));
+
+            // The lane is stuck writing the first frame and holds the second
+            full.handleMessage(publish("/topic/conversation.1", "first"));
+            assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+            full.handleMessage(publish("/topic/conversation.1", "second"));
+
+            full.handleMessage(publish("/topic/conversation.1.typing", "typing"));
+            // Each waits for room, gets none and is dropped
+            full.handleMessage(publish("/topic/conversation.1.read", "read"));
+            full.handleMessage(publish("/topic/conversation.1", "third"));
+            release.countDown();
+
+            assertThat(await(2)).extracting(message -> new String((byte[]) message.getPayload()))
+                .containsExactly("first", "second");
+            assertThat(full.getMetrics()).containsEntry("droppedTyping", 1L)
+                .containsEntry("droppedFrames", 2L).containsEntry("publisherWaits", 2L);
+        } finally {
+            release.countDown();
+            full.stop();
+        }
+    }
+
+    private List<Message<?>> await(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (outbound.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        List<Message<?>> received = new ArrayList<>();
+        Message<?> message;
+        while ((message = outbound.poll()) != null) {
+            received.add(message);
+        }
+        assertThat(received).hasSize(count);
+        return received;
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> disconnect(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> publish(String destination, String payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(payload.getBytes(), accessor.getMessageHeaders());
+    }
+}